@@ -69,7 +69,7 @@ private HdfsMetaInfoSchema() throws SQLException {
               + "   currentId int, tokenSequenceNumber int, numKeys int, numTokens int"
               + ");"
               + "CREATE TABLE namespace("
-              + "   namespaceId int, genstampV1 bigint, genstampV2 bigint,"
+              + "   namespaceId int primary key, genstampV1 bigint, genstampV2 bigint,"
               + "   genstampV1Limit bigint, lastAllocatedBlockId bigint,"
               + "   transactionId bigint, rollingUpgradeStartTime bigint,"
               + "   lastAllocatedStripedBlockId bigint"
@@ -103,7 +103,8 @@ private HdfsMetaInfoSchema() throws SQLException {
               + "   id bigint, namespace smallint, name varchar, value varchar"
               + ");"
               + "CREATE TABLE inodeuc("
-              + "   id bigint primary key, clientName varchar, clientMachine varchar"
+              + "   id bigint primary key, clientName varchar, clientMachine varchar,"
+              + "   leaseHolder varchar"
               + ");"
               + "CREATE TABLE inode2block("
               + "   blockId bigint primary key, id bigint, idx int"
@@ -68,6 +68,7 @@
 import java.util.regex.PatternSyntaxException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -699,6 +700,7 @@ public void setDeprecatedProperties() {
         }
       }
     }
+    invalidateSnapshot();
   }
 
   /**
@@ -804,6 +806,62 @@ private void handleDeprecation() {
   private Properties properties;
   private Properties overlay;
   private ClassLoader classLoader;
+
+  /**
+   * The values resolved by {@link #get(String)} and parsed by the typed
+   * getters, so that repeated reads of a key take no lock and do no variable
+   * expansion. Any change of the configuration bumps the generation, which
+   * drops the snapshot at the next read. A read that overlaps a change thus
+   * only fills a snapshot that is already stale.
+   */
+  private static final class Snapshot {
+    // bounds the keys remembered, for callers probing many absent keys
+    private static final int MAX_SIZE = 16384;
+    private static final Object NULL_VALUE = new Object();
+
+    private final long generation;
+    private final DeprecationContext deprecations;
+    private final ConcurrentHashMap<String, Object> values =
+        new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ParsedValue> ints =
+        new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ParsedValue> longs =
+        new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ParsedValue> durations =
+        new ConcurrentHashMap<>();
+
+    private Snapshot(long generation, DeprecationContext deprecations) {
+      this.generation = generation;
+      this.deprecations = deprecations;
+    }
+
+    private static <V> void put(ConcurrentHashMap<String, V> map,
+        String name, V value) {
+      if (map.size() < MAX_SIZE) {
+        map.put(name, value);
+      }
+    }
+  }
+
+  /** A value parsed from a string, valid as long as the string is read. */
+  private static final class ParsedValue {
+    private final String value;
+    private final TimeUnit unit;
+    private final long parsed;
+
+    private ParsedValue(String value, TimeUnit unit, long parsed) {
+      this.value = value;
+      this.unit = unit;
+      this.parsed = parsed;
+    }
+
+    private boolean isFor(String str, TimeUnit u) {
+      return value.equals(str) && unit == u;
+    }
+  }
+
+  private final AtomicLong snapshotGeneration = new AtomicLong();
+  private volatile Snapshot snapshot;
   {
     classLoader = Thread.currentThread().getContextClassLoader();
     if (classLoader == null) {
@@ -905,6 +963,7 @@ public static void setRestrictSystemPropertiesDefault(boolean val) {
 
   public void setRestrictSystemProperties(boolean val) {
     this.restrictSystemProps = val;
+    invalidateSnapshot();
   }
 
   /**
@@ -1025,6 +1084,24 @@ public void addResource(Configuration conf) {
   public synchronized void reloadConfiguration() {
     properties = null;                            // trigger reload
     finalParameters.clear();                      // clear site-limits
+    invalidateSnapshot();
+  }
+
+  private Snapshot getSnapshot() {
+    long generation = snapshotGeneration.get();
+    DeprecationContext deprecations = deprecationContext.get();
+    Snapshot s = snapshot;
+    if (s == null || s.generation != generation ||
+        s.deprecations != deprecations) {
+      s = new Snapshot(generation, deprecations);
+      snapshot = s;
+    }
+    return s;
+  }
+
+  /** Must be called after, not before, changing the configuration. */
+  private void invalidateSnapshot() {
+    snapshotGeneration.incrementAndGet();
   }
   
   private synchronized void addResourceObject(Resource resource) {
@@ -1218,10 +1295,36 @@ String getProperty(String key) {
    *         or null if no such property exists.
    */
   public String get(String name) {
-    String[] names = handleDeprecation(deprecationContext.get(), name);
+    if (name == null) {
+      return getUncached(deprecationContext.get(), name, null);
+    }
+    Snapshot s = getSnapshot();
+    Object value = s.values.get(name);
+    if (value != null) {
+      return value == Snapshot.NULL_VALUE ? null : (String) value;
+    }
+    return getUncached(s.deprecations, name, s);
+  }
+
+  /**
+   * Resolve the value of a property, and remember it in the given snapshot
+   * if it does not depend on environment variables or system properties,
+   * which can change without the configuration changing.
+   */
+  private String getUncached(DeprecationContext deprecations, String name,
+      Snapshot s) {
+    String[] names = handleDeprecation(deprecations, name);
     String result = null;
+    boolean cacheable = s != null;
     for(String n : names) {
-      result = substituteVars(getProps().getProperty(n));
+      String raw = getProps().getProperty(n);
+      cacheable &= raw == null || restrictSystemProps ||
+          findSubVariable(raw)[SUB_START_IDX] == -1;
+      result = substituteVars(raw);
+    }
+    if (cacheable) {
+      Snapshot.put(s.values, name,
+          result == null ? Snapshot.NULL_VALUE : result);
     }
     return result;
   }
@@ -1239,6 +1342,7 @@ public void setAllowNullValueProperties( boolean val ) {
 
   public void setRestrictSystemProps(boolean val) {
     this.restrictSystemProps = val;
+    invalidateSnapshot();
   }
 
   /**
@@ -1412,6 +1516,7 @@ public void set(String name, String value, String source) {
         putIntoUpdatingResource(n, new String[] {altSource});
       }
     }
+    invalidateSnapshot();
   }
 
   @VisibleForTesting
@@ -1446,6 +1551,7 @@ public synchronized void unset(String name) {
       getOverlay().remove(n);
       getProps().remove(n);
     }
+    invalidateSnapshot();
   }
 
   /**
@@ -1479,12 +1585,8 @@ private synchronized Properties getOverlay() {
    *         doesn't exist.                    
    */
   public String get(String name, String defaultValue) {
-    String[] names = handleDeprecation(deprecationContext.get(), name);
-    String result = null;
-    for(String n : names) {
-      result = substituteVars(getProps().getProperty(n, defaultValue));
-    }
-    return result;
+    String result = get(name);
+    return result != null ? result : substituteVars(defaultValue);
   }
 
   /** 
@@ -1504,11 +1606,20 @@ public int getInt(String name, int defaultValue) {
     String valueString = getTrimmed(name);
     if (valueString == null)
       return defaultValue;
+    Snapshot s = getSnapshot();
+    ParsedValue parsed = s.ints.get(name);
+    if (parsed != null && parsed.isFor(valueString, null)) {
+      return (int) parsed.parsed;
+    }
+    int value;
     String hexString = getHexDigits(valueString);
     if (hexString != null) {
-      return Integer.parseInt(hexString, 16);
+      value = Integer.parseInt(hexString, 16);
+    } else {
+      value = Integer.parseInt(valueString);
     }
-    return Integer.parseInt(valueString);
+    Snapshot.put(s.ints, name, new ParsedValue(valueString, null, value));
+    return value;
   }
   
   /**
@@ -1557,11 +1668,20 @@ public long getLong(String name, long defaultValue) {
     String valueString = getTrimmed(name);
     if (valueString == null)
       return defaultValue;
+    Snapshot s = getSnapshot();
+    ParsedValue parsed = s.longs.get(name);
+    if (parsed != null && parsed.isFor(valueString, null)) {
+      return parsed.parsed;
+    }
+    long value;
     String hexString = getHexDigits(valueString);
     if (hexString != null) {
-      return Long.parseLong(hexString, 16);
+      value = Long.parseLong(hexString, 16);
+    } else {
+      value = Long.parseLong(valueString);
     }
-    return Long.parseLong(valueString);
+    Snapshot.put(s.longs, name, new ParsedValue(valueString, null, value));
+    return value;
   }
 
   /**
@@ -1817,9 +1937,15 @@ public long getTimeDuration(String name, long defaultValue, TimeUnit unit) {
     String vStr = get(name);
     if (null == vStr) {
       return defaultValue;
-    } else {
-      return getTimeDurationHelper(name, vStr, unit);
     }
+    Snapshot s = getSnapshot();
+    ParsedValue parsed = s.durations.get(name);
+    if (parsed != null && parsed.isFor(vStr, unit)) {
+      return parsed.parsed;
+    }
+    long value = getTimeDurationHelper(name, vStr, unit);
+    Snapshot.put(s.durations, name, new ParsedValue(vStr, unit, value));
+    return value;
   }
 
   public long getTimeDuration(String name, String defaultValue, TimeUnit unit) {
@@ -2866,6 +2992,7 @@ public int size() {
   public void clear() {
     getProps().clear();
     getOverlay().clear();
+    invalidateSnapshot();
   }
 
   /**
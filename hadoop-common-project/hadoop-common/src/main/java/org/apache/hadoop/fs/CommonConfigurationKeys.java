@@ -76,6 +76,35 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   public static final int IPC_SERVER_RPC_READ_CONNECTION_QUEUE_SIZE_DEFAULT =
       100;
 
+  /** Whether the RPC server reads requests and responses into pooled buffers */
+  public static final String IPC_SERVER_BUFFER_POOL_ENABLED_KEY =
+      "ipc.server.buffer.pool.enabled";
+  /** Default value for IPC_SERVER_BUFFER_POOL_ENABLED_KEY */
+  public static final boolean IPC_SERVER_BUFFER_POOL_ENABLED_DEFAULT = false;
+  /** Requests and responses larger than this are not pooled */
+  public static final String IPC_SERVER_BUFFER_POOL_MAX_BUFFER_SIZE_KEY =
+      "ipc.server.buffer.pool.max.buffer.size";
+  /** Default value for IPC_SERVER_BUFFER_POOL_MAX_BUFFER_SIZE_KEY */
+  public static final int IPC_SERVER_BUFFER_POOL_MAX_BUFFER_SIZE_DEFAULT =
+      1024 * 1024;
+
+  /**
+   * Methods for which identical calls in flight at the same time share one
+   * execution, comma separated. None by default.
+   */
+  public static final String IPC_SERVER_COALESCING_METHODS_KEY =
+      "ipc.server.coalescing.methods";
+
+  /**
+   * Whether the socket readers park the calls of users whose groups are not
+   * cached until the groups are fetched in the background, instead of
+   * letting a handler block on the group lookup.
+   */
+  public static final String IPC_SERVER_GROUPS_PREFETCH_KEY =
+      "ipc.server.groups.prefetch";
+  /** Default value for IPC_SERVER_GROUPS_PREFETCH_KEY */
+  public static final boolean IPC_SERVER_GROUPS_PREFETCH_DEFAULT = false;
+
   /** Max request size a server will accept. */
   public static final String IPC_MAXIMUM_DATA_LENGTH =
       "ipc.maximum.data.length";
@@ -114,6 +143,13 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
       "scheduler.priority.levels";
   public static final int IPC_SCHEDULER_PRIORITY_LEVELS_DEFAULT_KEY = 4;
 
+  /**
+   * The number of lock-free rings of each priority level of a
+   * ShardedFairCallQueue, combined with a namespace and port.
+   */
+  public static final String IPC_CALLQUEUE_SHARDS_KEY = "callqueue.shards";
+  public static final int IPC_CALLQUEUE_SHARDS_DEFAULT = 8;
+
   /** This is for specifying the implementation for the mappings from
    * hostnames to the racks they belong to
    */
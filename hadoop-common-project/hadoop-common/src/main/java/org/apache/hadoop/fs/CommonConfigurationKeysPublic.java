@@ -124,6 +124,14 @@ public class CommonConfigurationKeysPublic {
     "fs.trash.checkpoint.interval";
   /** Default value for FS_TRASH_CHECKPOINT_INTERVAL_KEY */
   public static final long    FS_TRASH_CHECKPOINT_INTERVAL_DEFAULT = 0;
+  /**
+   * @see
+   * <a href="{@docRoot}/../hadoop-project-dist/hadoop-common/core-default.xml">
+   * core-default.xml</a>
+   */
+  public static final String  FS_GLOB_THREADS_KEY = "fs.glob.threads";
+  /** Default value for FS_GLOB_THREADS_KEY */
+  public static final int     FS_GLOB_THREADS_DEFAULT = 1;
 
   /**
    * Directories that cannot be removed unless empty, even by an
@@ -542,6 +550,54 @@ public class CommonConfigurationKeysPublic {
    * <a href="{@docRoot}/../hadoop-project-dist/hadoop-common/core-default.xml">
    * core-default.xml</a>
    */
+  public static final String HADOOP_SECURITY_GROUPS_PREFETCH_THREADS =
+      "hadoop.security.groups.prefetch.threads";
+  /**
+   * @see
+   * <a href="{@docRoot}/../hadoop-project-dist/hadoop-common/core-default.xml">
+   * core-default.xml</a>
+   */
+  public static final int HADOOP_SECURITY_GROUPS_PREFETCH_THREADS_DEFAULT = 2;
+  /**
+   * @see
+   * <a href="{@docRoot}/../hadoop-project-dist/hadoop-common/core-default.xml">
+   * core-default.xml</a>
+   */
+  public static final String HADOOP_SECURITY_GROUPS_PREFETCH_BATCH_SIZE =
+      "hadoop.security.groups.prefetch.batch.size";
+  /**
+   * @see
+   * <a href="{@docRoot}/../hadoop-project-dist/hadoop-common/core-default.xml">
+   * core-default.xml</a>
+   */
+  public static final int HADOOP_SECURITY_GROUPS_PREFETCH_BATCH_SIZE_DEFAULT =
+      100;
+  /**
+   * @see
+   * <a href="{@docRoot}/../hadoop-project-dist/hadoop-common/core-default.xml">
+   * core-default.xml</a>
+   */
+  public static final String HADOOP_SECURITY_GROUPS_PREFETCH_MAX_PENDING =
+      "hadoop.security.groups.prefetch.max.pending";
+  /**
+   * @see
+   * <a href="{@docRoot}/../hadoop-project-dist/hadoop-common/core-default.xml">
+   * core-default.xml</a>
+   */
+  public static final int HADOOP_SECURITY_GROUPS_PREFETCH_MAX_PENDING_DEFAULT =
+      10000;
+  /**
+   * @see
+   * <a href="{@docRoot}/../hadoop-project-dist/hadoop-common/core-default.xml">
+   * core-default.xml</a>
+   */
+  public static final String HADOOP_SECURITY_GROUPS_CACHE_PERSIST_FILE =
+      "hadoop.security.groups.cache.persist.file";
+  /**
+   * @see
+   * <a href="{@docRoot}/../hadoop-project-dist/hadoop-common/core-default.xml">
+   * core-default.xml</a>
+   */
   public static final String HADOOP_SECURITY_GROUP_SHELL_COMMAND_TIMEOUT_KEY =
       "hadoop.security.groups.shell.command.timeout";
   /**
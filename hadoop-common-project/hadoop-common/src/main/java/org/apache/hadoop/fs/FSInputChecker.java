@@ -24,6 +24,7 @@
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.util.DataChecksum;
 import org.apache.hadoop.util.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -49,6 +50,8 @@ abstract public class FSInputChecker extends FSInputStream {
   private byte[] buf; // buffer for non-chunk-aligned reading
   private byte[] checksum;
   private IntBuffer checksumInts; // wrapper on checksum buffer
+  // sum if it verifies chunks of maxChunkSize in bulk, otherwise null
+  private DataChecksum bulkSum;
   private int pos; // the position of the reader inside buf
   private int count; // the number of bytes currently in buf
   
@@ -331,6 +334,19 @@ private int readChecksumChunk(byte b[], final int off, final int len)
   private void verifySums(final byte b[], final int off, int read)
     throws ChecksumException
   {
+    if (bulkSum != null) {
+      try {
+        bulkSum.verifyChunkedSums(ByteBuffer.wrap(b, off, read),
+            ByteBuffer.wrap(checksum, 0,
+                ((read - 1) / maxChunkSize + 1) * CHECKSUM_SIZE),
+            file.toString(), chunkPos);
+      } catch (ChecksumException ce) {
+        throw new ChecksumException(
+            "Checksum error: " + file + " at " + ce.getPos(), ce.getPos());
+      }
+      return;
+    }
+
     int leftToVerify = read;
     int verifyOff = 0;
     checksumInts.rewind();
@@ -482,6 +498,9 @@ final protected synchronized void set(boolean verifyChecksum,
     this.maxChunkSize = maxChunkSize;
     this.verifyChecksum = verifyChecksum;
     this.sum = sum;
+    this.bulkSum = sum instanceof DataChecksum &&
+        ((DataChecksum) sum).getBytesPerChecksum() == maxChunkSize ?
+        (DataChecksum) sum : null;
     this.buf = new byte[maxChunkSize];
     // The size of the checksum array here determines how much we can
     // read in a single call to readChunk
@@ -19,13 +19,21 @@
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 import org.apache.htrace.core.TraceScope;
 import org.apache.htrace.core.Tracer;
 import org.slf4j.Logger;
@@ -42,6 +50,8 @@ class Globber {
   private final Path pathPattern;
   private final PathFilter filter;
   private final Tracer tracer;
+  // number of threads expanding the candidates of a path component
+  private final int numThreads;
   
   public Globber(FileSystem fs, Path pathPattern, PathFilter filter) {
     this.fs = fs;
@@ -49,6 +59,9 @@ public Globber(FileSystem fs, Path pathPattern, PathFilter filter) {
     this.pathPattern = pathPattern;
     this.filter = filter;
     this.tracer = FsTracer.get(fs.getConf());
+    this.numThreads = fs.getConf() == null ? 1 : fs.getConf().getInt(
+        CommonConfigurationKeysPublic.FS_GLOB_THREADS_KEY,
+        CommonConfigurationKeysPublic.FS_GLOB_THREADS_DEFAULT);
   }
 
   public Globber(FileContext fc, Path pathPattern, PathFilter filter) {
@@ -57,6 +70,7 @@ public Globber(FileContext fc, Path pathPattern, PathFilter filter) {
     this.pathPattern = pathPattern;
     this.filter = filter;
     this.tracer = fc.getTracer();
+    this.numThreads = 1;
   }
 
   private FileStatus getFileStatus(Path path) throws IOException {
@@ -153,6 +167,134 @@ public FileStatus[] glob() throws IOException {
   }
 
   private FileStatus[] doGlob() throws IOException {
+    ExecutorService executor = null;
+    try {
+      if (numThreads > 1) {
+        executor = Executors.newFixedThreadPool(numThreads,
+            new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("Globber #%d").build());
+      }
+      return doGlob(executor);
+    } finally {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  /**
+   * Match the candidates for a path component against it.
+   * @param candidate a candidate matching the previous components
+   * @param globFilter the filter for the component
+   * @param component the unescaped component
+   * @param isLast whether this is the terminal path component
+   * @return the candidates matching up to the component
+   */
+  private List<FileStatus> expandCandidate(FileStatus candidate,
+      GlobFilter globFilter, String component, boolean isLast)
+      throws IOException {
+    List<FileStatus> newCandidates = new ArrayList<FileStatus>();
+    if (globFilter.hasPattern()) {
+      FileStatus[] children = listStatus(candidate.getPath());
+      if (children.length == 1) {
+        // If we get back only one result, this could be either a listing
+        // of a directory with one entry, or it could reflect the fact
+        // that what we listed resolved to a file.
+        //
+        // Unfortunately, we can't just compare the returned paths to
+        // figure this out.  Consider the case where you have /a/b, where
+        // b is a symlink to "..".  In that case, listing /a/b will give
+        // back "/a/b" again.  If we just went by returned pathname, we'd
+        // incorrectly conclude that /a/b was a file and should not match
+        // /a/*/*.  So we use getFileStatus of the path we just listed to
+        // disambiguate.
+        Path path = candidate.getPath();
+        FileStatus status = getFileStatus(path);
+        if (status == null) {
+          // null means the file was not found
+          LOG.warn("File/directory {} not found:"
+              + " it may have been deleted."
+              + " If this is an object store, this can be a sign of"
+              + " eventual consistency problems.",
+              path);
+          return newCandidates;
+        }
+        if (!status.isDirectory()) {
+          return newCandidates;
+        }
+      }
+      for (FileStatus child : children) {
+        if (!isLast) {
+          // Don't try to recurse into non-directories.  See HADOOP-10957.
+          if (!child.isDirectory()) continue; 
+        }
+        // Set the child path based on the parent path.
+        child.setPath(new Path(candidate.getPath(),
+                child.getPath().getName()));
+        if (globFilter.accept(child.getPath())) {
+          newCandidates.add(child);
+        }
+      }
+    } else {
+      // When dealing with non-glob components, use getFileStatus 
+      // instead of listStatus.  This is an optimization, but it also
+      // is necessary for correctness in HDFS, since there are some
+      // special HDFS directories like .reserved and .snapshot that are
+      // not visible to listStatus, but which do exist.  (See HADOOP-9877)
+      FileStatus childStatus = getFileStatus(
+          new Path(candidate.getPath(), component));
+      if (childStatus != null) {
+        newCandidates.add(childStatus);
+      }
+    }
+    return newCandidates;
+  }
+
+  /**
+   * Expand the candidates on the executor, keeping their order.
+   */
+  private List<FileStatus> expandCandidates(ExecutorService executor,
+      List<FileStatus> candidates, final GlobFilter globFilter,
+      final String component, final boolean isLast) throws IOException {
+    List<FileStatus> newCandidates =
+        new ArrayList<FileStatus>(candidates.size());
+    if (executor == null || candidates.size() < 2) {
+      for (FileStatus candidate : candidates) {
+        newCandidates.addAll(
+            expandCandidate(candidate, globFilter, component, isLast));
+      }
+      return newCandidates;
+    }
+    List<Future<List<FileStatus>>> futures =
+        new ArrayList<Future<List<FileStatus>>>(candidates.size());
+    for (final FileStatus candidate : candidates) {
+      futures.add(executor.submit(new Callable<List<FileStatus>>() {
+        @Override
+        public List<FileStatus> call() throws IOException {
+          return expandCandidate(candidate, globFilter, component, isLast);
+        }
+      }));
+    }
+    try {
+      for (Future<List<FileStatus>> future : futures) {
+        newCandidates.addAll(future.get());
+      }
+    } catch (InterruptedException e) {
+      throw (IOException) new InterruptedIOException(
+          "Interrupted while globbing " + pathPattern).initCause(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException(cause);
+    }
+    return newCandidates;
+  }
+
+  private FileStatus[] doGlob(ExecutorService executor) throws IOException {
     // First we get the scheme and authority of the pattern that was passed
     // in.
     String scheme = schemeFromPath(pathPattern);
@@ -181,7 +323,7 @@ private FileStatus[] doGlob() throws IOException {
           getPathComponents(absPattern.toUri().getPath());
       // Starting out at the root of the filesystem, we try to match
       // filesystem entries against pattern components.
-      ArrayList<FileStatus> candidates = new ArrayList<FileStatus>(1);
+      List<FileStatus> candidates = new ArrayList<FileStatus>(1);
       // To get the "real" FileStatus of root, we'd have to do an expensive
       // RPC to the NameNode.  So we create a placeholder FileStatus which has
       // the correct path, but defaults for the rest of the information.
@@ -205,8 +347,6 @@ private FileStatus[] doGlob() throws IOException {
       
       for (int componentIdx = 0; componentIdx < components.size();
           componentIdx++) {
-        ArrayList<FileStatus> newCandidates =
-            new ArrayList<FileStatus>(candidates.size());
         GlobFilter globFilter = new GlobFilter(components.get(componentIdx));
         String component = unescapePathComponent(components.get(componentIdx));
         if (globFilter.hasPattern()) {
@@ -230,62 +370,8 @@ private FileStatus[] doGlob() throws IOException {
           }
           continue;
         }
-        for (FileStatus candidate : candidates) {
-          if (globFilter.hasPattern()) {
-            FileStatus[] children = listStatus(candidate.getPath());
-            if (children.length == 1) {
-              // If we get back only one result, this could be either a listing
-              // of a directory with one entry, or it could reflect the fact
-              // that what we listed resolved to a file.
-              //
-              // Unfortunately, we can't just compare the returned paths to
-              // figure this out.  Consider the case where you have /a/b, where
-              // b is a symlink to "..".  In that case, listing /a/b will give
-              // back "/a/b" again.  If we just went by returned pathname, we'd
-              // incorrectly conclude that /a/b was a file and should not match
-              // /a/*/*.  So we use getFileStatus of the path we just listed to
-              // disambiguate.
-              Path path = candidate.getPath();
-              FileStatus status = getFileStatus(path);
-              if (status == null) {
-                // null means the file was not found
-                LOG.warn("File/directory {} not found:"
-                    + " it may have been deleted."
-                    + " If this is an object store, this can be a sign of"
-                    + " eventual consistency problems.",
-                    path);
-                continue;
-              }
-              if (!status.isDirectory()) {
-                continue;
-              }
-            }
-            for (FileStatus child : children) {
-              if (componentIdx < components.size() - 1) {
-                // Don't try to recurse into non-directories.  See HADOOP-10957.
-                if (!child.isDirectory()) continue; 
-              }
-              // Set the child path based on the parent path.
-              child.setPath(new Path(candidate.getPath(),
-                      child.getPath().getName()));
-              if (globFilter.accept(child.getPath())) {
-                newCandidates.add(child);
-              }
-            }
-          } else {
-            // When dealing with non-glob components, use getFileStatus 
-            // instead of listStatus.  This is an optimization, but it also
-            // is necessary for correctness in HDFS, since there are some
-            // special HDFS directories like .reserved and .snapshot that are
-            // not visible to listStatus, but which do exist.  (See HADOOP-9877)
-            FileStatus childStatus = getFileStatus(
-                new Path(candidate.getPath(), component));
-            if (childStatus != null) {
-              newCandidates.add(childStatus);
-            }
-          }
-        }
-        candidates = newCandidates;
+        candidates = expandCandidates(executor, candidates, globFilter,
+            component, componentIdx == components.size() - 1);
       }
       for (FileStatus status : candidates) {
         // Use object equality to see if this status is the root placeholder.
@@ -0,0 +1,177 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder;
+
+import org.apache.hadoop.HadoopIllegalArgumentException;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.io.erasurecode.ErasureCoderOptions;
+import org.apache.hadoop.io.erasurecode.rawcoder.util.DumpUtil;
+import org.apache.hadoop.io.erasurecode.rawcoder.util.RSUtil;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A raw erasure decoder in RS code scheme in pure Java, the counterpart of
+ * {@link RSNibbleRawEncoder}.
+ *
+ * Inverting the matrix for an erasure pattern takes longer than decoding a
+ * small cell, and readers of a striped file each create their own decoder.
+ * So the tables generated for a pattern of erased and valid units are kept
+ * in a cache shared by all decoders of the same schema.
+ */
+@InterfaceAudience.Private
+public class RSNibbleRawDecoder extends RawErasureDecoder {
+  private static final int MAX_CACHED_PATTERNS = 256;
+
+  /** Tables by erasure pattern, least recently used first. */
+  private static final Map<ErasurePattern, byte[]> GF_TABLES_CACHE =
+      Collections.synchronizedMap(
+          new LinkedHashMap<ErasurePattern, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<ErasurePattern, byte[]> eldest) {
+              return size() > MAX_CACHED_PATTERNS;
+            }
+          });
+
+  //relevant to schema and won't change during decode calls
+  private final byte[] encodeMatrix;
+
+  /**
+   * Below are relevant to schema and erased indexes, thus may change during
+   * decode calls.
+   */
+  private byte[] gfTables;
+  private int[] cachedErasedIndexes;
+  private int[] validIndexes;
+
+  public RSNibbleRawDecoder(ErasureCoderOptions coderOptions) {
+    super(coderOptions);
+
+    int numAllUnits = getNumAllUnits();
+    if (numAllUnits >= RSUtil.GF.getFieldSize()) {
+      throw new HadoopIllegalArgumentException(
+          "Invalid numDataUnits and numParityUnits");
+    }
+
+    encodeMatrix = new byte[numAllUnits * getNumDataUnits()];
+    RSUtil.genCauchyMatrix(encodeMatrix, numAllUnits, getNumDataUnits());
+    if (allowVerboseDump()) {
+      DumpUtil.dumpMatrix(encodeMatrix, getNumDataUnits(), numAllUnits);
+    }
+  }
+
+  @Override
+  protected void doDecode(ByteBufferDecodingState decodingState) {
+    prepareDecoding(decodingState.inputs, decodingState.erasedIndexes);
+
+    ByteBuffer[] realInputs = new ByteBuffer[getNumDataUnits()];
+    for (int i = 0; i < getNumDataUnits(); i++) {
+      realInputs[i] = decodingState.inputs[validIndexes[i]];
+    }
+    RSUtil.encodeDataByWords(gfTables, decodingState.decodeLength,
+        realInputs, decodingState.outputs);
+  }
+
+  @Override
+  protected void doDecode(ByteArrayDecodingState decodingState) {
+    int dataLen = decodingState.decodeLength;
+    prepareDecoding(decodingState.inputs, decodingState.erasedIndexes);
+
+    ByteBuffer[] realInputs = new ByteBuffer[getNumDataUnits()];
+    for (int i = 0; i < getNumDataUnits(); i++) {
+      realInputs[i] = ByteBuffer.wrap(decodingState.inputs[validIndexes[i]],
+          decodingState.inputOffsets[validIndexes[i]], dataLen);
+    }
+    RSUtil.encodeDataByWords(gfTables, dataLen, realInputs,
+        RSNibbleRawEncoder.wrap(decodingState.outputs,
+            decodingState.outputOffsets, dataLen));
+  }
+
+  private <T> void prepareDecoding(T[] inputs, int[] erasedIndexes) {
+    int[] tmpValidIndexes = CoderUtil.getValidIndexes(inputs);
+    if (Arrays.equals(this.cachedErasedIndexes, erasedIndexes) &&
+        Arrays.equals(this.validIndexes, tmpValidIndexes)) {
+      return; // Optimization. Nothing to do
+    }
+    this.cachedErasedIndexes =
+        Arrays.copyOf(erasedIndexes, erasedIndexes.length);
+    this.validIndexes =
+        Arrays.copyOf(tmpValidIndexes, tmpValidIndexes.length);
+
+    ErasurePattern pattern = new ErasurePattern(getNumDataUnits(),
+        getNumParityUnits(), erasedIndexes, validIndexes);
+    byte[] tables = GF_TABLES_CACHE.get(pattern);
+    if (tables == null) {
+      tables = generateTables(erasedIndexes);
+      GF_TABLES_CACHE.put(pattern, tables);
+    }
+    this.gfTables = tables;
+  }
+
+  private byte[] generateTables(int[] erasedIndexes) {
+    byte[] decodeMatrix = new byte[getNumAllUnits() * getNumDataUnits()];
+    RSUtil.genDecodeMatrix(encodeMatrix, getNumDataUnits(), validIndexes,
+        erasedIndexes, decodeMatrix);
+
+    byte[] tables = new byte[getNumAllUnits() * getNumDataUnits() * 32];
+    RSUtil.initTables(getNumDataUnits(), erasedIndexes.length,
+        decodeMatrix, 0, tables);
+    if (allowVerboseDump()) {
+      System.out.println(DumpUtil.bytesToHex(tables, -1));
+    }
+    return tables;
+  }
+
+  /**
+   * The schema, the erased units and the valid units decoded from, which
+   * determine the decode tables.
+   */
+  private static final class ErasurePattern {
+    private final int[] units;
+    private final int hash;
+
+    ErasurePattern(int numDataUnits, int numParityUnits, int[] erasedIndexes,
+        int[] validIndexes) {
+      // only the first numDataUnits valid units are decoded from
+      units = new int[3 + erasedIndexes.length + numDataUnits];
+      units[0] = numDataUnits;
+      units[1] = numParityUnits;
+      units[2] = erasedIndexes.length;
+      System.arraycopy(erasedIndexes, 0, units, 3, erasedIndexes.length);
+      System.arraycopy(validIndexes, 0, units, 3 + erasedIndexes.length,
+          numDataUnits);
+      hash = Arrays.hashCode(units);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof ErasurePattern &&
+          Arrays.equals(units, ((ErasurePattern) obj).units);
+    }
+  }
+}
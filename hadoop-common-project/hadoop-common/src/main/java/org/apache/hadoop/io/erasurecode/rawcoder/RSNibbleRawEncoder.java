@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder;
+
+import org.apache.hadoop.HadoopIllegalArgumentException;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.io.erasurecode.ErasureCoderOptions;
+import org.apache.hadoop.io.erasurecode.rawcoder.util.DumpUtil;
+import org.apache.hadoop.io.erasurecode.rawcoder.util.RSUtil;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A raw erasure encoder in RS code scheme in pure Java, compatible with
+ * {@link RSRawEncoder} and the native/ISA-L coder. Instead of multiplying a
+ * byte at a time with a 256-entry table per coefficient, it codes words of
+ * 8 bytes with the 16-entry nibble tables ISA-L uses, see
+ * {@link RSUtil#encodeDataByWords}.
+ */
+@InterfaceAudience.Private
+public class RSNibbleRawEncoder extends RawErasureEncoder {
+  /**
+   * Array of input tables generated from coding coefficients previously.
+   * Must be of size 32*k*rows
+   */
+  private final byte[] gfTables;
+
+  public RSNibbleRawEncoder(ErasureCoderOptions coderOptions) {
+    super(coderOptions);
+
+    if (getNumAllUnits() >= RSUtil.GF.getFieldSize()) {
+      throw new HadoopIllegalArgumentException(
+          "Invalid numDataUnits and numParityUnits");
+    }
+
+    byte[] encodeMatrix = new byte[getNumAllUnits() * getNumDataUnits()];
+    RSUtil.genCauchyMatrix(encodeMatrix, getNumAllUnits(), getNumDataUnits());
+    if (allowVerboseDump()) {
+      DumpUtil.dumpMatrix(encodeMatrix, getNumDataUnits(), getNumAllUnits());
+    }
+    gfTables = new byte[getNumAllUnits() * getNumDataUnits() * 32];
+    RSUtil.initTables(getNumDataUnits(), getNumParityUnits(), encodeMatrix,
+        getNumDataUnits() * getNumDataUnits(), gfTables);
+    if (allowVerboseDump()) {
+      System.out.println(DumpUtil.bytesToHex(gfTables, -1));
+    }
+  }
+
+  @Override
+  protected void doEncode(ByteBufferEncodingState encodingState) {
+    RSUtil.encodeDataByWords(gfTables, encodingState.encodeLength,
+        encodingState.inputs, encodingState.outputs);
+  }
+
+  @Override
+  protected void doEncode(ByteArrayEncodingState encodingState) {
+    int dataLen = encodingState.encodeLength;
+    RSUtil.encodeDataByWords(gfTables, dataLen,
+        wrap(encodingState.inputs, encodingState.inputOffsets, dataLen),
+        wrap(encodingState.outputs, encodingState.outputOffsets, dataLen));
+  }
+
+  static ByteBuffer[] wrap(byte[][] arrays, int[] offsets, int len) {
+    ByteBuffer[] buffers = new ByteBuffer[arrays.length];
+    for (int i = 0; i < arrays.length; i++) {
+      buffers[i] = ByteBuffer.wrap(arrays[i], offsets[i], len);
+    }
+    return buffers;
+  }
+}
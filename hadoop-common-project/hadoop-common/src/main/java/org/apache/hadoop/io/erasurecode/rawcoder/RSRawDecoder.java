@@ -21,7 +21,6 @@
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.io.erasurecode.ErasureCoderOptions;
 import org.apache.hadoop.io.erasurecode.rawcoder.util.DumpUtil;
-import org.apache.hadoop.io.erasurecode.rawcoder.util.GF256;
 import org.apache.hadoop.io.erasurecode.rawcoder.util.RSUtil;
 
 import java.nio.ByteBuffer;
@@ -43,7 +42,6 @@ public class RSRawDecoder extends RawErasureDecoder {
    * decode calls.
    */
   private byte[] decodeMatrix;
-  private byte[] invertMatrix;
   /**
    * Array of input tables generated from coding coefficients previously.
    * Must be of size 32*k*rows
@@ -51,8 +49,6 @@ public class RSRawDecoder extends RawErasureDecoder {
   private byte[] gfTables;
   private int[] cachedErasedIndexes;
   private int[] validIndexes;
-  private int numErasedDataUnits;
-  private boolean[] erasureFlags;
 
   public RSRawDecoder(ErasureCoderOptions coderOptions) {
     super(coderOptions);
@@ -116,21 +112,10 @@ private <T> void prepareDecoding(T[] inputs, int[] erasedIndexes) {
 
   private void processErasures(int[] erasedIndexes) {
     this.decodeMatrix = new byte[getNumAllUnits() * getNumDataUnits()];
-    this.invertMatrix = new byte[getNumAllUnits() * getNumDataUnits()];
     this.gfTables = new byte[getNumAllUnits() * getNumDataUnits() * 32];
 
-    this.erasureFlags = new boolean[getNumAllUnits()];
-    this.numErasedDataUnits = 0;
-
-    for (int i = 0; i < erasedIndexes.length; i++) {
-      int index = erasedIndexes[i];
-      erasureFlags[index] = true;
-      if (index < getNumDataUnits()) {
-        numErasedDataUnits++;
-      }
-    }
-
-    generateDecodeMatrix(erasedIndexes);
+    RSUtil.genDecodeMatrix(encodeMatrix, getNumDataUnits(), validIndexes,
+        erasedIndexes, decodeMatrix);
 
     RSUtil.initTables(getNumDataUnits(), erasedIndexes.length,
         decodeMatrix, 0, gfTables);
@@ -138,40 +123,4 @@ private void processErasures(int[] erasedIndexes) {
       System.out.println(DumpUtil.bytesToHex(gfTables, -1));
     }
   }
-
-  // Generate decode matrix from encode matrix
-  private void generateDecodeMatrix(int[] erasedIndexes) {
-    int i, j, r, p;
-    byte s;
-    byte[] tmpMatrix = new byte[getNumAllUnits() * getNumDataUnits()];
-
-    // Construct matrix tmpMatrix by removing error rows
-    for (i = 0; i < getNumDataUnits(); i++) {
-      r = validIndexes[i];
-      for (j = 0; j < getNumDataUnits(); j++) {
-        tmpMatrix[getNumDataUnits() * i + j] =
-                encodeMatrix[getNumDataUnits() * r + j];
-      }
-    }
-
-    GF256.gfInvertMatrix(tmpMatrix, invertMatrix, getNumDataUnits());
-
-    for (i = 0; i < numErasedDataUnits; i++) {
-      for (j = 0; j < getNumDataUnits(); j++) {
-        decodeMatrix[getNumDataUnits() * i + j] =
-                invertMatrix[getNumDataUnits() * erasedIndexes[i] + j];
-      }
-    }
-
-    for (p = numErasedDataUnits; p < erasedIndexes.length; p++) {
-      for (i = 0; i < getNumDataUnits(); i++) {
-        s = 0;
-        for (j = 0; j < getNumDataUnits(); j++) {
-          s ^= GF256.gfMul(invertMatrix[j * getNumDataUnits() + i],
-                  encodeMatrix[getNumDataUnits() * erasedIndexes[p] + j]);
-        }
-        decodeMatrix[getNumDataUnits() * p + i] = s;
-      }
-    }
-  }
 }
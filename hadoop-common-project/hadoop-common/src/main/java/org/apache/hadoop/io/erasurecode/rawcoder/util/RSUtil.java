@@ -20,6 +20,7 @@
 import org.apache.hadoop.classification.InterfaceAudience;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * Utilities for implementing Reed-Solomon code, used by RS coder. Some of the
@@ -75,6 +76,55 @@ public static void genCauchyMatrix(byte[] a, int m, int k) {
     }
   }
 
+  /**
+   * Generate the decode matrix from the encode matrix: a row of numDataUnits
+   * coefficients for each erased unit, applied to the first numDataUnits
+   * valid units. Erased data units must come before erased parity units.
+   */
+  public static void genDecodeMatrix(byte[] encodeMatrix, int numDataUnits,
+      int[] validIndexes, int[] erasedIndexes, byte[] decodeMatrix) {
+    int i, j, r, p;
+    byte s;
+    byte[] tmpMatrix = new byte[numDataUnits * numDataUnits];
+    byte[] invertMatrix = new byte[numDataUnits * numDataUnits];
+
+    int numErasedDataUnits = 0;
+    for (int index : erasedIndexes) {
+      if (index < numDataUnits) {
+        numErasedDataUnits++;
+      }
+    }
+
+    // Construct matrix tmpMatrix by removing error rows
+    for (i = 0; i < numDataUnits; i++) {
+      r = validIndexes[i];
+      for (j = 0; j < numDataUnits; j++) {
+        tmpMatrix[numDataUnits * i + j] =
+                encodeMatrix[numDataUnits * r + j];
+      }
+    }
+
+    GF256.gfInvertMatrix(tmpMatrix, invertMatrix, numDataUnits);
+
+    for (i = 0; i < numErasedDataUnits; i++) {
+      for (j = 0; j < numDataUnits; j++) {
+        decodeMatrix[numDataUnits * i + j] =
+                invertMatrix[numDataUnits * erasedIndexes[i] + j];
+      }
+    }
+
+    for (p = numErasedDataUnits; p < erasedIndexes.length; p++) {
+      for (i = 0; i < numDataUnits; i++) {
+        s = 0;
+        for (j = 0; j < numDataUnits; j++) {
+          s ^= GF256.gfMul(invertMatrix[j * numDataUnits + i],
+                  encodeMatrix[numDataUnits * erasedIndexes[p] + j]);
+        }
+        decodeMatrix[numDataUnits * p + i] = s;
+      }
+    }
+  }
+
   /**
    * Encode a group of inputs data and generate the outputs. It's also used for
    * decoding because, in this implementation, encoding and decoding are
@@ -184,4 +234,73 @@ public static void encodeData(byte[] gfTables, ByteBuffer[] inputs,
     }
   }
 
+  /**
+   * Encode like {@link #encodeData(byte[], ByteBuffer[], ByteBuffer[])}, but
+   * a word of 8 bytes at a time: the words of all inputs at a position are
+   * multiplied and summed for each output, which is then written once,
+   * instead of being updated for every input. Each byte is multiplied with
+   * the 16-entry tables of its low and high nibble from gfTables, which
+   * keeps the tables of all coefficients in a few cache lines.
+   *
+   * The outputs are overwritten, so they need not be reset. The positions of
+   * the buffers are not changed.
+   */
+  public static void encodeDataByWords(byte[] gfTables, int dataLen,
+      ByteBuffer[] inputs, ByteBuffer[] outputs) {
+    final int numInputs = inputs.length;
+    final int numOutputs = outputs.length;
+    // the same byte order for all buffers, the native one for direct ones
+    final ByteBuffer[] in = new ByteBuffer[numInputs];
+    final int[] iPos = new int[numInputs];
+    for (int j = 0; j < numInputs; j++) {
+      in[j] = inputs[j].duplicate().order(ByteOrder.nativeOrder());
+      iPos[j] = inputs[j].position();
+    }
+    final ByteBuffer[] out = new ByteBuffer[numOutputs];
+    final int[] oPos = new int[numOutputs];
+    for (int l = 0; l < numOutputs; l++) {
+      out[l] = outputs[l].duplicate().order(ByteOrder.nativeOrder());
+      oPos[l] = outputs[l].position();
+    }
+
+    final long[] words = new long[numInputs];
+    final int wordsLen = dataLen & ~7;
+    for (int i = 0; i < wordsLen; i += 8) {
+      for (int j = 0; j < numInputs; j++) {
+        words[j] = in[j].getLong(iPos[j] + i);
+      }
+      for (int l = 0, t = 0; l < numOutputs; l++) {
+        long sum = 0;
+        for (int j = 0; j < numInputs; j++, t += 32) {
+          sum ^= gfMulWord(gfTables, t, words[j]);
+        }
+        out[l].putLong(oPos[l] + i, sum);
+      }
+    }
+
+    for (int i = wordsLen; i < dataLen; i++) {
+      for (int l = 0, t = 0; l < numOutputs; l++) {
+        int sum = 0;
+        for (int j = 0; j < numInputs; j++, t += 32) {
+          sum ^= gfMulByte(gfTables, t, in[j].get(iPos[j] + i));
+        }
+        out[l].put(oPos[l] + i, (byte) sum);
+      }
+    }
+  }
+
+  private static int gfMulByte(byte[] gfTables, int t, int b) {
+    return gfTables[t + (b & 0x0f)] ^ gfTables[t + 16 + ((b >>> 4) & 0x0f)];
+  }
+
+  private static long gfMulWord(byte[] gfTables, int t, long w) {
+    return (gfMulByte(gfTables, t, (int) w) & 0xffL)
+        | ((gfMulByte(gfTables, t, (int) (w >>> 8)) & 0xffL) << 8)
+        | ((gfMulByte(gfTables, t, (int) (w >>> 16)) & 0xffL) << 16)
+        | ((gfMulByte(gfTables, t, (int) (w >>> 24)) & 0xffL) << 24)
+        | ((gfMulByte(gfTables, t, (int) (w >>> 32)) & 0xffL) << 32)
+        | ((gfMulByte(gfTables, t, (int) (w >>> 40)) & 0xffL) << 40)
+        | ((gfMulByte(gfTables, t, (int) (w >>> 48)) & 0xffL) << 48)
+        | ((gfMulByte(gfTables, t, (int) (w >>> 56)) & 0xffL) << 56);
+  }
 }
@@ -0,0 +1,51 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc;
+
+import java.io.IOException;
+
+import com.google.protobuf.Message;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * Decides whether a call may get the result of an identical call of another
+ * caller that is in flight, see ipc.server.coalescing.methods. It runs in
+ * the handler of the waiting call, so {@link Server#getRemoteUser()} is the
+ * caller to check.
+ */
+@InterfaceAudience.LimitedPrivate({"HDFS"})
+@InterfaceStability.Evolving
+public interface CoalescedCallCheck {
+  /**
+   * @return whether the current caller may get the result; if not, or if
+   *     this throws, the call executes on its own
+   */
+  boolean mayShare(String protocol, String method, Message request)
+      throws IOException;
+
+  /**
+   * @return whether the result of the method depends on the remote user or
+   *     address, e.g. because it is sorted for the client or carries tokens
+   *     for the user; such calls only share with calls of the same caller
+   */
+  default boolean dependsOnCaller(String protocol, String method) {
+    return false;
+  }
+}
@@ -30,6 +30,7 @@
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
 
 import com.google.common.annotations.VisibleForTesting;
 import org.apache.commons.lang3.NotImplementedException;
@@ -83,12 +84,27 @@ private void signalNotEmpty() {
    */
   public FairCallQueue(int priorityLevels, int capacity, String ns,
       Configuration conf) {
+    this(priorityLevels, capacity, ns, conf,
+        new IntFunction<BlockingQueue<E>>() {
+          @Override
+          public BlockingQueue<E> apply(int queueCapacity) {
+            return new LinkedBlockingQueue<E>(queueCapacity);
+          }
+        });
+  }
+
+  /**
+   * Create a FairCallQueue with the given kind of sub-queues.
+   * @param subQueueFactory creates a sub-queue of the given capacity
+   */
+  protected FairCallQueue(int priorityLevels, int capacity, String ns,
+      Configuration conf, IntFunction<BlockingQueue<E>> subQueueFactory) {
     if(priorityLevels < 1) {
       throw new IllegalArgumentException("Number of Priority Levels must be " +
           "at least 1");
     }
     int numQueues = priorityLevels;
-    LOG.info("FairCallQueue is in use with " + numQueues +
+    LOG.info(getClass().getSimpleName() + " is in use with " + numQueues +
         " queues with total capacity of " + capacity);
 
     this.queues = new ArrayList<BlockingQueue<E>>(numQueues);
@@ -97,9 +113,9 @@ public FairCallQueue(int priorityLevels, int capacity, String ns,
     int capacityForFirstQueue = queueCapacity + (capacity % numQueues);
     for(int i=0; i < numQueues; i++) {
       if (i == 0) {
-        this.queues.add(new LinkedBlockingQueue<E>(capacityForFirstQueue));
+        this.queues.add(subQueueFactory.apply(capacityForFirstQueue));
       } else {
-        this.queues.add(new LinkedBlockingQueue<E>(queueCapacity));
+        this.queues.add(subQueueFactory.apply(queueCapacity));
       }
       this.overflowedCalls.add(new AtomicLong(0));
     }
@@ -354,10 +354,18 @@ public static class Server extends RPC.Server {
     static class CallInfo {
       private final RPC.Server server;
       private final String methodName;
+      // the identical calls waiting for this one, if coalesced
+      private final RpcCoalescer.InFlight coalesced;
 
       public CallInfo(RPC.Server server, String methodName) {
+        this(server, methodName, null);
+      }
+
+      CallInfo(RPC.Server server, String methodName,
+          RpcCoalescer.InFlight coalesced) {
         this.server = server;
         this.methodName = methodName;
+        this.coalesced = coalesced;
       }
     }
 
@@ -367,12 +375,14 @@ public CallInfo(RPC.Server server, String methodName) {
       private final RPC.Server server;
       private final Call call;
       private final String methodName;
+      private final RpcCoalescer.InFlight coalesced;
       private final long setupTime;
 
       public ProtobufRpcEngineCallbackImpl() {
         this.server = currentCallInfo.get().server;
         this.call = Server.getCurCall().get();
         this.methodName = currentCallInfo.get().methodName;
+        this.coalesced = currentCallInfo.get().coalesced;
         this.setupTime = Time.now();
       }
 
@@ -381,6 +391,9 @@ public void setResponse(Message message) {
         long processingTime = Time.now() - setupTime;
         call.setDeferredResponse(RpcWritable.wrap(message));
         server.updateDeferredMetrics(methodName, processingTime);
+        if (coalesced != null) {
+          coalesced.complete(message, null);
+        }
       }
 
       @Override
@@ -389,6 +402,9 @@ public void error(Throwable t) {
         String detailedMetricsName = t.getClass().getSimpleName();
         server.updateDeferredMetrics(detailedMetricsName, processingTime);
         call.setDeferredError(t);
+        if (coalesced != null) {
+          coalesced.complete(null, t);
+        }
       }
     }
 
@@ -513,14 +529,29 @@ public Writable call(RPC.Server server, String connectionProtocolName,
         Message prototype = service.getRequestPrototype(methodDescriptor);
         Message param = request.getValue(prototype);
 
-        Message result;
+        Message result = null;
         long startTime = Time.now();
         int qTime = (int) (startTime - receiveTime);
+        RpcCoalescer.InFlight coalesced = null;
+        if (server.coalescer != null &&
+            server.coalescer.isCoalesced(methodName)) {
+          Call call = Server.getCurCall().get();
+          coalesced = server.coalescer.begin(server.coalescer.newKey(
+              declaringClassProtoName, methodName, param, call), call);
+          if (coalesced == null) {
+            // answered once the identical call in flight completes
+            server.rpcMetrics.incrCoalescedCalls();
+            server.updateMetrics(methodName, qTime, 0, true);
+            return null;
+          }
+        }
         Exception exception = null;
+        // the waiting calls get it too
+        Error error = null;
         boolean isDeferred = false;
         try {
           server.rpcDetailedMetrics.init(protocolImpl.protocolClass);
-          currentCallInfo.set(new CallInfo(server, methodName));
+          currentCallInfo.set(new CallInfo(server, methodName, coalesced));
           result = service.callBlockingMethod(methodDescriptor, null, param);
           // Check if this needs to be a deferred response,
           // by checking the ThreadLocal callback being set
@@ -536,8 +567,14 @@ public Writable call(RPC.Server server, String connectionProtocolName,
         } catch (Exception e) {
           exception = e;
           throw e;
+        } catch (Error e) {
+          error = e;
+          throw e;
         } finally {
           currentCallInfo.set(null);
+          if (coalesced != null && !isDeferred) {
+            coalesced.complete(result, exception != null ? exception : error);
+          }
           int processingTime = (int) (Time.now() - startTime);
           if (LOG.isDebugEnabled()) {
             String msg =
@@ -582,6 +619,17 @@ RequestHeaderProto getRequestHeader() throws IOException {
       return requestHeader;
     }
 
+    @Override
+    void detach() {
+      try {
+        // keep the header for logging the call
+        getRequestHeader();
+      } catch (IOException e) {
+        // left unparsed
+      }
+      super.detach();
+    }
+
     @Override
     public void writeTo(ResponseBuffer out) throws IOException {
       requestHeader.writeDelimitedTo(out);
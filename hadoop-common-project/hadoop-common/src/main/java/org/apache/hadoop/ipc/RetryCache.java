@@ -18,18 +18,25 @@
 package org.apache.hadoop.ipc;
 
 
+import java.util.AbstractCollection;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.ipc.metrics.RetryCacheMetrics;
+import org.apache.hadoop.util.GSet;
 import org.apache.hadoop.util.LightWeightCache;
 import org.apache.hadoop.util.LightWeightGSet;
 import org.apache.hadoop.util.LightWeightGSet.LinkedElement;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterators;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,6 +47,9 @@
  * On receiving retried request, an entry will be found in the
  * {@link RetryCache} and the previous response is sent back to the request.
  * <p>
+ * The cache is split into stripes by the hash of the entries, each with its
+ * own lock, so that requests of different clients rarely contend.
+ * <p>
  * To look an implementation using this cache, see HDFS FSNamesystem class.
  */
 @InterfaceAudience.Private
@@ -47,6 +57,7 @@ public class RetryCache {
   public static final Logger LOG = LoggerFactory.getLogger(RetryCache.class);
   private final RetryCacheMetrics retryCacheMetrics;
   private static final int MAX_CAPACITY = 16;
+  public static final int DEFAULT_NUM_STRIPES = 16;
 
   /**
    * CacheEntry is tracked using unique client ID and callId of the RPC request
@@ -68,6 +79,8 @@ public static class CacheEntry implements LightWeightCache.Entry {
     private final int callId;
     private final long expirationTime;
     private LightWeightGSet.LinkedElement next;
+    // the entry added after this one to the same stripe
+    private CacheEntry nextExpiring;
 
     CacheEntry(byte[] clientId, int callId, long expirationTime) {
       // ClientId must be a UUID - that is 16 octets.
@@ -181,12 +194,89 @@ public Object getPayload() {
     }
   }
 
-  private final LightWeightGSet<CacheEntry, CacheEntry> set;
+  /**
+   * A part of the cache with its own lock.
+   *
+   * All the entries live for the same time, so the order in which they are
+   * added is the order in which they expire. A queue in that order thus
+   * replaces the priority queue of a {@link LightWeightCache}: expired
+   * entries, and the oldest ones when the stripe is full, are removed from
+   * its head in constant time.
+   */
+  private static final class Stripe {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LightWeightGSet<CacheEntry, CacheEntry> set;
+    private final int sizeLimit;
+    // the oldest and newest entries of the expiry queue, which may also hold
+    // entries already removed from the set
+    private CacheEntry head;
+    private CacheEntry tail;
+
+    Stripe(int capacity) {
+      this.set = new LightWeightGSet<CacheEntry, CacheEntry>(capacity);
+      this.sizeLimit = capacity;
+    }
+
+    private static boolean isExpired(CacheEntry e, long now) {
+      return now - e.expirationTime > 0;
+    }
+
+    /** @return the entry equal to the key, null if absent or expired */
+    CacheEntry get(CacheEntry key, long now) {
+      CacheEntry e = set.get(key);
+      if (e != null && isExpired(e, now)) {
+        // left in the queue until it reaches the head
+        set.remove(e);
+        return null;
+      }
+      return e;
+    }
+
+    void put(CacheEntry entry, long now) {
+      if (set.get(entry) == entry) {
+        return;
+      }
+      while (head != null && isExpired(head, now)) {
+        removeHead();
+      }
+      set.put(entry);
+      entry.nextExpiring = null;
+      if (tail == null) {
+        head = entry;
+      } else {
+        tail.nextExpiring = entry;
+      }
+      tail = entry;
+      while (set.size() > sizeLimit) {
+        removeHead();
+      }
+    }
+
+    private void removeHead() {
+      CacheEntry e = head;
+      if (set.get(e) == e) {
+        set.remove(e);
+      }
+      head = e.nextExpiring;
+      e.nextExpiring = null;
+      if (head == null) {
+        tail = null;
+      }
+    }
+
+    void clear() {
+      set.clear();
+      head = null;
+      tail = null;
+    }
+  }
+
+  private final Stripe[] stripes;
+  private final int stripeShift;
+  private final GSet<CacheEntry, CacheEntry> set = new CacheSet();
   private final long expirationTime;
   private String cacheName;
 
-  private final ReentrantLock lock = new ReentrantLock();
-
   /**
    * Constructor
    * @param cacheName name to identify the cache by
@@ -194,15 +284,55 @@ public Object getPayload() {
    * @param expirationTime time for an entry to expire in nanoseconds
    */
   public RetryCache(String cacheName, double percentage, long expirationTime) {
+    this(cacheName, percentage, expirationTime, DEFAULT_NUM_STRIPES);
+  }
+
+  /**
+   * Constructor
+   * @param cacheName name to identify the cache by
+   * @param percentage percentage of total java heap space used by this cache
+   * @param expirationTime time for an entry to expire in nanoseconds
+   * @param numStripes number of independently locked parts of the cache,
+   *                   rounded up to a power of two
+   */
+  public RetryCache(String cacheName, double percentage, long expirationTime,
+      int numStripes) {
+    Preconditions.checkArgument(numStripes > 0,
+        "numStripes must be positive");
     int capacity = LightWeightGSet.computeCapacity(percentage, cacheName);
     capacity = capacity > MAX_CAPACITY ? capacity : MAX_CAPACITY;
-    this.set = new LightWeightCache<CacheEntry, CacheEntry>(capacity, capacity,
-        expirationTime, 0);
+    numStripes = Math.min(Integer.highestOneBit(numStripes - 1) << 1,
+        capacity / MAX_CAPACITY);
+    numStripes = Math.max(numStripes, 1);
+    this.stripes = new Stripe[numStripes];
+    for (int i = 0; i < numStripes; i++) {
+      stripes[i] = new Stripe(capacity / numStripes);
+    }
+    this.stripeShift = 32 - Integer.numberOfTrailingZeros(numStripes);
     this.expirationTime = expirationTime;
     this.cacheName = cacheName;
     this.retryCacheMetrics =  RetryCacheMetrics.create(this);
   }
 
+  private Stripe getStripe(CacheEntry entry) {
+    if (stripes.length == 1) {
+      return stripes[0];
+    }
+    // the sets index entries by the low bits of their hash, so pick the
+    // stripe from the high bits of a mixed hash
+    return stripes[(entry.hashCode() * 0x9E3779B9) >>> stripeShift];
+  }
+
+  private Stripe lockStripe(CacheEntry entry) {
+    Stripe stripe = getStripe(entry);
+    if (!stripe.lock.tryLock()) {
+      long start = System.nanoTime();
+      stripe.lock.lock();
+      retryCacheMetrics.addLockWaitTime(System.nanoTime() - start);
+    }
+    return stripe;
+  }
+
   private static boolean skipRetryCache() {
     // Do not track non RPC invocation or RPC requests with
     // invalid callId or clientId in retry cache
@@ -210,12 +340,22 @@ private static boolean skipRetryCache() {
         || Arrays.equals(Server.getClientId(), RpcConstants.DUMMY_CLIENT_ID);
   }
 
+  /** Lock all the stripes, e.g. so no request adds an entry. */
   public void lock() {
-    this.lock.lock();
+    for (Stripe stripe : stripes) {
+      stripe.lock.lock();
+    }
   }
 
   public void unlock() {
-    this.lock.unlock();
+    for (int i = stripes.length - 1; i >= 0; i--) {
+      stripes[i].lock.unlock();
+    }
+  }
+
+  @VisibleForTesting
+  int getNumStripes() {
+    return stripes.length;
   }
 
   private void incrCacheClearedCounter() {
@@ -223,10 +363,98 @@ private void incrCacheClearedCounter() {
   }
 
   @VisibleForTesting
-  public LightWeightGSet<CacheEntry, CacheEntry> getCacheSet() {
+  public GSet<CacheEntry, CacheEntry> getCacheSet() {
     return set;
   }
 
+  /**
+   * A view of the entries in all the stripes. Iterating it is not thread
+   * safe.
+   */
+  private final class CacheSet implements GSet<CacheEntry, CacheEntry> {
+    @Override
+    public int size() {
+      int size = 0;
+      for (Stripe stripe : stripes) {
+        size += stripe.set.size();
+      }
+      return size;
+    }
+
+    @Override
+    public boolean contains(CacheEntry key) {
+      return get(key) != null;
+    }
+
+    @Override
+    public CacheEntry get(CacheEntry key) {
+      Stripe stripe = lockStripe(key);
+      try {
+        return stripe.get(key, System.nanoTime());
+      } finally {
+        stripe.lock.unlock();
+      }
+    }
+
+    @Override
+    public CacheEntry put(CacheEntry element) {
+      Stripe stripe = lockStripe(element);
+      try {
+        CacheEntry existing = stripe.get(element, System.nanoTime());
+        stripe.put(element, System.nanoTime());
+        return existing;
+      } finally {
+        stripe.lock.unlock();
+      }
+    }
+
+    @Override
+    public CacheEntry remove(CacheEntry key) {
+      Stripe stripe = lockStripe(key);
+      try {
+        return stripe.set.remove(key);
+      } finally {
+        stripe.lock.unlock();
+      }
+    }
+
+    @Override
+    public void clear() {
+      for (Stripe stripe : stripes) {
+        stripe.lock.lock();
+        try {
+          stripe.clear();
+        } finally {
+          stripe.lock.unlock();
+        }
+      }
+    }
+
+    @Override
+    public Collection<CacheEntry> values() {
+      return new AbstractCollection<CacheEntry>() {
+        @Override
+        public Iterator<CacheEntry> iterator() {
+          return CacheSet.this.iterator();
+        }
+
+        @Override
+        public int size() {
+          return CacheSet.this.size();
+        }
+      };
+    }
+
+    @Override
+    public Iterator<CacheEntry> iterator() {
+      List<Iterator<CacheEntry>> iterators = new ArrayList<>(stripes.length);
+      for (Stripe stripe : stripes) {
+        iterators.add(stripe.set.iterator());
+      }
+      return Iterators.concat(iterators.iterator());
+    }
+  }
+
   @VisibleForTesting
   public RetryCacheMetrics getMetricsForTests() {
     return retryCacheMetrics;
@@ -258,9 +486,10 @@ public String getCacheName() {
    */
   private CacheEntry waitForCompletion(CacheEntry newEntry) {
     CacheEntry mapEntry = null;
-    lock.lock();
+    Stripe stripe = lockStripe(newEntry);
     try {
-      mapEntry = set.get(newEntry);
+      long now = System.nanoTime();
+      mapEntry = stripe.get(newEntry, now);
       // If an entry in the cache does not exist, add a new one
       if (mapEntry == null) {
         if (LOG.isTraceEnabled()) {
@@ -268,14 +497,14 @@ private CacheEntry waitForCompletion(CacheEntry newEntry) {
               + newEntry.clientIdMsb + newEntry.clientIdLsb + " callId "
               + newEntry.callId + " to retryCache");
         }
-        set.put(newEntry);
+        stripe.put(newEntry, now);
         retryCacheMetrics.incrCacheUpdated();
         return newEntry;
       } else {
         retryCacheMetrics.incrCacheHit();
       }
     } finally {
-      lock.unlock();
+      stripe.lock.unlock();
     }
     // Entry already exists in cache. Wait for completion and return its state
     Preconditions.checkNotNull(mapEntry,
@@ -306,11 +535,15 @@ private CacheEntry waitForCompletion(CacheEntry newEntry) {
   public void addCacheEntry(byte[] clientId, int callId) {
     CacheEntry newEntry = new CacheEntry(clientId, callId, System.nanoTime()
         + expirationTime, true);
-    lock.lock();
+    addCacheEntry(newEntry);
+  }
+
+  private void addCacheEntry(CacheEntry newEntry) {
+    Stripe stripe = lockStripe(newEntry);
     try {
-      set.put(newEntry);
+      stripe.put(newEntry, System.nanoTime());
     } finally {
-      lock.unlock();
+      stripe.lock.unlock();
     }
     retryCacheMetrics.incrCacheUpdated();
   }
@@ -320,13 +553,7 @@ public void addCacheEntryWithPayload(byte[] clientId, int callId,
     // since the entry is loaded from editlog, we can assume it succeeded.    
     CacheEntry newEntry = new CacheEntryWithPayload(clientId, callId, payload,
         System.nanoTime() + expirationTime, true);
-    lock.lock();
-    try {
-      set.put(newEntry);
-    } finally {
-      lock.unlock();
-    }
-    retryCacheMetrics.incrCacheUpdated();
+    addCacheEntry(newEntry);
   }
 
   private static CacheEntry newEntry(long expirationTime) {
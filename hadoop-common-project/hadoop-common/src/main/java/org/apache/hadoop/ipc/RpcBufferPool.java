@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * A pool of the byte arrays the server reads requests into and serializes
+ * responses into, in power of two size classes.
+ *
+ * A {@link PooledBuffer} is reference counted. The reader of a connection
+ * holds a request buffer until the request is queued, and the call holds it
+ * until its handler has deserialized the request, since protobuf requests
+ * are parsed in place by the handler. A response buffer is held by its call
+ * until the responder has written it out. The array goes back to the pool
+ * when the last reference is released; buffers that are dropped without
+ * being released, e.g. when a connection is closed, are left to the garbage
+ * collector.
+ *
+ * The buffers are heap buffers: protobuf parses messages from byte arrays,
+ * and the JDK writes heap buffers to sockets through a cached direct buffer
+ * of its own.
+ */
+class RpcBufferPool {
+  // the smallest size class
+  static final int MIN_BUFFER_SIZE = 1024;
+  // the bytes retained per size class
+  static final int CLASS_CAPACITY = 4 * 1024 * 1024;
+  // the buffers retained per size class, at least
+  static final int MIN_BUFFERS_PER_CLASS = 4;
+
+  private final int maxBufferSize;
+  private final Queue<byte[]>[] classes;
+  private final AtomicInteger[] sizes;
+  private final int[] limits;
+
+  /** A buffer of the pool, released when the last reference is. */
+  static final class PooledBuffer {
+    private final RpcBufferPool pool;
+    private final byte[] array;
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    private PooledBuffer(RpcBufferPool pool, byte[] array) {
+      this.pool = pool;
+      this.array = array;
+    }
+
+    byte[] array() {
+      return array;
+    }
+
+    /** @return a buffer over the first length bytes of the array */
+    ByteBuffer wrap(int length) {
+      return ByteBuffer.wrap(array, 0, length);
+    }
+
+    void retain() {
+      int count = refCount.getAndIncrement();
+      Preconditions.checkState(count > 0, "buffer already released");
+    }
+
+    void release() {
+      int count = refCount.decrementAndGet();
+      Preconditions.checkState(count >= 0, "buffer already released");
+      if (count == 0 && pool != null) {
+        pool.recycle(array);
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  RpcBufferPool(int maxBufferSize) {
+    Preconditions.checkArgument(maxBufferSize >= MIN_BUFFER_SIZE,
+        "maximum buffer size " + maxBufferSize + " < " + MIN_BUFFER_SIZE);
+    int numClasses = getSizeClass(maxBufferSize) + 1;
+    this.maxBufferSize = MIN_BUFFER_SIZE << (numClasses - 1);
+    this.classes = new Queue[numClasses];
+    this.sizes = new AtomicInteger[numClasses];
+    this.limits = new int[numClasses];
+    for (int i = 0; i < numClasses; i++) {
+      classes[i] = new ConcurrentLinkedQueue<>();
+      sizes[i] = new AtomicInteger();
+      limits[i] = Math.max(MIN_BUFFERS_PER_CLASS,
+          CLASS_CAPACITY / (MIN_BUFFER_SIZE << i));
+    }
+  }
+
+  /** @return the index of the smallest size class holding size bytes */
+  @VisibleForTesting
+  static int getSizeClass(int size) {
+    if (size <= MIN_BUFFER_SIZE) {
+      return 0;
+    }
+    return 32 - Integer.numberOfLeadingZeros((size - 1) / MIN_BUFFER_SIZE);
+  }
+
+  /**
+   * @return a buffer of at least size bytes, with one reference. Sizes
+   *         beyond the largest size class are not pooled.
+   */
+  PooledBuffer acquire(int size) {
+    if (size > maxBufferSize) {
+      return new PooledBuffer(null, new byte[size]);
+    }
+    int sizeClass = getSizeClass(size);
+    byte[] array = classes[sizeClass].poll();
+    if (array != null) {
+      sizes[sizeClass].decrementAndGet();
+    } else {
+      array = new byte[MIN_BUFFER_SIZE << sizeClass];
+    }
+    return new PooledBuffer(this, array);
+  }
+
+  private void recycle(byte[] array) {
+    int sizeClass = getSizeClass(array.length);
+    if (sizes[sizeClass].incrementAndGet() <= limits[sizeClass]) {
+      classes[sizeClass].offer(array);
+    } else {
+      sizes[sizeClass].decrementAndGet();
+    }
+  }
+
+  /** @return the number of buffers retained for reuse */
+  @VisibleForTesting
+  int getNumPooled() {
+    int num = 0;
+    for (AtomicInteger size : sizes) {
+      num += size.get();
+    }
+    return num;
+  }
+}
@@ -0,0 +1,209 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.protobuf.Message;
+import org.apache.hadoop.ipc.Server.Call;
+
+/**
+ * Lets identical protobuf calls that are in flight at the same time share
+ * one execution. The first call of a whitelisted method runs as usual, and
+ * identical calls arriving before it completes defer their responses and
+ * get its result or exception once it does.
+ *
+ * Calls are identical if they have the same protocol, method and request,
+ * and, for the methods the {@link CoalescedCallCheck} of the server says
+ * depend on the caller, the same remote user and address. A call only waits
+ * for another caller's if the check lets it, which is how a server applies
+ * its permission checks to every caller; otherwise it executes on its own.
+ * Only idempotent methods should be whitelisted.
+ */
+class RpcCoalescer {
+  private final Set<String> methods;
+  private final ConcurrentHashMap<Key, InFlight> inFlight =
+      new ConcurrentHashMap<>();
+  private volatile CoalescedCallCheck check;
+
+  RpcCoalescer(Collection<String> methods) {
+    this.methods = new HashSet<>(methods);
+  }
+
+  boolean isCoalesced(String methodName) {
+    return methods.contains(methodName);
+  }
+
+  void setCheck(CoalescedCallCheck check) {
+    this.check = check;
+  }
+
+  int getNumInFlight() {
+    return inFlight.size();
+  }
+
+  /**
+   * @return the key of the given call, which includes its caller if the
+   *     result of the method depends on it
+   */
+  Key newKey(String protocol, String method, Message request, Call call) {
+    CoalescedCallCheck c = check;
+    String caller = null;
+    if (c != null && c.dependsOnCaller(protocol, method)) {
+      caller = call.getRemoteUser() + "@" + call.getHostInetAddress();
+    }
+    return new Key(protocol, method, request, caller);
+  }
+
+  /** Identifies the calls sharing one execution. */
+  static final class Key {
+    private final String protocol;
+    private final String method;
+    private final Message request;
+    // null if any caller may share
+    private final String caller;
+    private final int hash;
+
+    Key(String protocol, String method, Message request) {
+      this(protocol, method, request, null);
+    }
+
+    Key(String protocol, String method, Message request, String caller) {
+      this.protocol = protocol;
+      this.method = method;
+      this.request = request;
+      this.caller = caller;
+      this.hash = Objects.hash(protocol, method, request, caller);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return hash == other.hash &&
+          Objects.equals(protocol, other.protocol) &&
+          Objects.equals(method, other.method) &&
+          Objects.equals(request, other.request) &&
+          Objects.equals(caller, other.caller);
+    }
+  }
+
+  /** An executing call and the identical calls waiting for its result. */
+  final class InFlight {
+    private final Key key;
+    // null once completed
+    private List<Call> waiters = new ArrayList<>();
+
+    private InFlight(Key key) {
+      this.key = key;
+    }
+
+    private synchronized boolean join(Call call) {
+      if (waiters == null) {
+        return false;
+      }
+      call.deferResponse();
+      waiters.add(call);
+      return true;
+    }
+
+    /**
+     * Send the result of the call, or the exception it threw, to the calls
+     * waiting for it.
+     * @return the number of waiting calls
+     */
+    int complete(Message result, Throwable error) {
+      List<Call> calls;
+      synchronized (this) {
+        calls = waiters;
+        waiters = null;
+      }
+      inFlight.remove(key, this);
+      if (calls == null) {
+        return 0;
+      }
+      for (Call call : calls) {
+        if (result != null) {
+          call.setDeferredResponse(RpcWritable.wrap(result));
+        } else {
+          call.setDeferredError(error);
+        }
+      }
+      return calls.size();
+    }
+  }
+
+  /**
+   * Either make the given call the one executing for its key, or let it
+   * wait for an identical call in flight if the check lets it. A waiting
+   * call has its response deferred until that call completes.
+   * @return the call to execute and complete, or null if the call waits
+   */
+  InFlight begin(Key key, Call call) {
+    boolean checked = false;
+    while (true) {
+      InFlight entry = new InFlight(key);
+      InFlight existing = inFlight.putIfAbsent(key, entry);
+      if (existing == null) {
+        return entry;
+      }
+      if (!checked) {
+        if (!mayShare(key)) {
+          // executes on its own, no other call waits for it
+          return new InFlight(key);
+        }
+        checked = true;
+      }
+      if (existing.join(call)) {
+        return null;
+      }
+      // completed meanwhile, but not removed yet
+      inFlight.remove(key, existing);
+    }
+  }
+
+  private boolean mayShare(Key key) {
+    CoalescedCallCheck c = check;
+    if (c == null) {
+      return true;
+    }
+    try {
+      return c.mayShare(key.protocol, key.method, key.request);
+    } catch (Exception e) {
+      // the call reports the failure itself
+      return false;
+    }
+  }
+}
@@ -190,5 +190,13 @@ public <T> T getValue(T value) throws IOException {
     public int remaining() {
       return bb.remaining();
     }
+
+    /**
+     * Stop reading from the underlying buffer, which the server is about to
+     * reuse for another request.
+     */
+    void detach() {
+      bb = null;
+    }
   }
 }
\ No newline at end of file
@@ -50,6 +50,7 @@
 import java.security.PrivilegedExceptionAction;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -97,6 +98,7 @@
 import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcSaslProto.SaslState;
 import org.apache.hadoop.net.NetUtils;
 import org.apache.hadoop.security.AccessControlException;
+import org.apache.hadoop.security.Groups;
 import org.apache.hadoop.security.SaslPropertiesResolver;
 import org.apache.hadoop.security.SaslRpcServer;
 import org.apache.hadoop.security.SaslRpcServer.AuthMethod;
@@ -452,6 +454,14 @@ public static int getPriorityLevel() {
 
   private int maxQueueSize;
   private final int maxRespSize;
+  // null if requests and responses are not read into pooled buffers
+  private final RpcBufferPool bufferPool;
+  // null if no calls are coalesced
+  final RpcCoalescer coalescer;
+  // null if calls are not parked until the groups of their user are cached
+  private final Groups groupsPrefetch;
+  // parked calls, at most as many as the call queue holds
+  private final AtomicInteger parkedCalls = new AtomicInteger();
   private final ThreadLocal<ResponseBuffer> responseBuffer =
       new ThreadLocal<ResponseBuffer>(){
         @Override
@@ -853,6 +863,9 @@ private class RpcCall extends Call {
     final Connection connection;  // connection to client
     final Writable rpcRequest;    // Serialized Rpc request from client
     ByteBuffer rpcResponse;       // the response for this call
+    // the pooled buffers of the request and the response, if any
+    private RpcBufferPool.PooledBuffer requestBuffer;
+    private RpcBufferPool.PooledBuffer responseBuffer;
 
     RpcCall(RpcCall call) {
       super(call);
@@ -895,30 +908,56 @@ public InetAddress getHostInetAddress() {
 
     @Override
     public Void run() throws Exception {
-      if (!connection.channel.isOpen()) {
-        Server.LOG.info(Thread.currentThread().getName() + ": skipped " + this);
+      try {
+        if (!connection.channel.isOpen()) {
+          Server.LOG.info(
+              Thread.currentThread().getName() + ": skipped " + this);
+          return null;
+        }
+        Writable value = null;
+        ResponseParams responseParams = new ResponseParams();
+
+        try {
+          value = call(
+              rpcKind, connection.protocolName, rpcRequest, timestamp);
+        } catch (Throwable e) {
+          populateResponseParamsOnError(e, responseParams);
+        }
+        if (!isResponseDeferred()) {
+          setupResponse(this, responseParams.returnStatus,
+              responseParams.detailedErr,
+              value, responseParams.errorClass, responseParams.error);
+          sendResponse();
+        } else {
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("Deferring response for callId: " + this.callId);
+          }
+        }
         return null;
+      } finally {
+        // the request has been deserialized by now
+        releaseRequest();
       }
-      Writable value = null;
-      ResponseParams responseParams = new ResponseParams();
+    }
 
-      try {
-        value = call(
-            rpcKind, connection.protocolName, rpcRequest, timestamp);
-      } catch (Throwable e) {
-        populateResponseParamsOnError(e, responseParams);
-      }
-      if (!isResponseDeferred()) {
-        setupResponse(this, responseParams.returnStatus,
-            responseParams.detailedErr,
-            value, responseParams.errorClass, responseParams.error);
-        sendResponse();
-      } else {
-        if (LOG.isDebugEnabled()) {
-          LOG.debug("Deferring response for callId: " + this.callId);
-        }
+    /** Hold a reference to the pooled buffer of the request, if any. */
+    void setRequestBuffer(RpcBufferPool.PooledBuffer buffer) {
+      if (buffer != null) {
+        buffer.retain();
+        requestBuffer = buffer;
       }
-      return null;
+    }
+
+    void releaseRequest() {
+      if (requestBuffer == null) {
+        return;
+      }
+      if (rpcRequest instanceof RpcWritable.Buffer) {
+        // the request must not read from the buffer once it is reused
+        ((RpcWritable.Buffer) rpcRequest).detach();
+      }
+      requestBuffer.release();
+      requestBuffer = null;
     }
 
     /**
@@ -960,7 +999,26 @@ private void populateResponseParamsOnError(Throwable t,
     }
 
     void setResponse(ByteBuffer response) throws IOException {
+      setResponse(response, null);
+    }
+
+    /**
+     * Set the response, serialized into a pooled buffer if buffer is not
+     * null. A previous pooled response is left to the garbage collector, as
+     * the responder may still be writing it.
+     */
+    void setResponse(ByteBuffer response, RpcBufferPool.PooledBuffer buffer) {
       this.rpcResponse = response;
+      this.responseBuffer = buffer;
+    }
+
+    /** Drop the response once it has been written or wrapped. */
+    void releaseResponse() {
+      rpcResponse = null;
+      if (responseBuffer != null) {
+        responseBuffer.release();
+        responseBuffer = null;
+      }
     }
 
     @Override
@@ -1517,8 +1575,8 @@ private boolean processResponse(LinkedList<RpcCall> responseQueue,
             return true;
           }
           if (!call.rpcResponse.hasRemaining()) {
-            //Clear out the response buffer so it can be collected
-            call.rpcResponse = null;
+            //Clear out the response buffer so it can be collected or reused
+            call.releaseResponse();
             call.connection.decRpcCount();
             if (numElements == 1) {    // last call fully processes.
               done = true;             // no more data for this channel.
@@ -1661,6 +1719,7 @@ public class Connection {
 
     private SocketChannel channel;
     private ByteBuffer data;
+    private RpcBufferPool.PooledBuffer dataBuffer;
     private ByteBuffer dataLengthBuffer;
     private LinkedList<RpcCall> responseQueue;
     // number of outstanding rpcs
@@ -1682,6 +1741,7 @@ public class Connection {
     private boolean saslContextEstablished;
     private ByteBuffer connectionHeaderBuf = null;
     private ByteBuffer unwrappedData;
+    private RpcBufferPool.PooledBuffer unwrappedDataBuffer;
     private ByteBuffer unwrappedDataLengthBuffer;
     private int serviceClass;
     private boolean shouldClose = false;
@@ -2155,7 +2215,12 @@ public int readAndProcess() throws IOException, InterruptedException {
           dataLength = dataLengthBuffer.getInt();
           checkDataLength(dataLength);
           // Set buffer for reading EXACTLY the RPC-packet length and no more.
-          data = ByteBuffer.allocate(dataLength);
+          if (bufferPool != null) {
+            dataBuffer = bufferPool.acquire(dataLength);
+            data = dataBuffer.wrap(dataLength);
+          } else {
+            data = ByteBuffer.allocate(dataLength);
+          }
         }
         // Now read the RPC packet
         count = channelRead(channel, data);
@@ -2164,9 +2229,17 @@ public int readAndProcess() throws IOException, InterruptedException {
           dataLengthBuffer.clear(); // to read length of future rpc packets
           data.flip();
           ByteBuffer requestData = data;
+          RpcBufferPool.PooledBuffer requestBuffer = dataBuffer;
           data = null; // null out in case processOneRpc throws.
+          dataBuffer = null;
           boolean isHeaderRead = connectionContextRead;
-          processOneRpc(requestData);
+          try {
+            processOneRpc(requestData, requestBuffer);
+          } finally {
+            if (requestBuffer != null) {
+              requestBuffer.release();
+            }
+          }
           // the last rpc-request we processed could have simply been the
           // connectionContext; if so continue to read the first RPC.
           if (!isHeaderRead) {
@@ -2365,7 +2438,12 @@ private void unwrapPacketAndProcessRpcs(byte[] inBuf)
         if (unwrappedData == null) {
           unwrappedDataLengthBuffer.flip();
           int unwrappedDataLength = unwrappedDataLengthBuffer.getInt();
-          unwrappedData = ByteBuffer.allocate(unwrappedDataLength);
+          if (bufferPool != null) {
+            unwrappedDataBuffer = bufferPool.acquire(unwrappedDataLength);
+            unwrappedData = unwrappedDataBuffer.wrap(unwrappedDataLength);
+          } else {
+            unwrappedData = ByteBuffer.allocate(unwrappedDataLength);
+          }
         }
 
         count = channelRead(ch, unwrappedData);
@@ -2376,8 +2454,16 @@ private void unwrapPacketAndProcessRpcs(byte[] inBuf)
           unwrappedDataLengthBuffer.clear();
           unwrappedData.flip();
           ByteBuffer requestData = unwrappedData;
+          RpcBufferPool.PooledBuffer requestBuffer = unwrappedDataBuffer;
           unwrappedData = null; // null out in case processOneRpc throws.
-          processOneRpc(requestData);
+          unwrappedDataBuffer = null;
+          try {
+            processOneRpc(requestData, requestBuffer);
+          } finally {
+            if (requestBuffer != null) {
+              requestBuffer.release();
+            }
+          }
         }
       }
     }
@@ -2394,11 +2480,13 @@ private void unwrapPacketAndProcessRpcs(byte[] inBuf)
      * has been unwrapped from SASL.
      * 
      * @param bb - contains the RPC request header and the rpc request
+     * @param pooled - the pooled buffer of bb, null if not pooled
      * @throws IOException - internal error that should not be returned to
      *         client, typically failure to respond to client
      * @throws InterruptedException
      */
-    private void processOneRpc(ByteBuffer bb)
+    private void processOneRpc(ByteBuffer bb,
+        RpcBufferPool.PooledBuffer pooled)
         throws IOException, InterruptedException {
       // exceptions that escape this method are fatal to the connection.
       // setupResponse will use the rpc status to determine if the connection
@@ -2423,7 +2511,7 @@ private void processOneRpc(ByteBuffer bb)
               RpcErrorCodeProto.FATAL_INVALID_RPC_HEADER,
               "Connection context not established");
         } else {
-          processRpcRequest(header, buffer);
+          processRpcRequest(header, buffer, pooled);
         }
       } catch (RpcServerException rse) {
         // inform client of error, but do not rethrow else non-fatal
@@ -2488,8 +2576,8 @@ private void checkRpcHeaders(RpcRequestHeaderProto header)
      * @throws InterruptedException
      */
     private void processRpcRequest(RpcRequestHeaderProto header,
-        RpcWritable.Buffer buffer) throws RpcServerException,
-        InterruptedException {
+        RpcWritable.Buffer buffer, RpcBufferPool.PooledBuffer pooled)
+        throws RpcServerException, InterruptedException {
       Class<? extends Writable> rpcRequestClass = 
           getRpcRequestWrapper(header.getRpcKind());
       if (rpcRequestClass == null) {
@@ -2553,16 +2641,26 @@ private void processRpcRequest(RpcRequestHeaderProto header,
           ProtoUtil.convert(header.getRpcKind()),
           header.getClientId().toByteArray(), traceScope, callerContext, clientAddress);
 
-      // Save the priority level assignment by the scheduler
-      call.setPriorityLevel(callQueue.getPriorityLevel(call));
+      // the request is parsed in place by the handler
+      call.setRequestBuffer(pooled);
 
+      boolean queued = false;
       try {
-        internalQueueCall(call);
+        // Save the priority level assignment by the scheduler
+        call.setPriorityLevel(callQueue.getPriorityLevel(call));
+        if (!parkUntilGroupsCached(call)) {
+          internalQueueCall(call);
+        }
+        queued = true;
       } catch (RpcServerException rse) {
         throw rse;
       } catch (IOException ioe) {
         throw new FatalRpcServerException(
             RpcErrorCodeProto.ERROR_RPC_SERVER, ioe);
+      } finally {
+        if (!queued) {
+          call.releaseRequest();
+        }
       }
       incRpcCount();  // Increment the rpc count
     }
@@ -2682,6 +2780,8 @@ public void setServiceClass(int serviceClass) {
     private synchronized void close() {
       disposeSasl();
       data = null;
+      // a reader may still be filling the buffer, leave it to the collector
+      dataBuffer = null;
       dataLengthBuffer = null;
       if (!channel.isOpen())
         return;
@@ -2704,6 +2804,52 @@ public void queueCall(Call call) throws IOException, InterruptedException {
     }
   }
 
+  /**
+   * Park a call of a user whose groups are not cached until a background
+   * thread fetched them, rather than let a handler block on the lookup.
+   * The call is queued by that thread. At most as many calls as the call
+   * queue holds are parked, past that they are queued as usual so that the
+   * capacity and backoff of the call queue apply.
+   * @return true if the call is parked
+   */
+  private boolean parkUntilGroupsCached(final RpcCall call) {
+    UserGroupInformation user = call.getRemoteUser();
+    if (groupsPrefetch == null || user == null) {
+      return false;
+    }
+    if (parkedCalls.incrementAndGet() > maxQueueSize) {
+      parkedCalls.decrementAndGet();
+      return false;
+    }
+    boolean parked = false;
+    try {
+      parked = groupsPrefetch.prefetch(user.getShortUserName(),
+          new Runnable() {
+            @Override
+            public void run() {
+              parkedCalls.decrementAndGet();
+              try {
+                internalQueueCall(call);
+              } catch (IOException | InterruptedException e) {
+                // the reader is done with the call, answer it like a handler
+                call.releaseRequest();
+                call.setDeferredError(e);
+              }
+            }
+          });
+    } finally {
+      if (!parked) {
+        parkedCalls.decrementAndGet();
+      }
+    }
+    return parked;
+  }
+
+  @VisibleForTesting
+  int getNumParkedCalls() {
+    return parkedCalls.get();
+  }
+
   private void internalQueueCall(Call call)
       throws IOException, InterruptedException {
     try {
@@ -2857,6 +3003,23 @@ protected Server(String bindAddress, int port,
     this.maxRespSize = conf.getInt(
         CommonConfigurationKeys.IPC_SERVER_RPC_MAX_RESPONSE_SIZE_KEY,
         CommonConfigurationKeys.IPC_SERVER_RPC_MAX_RESPONSE_SIZE_DEFAULT);
+    if (conf.getBoolean(
+        CommonConfigurationKeys.IPC_SERVER_BUFFER_POOL_ENABLED_KEY,
+        CommonConfigurationKeys.IPC_SERVER_BUFFER_POOL_ENABLED_DEFAULT)) {
+      this.bufferPool = new RpcBufferPool(conf.getInt(
+          CommonConfigurationKeys.IPC_SERVER_BUFFER_POOL_MAX_BUFFER_SIZE_KEY,
+          CommonConfigurationKeys.IPC_SERVER_BUFFER_POOL_MAX_BUFFER_SIZE_DEFAULT));
+    } else {
+      this.bufferPool = null;
+    }
+    Collection<String> coalescedMethods = conf.getTrimmedStringCollection(
+        CommonConfigurationKeys.IPC_SERVER_COALESCING_METHODS_KEY);
+    this.coalescer = coalescedMethods.isEmpty() ?
+        null : new RpcCoalescer(coalescedMethods);
+    this.groupsPrefetch = conf.getBoolean(
+        CommonConfigurationKeys.IPC_SERVER_GROUPS_PREFETCH_KEY,
+        CommonConfigurationKeys.IPC_SERVER_GROUPS_PREFETCH_DEFAULT) ?
+        Groups.getUserToGroupsMappingService(conf) : null;
     if (numReaders != -1) {
       this.readThreads = numReaders;
     } else {
@@ -3029,17 +3192,15 @@ private void setupResponse(
 
   private void setupResponse(RpcCall call,
       RpcResponseHeaderProto header, Writable rv) throws IOException {
-    final byte[] response;
     if (rv == null || (rv instanceof RpcWritable.ProtobufWrapper)) {
-      response = setupResponseForProtobuf(header, rv);
+      setupResponseForProtobuf(call, header, rv);
     } else {
-      response = setupResponseForWritable(header, rv);
+      call.setResponse(ByteBuffer.wrap(setupResponseForWritable(header, rv)));
     }
-    if (response.length > maxRespSize) {
-      LOG.warn("Large response size " + response.length + " for call "
-          + call.toString());
+    if (call.rpcResponse.remaining() > maxRespSize) {
+      LOG.warn("Large response size " + call.rpcResponse.remaining()
+          + " for call " + call.toString());
     }
-    call.setResponse(ByteBuffer.wrap(response));
   }
 
   private byte[] setupResponseForWritable(
@@ -3063,7 +3224,7 @@ private byte[] setupResponseForWritable(
 
   // writing to a pre-allocated array is the most efficient way to construct
   // a protobuf response.
-  private byte[] setupResponseForProtobuf(
+  private void setupResponseForProtobuf(RpcCall call,
       RpcResponseHeaderProto header, Writable rv) throws IOException {
     Message payload = (rv != null)
         ? ((RpcWritable.ProtobufWrapper)rv).getMessage() : null;
@@ -3071,8 +3232,25 @@ private byte[] setupResponseForProtobuf(
     if (payload != null) {
       length += getDelimitedLength(payload);
     }
-    byte[] buf = new byte[length + 4];
-    CodedOutputStream cos = CodedOutputStream.newInstance(buf);
+    if (bufferPool == null) {
+      byte[] buf = new byte[length + 4];
+      writeResponseForProtobuf(buf, length, header, payload);
+      call.setResponse(ByteBuffer.wrap(buf));
+      return;
+    }
+    RpcBufferPool.PooledBuffer pooled = bufferPool.acquire(length + 4);
+    try {
+      writeResponseForProtobuf(pooled.array(), length, header, payload);
+    } catch (IOException | RuntimeException e) {
+      pooled.release();
+      throw e;
+    }
+    call.setResponse(pooled.wrap(length + 4), pooled);
+  }
+
+  private static void writeResponseForProtobuf(byte[] buf, int length,
+      RpcResponseHeaderProto header, Message payload) throws IOException {
+    CodedOutputStream cos = CodedOutputStream.newInstance(buf, 0, length + 4);
     // the stream only supports little endian ints
     cos.writeRawByte((byte)((length >>> 24) & 0xFF));
     cos.writeRawByte((byte)((length >>> 16) & 0xFF));
@@ -3084,7 +3262,6 @@ private byte[] setupResponseForProtobuf(
       cos.writeRawVarint32(payload.getSerializedSize());
       payload.writeTo(cos);
     }
-    return buf;
   }
 
   private static int getDelimitedLength(Message message) {
@@ -3121,12 +3298,17 @@ private void setupResponseOldVersionFatal(ByteArrayOutputStream response,
 
   private void wrapWithSasl(RpcCall call) throws IOException {
     if (call.connection.saslServer != null) {
-      byte[] token = call.rpcResponse.array();
+      ByteBuffer response = call.rpcResponse;
+      byte[] token;
       // synchronization may be needed since there can be multiple Handler
       // threads using saslServer to wrap responses.
       synchronized (call.connection.saslServer) {
-        token = call.connection.saslServer.wrap(token, 0, token.length);
+        token = call.connection.saslServer.wrap(response.array(),
+            response.arrayOffset() + response.position(),
+            response.remaining());
       }
+      // the response has been copied into the token
+      call.releaseResponse();
       if (LOG.isDebugEnabled())
         LOG.debug("Adding saslServer wrapped token of size " + token.length
             + " as call response.");
@@ -3154,6 +3336,16 @@ public void setTracer(Tracer t) {
     this.tracer = t;
   }
 
+  /**
+   * Set the check of the callers that get the result of another caller's
+   * identical call, see ipc.server.coalescing.methods.
+   */
+  public void setCoalescedCallCheck(CoalescedCallCheck check) {
+    if (coalescer != null) {
+      coalescer.setCheck(check);
+    }
+  }
+
   /** Starts the service.  Must be called before any calls will be handled. */
   public synchronized void start() {
     responder.start();
@@ -0,0 +1,294 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.lang3.NotImplementedException;
+
+/**
+ * A bounded queue made of several lock-free rings, used as a sub-queue of
+ * {@link ShardedFairCallQueue}.
+ *
+ * Each thread has a home ring. Producers such as the socket readers add to
+ * their home ring and only try the other rings when it is full, so each
+ * reader mostly has a ring to itself. Consumers poll their home ring first
+ * and steal from the other rings when it is empty. The order of elements is
+ * first-in first-out per ring, not across rings.
+ *
+ * The queue does not block by itself: {@link FairCallQueue} tracks the
+ * number of queued elements with a semaphore, and the blocking methods here
+ * wait by parking for short periods.
+ */
+class ShardedCallQueue<E> extends AbstractQueue<E>
+    implements BlockingQueue<E> {
+  // how long a blocked producer or consumer waits between attempts
+  private static final long WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+  private static final AtomicInteger NEXT_THREAD_INDEX = new AtomicInteger();
+  private static final ThreadLocal<Integer> THREAD_INDEX =
+      new ThreadLocal<Integer>() {
+        @Override
+        protected Integer initialValue() {
+          return NEXT_THREAD_INDEX.getAndIncrement() & Integer.MAX_VALUE;
+        }
+      };
+
+  private final Ring<E>[] rings;
+  private final int capacity;
+
+  /**
+   * A bounded multi-producer multi-consumer ring. Every slot has a sequence
+   * number telling whether it is free for the producer or filled for the
+   * consumer at a given position, so producers and consumers only contend
+   * on the compare-and-set of their own position.
+   */
+  static final class Ring<E> {
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final int capacity;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    Ring(int capacity) {
+      this.capacity = capacity;
+      this.elements = new AtomicReferenceArray<>(capacity);
+      this.sequences = new AtomicLongArray(capacity);
+      for (int i = 0; i < capacity; i++) {
+        sequences.set(i, i);
+      }
+    }
+
+    boolean offer(E e) {
+      long pos = tail.get();
+      int idx;
+      while (true) {
+        idx = (int) (pos % capacity);
+        long diff = sequences.get(idx) - pos;
+        if (diff == 0) {
+          if (tail.compareAndSet(pos, pos + 1)) {
+            break;
+          }
+          pos = tail.get();
+        } else if (diff < 0) {
+          // the slot still holds the element of the previous round
+          return false;
+        } else {
+          pos = tail.get();
+        }
+      }
+      elements.set(idx, e);
+      sequences.set(idx, pos + 1);
+      return true;
+    }
+
+    E poll() {
+      long pos = head.get();
+      int idx;
+      while (true) {
+        idx = (int) (pos % capacity);
+        long diff = sequences.get(idx) - (pos + 1);
+        if (diff == 0) {
+          if (head.compareAndSet(pos, pos + 1)) {
+            break;
+          }
+          pos = head.get();
+        } else if (diff < 0) {
+          // empty, or the producer of the slot has not filled it yet
+          return null;
+        } else {
+          pos = head.get();
+        }
+      }
+      E e = elements.get(idx);
+      elements.set(idx, null);
+      sequences.set(idx, pos + capacity);
+      return e;
+    }
+
+    E peek() {
+      long pos = head.get();
+      int idx = (int) (pos % capacity);
+      return sequences.get(idx) == pos + 1 ? elements.get(idx) : null;
+    }
+
+    int size() {
+      long size = tail.get() - head.get();
+      return (int) Math.max(0, Math.min(capacity, size));
+    }
+  }
+
+  /**
+   * @param capacity the total capacity of the rings
+   * @param numRings the number of rings, fewer if the capacity is smaller
+   */
+  @SuppressWarnings("unchecked")
+  ShardedCallQueue(int capacity, int numRings) {
+    Preconditions.checkArgument(capacity > 0, "capacity must be positive");
+    Preconditions.checkArgument(numRings > 0, "numRings must be positive");
+    numRings = Math.min(numRings, capacity);
+    this.capacity = capacity;
+    this.rings = new Ring[numRings];
+    for (int i = 0; i < numRings; i++) {
+      rings[i] = new Ring<E>(
+          capacity / numRings + (i < capacity % numRings ? 1 : 0));
+    }
+  }
+
+  private int getHomeRing() {
+    return THREAD_INDEX.get() % rings.length;
+  }
+
+  int getNumRings() {
+    return rings.length;
+  }
+
+  @Override
+  public boolean offer(E e) {
+    Preconditions.checkNotNull(e);
+    int home = getHomeRing();
+    for (int i = 0; i < rings.length; i++) {
+      if (rings[(home + i) % rings.length].offer(e)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public E poll() {
+    int home = getHomeRing();
+    for (int i = 0; i < rings.length; i++) {
+      E e = rings[(home + i) % rings.length].poll();
+      if (e != null) {
+        return e;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public E peek() {
+    int home = getHomeRing();
+    for (int i = 0; i < rings.length; i++) {
+      E e = rings[(home + i) % rings.length].peek();
+      if (e != null) {
+        return e;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public void put(E e) throws InterruptedException {
+    while (!offer(e)) {
+      waitAWhile();
+    }
+  }
+
+  @Override
+  public boolean offer(E e, long timeout, TimeUnit unit)
+      throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (!offer(e)) {
+      if (System.nanoTime() - deadline >= 0) {
+        return false;
+      }
+      waitAWhile();
+    }
+    return true;
+  }
+
+  @Override
+  public E take() throws InterruptedException {
+    E e;
+    while ((e = poll()) == null) {
+      waitAWhile();
+    }
+    return e;
+  }
+
+  @Override
+  public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    E e;
+    while ((e = poll()) == null) {
+      if (System.nanoTime() - deadline >= 0) {
+        return null;
+      }
+      waitAWhile();
+    }
+    return e;
+  }
+
+  private static void waitAWhile() throws InterruptedException {
+    LockSupport.parkNanos(WAIT_NANOS);
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+  }
+
+  @Override
+  public int size() {
+    int size = 0;
+    for (Ring<E> ring : rings) {
+      size += ring.size();
+    }
+    return size;
+  }
+
+  @Override
+  public int remainingCapacity() {
+    return Math.max(0, capacity - size());
+  }
+
+  @Override
+  public int drainTo(Collection<? super E> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int drainTo(Collection<? super E> c, int maxElements) {
+    int drained = 0;
+    E e;
+    while (drained < maxElements && (e = poll()) != null) {
+      c.add(e);
+      drained++;
+    }
+    return drained;
+  }
+
+  /**
+   * Iterator is not implemented, as it is not needed.
+   */
+  @Override
+  public Iterator<E> iterator() {
+    throw new NotImplementedException("Code is not implemented");
+  }
+}
@@ -0,0 +1,64 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.function.IntFunction;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+
+/**
+ * A {@link FairCallQueue} whose priority levels are each made of several
+ * lock-free rings instead of a {@link java.util.concurrent.LinkedBlockingQueue},
+ * so the socket readers adding calls and the handlers taking them do not
+ * serialize on the locks of the sub-queues.
+ *
+ * Priority levels are drawn by the same weighted round-robin multiplexer,
+ * and overflow to lower levels and client backoff behave as in
+ * FairCallQueue. Within a level, calls are first-in first-out per reader
+ * rather than across readers. With a single priority level, e.g. with the
+ * {@link DefaultRpcScheduler}, it replaces the default single queue.
+ */
+public class ShardedFairCallQueue<E extends Schedulable>
+    extends FairCallQueue<E> {
+
+  public ShardedFairCallQueue(int priorityLevels, int capacity, String ns,
+      Configuration conf) {
+    super(priorityLevels, capacity, ns, conf, newSubQueueFactory(ns, conf));
+  }
+
+  private static <E> IntFunction<BlockingQueue<E>> newSubQueueFactory(
+      String ns, Configuration conf) {
+    final int numRings = conf.getInt(
+        ns + "." + CommonConfigurationKeys.IPC_CALLQUEUE_SHARDS_KEY,
+        CommonConfigurationKeys.IPC_CALLQUEUE_SHARDS_DEFAULT);
+    if (numRings < 1) {
+      throw new IllegalArgumentException(ns + "." +
+          CommonConfigurationKeys.IPC_CALLQUEUE_SHARDS_KEY +
+          " must be at least 1");
+    }
+    return new IntFunction<BlockingQueue<E>>() {
+      @Override
+      public BlockingQueue<E> apply(int queueCapacity) {
+        return new ShardedCallQueue<E>(queueCapacity, numRings);
+      }
+    };
+  }
+}
@@ -17,6 +17,8 @@
  */
 package org.apache.hadoop.ipc.metrics;
 
+import java.util.concurrent.TimeUnit;
+
 import org.apache.hadoop.ipc.RetryCache;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.metrics2.annotation.Metric;
@@ -24,6 +26,7 @@
 import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.hadoop.metrics2.lib.MetricsRegistry;
 import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableRate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -57,6 +60,10 @@ public static RetryCacheMetrics create(RetryCache cache) {
   @Metric("Number of RetryCache hit") MutableCounterLong cacheHit;
   @Metric("Number of RetryCache cleared") MutableCounterLong cacheCleared;
   @Metric("Number of RetryCache updated") MutableCounterLong cacheUpdated;
+  @Metric("Number of RetryCache lock acquisitions that waited")
+  MutableCounterLong cacheLockContended;
+  @Metric("Time waiting for a RetryCache lock, in microseconds")
+  MutableRate cacheLockWaitTime;
 
   /**
    * One cache hit event
@@ -79,6 +86,14 @@ public void incrCacheUpdated() {
     cacheUpdated.incr();
   }
 
+  /**
+   * One wait for the lock of a part of the cache
+   */
+  public void addLockWaitTime(long nanos) {
+    cacheLockContended.incr();
+    cacheLockWaitTime.add(TimeUnit.NANOSECONDS.toMicros(nanos));
+  }
+
   public long getCacheHit() {
     return cacheHit.value();
   }
@@ -91,4 +106,8 @@ public long getCacheUpdated() {
     return cacheUpdated.value();
   }
 
+  public long getCacheLockContended() {
+    return cacheLockContended.value();
+  }
+
 }
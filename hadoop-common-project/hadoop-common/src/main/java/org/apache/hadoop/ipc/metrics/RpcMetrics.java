@@ -29,7 +29,7 @@
 import org.apache.hadoop.metrics2.lib.MetricsRegistry;
 import org.apache.hadoop.metrics2.lib.MutableCounterInt;
 import org.apache.hadoop.metrics2.lib.MutableCounterLong;
-import org.apache.hadoop.metrics2.lib.MutableQuantiles;
+import org.apache.hadoop.metrics2.lib.MutableHistogram;
 import org.apache.hadoop.metrics2.lib.MutableRate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,21 +62,21 @@ public class RpcMetrics {
         CommonConfigurationKeys.RPC_METRICS_QUANTILE_ENABLE_DEFAULT);
     if (rpcQuantileEnable) {
       rpcQueueTimeMillisQuantiles =
-          new MutableQuantiles[intervals.length];
+          new MutableHistogram[intervals.length];
       rpcProcessingTimeMillisQuantiles =
-          new MutableQuantiles[intervals.length];
+          new MutableHistogram[intervals.length];
       deferredRpcProcessingTimeMillisQuantiles =
-          new MutableQuantiles[intervals.length];
+          new MutableHistogram[intervals.length];
       for (int i = 0; i < intervals.length; i++) {
         int interval = intervals[i];
-        rpcQueueTimeMillisQuantiles[i] = registry.newQuantiles("rpcQueueTime"
+        rpcQueueTimeMillisQuantiles[i] = registry.newHistogram("rpcQueueTime"
             + interval + "s", "rpc queue time in milli second", "ops",
             "latency", interval);
-        rpcProcessingTimeMillisQuantiles[i] = registry.newQuantiles(
+        rpcProcessingTimeMillisQuantiles[i] = registry.newHistogram(
             "rpcProcessingTime" + interval + "s",
             "rpc processing time in milli second", "ops", "latency", interval);
         deferredRpcProcessingTimeMillisQuantiles[i] = registry
-            .newQuantiles("deferredRpcProcessingTime" + interval + "s",
+            .newHistogram("deferredRpcProcessingTime" + interval + "s",
                 "deferred rpc processing time in milli seconds", "ops",
                 "latency", interval);
       }
@@ -94,11 +94,11 @@ public static RpcMetrics create(Server server, Configuration conf) {
   @Metric("Number of received bytes") MutableCounterLong receivedBytes;
   @Metric("Number of sent bytes") MutableCounterLong sentBytes;
   @Metric("Queue time") MutableRate rpcQueueTime;
-  MutableQuantiles[] rpcQueueTimeMillisQuantiles;
+  MutableHistogram[] rpcQueueTimeMillisQuantiles;
   @Metric("Processing time") MutableRate rpcProcessingTime;
-  MutableQuantiles[] rpcProcessingTimeMillisQuantiles;
+  MutableHistogram[] rpcProcessingTimeMillisQuantiles;
   @Metric("Deferred Processing time") MutableRate deferredRpcProcessingTime;
-  MutableQuantiles[] deferredRpcProcessingTimeMillisQuantiles;
+  MutableHistogram[] deferredRpcProcessingTimeMillisQuantiles;
   @Metric("Number of authentication failures")
   MutableCounterLong rpcAuthenticationFailures;
   @Metric("Number of authentication successes")
@@ -111,6 +111,8 @@ public static RpcMetrics create(Server server, Configuration conf) {
   MutableCounterLong rpcClientBackoff;
   @Metric("Number of Slow RPC calls")
   MutableCounterLong rpcSlowCalls;
+  @Metric("Number of calls answered by an identical call in flight")
+  MutableCounterLong rpcCoalescedCalls;
 
   @Metric("Number of open connections") public int numOpenConnections() {
     return server.getNumOpenConnections();
@@ -198,7 +200,7 @@ public void incrReceivedBytes(int count) {
   public void addRpcQueueTime(int qTime) {
     rpcQueueTime.add(qTime);
     if (rpcQuantileEnable) {
-      for (MutableQuantiles q : rpcQueueTimeMillisQuantiles) {
+      for (MutableHistogram q : rpcQueueTimeMillisQuantiles) {
         q.add(qTime);
       }
     }
@@ -212,7 +214,7 @@ public void addRpcQueueTime(int qTime) {
   public void addRpcProcessingTime(int processingTime) {
     rpcProcessingTime.add(processingTime);
     if (rpcQuantileEnable) {
-      for (MutableQuantiles q : rpcProcessingTimeMillisQuantiles) {
+      for (MutableHistogram q : rpcProcessingTimeMillisQuantiles) {
         q.add(processingTime);
       }
     }
@@ -221,7 +223,7 @@ public void addRpcProcessingTime(int processingTime) {
   public void addDeferredRpcProcessingTime(long processingTime) {
     deferredRpcProcessingTime.add(processingTime);
     if (rpcQuantileEnable) {
-      for (MutableQuantiles q : deferredRpcProcessingTimeMillisQuantiles) {
+      for (MutableHistogram q : deferredRpcProcessingTimeMillisQuantiles) {
         q.add(processingTime);
       }
     }
@@ -241,6 +243,20 @@ public void incrClientBackoff() {
   public  void incrSlowRpc() {
     rpcSlowCalls.incr();
   }
+
+  /**
+   * Increments the coalesced RPC counter.
+   */
+  public void incrCoalescedCalls() {
+    rpcCoalescedCalls.incr();
+  }
+
+  /**
+   * Returns the number of coalesced calls.
+   */
+  public long getRpcCoalescedCalls() {
+    return rpcCoalescedCalls.value();
+  }
   /**
    * Returns a MutableRate Counter.
    * @return Mutable Rate
@@ -0,0 +1,258 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.metrics2.lib;
+
+import static org.apache.hadoop.metrics2.lib.Interns.info;
+import static org.apache.hadoop.metrics2.lib.MutableQuantiles.quantiles;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.metrics2.MetricsInfo;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.util.Timer;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Watches a stream of long values like {@link MutableQuantiles}, but counts
+ * them in a histogram rather than sampling them, so adding a value takes no
+ * lock.
+ *
+ * Values are counted in log-linear buckets, as in HdrHistogram: exactly up
+ * to 32, and in 32 buckets per power of two above, so the percentiles are
+ * within about 3% of the exact ones. Threads count into a few striped copies
+ * of the buckets, which are merged when the metric is snapshotted.
+ *
+ * The count and percentiles of the values added during the last interval
+ * are exported as gauges with the names used by {@link MutableQuantiles}.
+ * The counts of all the values added so far below each power of 4, their
+ * total count and their sum are exported as counters, from which cumulative
+ * histograms like Prometheus ones can be built. The intervals follow a fixed
+ * grid from the creation of the metric, and one rolls over at the first
+ * snapshot taken less than a tenth of an interval before its end or after
+ * it, so snapshots taken every interval roll it over even when they come a
+ * little early.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public class MutableHistogram extends MutableMetric {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  @VisibleForTesting
+  static final int NUM_BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+  // cumulative counts are exported below 4^0 to 4^(NUM_BOUNDS - 1)
+  private static final int NUM_BOUNDS = 17;
+  private static final int NUM_STRIPES = Integer.highestOneBit(
+      Math.min(8, Runtime.getRuntime().availableProcessors()));
+
+  private final MetricsInfo numInfo;
+  private final MetricsInfo[] quantileInfos;
+  private final MetricsInfo totalInfo;
+  private final MetricsInfo sumInfo;
+  private final MetricsInfo[] boundInfos;
+  private final int interval;
+  private final Timer timer;
+  // the bucket counts, followed by the sum of the values
+  private final AtomicLongArray[] stripes;
+
+  // the merged counts at the last rollover, guarded by this like the fields
+  // below
+  private long[] previousCounts = new long[NUM_BUCKETS];
+  private final long startMs;
+  private long nextRolloverMs;
+  private long windowNum = 0;
+  private final long[] windowPercentiles = new long[quantiles.length];
+
+  /**
+   * Instantiates a new {@link MutableHistogram} for a metric whose
+   * percentiles are computed over the specified time interval.
+   *
+   * @param name
+   *          of the metric
+   * @param description
+   *          long-form textual description of the metric
+   * @param sampleName
+   *          type of items in the stream (e.g., "Ops")
+   * @param valueName
+   *          type of the values
+   * @param interval
+   *          rollover interval (in seconds) of the percentiles
+   */
+  public MutableHistogram(String name, String description, String sampleName,
+      String valueName, int interval) {
+    this(name, description, sampleName, valueName, interval, new Timer());
+  }
+
+  @VisibleForTesting
+  MutableHistogram(String name, String description, String sampleName,
+      String valueName, int interval, Timer timer) {
+    String ucName = StringUtils.capitalize(name);
+    String usName = StringUtils.capitalize(sampleName);
+    String uvName = StringUtils.capitalize(valueName);
+    String desc = StringUtils.uncapitalize(description);
+    String lsName = StringUtils.uncapitalize(sampleName);
+    String lvName = StringUtils.uncapitalize(valueName);
+
+    numInfo = info(ucName + "Num" + usName, String.format(
+        "Number of %s for %s with %ds interval", lsName, desc, interval));
+    quantileInfos = new MetricsInfo[quantiles.length];
+    String nameTemplate = ucName + "%dthPercentile" + uvName;
+    String descTemplate = "%d percentile " + lvName + " with " + interval
+        + " second interval for " + desc;
+    for (int i = 0; i < quantiles.length; i++) {
+      int percentile = (int) (100 * quantiles[i].quantile);
+      quantileInfos[i] = info(String.format(nameTemplate, percentile),
+          String.format(descTemplate, percentile));
+    }
+
+    totalInfo = info(ucName + "HistogramNum" + usName, String.format(
+        "Total number of %s for %s", lsName, desc));
+    sumInfo = info(ucName + "HistogramSum" + uvName, String.format(
+        "Sum of %s for %s", lvName, desc));
+    boundInfos = new MetricsInfo[NUM_BOUNDS];
+    for (int i = 0; i < NUM_BOUNDS; i++) {
+      long bound = 1L << (2 * i);
+      boundInfos[i] = info(ucName + "HistogramLt" + bound + uvName,
+          String.format("Total number of %s for %s with %s below %d",
+              lsName, desc, lvName, bound));
+    }
+
+    stripes = new AtomicLongArray[NUM_STRIPES];
+    for (int i = 0; i < NUM_STRIPES; i++) {
+      stripes[i] = new AtomicLongArray(NUM_BUCKETS + 1);
+    }
+    this.interval = interval;
+    this.timer = timer;
+    startMs = timer.monotonicNow();
+    nextRolloverMs = startMs + interval * 1000L;
+  }
+
+  /**
+   * @return the index of the bucket counting the given value
+   */
+  @VisibleForTesting
+  static int bucketIndex(long value) {
+    if (value < SUB_BUCKETS) {
+      return value < 0 ? 0 : (int) value;
+    }
+    int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value)
+        - SUB_BUCKET_BITS;
+    return ((shift + 1) << SUB_BUCKET_BITS)
+        + (int) (value >>> shift) - SUB_BUCKETS;
+  }
+
+  /**
+   * @return the highest value counted in the given bucket
+   */
+  @VisibleForTesting
+  static long highestValue(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = (index >>> SUB_BUCKET_BITS) - 1;
+    long subBucket = (index & (SUB_BUCKETS - 1)) + SUB_BUCKETS;
+    // wraps around to Long.MAX_VALUE for the last bucket
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+  public void add(long value) {
+    AtomicLongArray stripe = stripes[
+        (int) Thread.currentThread().getId() & (NUM_STRIPES - 1)];
+    stripe.incrementAndGet(bucketIndex(value));
+    stripe.addAndGet(NUM_BUCKETS, value);
+  }
+
+  @Override
+  public synchronized void snapshot(MetricsRecordBuilder builder, boolean all) {
+    long[] counts = new long[NUM_BUCKETS];
+    long sum = 0;
+    for (AtomicLongArray stripe : stripes) {
+      for (int i = 0; i < NUM_BUCKETS; i++) {
+        counts[i] += stripe.get(i);
+      }
+      sum += stripe.get(NUM_BUCKETS);
+    }
+    long now = timer.monotonicNow();
+    long intervalMs = interval * 1000L;
+    long slackMs = intervalMs / 10;
+    if (now >= nextRolloverMs - slackMs) {
+      rollover(counts);
+      // the end of the next interval of the grid not within the slack yet
+      nextRolloverMs = startMs
+          + ((now + slackMs - startMs) / intervalMs + 1) * intervalMs;
+      setChanged();
+    }
+
+    if (all || changed()) {
+      builder.addGauge(numInfo, windowNum);
+      for (int i = 0; i < quantiles.length; i++) {
+        builder.addGauge(quantileInfos[i], windowPercentiles[i]);
+      }
+      long total = 0;
+      for (int i = 0, bound = 0; i < NUM_BUCKETS; i++) {
+        if (bound < NUM_BOUNDS && bucketIndex(1L << (2 * bound)) == i) {
+          builder.addCounter(boundInfos[bound++], total);
+        }
+        total += counts[i];
+      }
+      builder.addCounter(totalInfo, total);
+      builder.addCounter(sumInfo, sum);
+      clearChanged();
+    }
+  }
+
+  /**
+   * Compute the count and percentiles of the values added since the last
+   * rollover.
+   */
+  private void rollover(long[] counts) {
+    long[] window = new long[NUM_BUCKETS];
+    long num = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      window[i] = counts[i] - previousCounts[i];
+      num += window[i];
+    }
+    previousCounts = counts;
+    windowNum = num;
+    for (int i = 0; i < quantiles.length; i++) {
+      windowPercentiles[i] = num == 0 ?
+          0 : percentile(window, num, quantiles[i].quantile);
+    }
+  }
+
+  private static long percentile(long[] counts, long num, double quantile) {
+    long rank = Math.max(1, (long) Math.ceil(quantile * num));
+    long seen = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return highestValue(i);
+      }
+    }
+    return highestValue(NUM_BUCKETS - 1);
+  }
+
+  public int getInterval() {
+    return interval;
+  }
+}
@@ -18,7 +18,10 @@
 package org.apache.hadoop.security;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
@@ -41,6 +44,22 @@ public interface GroupMappingServiceProvider {
    * @throws IOException
    */
   public List<String> getGroups(String user) throws IOException;
+  /**
+   * Get the group memberships of several users at once. Implementations
+   * able to look up many users with one request should override this; by
+   * default the users are looked up one after the other.
+   * @param users the users' names
+   * @return group memberships by user, an EMPTY list for non-existing users
+   * @throws IOException
+   */
+  default Map<String, List<String>> getGroupsOfUsers(Collection<String> users)
+      throws IOException {
+    Map<String, List<String>> groups = new HashMap<>();
+    for (String user : users) {
+      groups.put(user, getGroups(user));
+    }
+    return groups;
+  }
   /**
    * Refresh the cache of groups and user mapping
    * @throws IOException
@@ -17,7 +17,17 @@
  */
 package org.apache.hadoop.security;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -25,10 +35,13 @@
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -57,6 +70,7 @@
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.CommonConfigurationKeys;
 import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.hadoop.util.ShutdownHookManager;
 import org.apache.hadoop.util.StringUtils;
 import org.apache.hadoop.util.Timer;
 import org.slf4j.Logger;
@@ -69,6 +83,11 @@
  * of a given user via the {@link #getGroups(String)} call, thus ensuring 
  * a consistent user-to-groups mapping and protects against vagaries of 
  * different mappings on servers and clients in a Hadoop cluster. 
+ *
+ * Servers that should not block on group lookups can {@link #prefetch} the
+ * groups of users in the background, in batches for group mappings able to
+ * look up several users at once, and have the cache persisted to a local
+ * file so that it survives restarts.
  */
 @InterfaceAudience.LimitedPrivate({"HDFS", "MapReduce"})
 @InterfaceStability.Evolving
@@ -98,6 +117,25 @@ public class Groups {
   private final AtomicLong backgroundRefreshRunning =
       new AtomicLong(0);
 
+  private final int prefetchBatchSize;
+  private final int prefetchThreadCount;
+  private final int prefetchMaxPending;
+  private final ThreadPoolExecutor prefetchExecutor;
+  // users to prefetch with the callbacks to run once they are, guarded by
+  // itself like the fields below
+  private final Map<String, List<Runnable>> prefetching = new HashMap<>();
+  // the users in prefetching not taken by a prefetch task yet
+  private final Queue<String> prefetchQueue = new ArrayDeque<>();
+  private int prefetchTasks = 0;
+  // the callbacks in prefetching
+  private int prefetchPending = 0;
+
+  private static final int PERSIST_VERSION = 1;
+  private static final int PERSIST_SHUTDOWN_HOOK_PRIORITY = 10;
+  private final File persistFile;
+  private ScheduledExecutorService persistExecutor;
+  private Runnable persistShutdownHook;
+
   public Groups(Configuration conf) {
     this(conf, new Timer());
   }
@@ -130,6 +168,24 @@ public Groups(Configuration conf, final Timer timer) {
               HADOOP_SECURITY_GROUPS_CACHE_BACKGROUND_RELOAD_THREADS,
           CommonConfigurationKeys.
               HADOOP_SECURITY_GROUPS_CACHE_BACKGROUND_RELOAD_THREADS_DEFAULT);
+    prefetchThreadCount =
+      conf.getInt(
+          CommonConfigurationKeys.HADOOP_SECURITY_GROUPS_PREFETCH_THREADS,
+          CommonConfigurationKeys.
+              HADOOP_SECURITY_GROUPS_PREFETCH_THREADS_DEFAULT);
+    prefetchBatchSize =
+      conf.getInt(
+          CommonConfigurationKeys.HADOOP_SECURITY_GROUPS_PREFETCH_BATCH_SIZE,
+          CommonConfigurationKeys.
+              HADOOP_SECURITY_GROUPS_PREFETCH_BATCH_SIZE_DEFAULT);
+    prefetchMaxPending =
+      conf.getInt(
+          CommonConfigurationKeys.HADOOP_SECURITY_GROUPS_PREFETCH_MAX_PENDING,
+          CommonConfigurationKeys.
+              HADOOP_SECURITY_GROUPS_PREFETCH_MAX_PENDING_DEFAULT);
+    String persistPath = conf.getTrimmed(
+        CommonConfigurationKeys.HADOOP_SECURITY_GROUPS_CACHE_PERSIST_FILE, "");
+    persistFile = persistPath.isEmpty() ? null : new File(persistPath);
     parseStaticMapping(conf);
 
     this.timer = timer;
@@ -147,6 +203,30 @@ public Groups(Configuration conf, final Timer timer) {
       negativeCache = Collections.newSetFromMap(tempMap.asMap());
     }
 
+    // threads die after 60 seconds of non use, as for background reloads
+    prefetchExecutor = new ThreadPoolExecutor(
+        prefetchThreadCount,
+        prefetchThreadCount,
+        60,
+        TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(),
+        new ThreadFactoryBuilder()
+            .setNameFormat("Group-Cache-Prefetch")
+            .setDaemon(true)
+            .build());
+    prefetchExecutor.allowCoreThreadTimeOut(true);
+
+    if (persistFile != null) {
+      try {
+        int loaded = loadPersisted();
+        LOG.info("Loaded the groups of " + loaded + " users from " +
+            persistFile);
+      } catch (IOException e) {
+        LOG.warn("Error loading the groups cache from " + persistFile, e);
+      }
+      startPersisting();
+    }
+
     if(LOG.isDebugEnabled())
       LOG.debug("Group mapping impl=" + impl.getClass().getName() + 
           "; cacheTimeout=" + cacheTimeout + "; warningDeltaMs=" +
@@ -200,6 +280,247 @@ private IOException noGroupsForUser(String user) {
     return new IOException("No groups found for user " + user);
   }
 
+  /**
+   * Whether the group memberships of a given user are known without a
+   * lookup, including users known to have no groups.
+   * @param user User's name
+   * @return true if {@link #getGroups(String)} does not need a lookup
+   */
+  public boolean isCached(String user) {
+    Map<String, List<String>> staticUserToGroupsMap = staticMapRef.get();
+    if (staticUserToGroupsMap != null &&
+        staticUserToGroupsMap.containsKey(user)) {
+      return true;
+    }
+    if (isNegativeCacheEnabled() && negativeCache.contains(user)) {
+      return true;
+    }
+    // unlike getIfPresent, this does not trigger a refresh
+    return cache.asMap().containsKey(user);
+  }
+
+  /**
+   * Fetch the group memberships of a given user in the background unless
+   * they are cached. The users requested while the prefetch threads are busy
+   * are fetched together, in batches of up to
+   * {@link CommonConfigurationKeys#HADOOP_SECURITY_GROUPS_PREFETCH_BATCH_SIZE}
+   * users. At most
+   * {@link CommonConfigurationKeys#HADOOP_SECURITY_GROUPS_PREFETCH_MAX_PENDING}
+   * callbacks wait at a time.
+   * @param user User's name
+   * @param callback run by a prefetch thread once the groups are cached, or
+   *                 failed to be fetched
+   * @return false if the groups are cached or too many callbacks wait, and
+   *         the callback is not run
+   */
+  public boolean prefetch(String user, Runnable callback) {
+    if (isCached(user)) {
+      return false;
+    }
+    synchronized (prefetching) {
+      if (prefetchPending >= prefetchMaxPending) {
+        return false;
+      }
+      List<Runnable> callbacks = prefetching.get(user);
+      if (callbacks == null) {
+        callbacks = new ArrayList<>();
+        prefetching.put(user, callbacks);
+        prefetchQueue.add(user);
+        if (prefetchTasks < prefetchThreadCount) {
+          prefetchTasks++;
+          prefetchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+              prefetchQueued();
+            }
+          });
+        }
+      }
+      callbacks.add(callback);
+      prefetchPending++;
+    }
+    return true;
+  }
+
+  /**
+   * Fetch batches of the queued users until there are none left.
+   */
+  private void prefetchQueued() {
+    while (true) {
+      List<String> users = new ArrayList<>();
+      synchronized (prefetching) {
+        while (users.size() < prefetchBatchSize && !prefetchQueue.isEmpty()) {
+          users.add(prefetchQueue.poll());
+        }
+        if (users.isEmpty()) {
+          prefetchTasks--;
+          return;
+        }
+      }
+      fetchGroupsOfUsers(users);
+
+      List<Runnable> callbacks = new ArrayList<>();
+      synchronized (prefetching) {
+        for (String user : users) {
+          callbacks.addAll(prefetching.remove(user));
+        }
+        prefetchPending -= callbacks.size();
+      }
+      for (Runnable callback : callbacks) {
+        try {
+          callback.run();
+        } catch (RuntimeException e) {
+          LOG.warn("Error running a callback of the groups prefetch", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Queries impl for the groups of several users and caches them. Users
+   * whose groups could not be fetched are left for {@link #getGroups}.
+   */
+  private void fetchGroupsOfUsers(List<String> users) {
+    Map<String, List<String>> groups;
+    long startMs = timer.monotonicNow();
+    try {
+      groups = impl.getGroupsOfUsers(users);
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Error prefetching the groups of " + users.size() + " users",
+          e);
+      return;
+    }
+    long deltaMs = timer.monotonicNow() - startMs;
+    UserGroupInformation.metrics.addGetGroups(deltaMs);
+    if (deltaMs > warningDeltaMs) {
+      LOG.warn("Potential performance problem: getGroupsOfUsers(" +
+          users.size() + " users) took " + deltaMs + " milliseconds.");
+    }
+
+    for (String user : users) {
+      List<String> userGroups = groups.get(user);
+      if (userGroups == null) {
+        continue;
+      }
+      if (!userGroups.isEmpty()) {
+        cache.put(user, toCachedGroups(userGroups));
+      } else if (isNegativeCacheEnabled()) {
+        negativeCache.add(user);
+      }
+    }
+  }
+
+  /**
+   * @return immutable de-duped list
+   */
+  private static List<String> toCachedGroups(List<String> groups) {
+    return Collections.unmodifiableList(
+        new ArrayList<>(new LinkedHashSet<>(groups)));
+  }
+
+  /**
+   * Save the cached group memberships to the persist file, replacing it
+   * atomically.
+   */
+  @VisibleForTesting
+  synchronized void persist() throws IOException {
+    Map<String, List<String>> groups = new HashMap<>(cache.asMap());
+    File tmpFile = new File(persistFile.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+      out.writeInt(PERSIST_VERSION);
+      out.writeLong(timer.now());
+      out.writeInt(groups.size());
+      for (Map.Entry<String, List<String>> entry : groups.entrySet()) {
+        out.writeUTF(entry.getKey());
+        out.writeInt(entry.getValue().size());
+        for (String group : entry.getValue()) {
+          out.writeUTF(group);
+        }
+      }
+    }
+    Files.move(tmpFile.toPath(), persistFile.toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Load the group memberships from the persist file, unless they were saved
+   * longer than a cache timeout ago. Loaded groups are refreshed a cache
+   * timeout after being loaded.
+   * @return the number of users loaded
+   */
+  @VisibleForTesting
+  int loadPersisted() throws IOException {
+    if (!persistFile.exists()) {
+      return 0;
+    }
+    Map<String, List<String>> groups = new HashMap<>();
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(persistFile)))) {
+      int version = in.readInt();
+      if (version != PERSIST_VERSION) {
+        throw new IOException("Unknown version " + version + " of " +
+            persistFile);
+      }
+      long savedMs = in.readLong();
+      if (timer.now() - savedMs > cacheTimeout) {
+        return 0;
+      }
+      int numUsers = in.readInt();
+      for (int i = 0; i < numUsers; i++) {
+        String user = in.readUTF();
+        int numGroups = in.readInt();
+        List<String> userGroups = new ArrayList<>(numGroups);
+        for (int j = 0; j < numGroups; j++) {
+          userGroups.add(in.readUTF());
+        }
+        groups.put(user, Collections.unmodifiableList(userGroups));
+      }
+    }
+    cache.putAll(groups);
+    return groups.size();
+  }
+
+  private void persistQuietly() {
+    try {
+      persist();
+    } catch (IOException e) {
+      LOG.warn("Error saving the groups cache to " + persistFile, e);
+    }
+  }
+
+  /**
+   * Save the cache every cache timeout and on shutdown.
+   */
+  private synchronized void startPersisting() {
+    persistExecutor = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder()
+            .setNameFormat("Group-Cache-Persist")
+            .setDaemon(true)
+            .build());
+    persistShutdownHook = new Runnable() {
+      @Override
+      public void run() {
+        persistQuietly();
+      }
+    };
+    persistExecutor.scheduleWithFixedDelay(persistShutdownHook,
+        cacheTimeout, cacheTimeout, TimeUnit.MILLISECONDS);
+    ShutdownHookManager.get().addShutdownHook(persistShutdownHook,
+        PERSIST_SHUTDOWN_HOOK_PRIORITY);
+  }
+
+  /**
+   * Stop saving the cache, once replaced by another instance.
+   */
+  private synchronized void stopPersisting() {
+    if (persistExecutor != null) {
+      persistExecutor.shutdownNow();
+      ShutdownHookManager.get().removeShutdownHook(persistShutdownHook);
+      persistExecutor = null;
+    }
+  }
+
   /**
    * Get the group memberships of a given user.
    * If the user's group is not cached, this method may block.
@@ -334,9 +655,7 @@ public List<String> load(String user) throws Exception {
         throw noGroupsForUser(user);
       }
 
-      // return immutable de-duped list
-      return Collections.unmodifiableList(
-          new ArrayList<>(new LinkedHashSet<>(groups)));
+      return toCachedGroups(groups);
     }
 
     /**
@@ -463,6 +782,9 @@ public static synchronized Groups getUserToGroupsMappingService(
       getUserToGroupsMappingServiceWithLoadedConfiguration(
           Configuration conf) {
 
+    if (GROUPS != null) {
+      GROUPS.stopPersisting();
+    }
     GROUPS = new Groups(conf);
     return GROUPS;
   }
@@ -24,12 +24,16 @@
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.HashSet;
 import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.naming.Context;
 import javax.naming.NamingEnumeration;
@@ -49,6 +53,7 @@
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -258,6 +263,10 @@
     SEARCH_CONTROLS.setSearchScope(SearchControls.SUBTREE_SCOPE);
   }
 
+  /** The user name attribute of a user search filter like (uid={0}). */
+  private static final Pattern USER_NAME_ATTR_PATTERN =
+      Pattern.compile("\\(([^()=]+)=\\{0\\}\\)");
+
   private DirContext ctx;
   private Configuration conf;
 
@@ -285,6 +294,9 @@
   private boolean useOneQuery;
   private int numAttempts;
   private int numAttemptsBeforeFailover;
+  // set if the groups of several users can be looked up with one query
+  private String userNameAttr;
+  private SearchControls batchSearchControls;
   private Class<? extends InitialContextFactory> ldapCxtFactoryClass;
 
   /**
@@ -299,6 +311,10 @@
    */
   @Override
   public synchronized List<String> getGroups(String user) {
+    return getGroupsWithRetries(user);
+  }
+
+  private List<String> getGroupsWithRetries(String user) {
     /*
      * Normal garbage collection takes care of removing Context instances when
      * they are no longer in use. Connections used by Context instances being
@@ -331,6 +347,100 @@ public synchronized List<String> getGroups(String user) {
     return Collections.emptyList();
   }
 
+  /**
+   * Returns the groups of several users.
+   *
+   * If the groups are read from the memberOf attribute of the user objects
+   * and the user search filter matches a single user name attribute, all the
+   * users are searched for with one query. Users whose groups could not be
+   * read from that query are then looked up one by one as in
+   * {@link #getGroups(String)}.
+   *
+   * @param users get groups for these users
+   * @return list of groups by user
+   */
+  @Override
+  public synchronized Map<String, List<String>> getGroupsOfUsers(
+      Collection<String> users) {
+    Map<String, List<String>> groups = new HashMap<>();
+    if (userNameAttr != null && groupHierarchyLevels == 0 &&
+        users.size() > 1) {
+      try {
+        doGetGroupsOfUsers(users, groups);
+      } catch (NamingException e) {
+        LOG.warn("Failed to get groups of {} users at once using {}, " +
+            "looking them up one by one. Exception: ", users.size(),
+            currentLdapUrl, e);
+        this.ctx = null;
+      }
+    }
+    for (String user : users) {
+      if (!groups.containsKey(user)) {
+        groups.put(user, getGroupsWithRetries(user));
+      }
+    }
+    return groups;
+  }
+
+  /**
+   * Search for all the given users with one query, OR-ing the user search
+   * filter of each, and read their groups from the memberOf attribute.
+   * Users not found get an empty list, users found without groups are left
+   * out.
+   */
+  void doGetGroupsOfUsers(Collection<String> users,
+      Map<String, List<String>> groups) throws NamingException {
+    DirContext c = getDirContext();
+
+    Object[] filterArgs = users.toArray();
+    Map<String, String> usersByName = new HashMap<>();
+    StringBuilder filter = new StringBuilder("(|");
+    for (int i = 0; i < filterArgs.length; i++) {
+      usersByName.put(StringUtils.toLowerCase((String) filterArgs[i]),
+          (String) filterArgs[i]);
+      filter.append(userSearchFilter.replace("{0}", "{" + i + "}"));
+    }
+    filter.append(')');
+
+    Set<String> found = new HashSet<>();
+    NamingEnumeration<SearchResult> results = c.search(userbaseDN,
+        filter.toString(), filterArgs, batchSearchControls);
+    while (results.hasMoreElements()) {
+      SearchResult result = results.nextElement();
+      Attribute nameAttr = result.getAttributes().get(userNameAttr);
+      if (nameAttr == null) {
+        continue;
+      }
+      String user = usersByName.get(
+          StringUtils.toLowerCase(nameAttr.get().toString()));
+      // only the first result counts for a user, as in doGetGroups
+      if (user == null || !found.add(user)) {
+        continue;
+      }
+      Attribute groupDNAttr = result.getAttributes().get(memberOfAttr);
+      if (groupDNAttr == null) {
+        continue;
+      }
+      List<String> userGroups = new ArrayList<>();
+      NamingEnumeration groupEnumeration = groupDNAttr.getAll();
+      while (groupEnumeration.hasMore()) {
+        String groupDN = groupEnumeration.next().toString();
+        userGroups.add(getRelativeDistinguishedName(groupDN));
+      }
+      if (!userGroups.isEmpty()) {
+        groups.put(user, userGroups);
+      }
+    }
+    for (String user : usersByName.values()) {
+      if (!found.contains(user)) {
+        LOG.debug("doGetGroupsOfUsers returned no groups for {} because " +
+            "the user is not found.", user);
+        groups.put(user, new ArrayList<>());
+      }
+    }
+    LOG.debug("doGetGroupsOfUsers({}) returned {}", users, groups);
+  }
+
   /**
    * A helper method to get the Relative Distinguished Name (RDN) from
    * Distinguished name (DN). According to Active Directory documentation,
@@ -715,6 +825,20 @@ public synchronized void setConf(Configuration conf) {
     }
     SEARCH_CONTROLS.setReturningAttributes(returningAttributes);
 
+    userNameAttr = null;
+    batchSearchControls = null;
+    Matcher userNameMatcher = USER_NAME_ATTR_PATTERN.matcher(userSearchFilter);
+    boolean singleUserArg = userSearchFilter.indexOf("{0}") ==
+        userSearchFilter.lastIndexOf("{0}");
+    if (useOneQuery && singleUserArg && userNameMatcher.find()) {
+      userNameAttr = userNameMatcher.group(1).trim();
+      batchSearchControls = new SearchControls();
+      batchSearchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+      batchSearchControls.setTimeLimit(dirSearchTimeout);
+      batchSearchControls.setReturningAttributes(
+          new String[] {userNameAttr, memberOfAttr});
+    }
+
     ldapCxtFactoryClass = conf.getClass(LDAP_CTX_FACTORY_CLASS_KEY,
         LDAP_CTX_FACTORY_CLASS_DEFAULT, InitialContextFactory.class);
 
@@ -25,7 +25,9 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -74,7 +76,27 @@ public synchronized void setConf(Configuration conf) {
      */
   @Override
   public synchronized List<String> getGroups(String user) {
-    List<String> groups = super.getGroups(user);
+    return applyRule(super.getGroups(user));
+  }
+
+  /**
+   * Returns the groups of several users with the configured rules applied
+   * on group names.
+   *
+   * @param users get groups for these users
+   * @return list of groups by user
+   */
+  @Override
+  public synchronized Map<String, List<String>> getGroupsOfUsers(
+      Collection<String> users) {
+    Map<String, List<String>> groups = super.getGroupsOfUsers(users);
+    for (Map.Entry<String, List<String>> entry : groups.entrySet()) {
+      entry.setValue(applyRule(entry.getValue()));
+    }
+    return groups;
+  }
+
+  private List<String> applyRule(List<String> groups) {
     switch (rule) {
     case TO_UPPER:
       return groups.stream().map(StringUtils::toUpperCase).collect(
@@ -52,6 +52,7 @@ public class DataChecksum implements Checksum {
 
   private static final Logger LOG = LoggerFactory.getLogger(DataChecksum.class);
   private static volatile boolean useJava9Crc32C = Shell.isJavaVersionAtLeast(9);
+  private static final String JAVA9_CRC32C_CLASS = "java.util.zip.CRC32C";
  
   /** The checksum types */
   public enum Type {
@@ -377,9 +378,8 @@ static void verifyChunked(final Type type, final Checksum algorithm,
     try {
       int i = 0;
       for(final int n = dataLength - bytesPerCrc + 1; i < n; i += bytesPerCrc) {
-        data.get(bytes);
         algorithm.reset();
-        algorithm.update(bytes, 0, bytesPerCrc);
+        update(algorithm, data, bytesPerCrc, bytes);
         final int computed = (int)algorithm.getValue();
         final int expected = crcs.getInt();
 
@@ -392,9 +392,8 @@ static void verifyChunked(final Type type, final Checksum algorithm,
 
       final int remainder = dataLength - i;
       if (remainder > 0) {
-        data.get(bytes, 0, remainder);
         algorithm.reset();
-        algorithm.update(bytes, 0, remainder);
+        update(algorithm, data, remainder, bytes);
         final int computed = (int)algorithm.getValue();
         final int expected = crcs.getInt();
 
@@ -421,12 +420,30 @@ static void verifyChunked(final Type type, final Checksum algorithm,
     final int dataEnd = dataOffset + dataLength;
     int i = dataOffset;
     int j = crcsOffset;
+    if (algorithm instanceof PureJavaCrc32C) {
+      // verify two chunks per pass
+      final int pairLength = 2 * bytesPerCrc;
+      for(final int n = dataEnd-pairLength+1; i < n; i += pairLength, j += 8) {
+        final long computed =
+            PureJavaCrc32C.crcPair(data, i, i + bytesPerCrc, bytesPerCrc);
+        final int expectedA = getInt(crcs, j);
+        if ((int) (computed >>> 32) != expectedA) {
+          throwChecksumException(type, algorithm, filename,
+              basePos + i - dataOffset, expectedA, (int) (computed >>> 32));
+        }
+        final int expectedB = getInt(crcs, j + 4);
+        if ((int) computed != expectedB) {
+          throwChecksumException(type, algorithm, filename,
+              basePos + i + bytesPerCrc - dataOffset, expectedB,
+              (int) computed);
+        }
+      }
+    }
     for(final int n = dataEnd-bytesPerCrc+1; i < n; i += bytesPerCrc, j += 4) {
       algorithm.reset();
       algorithm.update(data, i, bytesPerCrc);
       final int computed = (int)algorithm.getValue();
-      final int expected = ((crcs[j] << 24) + ((crcs[j + 1] << 24) >>> 8))
-          + (((crcs[j + 2] << 24) >>> 16) + ((crcs[j + 3] << 24) >>> 24));
+      final int expected = getInt(crcs, j);
 
       if (computed != expected) {
         final long errPos = basePos + i - dataOffset;
@@ -439,8 +456,7 @@ static void verifyChunked(final Type type, final Checksum algorithm,
       algorithm.reset();
       algorithm.update(data, i, remainder);
       final int computed = (int)algorithm.getValue();
-      final int expected = ((crcs[j] << 24) + ((crcs[j + 1] << 24) >>> 8))
-          + (((crcs[j + 2] << 24) >>> 16) + ((crcs[j + 3] << 24) >>> 24));
+      final int expected = getInt(crcs, j);
 
       if (computed != expected) {
         final long errPos = basePos + i - dataOffset;
@@ -450,6 +466,45 @@ static void verifyChunked(final Type type, final Checksum algorithm,
     }
   }
 
+  private static int getInt(byte[] b, int off) {
+    return ((b[off] << 24) + ((b[off + 1] << 24) >>> 8))
+        + (((b[off + 2] << 24) >>> 16) + ((b[off + 3] << 24) >>> 24));
+  }
+
+  private static void putInt(byte[] b, int off, int value) {
+    b[off] = (byte) (value >> 24);
+    b[off + 1] = (byte) (value >> 16);
+    b[off + 2] = (byte) (value >> 8);
+    b[off + 3] = (byte) value;
+  }
+
+  /**
+   * Update the algorithm with the next len bytes of data. CRC32, and CRC32C
+   * on Java 9 and later, read direct buffers in place; other algorithms get
+   * the bytes copied into buf.
+   */
+  private static void update(Checksum algorithm, ByteBuffer data, int len,
+      byte[] buf) {
+    final boolean crc32 = algorithm instanceof CRC32;
+    if (crc32 || (useJava9Crc32C &&
+        algorithm.getClass().getName().equals(JAVA9_CRC32C_CLASS))) {
+      final int limit = data.limit();
+      data.limit(data.position() + len);
+      try {
+        if (crc32) {
+          ((CRC32) algorithm).update(data);
+        } else {
+          Java9Crc32CFactory.update(algorithm, data);
+        }
+      } finally {
+        data.limit(limit);
+      }
+    } else {
+      data.get(buf, 0, len);
+      algorithm.update(buf, 0, len);
+    }
+  }
+
   private static void throwChecksumException(Type type, Checksum algorithm,
       String filename, long errPos, int expected, int computed)
           throws ChecksumException {
@@ -491,9 +546,8 @@ public void calculateChunkedSums(ByteBuffer data, ByteBuffer checksums) {
       byte[] buf = new byte[bytesPerChecksum];
       while (data.remaining() > 0) {
         int n = Math.min(data.remaining(), bytesPerChecksum);
-        data.get(buf, 0, n);
         summer.reset();
-        summer.update(buf, 0, n);
+        update(summer, data, n, buf);
         checksums.putInt((int)summer.getValue());
       }
     } finally {
@@ -518,6 +572,18 @@ public void calculateChunkedSums(
     }
 
     int remaining = dataLength;
+    if (summer instanceof PureJavaCrc32C) {
+      // calculate two chunks per pass
+      for (; remaining >= 2 * bytesPerChecksum;
+          remaining -= 2 * bytesPerChecksum) {
+        final long calculated = PureJavaCrc32C.crcPair(data, dataOffset,
+            dataOffset + bytesPerChecksum, bytesPerChecksum);
+        putInt(sums, sumsOffset, (int) (calculated >>> 32));
+        putInt(sums, sumsOffset + 4, (int) calculated);
+        dataOffset += 2 * bytesPerChecksum;
+        sumsOffset += 8;
+      }
+    }
     while (remaining > 0) {
       int n = Math.min(remaining, bytesPerChecksum);
       summer.reset();
@@ -578,20 +644,39 @@ public void update(int b) {}
    */
   private static class Java9Crc32CFactory {
     private static final MethodHandle NEW_CRC32C_MH;
+    private static final MethodHandle UPDATE_BUFFER_MH;
 
     static {
       MethodHandle newCRC32C = null;
+      MethodHandle updateBuffer = null;
       try {
+        Class<?> crc32c = Class.forName(JAVA9_CRC32C_CLASS);
         newCRC32C = MethodHandles.publicLookup()
             .findConstructor(
-                Class.forName("java.util.zip.CRC32C"),
+                crc32c,
                 MethodType.methodType(void.class)
             );
+        updateBuffer = MethodHandles.publicLookup()
+            .findVirtual(
+                crc32c,
+                "update",
+                MethodType.methodType(void.class, ByteBuffer.class)
+            );
       } catch (ReflectiveOperationException e) {
         // Should not reach here.
         throw new RuntimeException(e);
       }
       NEW_CRC32C_MH = newCRC32C;
+      UPDATE_BUFFER_MH = updateBuffer;
+    }
+
+    static void update(Checksum checksum, ByteBuffer data) {
+      try {
+        UPDATE_BUFFER_MH.invoke(checksum, data);
+      } catch (Throwable t) {
+        throw (t instanceof RuntimeException) ? (RuntimeException) t
+            : new RuntimeException(t);
+      }
     }
 
     public static Checksum createChecksum() {
@@ -2444,4 +2444,70 @@ public void testResourceRace() {
     // Thread 1
     config.get("secondParse");
   }
+
+  @Test
+  public void testResolvedValuesFollowChanges() throws IOException {
+    Configuration config = new Configuration(false);
+    assertNull(config.get("test.snapshot.key"));
+    config.set("test.snapshot.key", "1");
+    assertEquals("1", config.get("test.snapshot.key"));
+    assertEquals(1, config.getInt("test.snapshot.key", 0));
+    assertEquals(1L, config.getLong("test.snapshot.key", 0));
+    assertEquals(1L,
+        config.getTimeDuration("test.snapshot.key", 0, SECONDS));
+
+    config.set("test.snapshot.key", "2s");
+    assertEquals(2000L,
+        config.getTimeDuration("test.snapshot.key", 0, MILLISECONDS));
+    assertEquals(2L,
+        config.getTimeDuration("test.snapshot.key", 0, SECONDS));
+    config.setInt("test.snapshot.key", 0x10);
+    assertEquals(16, config.getInt("test.snapshot.key", 0));
+
+    config.unset("test.snapshot.key");
+    assertNull(config.get("test.snapshot.key"));
+    assertEquals(3, config.getInt("test.snapshot.key", 3));
+    assertEquals("default", config.get("test.snapshot.key", "default"));
+
+    // a value referring to another key follows that key
+    config.setRestrictSystemProps(true);
+    config.set("test.snapshot.ref", "${test.snapshot.key}-ref");
+    config.set("test.snapshot.key", "a");
+    assertEquals("a-ref", config.get("test.snapshot.ref"));
+    config.set("test.snapshot.key", "b");
+    assertEquals("b-ref", config.get("test.snapshot.ref"));
+
+    out = new BufferedWriter(new FileWriter(CONFIG));
+    startConfig();
+    appendProperty("test.snapshot.key", "c");
+    endConfig();
+    config.addResource(new Path(CONFIG));
+    // values set programmatically override the resources
+    assertEquals("b", config.get("test.snapshot.key"));
+    config.clear();
+    assertNull(config.get("test.snapshot.ref"));
+  }
+
+  @Test
+  public void testSystemPropertiesAreNotSnapshot() {
+    Configuration config = new Configuration(false);
+    config.set("test.snapshot.sys", "${test.snapshot.property}");
+    System.setProperty("test.snapshot.property", "a");
+    try {
+      assertEquals("a", config.get("test.snapshot.sys"));
+      System.setProperty("test.snapshot.property", "b");
+      assertEquals("b", config.get("test.snapshot.sys"));
+    } finally {
+      System.clearProperty("test.snapshot.property");
+    }
+  }
+
+  @Test
+  public void testSnapshotFollowsNewDeprecations() {
+    Configuration config = new Configuration(false);
+    config.set("test.snapshot.old", "old");
+    assertNull(config.get("test.snapshot.new"));
+    Configuration.addDeprecation("test.snapshot.old", "test.snapshot.new");
+    assertEquals("old", config.get("test.snapshot.new"));
+  }
 }
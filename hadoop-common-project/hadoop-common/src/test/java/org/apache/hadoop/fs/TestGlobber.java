@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.fs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests the expansion of glob patterns with several threads.
+ */
+public class TestGlobber {
+  private static final int NUM_DIRS = 20;
+  private static Path root;
+
+  @BeforeClass
+  public static void setup() throws IOException {
+    root = new Path(GenericTestUtils.getTestDir("TestGlobber").toURI());
+    FileSystem fs = FileSystem.newInstanceLocal(new Configuration());
+    try {
+      fs.delete(root, true);
+      for (int i = 0; i < NUM_DIRS; i++) {
+        Path dir = new Path(root, "data/d" + i);
+        for (String month : new String[] {"2018-12", "2019-01", "2019-02"}) {
+          fs.create(new Path(dir, month + "/part-00000")).close();
+          fs.create(new Path(dir, month + "/part-00001")).close();
+          fs.create(new Path(dir, month + "/_SUCCESS")).close();
+        }
+        // a file matching a directory component is not recursed into
+        fs.create(new Path(dir, "2019-03")).close();
+      }
+    } finally {
+      fs.close();
+    }
+  }
+
+  @AfterClass
+  public static void cleanup() throws IOException {
+    FileSystem fs = FileSystem.newInstanceLocal(new Configuration());
+    try {
+      fs.delete(root, true);
+    } finally {
+      fs.close();
+    }
+  }
+
+  private static FileStatus[] glob(int numThreads, String pattern)
+      throws IOException {
+    Configuration conf = new Configuration();
+    conf.setInt(CommonConfigurationKeysPublic.FS_GLOB_THREADS_KEY, numThreads);
+    FileSystem fs = FileSystem.newInstanceLocal(conf);
+    try {
+      return fs.globStatus(new Path(root, pattern));
+    } finally {
+      fs.close();
+    }
+  }
+
+  @Test
+  public void testParallelGlobMatchesSerialGlob() throws IOException {
+    String[] patterns = {"data/*/2019-*/part-*", "data/d1*/*", "data/*",
+        "data/{d1,d2}/2019-0[12]/_SUCCESS", "data/*/2019-03"};
+    for (String pattern : patterns) {
+      FileStatus[] expected = glob(1, pattern);
+      FileStatus[] actual = glob(4, pattern);
+      assertArrayEquals(pattern, expected, actual);
+    }
+    assertEquals(NUM_DIRS * 2 * 2, glob(4, "data/*/2019-*/part-*").length);
+    assertEquals(NUM_DIRS, glob(4, "data/*/2019-03").length);
+  }
+
+  @Test
+  public void testNoMatch() throws IOException {
+    assertEquals(0, glob(4, "data/*/2020-*/part-*").length);
+    assertNull(glob(4, "data/d0/2020-01"));
+  }
+}
@@ -19,6 +19,7 @@
 
 import com.google.common.base.Preconditions;
 
+import org.apache.hadoop.io.erasurecode.ErasureCodeNative;
 import org.apache.hadoop.io.erasurecode.ErasureCoderOptions;
 import org.apache.hadoop.util.StopWatch;
 
@@ -43,7 +44,8 @@
  * validate correctness of the encoded/decoded results.
  * User can specify the data size each thread processes, as well as the chunk
  * size to use for the coder.
- * Different coders are supported. User can specify the coder by a coder index.
+ * Different coders are supported. User can specify the coder by a coder index,
+ * or "all" to run the benchmark with each available coder in turn.
  * The coder is shared among all the threads.
  */
 public final class RawErasureCoderBenchmark {
@@ -63,13 +65,15 @@ private RawErasureCoderBenchmark() {
           Arrays.asList(new DummyRawErasureCoderFactory(),
               new RSLegacyRawErasureCoderFactory(),
               new RSRawErasureCoderFactory(),
-              new NativeRSRawErasureCoderFactory()));
+              new NativeRSRawErasureCoderFactory(),
+              new RSNibbleRawErasureCoderFactory()));
 
   enum CODER {
     DUMMY_CODER("Dummy coder"),
     LEGACY_RS_CODER("Legacy Reed-Solomon Java coder"),
     RS_CODER("Reed-Solomon Java coder"),
-    ISAL_CODER("ISA-L coder");
+    ISAL_CODER("ISA-L coder"),
+    RS_NIBBLE_CODER("Reed-Solomon Java nibble table coder");
 
     private final String name;
 
@@ -101,7 +105,7 @@ private static void usage(String message) {
       System.out.println(message);
     }
     System.out.println(
-        "Usage: RawErasureCoderBenchmark <encode/decode> <coderIndex> " +
+        "Usage: RawErasureCoderBenchmark <encode/decode> <coderIndex/all> " +
             "[numThreads] [dataSize-in-MB] [chunkSize-in-KB]");
     printAvailableCoders();
     System.exit(1);
@@ -122,8 +126,8 @@ public static void main(String[] args) throws Exception {
       }
 
       try {
-        coderIndex = Integer.parseInt(args[1]);
-        if (coderIndex < 0 || coderIndex >= CODER.values().length) {
+        coderIndex = "all".equals(args[1]) ? -1 : Integer.parseInt(args[1]);
+        if (coderIndex < -1 || coderIndex >= CODER.values().length) {
           usage("Invalid coder index, should be [0-" +
               (CODER.values().length - 1) + "]");
         }
@@ -170,8 +174,19 @@ public static void main(String[] args) throws Exception {
       }
     }
 
-    performBench(opType, CODER.values()[coderIndex],
-        numThreads, dataSizeMB, chunkSizeKB);
+    if (coderIndex >= 0) {
+      performBench(opType, CODER.values()[coderIndex],
+          numThreads, dataSizeMB, chunkSizeKB);
+      return;
+    }
+    for (CODER coder : CODER.values()) {
+      if (coder == CODER.ISAL_CODER &&
+          !ErasureCodeNative.isNativeCodeLoaded()) {
+        System.out.println("Skipping " + coder + ", native code not loaded");
+        continue;
+      }
+      performBench(opType, coder, numThreads, dataSizeMB, chunkSizeKB);
+    }
   }
 
   /**
@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.Time;
+
+/**
+ * CallQueueBenchmark measures the throughput of the call queue between the
+ * socket readers and the handlers of an RPC server, without the network
+ * and the calls themselves.
+ *
+ * Producer threads put calls spread over the priority levels and handler
+ * threads take them, and the benchmark reports the calls per second.
+ * Input arguments:
+ * <ul>
+ * <li>queue - FairCallQueue or ShardedFairCallQueue, the default</li>
+ * <li>readers - number of producer threads, 8 by default</li>
+ * <li>handlers - number of consumer threads, 400 by default</li>
+ * <li>calls - total number of calls, 10000000 by default</li>
+ * <li>levels - number of priority levels, 4 by default</li>
+ * </ul>
+ */
+public class CallQueueBenchmark {
+  private static final String NS = "ipc.benchmark";
+
+  static BlockingQueue<Schedulable> createQueue(String name, int levels,
+      int capacity, Configuration conf) {
+    if (name.equals(FairCallQueue.class.getSimpleName())) {
+      return new FairCallQueue<>(levels, capacity, NS, conf);
+    }
+    return new ShardedFairCallQueue<>(levels, capacity, NS, conf);
+  }
+
+  /** @return the calls per second */
+  static double run(final BlockingQueue<Schedulable> queue, int readers,
+      int handlers, final long calls, final int levels)
+      throws InterruptedException {
+    final Schedulable[] prototypes = new Schedulable[levels];
+    for (int i = 0; i < levels; i++) {
+      prototypes[i] = new TestShardedFairCallQueue.TestCall(i);
+    }
+    final CountDownLatch done = new CountDownLatch(1);
+    final AtomicLong remaining = new AtomicLong(calls);
+    final long perReader = calls / readers;
+
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < handlers; i++) {
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          try {
+            while (true) {
+              queue.take();
+              if (remaining.decrementAndGet() == 0) {
+                done.countDown();
+              }
+            }
+          } catch (InterruptedException e) {
+            // stopped
+          }
+        }
+      });
+    }
+    for (int i = 0; i < readers; i++) {
+      final long count = i == 0 ? calls - perReader * (readers - 1) : perReader;
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (long j = 0; j < count; j++) {
+              queue.put(prototypes[(int) (j % levels)]);
+            }
+          } catch (InterruptedException e) {
+            // stopped
+          }
+        }
+      });
+    }
+
+    long start = Time.monotonicNow();
+    for (Thread thread : threads) {
+      thread.setDaemon(true);
+      thread.start();
+    }
+    done.await();
+    long elapsed = Math.max(1, Time.monotonicNow() - start);
+    for (Thread thread : threads) {
+      thread.interrupt();
+    }
+    return calls * 1000.0 / elapsed;
+  }
+
+  public static void main(String[] args) throws Exception {
+    String name = ShardedFairCallQueue.class.getSimpleName();
+    int readers = 8;
+    int handlers = 400;
+    long calls = 10000000L;
+    int levels = 4;
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      if (args[i].equals("-queue")) {
+        name = args[i + 1];
+      } else if (args[i].equals("-readers")) {
+        readers = Integer.parseInt(args[i + 1]);
+      } else if (args[i].equals("-handlers")) {
+        handlers = Integer.parseInt(args[i + 1]);
+      } else if (args[i].equals("-calls")) {
+        calls = Long.parseLong(args[i + 1]);
+      } else if (args[i].equals("-levels")) {
+        levels = Integer.parseInt(args[i + 1]);
+      }
+    }
+    Configuration conf = new Configuration();
+    // the default capacity of 100 calls per handler
+    BlockingQueue<Schedulable> queue =
+        createQueue(name, levels, handlers * 100, conf);
+    // warm up
+    run(queue, readers, handlers, Math.min(calls, 1000000L), levels);
+    double rate = run(queue, readers, handlers, calls, levels);
+    System.out.printf("%s: %d readers, %d handlers, %d levels: %.0f calls/s%n",
+        name, readers, handlers, levels, rate);
+  }
+}
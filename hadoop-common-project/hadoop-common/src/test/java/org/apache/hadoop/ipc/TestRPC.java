@@ -37,7 +37,10 @@
 import org.apache.hadoop.metrics2.lib.MutableCounterLong;
 import org.apache.hadoop.net.NetUtils;
 import org.apache.hadoop.security.AccessControlException;
+import org.apache.hadoop.security.GroupMappingServiceProvider;
+import org.apache.hadoop.security.Groups;
 import org.apache.hadoop.security.SecurityUtil;
+import org.apache.hadoop.security.TestGroupsCaching;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.hadoop.security.UserGroupInformation.AuthenticationMethod;
 import org.apache.hadoop.security.authorize.AuthorizationException;
@@ -1438,6 +1441,64 @@ public boolean equals(Object t) {
     }
   }
 
+  /**
+   * Test that the calls parked until the groups of their user are cached are
+   * bounded by the call queue capacity, the others are queued as usual.
+   */
+  @Test (timeout=30000)
+  public void testParkedCallsBounded() throws Exception {
+    final int numCalls = 4;
+    conf.setBoolean(CommonConfigurationKeys.IPC_SERVER_GROUPS_PREFETCH_KEY,
+        true);
+    conf.setClass(CommonConfigurationKeys.HADOOP_SECURITY_GROUP_MAPPING,
+        TestGroupsCaching.FakeGroupMapping.class,
+        GroupMappingServiceProvider.class);
+    Groups.getUserToGroupsMappingServiceWithLoadedConfiguration(conf);
+    // the group lookups block until resumed
+    TestGroupsCaching.FakeGroupMapping.pause();
+    RPC.Builder builder = newServerBuilder(conf)
+        .setQueueSizePerHandler(2).setNumHandlers(1);
+    final Server server = setupTestServer(builder);
+    final TestRpcService proxy = getClient(addr, conf);
+    ExecutorService executor = Executors.newFixedThreadPool(numCalls);
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int i = 0; i < numCalls; i++) {
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws ServiceException {
+            proxy.ping(null, newEmptyRequest());
+            return null;
+          }
+        }));
+      }
+      // as many calls as the queue holds are parked, the others are served
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          int done = 0;
+          for (Future<Void> future : futures) {
+            done += future.isDone() ? 1 : 0;
+          }
+          return done == numCalls - 2;
+        }
+      }, 10, 10000);
+      assertEquals(2, server.getNumParkedCalls());
+
+      TestGroupsCaching.FakeGroupMapping.resume();
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+      assertEquals(0, server.getNumParkedCalls());
+    } finally {
+      TestGroupsCaching.FakeGroupMapping.resume();
+      executor.shutdownNow();
+      stop(server, proxy);
+      Groups.getUserToGroupsMappingServiceWithLoadedConfiguration(
+          new Configuration());
+    }
+  }
+
   @Test (timeout=30000)
   public void testReaderExceptions() throws Exception {
     Server server = null;
@@ -212,4 +212,81 @@ public Integer call() throws Exception {
       Assert.assertEquals(0, testServer.retryCount.get());
     }
   }
+
+  @Test
+  public void testStripes() {
+    RetryCache cache = new RetryCache("TestRetryCacheStripes", 1,
+        100 * 1000 * 1000 * 1000L, 10);
+    Assert.assertEquals(16, cache.getNumStripes());
+    for (int i = 0; i < 1000; i++) {
+      cache.addCacheEntry(CLIENT_ID, i);
+    }
+    Assert.assertEquals(1000, cache.getCacheSet().size());
+    int count = 0;
+    for (RetryCache.CacheEntry entry : cache.getCacheSet()) {
+      Assert.assertTrue(entry.isSuccess());
+      count++;
+    }
+    Assert.assertEquals(1000, count);
+    Assert.assertNotNull(cache.getCacheSet().get(
+        new RetryCache.CacheEntry(CLIENT_ID, 999, 0)));
+    RetryCache.clear(cache);
+    Assert.assertEquals(0, cache.getCacheSet().size());
+  }
+
+  @Test
+  public void testExpiry() throws Exception {
+    RetryCache cache = new RetryCache("TestRetryCacheExpiry", 1,
+        1000 * 1000L);
+    cache.addCacheEntry(CLIENT_ID, 1);
+    Thread.sleep(10);
+    Assert.assertNull(cache.getCacheSet().get(
+        new RetryCache.CacheEntry(CLIENT_ID, 1, 0)));
+    // expired entries are removed as new ones are added
+    cache.addCacheEntry(CLIENT_ID, 2);
+    Assert.assertEquals(1, cache.getCacheSet().size());
+  }
+
+  @Test
+  public void testSizeLimit() {
+    // the smallest cache, of a single stripe of 16 entries
+    RetryCache cache = new RetryCache("TestRetryCacheSizeLimit", 0,
+        100 * 1000 * 1000 * 1000L);
+    Assert.assertEquals(1, cache.getNumStripes());
+    for (int i = 0; i < 20; i++) {
+      cache.addCacheEntry(CLIENT_ID, i);
+    }
+    Assert.assertEquals(16, cache.getCacheSet().size());
+    // the oldest entries are evicted first
+    Assert.assertNull(cache.getCacheSet().get(
+        new RetryCache.CacheEntry(CLIENT_ID, 3, 0)));
+    Assert.assertNotNull(cache.getCacheSet().get(
+        new RetryCache.CacheEntry(CLIENT_ID, 4, 0)));
+  }
+
+  @Test(timeout = 60000)
+  public void testLockBlocksAllStripes() throws Exception {
+    final RetryCache cache = new RetryCache("TestRetryCacheLock", 1,
+        100 * 1000 * 1000 * 1000L);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    cache.lock();
+    Future<?> future;
+    try {
+      future = executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          cache.addCacheEntry(CLIENT_ID, 1);
+        }
+      });
+      Thread.sleep(100);
+      Assert.assertFalse(future.isDone());
+    } finally {
+      cache.unlock();
+    }
+    future.get();
+    executor.shutdown();
+    Assert.assertEquals(1, cache.getCacheSet().size());
+    Assert.assertEquals(1,
+        cache.getMetricsForTests().getCacheLockContended());
+  }
 }
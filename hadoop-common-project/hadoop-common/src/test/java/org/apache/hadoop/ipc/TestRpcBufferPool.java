@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for {@link RpcBufferPool} and the RPC server using it. */
+public class TestRpcBufferPool extends TestRpcBase {
+
+  @Before
+  public void setup() {
+    setupConf();
+  }
+
+  @Test
+  public void testSizeClasses() {
+    assertEquals(0, RpcBufferPool.getSizeClass(1));
+    assertEquals(0, RpcBufferPool.getSizeClass(1024));
+    assertEquals(1, RpcBufferPool.getSizeClass(1025));
+    assertEquals(1, RpcBufferPool.getSizeClass(2048));
+    assertEquals(2, RpcBufferPool.getSizeClass(2049));
+    assertEquals(10, RpcBufferPool.getSizeClass(1024 * 1024));
+  }
+
+  @Test
+  public void testReuseAfterLastRelease() {
+    RpcBufferPool pool = new RpcBufferPool(64 * 1024);
+    RpcBufferPool.PooledBuffer buffer = pool.acquire(1500);
+    assertEquals(2048, buffer.array().length);
+    ByteBuffer bb = buffer.wrap(1500);
+    assertEquals(0, bb.position());
+    assertEquals(1500, bb.limit());
+
+    buffer.retain();
+    buffer.release();
+    assertEquals(0, pool.getNumPooled());
+    // a buffer still referenced is never handed out again
+    assertNotSame(buffer.array(), pool.acquire(2000).array());
+
+    buffer.release();
+    assertEquals(1, pool.getNumPooled());
+    assertSame(buffer.array(), pool.acquire(2000).array());
+    assertEquals(0, pool.getNumPooled());
+  }
+
+  @Test
+  public void testLargeBuffersNotPooled() {
+    RpcBufferPool pool = new RpcBufferPool(4096);
+    RpcBufferPool.PooledBuffer buffer = pool.acquire(5000);
+    assertEquals(5000, buffer.array().length);
+    buffer.release();
+    assertEquals(0, pool.getNumPooled());
+  }
+
+  @Test
+  public void testPoolIsBounded() {
+    RpcBufferPool pool = new RpcBufferPool(RpcBufferPool.CLASS_CAPACITY);
+    List<RpcBufferPool.PooledBuffer> buffers = new ArrayList<>();
+    for (int i = 0; i < 2 * RpcBufferPool.MIN_BUFFERS_PER_CLASS; i++) {
+      buffers.add(pool.acquire(RpcBufferPool.CLASS_CAPACITY));
+    }
+    for (RpcBufferPool.PooledBuffer buffer : buffers) {
+      buffer.release();
+    }
+    assertEquals(RpcBufferPool.MIN_BUFFERS_PER_CLASS, pool.getNumPooled());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testReleaseTwice() {
+    RpcBufferPool.PooledBuffer buffer = new RpcBufferPool(4096).acquire(10);
+    buffer.release();
+    buffer.release();
+  }
+
+  @Test(timeout = 60000)
+  public void testServerWithBufferPool() throws Exception {
+    conf.setBoolean(
+        CommonConfigurationKeys.IPC_SERVER_BUFFER_POOL_ENABLED_KEY, true);
+    // mix pooled and unpooled requests and responses
+    conf.setInt(
+        CommonConfigurationKeys.IPC_SERVER_BUFFER_POOL_MAX_BUFFER_SIZE_KEY,
+        4096);
+    Server server = setupTestServer(conf, 4);
+    final TestRpcService proxy = getClient(addr, conf);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (int j = 0; j < 200; j++) {
+              String msg = RandomStringUtils.randomAlphanumeric(j * 50);
+              assertEquals(msg,
+                  convert(proxy.echo(null, newEchoRequest(msg))));
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+      stop(server, proxy);
+    }
+  }
+}
@@ -0,0 +1,279 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.protobuf.Message;
+import com.google.protobuf.ServiceException;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.ipc.Server.Call;
+import org.apache.hadoop.security.AccessControlException;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for {@link RpcCoalescer} and the RPC server using it. */
+public class TestRpcCoalescer extends TestRpcBase {
+
+  @Before
+  public void setup() {
+    setupConf();
+  }
+
+  private static Call newCall(String user, String address) throws Exception {
+    Call call = mock(Call.class);
+    when(call.getRemoteUser()).thenReturn(
+        UserGroupInformation.createRemoteUser(user));
+    when(call.getHostInetAddress()).thenReturn(
+        InetAddress.getByName(address));
+    return call;
+  }
+
+  private static RpcCoalescer.Key newKey(String msg) {
+    return new RpcCoalescer.Key("protocol", "echo", newEchoRequest(msg));
+  }
+
+  @Test
+  public void testIdenticalCallsShareResult() throws Exception {
+    RpcCoalescer coalescer = new RpcCoalescer(Arrays.asList("echo"));
+    Call first = newCall("alice", "10.0.0.1");
+    Call second = newCall("alice", "10.0.0.1");
+
+    RpcCoalescer.InFlight inFlight =
+        coalescer.begin(newKey("a"), first);
+    assertNotNull(inFlight);
+    assertNull(coalescer.begin(newKey("a"), second));
+    verify(second).deferResponse();
+
+    assertEquals(1, inFlight.complete(newEchoResponse("a"), null));
+    verify(second).setDeferredResponse(any(Writable.class));
+    verify(first, never()).setDeferredResponse(any(Writable.class));
+    assertEquals(0, coalescer.getNumInFlight());
+
+    // a call after the completion executes again
+    assertNotNull(coalescer.begin(newKey("a"), second));
+  }
+
+  @Test
+  public void testDifferentRequestsDoNotShare() throws Exception {
+    RpcCoalescer coalescer = new RpcCoalescer(Arrays.asList("echo"));
+    Call call = newCall("alice", "10.0.0.1");
+    assertNotNull(coalescer.begin(newKey("a"), call));
+
+    Call otherRequest = newCall("alice", "10.0.0.1");
+    assertNotNull(coalescer.begin(newKey("b"), otherRequest));
+    assertEquals(2, coalescer.getNumInFlight());
+  }
+
+  @Test
+  public void testCheckedCallersShare() throws Exception {
+    RpcCoalescer coalescer = new RpcCoalescer(Arrays.asList("echo"));
+    final List<String> checked = new ArrayList<>();
+    coalescer.setCheck(new CoalescedCallCheck() {
+      @Override
+      public boolean mayShare(String protocol, String method,
+          Message request) throws IOException {
+        checked.add(method);
+        return true;
+      }
+    });
+    Call first = newCall("alice", "10.0.0.1");
+    RpcCoalescer.InFlight inFlight = coalescer.begin(newKey("a"), first);
+    assertNotNull(inFlight);
+    // the first call is not checked, it executes anyway
+    assertTrue(checked.isEmpty());
+
+    // another user on another host shares the result
+    Call otherUser = newCall("bob", "10.0.0.2");
+    assertNull(coalescer.begin(newKey("a"), otherUser));
+    assertEquals(Arrays.asList("echo"), checked);
+
+    assertEquals(1, inFlight.complete(newEchoResponse("a"), null));
+    verify(otherUser).setDeferredResponse(any(Writable.class));
+  }
+
+  @Test
+  public void testCallerDependentCallsShareWithSameCaller() throws Exception {
+    RpcCoalescer coalescer = new RpcCoalescer(Arrays.asList("echo"));
+    coalescer.setCheck(new CoalescedCallCheck() {
+      @Override
+      public boolean mayShare(String protocol, String method,
+          Message request) throws IOException {
+        return true;
+      }
+
+      @Override
+      public boolean dependsOnCaller(String protocol, String method) {
+        return true;
+      }
+    });
+    Call first = newCall("alice", "10.0.0.1");
+    RpcCoalescer.InFlight inFlight = coalescer.begin(
+        coalescer.newKey("protocol", "echo", newEchoRequest("a"), first),
+        first);
+    assertNotNull(inFlight);
+
+    // another user, or the same user on another host, executes on its own
+    Call otherUser = newCall("bob", "10.0.0.1");
+    assertNotNull(coalescer.begin(
+        coalescer.newKey("protocol", "echo", newEchoRequest("a"), otherUser),
+        otherUser));
+    Call otherHost = newCall("alice", "10.0.0.2");
+    assertNotNull(coalescer.begin(
+        coalescer.newKey("protocol", "echo", newEchoRequest("a"), otherHost),
+        otherHost));
+    assertEquals(3, coalescer.getNumInFlight());
+
+    Call sameCaller = newCall("alice", "10.0.0.1");
+    assertNull(coalescer.begin(
+        coalescer.newKey("protocol", "echo", newEchoRequest("a"), sameCaller),
+        sameCaller));
+    assertEquals(1, inFlight.complete(newEchoResponse("a"), null));
+    verify(sameCaller).setDeferredResponse(any(Writable.class));
+    verify(otherUser, never()).deferResponse();
+    verify(otherHost, never()).deferResponse();
+  }
+
+  @Test
+  public void testRejectedCallerExecutesAlone() throws Exception {
+    RpcCoalescer coalescer = new RpcCoalescer(Arrays.asList("echo"));
+    coalescer.setCheck(new CoalescedCallCheck() {
+      @Override
+      public boolean mayShare(String protocol, String method,
+          Message request) throws IOException {
+        throw new AccessControlException("denied");
+      }
+    });
+    Call first = newCall("alice", "10.0.0.1");
+    RpcCoalescer.InFlight inFlight = coalescer.begin(newKey("a"), first);
+    Call denied = newCall("bob", "10.0.0.1");
+    RpcCoalescer.InFlight alone = coalescer.begin(newKey("a"), denied);
+    assertNotNull(alone);
+    verify(denied, never()).deferResponse();
+    assertEquals(1, coalescer.getNumInFlight());
+
+    // nothing waits for the rejected call, and completing it leaves the
+    // shared one in flight
+    assertEquals(0, alone.complete(newEchoResponse("a"), null));
+    assertEquals(1, coalescer.getNumInFlight());
+    assertEquals(0, inFlight.complete(newEchoResponse("a"), null));
+    assertEquals(0, coalescer.getNumInFlight());
+  }
+
+  @Test
+  public void testErrorIsShared() throws Exception {
+    RpcCoalescer coalescer = new RpcCoalescer(Arrays.asList("echo"));
+    Call first = newCall("alice", "10.0.0.1");
+    Call second = newCall("alice", "10.0.0.1");
+    RpcCoalescer.InFlight inFlight =
+        coalescer.begin(newKey("a"), first);
+    assertNull(coalescer.begin(newKey("a"), second));
+
+    IOException e = new IOException("failed");
+    assertEquals(1, inFlight.complete(null, e));
+    verify(second).setDeferredError(e);
+    // completing again does nothing
+    assertEquals(0, inFlight.complete(null, e));
+  }
+
+  @Test
+  public void testErrorThrowableIsShared() throws Exception {
+    RpcCoalescer coalescer = new RpcCoalescer(Arrays.asList("echo"));
+    Call first = newCall("alice", "10.0.0.1");
+    Call second = newCall("alice", "10.0.0.1");
+    RpcCoalescer.InFlight inFlight = coalescer.begin(newKey("a"), first);
+    assertNull(coalescer.begin(newKey("a"), second));
+
+    OutOfMemoryError e = new OutOfMemoryError("failed");
+    assertEquals(1, inFlight.complete(null, e));
+    verify(second).setDeferredError(e);
+  }
+
+  @Test(timeout = 60000)
+  public void testServerCoalescesCalls() throws Exception {
+    conf.set(CommonConfigurationKeys.IPC_SERVER_COALESCING_METHODS_KEY,
+        "sleep, error");
+    final int numCalls = 8;
+    Server server = setupTestServer(conf, numCalls);
+    final TestRpcService proxy = getClient(addr, conf);
+    ExecutorService executor = Executors.newFixedThreadPool(numCalls);
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int i = 0; i < numCalls; i++) {
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            proxy.sleep(null, newSleepRequest(2000));
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+      assertTrue(server.getRpcMetrics().getRpcCoalescedCalls() > 0);
+
+      futures.clear();
+      for (int i = 0; i < numCalls; i++) {
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            try {
+              proxy.error(null, newEmptyRequest());
+              fail("expected an exception");
+            } catch (ServiceException e) {
+              RemoteException re = (RemoteException) e.getCause();
+              assertEquals(RpcServerException.class.getName(),
+                  re.getClassName());
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+      assertEquals(0, server.coalescer.getNumInFlight());
+    } finally {
+      executor.shutdownNow();
+      stop(server, proxy);
+    }
+  }
+}
@@ -0,0 +1,243 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.ipc.CallQueueManager.CallQueueOverflowException;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestShardedFairCallQueue {
+  private Configuration conf;
+
+  /** A call of a given priority, cheaper than a mock for many calls. */
+  static final class TestCall implements Schedulable {
+    private final int priority;
+
+    TestCall(int priority) {
+      this.priority = priority;
+    }
+
+    @Override
+    public UserGroupInformation getUserGroupInformation() {
+      return null;
+    }
+
+    @Override
+    public int getPriorityLevel() {
+      return priority;
+    }
+  }
+
+  private Schedulable newCall(int priority) {
+    return new TestCall(priority);
+  }
+
+  @Before
+  public void setUp() {
+    conf = new Configuration();
+    conf.setInt("ns." + CommonConfigurationKeys.IPC_CALLQUEUE_SHARDS_KEY, 4);
+  }
+
+  @Test
+  public void testRing() {
+    ShardedCallQueue.Ring<Integer> ring = new ShardedCallQueue.Ring<>(3);
+    assertNull(ring.poll());
+    // wrap around several times
+    for (int round = 0; round < 5; round++) {
+      assertTrue(ring.offer(1));
+      assertTrue(ring.offer(2));
+      assertTrue(ring.offer(3));
+      assertFalse(ring.offer(4));
+      assertEquals(3, ring.size());
+      assertEquals(Integer.valueOf(1), ring.peek());
+      assertEquals(Integer.valueOf(1), ring.poll());
+      assertEquals(Integer.valueOf(2), ring.poll());
+      assertEquals(Integer.valueOf(3), ring.poll());
+      assertNull(ring.poll());
+      assertEquals(0, ring.size());
+    }
+  }
+
+  @Test
+  public void testTotalCapacityOfSubQueues() {
+    for (int levels : new int[] {1, 4, 7}) {
+      for (int capacity : new int[] {10, 1000, 1025}) {
+        FairCallQueue<Schedulable> queue = new ShardedFairCallQueue<>(
+            levels, capacity, "ns", conf);
+        assertEquals(capacity, queue.remainingCapacity());
+      }
+    }
+  }
+
+  @Test
+  public void testFifoForOneProducer() throws InterruptedException {
+    FairCallQueue<Schedulable> queue =
+        new ShardedFairCallQueue<>(1, 100, "ns", conf);
+    List<Schedulable> calls = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      Schedulable call = newCall(0);
+      calls.add(call);
+      queue.put(call);
+    }
+    assertEquals(100, queue.size());
+    for (Schedulable call : calls) {
+      assertSame(call, queue.take());
+    }
+    assertNull(queue.poll());
+  }
+
+  @Test
+  public void testOverflow() {
+    // 2 levels of 5 calls
+    FairCallQueue<Schedulable> queue =
+        new ShardedFairCallQueue<>(2, 10, "ns", conf);
+    for (int i = 0; i < 10; i++) {
+      queue.add(newCall(0));
+    }
+    assertEquals(10, queue.size());
+    assertEquals(0, queue.remainingCapacity());
+    try {
+      queue.add(newCall(0));
+      fail("expected overflow");
+    } catch (CallQueueOverflowException e) {
+      assertSame(CallQueueOverflowException.KEEPALIVE, e);
+    }
+    try {
+      queue.add(newCall(1));
+      fail("expected overflow");
+    } catch (CallQueueOverflowException e) {
+      assertSame(CallQueueOverflowException.DISCONNECT, e);
+    }
+  }
+
+  @Test
+  public void testPrioritization() {
+    FairCallQueue<Schedulable> queue =
+        new ShardedFairCallQueue<>(3, 30, "ns", conf);
+    Schedulable low = newCall(2);
+    Schedulable high = newCall(0);
+    queue.add(low);
+    queue.add(high);
+    // the multiplexer starts with the highest priority
+    assertSame(high, queue.poll());
+    assertSame(low, queue.poll());
+    assertNull(queue.poll());
+  }
+
+  @Test(timeout = 60000)
+  public void testConcurrentProducersAndConsumers() throws Exception {
+    final int numProducers = 8;
+    final int numConsumers = 16;
+    final int callsPerProducer = 10000;
+    final FairCallQueue<Schedulable> queue =
+        new ShardedFairCallQueue<>(4, 64, "ns", conf);
+    final Set<Schedulable> taken = ConcurrentHashMap.newKeySet();
+    final CountDownLatch done =
+        new CountDownLatch(numProducers * callsPerProducer);
+    final List<Schedulable> calls = new ArrayList<>();
+    for (int i = 0; i < numProducers * callsPerProducer; i++) {
+      calls.add(newCall(i % 4));
+    }
+
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < numConsumers; i++) {
+      Thread consumer = new Thread() {
+        @Override
+        public void run() {
+          try {
+            while (true) {
+              Schedulable call = queue.take();
+              assertTrue(taken.add(call));
+              done.countDown();
+            }
+          } catch (InterruptedException e) {
+            // stopped
+          }
+        }
+      };
+      consumer.setDaemon(true);
+      consumer.start();
+      threads.add(consumer);
+    }
+    for (int i = 0; i < numProducers; i++) {
+      final int first = i * callsPerProducer;
+      Thread producer = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int j = first; j < first + callsPerProducer; j++) {
+              queue.put(calls.get(j));
+            }
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      };
+      producer.setDaemon(true);
+      producer.start();
+      threads.add(producer);
+    }
+
+    assertTrue(done.await(50, TimeUnit.SECONDS));
+    for (Thread thread : threads) {
+      thread.interrupt();
+    }
+    assertEquals(calls.size(), taken.size());
+    assertEquals(0, queue.size());
+  }
+
+  @Test(timeout = 60000)
+  public void testBenchmark() throws Exception {
+    for (String name : new String[] {"FairCallQueue", "ShardedFairCallQueue"}) {
+      BlockingQueue<Schedulable> queue =
+          CallQueueBenchmark.createQueue(name, 4, 1000, conf);
+      assertTrue(CallQueueBenchmark.run(queue, 4, 16, 100000, 4) > 0);
+    }
+  }
+
+  @Test
+  public void testCallQueueManager() throws InterruptedException {
+    CallQueueManager<Schedulable> manager = new CallQueueManager<>(
+        CallQueueManager.convertQueueClass(
+            ShardedFairCallQueue.class, Schedulable.class),
+        DefaultRpcScheduler.class, false, 10, "ns", conf);
+    Schedulable call = newCall(0);
+    manager.put(call);
+    assertEquals(1, manager.size());
+    assertSame(call, manager.take());
+  }
+}
@@ -36,6 +36,7 @@
 
 import org.apache.hadoop.metrics2.MetricsRecordBuilder;
 import org.apache.hadoop.metrics2.util.Quantile;
+import org.apache.hadoop.util.FakeTimer;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -409,4 +410,165 @@ public void testMutableQuantilesEmptyRollover() throws Exception {
     verify(mb, times(2)).addGauge(
         info("FooNumOps", "Number of ops for stat with 5s interval"), (long) 0);
   }
+
+  /**
+   * Ensure that the percentiles from {@link MutableHistogram} are within the
+   * relative error of its buckets, and that the cumulative bucket counts are
+   * exact.
+   */
+  @Test
+  public void testMutableHistogram() throws Exception {
+    MetricsRecordBuilder mb = mockMetricsRecordBuilder();
+    FakeTimer timer = new FakeTimer();
+    MutableHistogram histogram = new MutableHistogram("foo", "stat", "Ops",
+        "Latency", 5, timer);
+    for (long i = 1; i <= 1000; i++) {
+      histogram.add(i);
+      histogram.add(1001 - i);
+    }
+    timer.advance(5000);
+    histogram.snapshot(mb, false);
+
+    verify(mb).addGauge(
+        info("FooNumOps", "Number of ops for stat with 5s interval"),
+        (long) 2000);
+    String name = "Foo%dthPercentileLatency";
+    String desc = "%d percentile latency with 5 second interval for stat";
+    for (Quantile q : MutableQuantiles.quantiles) {
+      int percentile = (int) (100 * q.quantile);
+      String n = String.format(name, percentile);
+      String d = String.format(desc, percentile);
+      long expected = (long) (q.quantile * 1000);
+      verify(mb).addGauge(eq(info(n, d)), leq(expected + expected / 32 + 1));
+      verify(mb).addGauge(eq(info(n, d)), geq(expected));
+    }
+    verify(mb).addCounter(
+        info("FooHistogramNumOps", "Total number of ops for stat"),
+        (long) 2000);
+    verify(mb).addCounter(
+        info("FooHistogramSumLatency", "Sum of latency for stat"),
+        (long) 1001000);
+    verify(mb).addCounter(info("FooHistogramLt16Latency",
+        "Total number of ops for stat with latency below 16"), (long) 30);
+    verify(mb).addCounter(info("FooHistogramLt1024Latency",
+        "Total number of ops for stat with latency below 1024"), (long) 2000);
+  }
+
+  @Test
+  public void testMutableHistogramBuckets() {
+    long previousHighest = -1;
+    for (int i = 0; i < MutableHistogram.NUM_BUCKETS; i++) {
+      long highest = MutableHistogram.highestValue(i);
+      assertTrue(highest > previousHighest);
+      assertEquals(i, MutableHistogram.bucketIndex(previousHighest + 1));
+      assertEquals(i, MutableHistogram.bucketIndex(highest));
+      previousHighest = highest;
+    }
+    assertEquals(Long.MAX_VALUE, previousHighest);
+    assertEquals(0, MutableHistogram.bucketIndex(-1));
+  }
+
+  /**
+   * Test that {@link MutableHistogram} rolls the window over when snapshotted
+   * after the interval, while the cumulative counts keep growing.
+   */
+  @Test
+  public void testMutableHistogramRollover() throws Exception {
+    MetricsRecordBuilder mb = mockMetricsRecordBuilder();
+    FakeTimer timer = new FakeTimer();
+    MutableHistogram histogram = new MutableHistogram("foo", "stat", "Ops",
+        "Latency", 5, timer);
+    String name = "Foo%dthPercentileLatency";
+    String desc = "%d percentile latency with 5 second interval for stat";
+
+    histogram.snapshot(mb, true);
+    verify(mb).addGauge(
+        info("FooNumOps", "Number of ops for stat with 5s interval"), (long) 0);
+    for (int i = 1; i <= 3; i++) {
+      for (long j = 1; j <= 1000; j++) {
+        histogram.add(i);
+      }
+      // not rolled over before the end of the interval
+      timer.advance(4000);
+      histogram.snapshot(mb, false);
+      timer.advance(1000);
+      histogram.snapshot(mb, false);
+      for (Quantile q : MutableQuantiles.quantiles) {
+        int percentile = (int) (100 * q.quantile);
+        String n = String.format(name, percentile);
+        String d = String.format(desc, percentile);
+        verify(mb).addGauge(info(n, d), (long) i);
+      }
+      verify(mb).addCounter(
+          info("FooHistogramNumOps", "Total number of ops for stat"),
+          (long) 1000 * i);
+    }
+    verify(mb, times(3)).addGauge(
+        info("FooNumOps", "Number of ops for stat with 5s interval"),
+        (long) 1000);
+  }
+
+  /**
+   * Test that {@link MutableHistogram} rolls the window over at every
+   * snapshot taken once per interval, even when a snapshot comes a little
+   * before the end of the interval.
+   */
+  @Test
+  public void testMutableHistogramJitteredRollover() throws Exception {
+    MetricsRecordBuilder mb = mockMetricsRecordBuilder();
+    FakeTimer timer = new FakeTimer();
+    long start = timer.monotonicNow();
+    MutableHistogram histogram = new MutableHistogram("foo", "stat", "Ops",
+        "Latency", 5, timer);
+    String name = "Foo%dthPercentileLatency";
+    String desc = "%d percentile latency with 5 second interval for stat";
+
+    long[] jitters = {-10, 10, -5, 0, -200, 300};
+    for (int i = 1; i <= jitters.length; i++) {
+      for (long j = 1; j <= 1000; j++) {
+        histogram.add(i);
+      }
+      timer.advance(start + i * 5000L + jitters[i - 1] - timer.monotonicNow());
+      histogram.snapshot(mb, false);
+      for (Quantile q : MutableQuantiles.quantiles) {
+        int percentile = (int) (100 * q.quantile);
+        String n = String.format(name, percentile);
+        String d = String.format(desc, percentile);
+        verify(mb).addGauge(info(n, d), (long) i);
+      }
+    }
+    verify(mb, times(jitters.length)).addGauge(
+        info("FooNumOps", "Number of ops for stat with 5s interval"),
+        (long) 1000);
+  }
+
+  @Test(timeout = 30000)
+  public void testMutableHistogramConcurrentAdds() throws Exception {
+    MetricsRecordBuilder mb = mockMetricsRecordBuilder();
+    FakeTimer timer = new FakeTimer();
+    final MutableHistogram histogram = new MutableHistogram("foo", "stat",
+        "Ops", "Latency", 5, timer);
+    final int numThreads = 8;
+    final int numAdds = 100000;
+    Thread[] threads = new Thread[numThreads];
+    for (int i = 0; i < numThreads; i++) {
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < numAdds; j++) {
+            histogram.add(j);
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    timer.advance(5000);
+    histogram.snapshot(mb, false);
+    verify(mb).addGauge(
+        info("FooNumOps", "Number of ops for stat with 5s interval"),
+        (long) numThreads * numAdds);
+  }
 }
@@ -17,6 +17,7 @@
  */
 package org.apache.hadoop.security;
 
+import java.io.File;
 import java.io.IOException;
 
 import java.util.ArrayList;
@@ -835,4 +836,100 @@ public void testNegativeCacheEntriesExpire() throws Exception {
     timer.advance(1000);
     assertFalse(groups.getNegativeCache().contains("user2"));
   }
+
+  @Test(timeout = 30000)
+  public void testPrefetch() throws Exception {
+    conf.setInt(
+        CommonConfigurationKeys.HADOOP_SECURITY_GROUPS_PREFETCH_THREADS, 1);
+    Groups groups = new Groups(conf, new FakeTimer());
+    groups.cacheGroupsAdd(Arrays.asList(myGroups));
+    groups.refresh();
+    FakeGroupMapping.clearBlackList();
+    FakeGroupMapping.addToBlackList("user2");
+
+    final CountDownLatch done = new CountDownLatch(3);
+    Runnable callback = new Runnable() {
+      @Override
+      public void run() {
+        done.countDown();
+      }
+    };
+    // hold the lookup of user1, so the second request for it waits for the
+    // same lookup and user2 is queued
+    FakeGroupMapping.pause();
+    assertTrue(groups.prefetch("user1", callback));
+    assertTrue(groups.prefetch("user1", callback));
+    assertTrue(groups.prefetch("user2", callback));
+    assertFalse(groups.isCached("user1"));
+    FakeGroupMapping.resume();
+    done.await();
+
+    assertEquals(2, FakeGroupMapping.getRequestCount());
+    assertTrue(groups.isCached("user1"));
+    assertTrue(groups.getNegativeCache().contains("user2"));
+    assertFalse(groups.prefetch("user1", callback));
+    assertEquals(Arrays.asList(myGroups).size(),
+        groups.getGroups("user1").size());
+    assertEquals(2, FakeGroupMapping.getRequestCount());
+  }
+
+  @Test(timeout = 30000)
+  public void testPrefetchMaxPending() throws Exception {
+    conf.setInt(
+        CommonConfigurationKeys.HADOOP_SECURITY_GROUPS_PREFETCH_THREADS, 1);
+    conf.setInt(
+        CommonConfigurationKeys.HADOOP_SECURITY_GROUPS_PREFETCH_MAX_PENDING, 2);
+    Groups groups = new Groups(conf, new FakeTimer());
+    groups.cacheGroupsAdd(Arrays.asList(myGroups));
+    FakeGroupMapping.clearBlackList();
+
+    final CountDownLatch done = new CountDownLatch(2);
+    Runnable callback = new Runnable() {
+      @Override
+      public void run() {
+        done.countDown();
+      }
+    };
+    FakeGroupMapping.pause();
+    try {
+      assertTrue(groups.prefetch("user1", callback));
+      assertTrue(groups.prefetch("user2", callback));
+      // too many callbacks wait, the caller looks the groups up itself
+      assertFalse(groups.prefetch("user3", callback));
+      assertFalse(groups.prefetch("user1", callback));
+    } finally {
+      FakeGroupMapping.resume();
+    }
+    done.await();
+    // room again once the callbacks ran
+    assertTrue(groups.prefetch("user3", callback));
+  }
+
+  @Test
+  public void testPersistCache() throws Exception {
+    File file = new File(GenericTestUtils.getTestDir(), "groups-cache");
+    file.delete();
+    conf.set(CommonConfigurationKeys.HADOOP_SECURITY_GROUPS_CACHE_PERSIST_FILE,
+        file.getPath());
+    conf.setLong(CommonConfigurationKeys.HADOOP_SECURITY_GROUPS_CACHE_SECS, 60);
+    FakeTimer timer = new FakeTimer();
+    Groups groups = new Groups(conf, timer);
+    groups.cacheGroupsAdd(Arrays.asList(myGroups));
+    groups.refresh();
+    List<String> userGroups = groups.getGroups("user1");
+    groups.persist();
+    assertEquals(1, FakeGroupMapping.getRequestCount());
+
+    // a restarted server does not look the user up again
+    Groups restarted = new Groups(conf, timer);
+    assertTrue(restarted.isCached("user1"));
+    assertEquals(userGroups, restarted.getGroups("user1"));
+    assertEquals(1, FakeGroupMapping.getRequestCount());
+
+    // unless the saved groups are older than the cache timeout
+    timer.advance(61 * 1000);
+    Groups stale = new Groups(conf, timer);
+    assertFalse(stale.isCached("user1"));
+    assertEquals(0, stale.loadPersisted());
+  }
 }
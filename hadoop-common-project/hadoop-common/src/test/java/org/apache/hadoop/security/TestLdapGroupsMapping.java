@@ -22,11 +22,14 @@
 import static org.apache.hadoop.security.LdapGroupsMapping.READ_TIMEOUT;
 import static org.apache.hadoop.test.GenericTestUtils.assertExceptionContains;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -38,13 +41,21 @@
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.HashSet;
 
 import javax.naming.CommunicationException;
+import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
 import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
@@ -199,6 +210,51 @@ public void testGetGroupsWithLdapDown() throws NamingException {
     doTestGetGroups(Arrays.asList(new String[] {}), 4);
   }
   
+  private static SearchResult newUserResult(String name, String... groupDNs) {
+    Attributes attrs = new BasicAttributes();
+    attrs.put(new BasicAttribute("sAMAccountName", name));
+    Attribute memberOf = new BasicAttribute("memberOf");
+    for (String groupDN : groupDNs) {
+      memberOf.add(groupDN);
+    }
+    attrs.put(memberOf);
+    return new SearchResult(name, null, attrs);
+  }
+
+  @Test
+  public void testGetGroupsOfUsers() throws NamingException {
+    NamingEnumeration<SearchResult> results = mock(NamingEnumeration.class);
+    when(results.hasMoreElements()).thenReturn(true, true, true, false);
+    // names are matched case insensitively, and only the first result of a
+    // user counts
+    when(results.nextElement()).thenReturn(
+        newUserResult("BOB", "CN=g1,DC=test,DC=com", "CN=g2,DC=test,DC=com"),
+        newUserResult("alice", "CN=g3,DC=test,DC=com"),
+        newUserResult("alice", "CN=other,DC=test,DC=com"));
+    when(getContext().search(anyString(), anyString(), any(Object[].class),
+        any(SearchControls.class))).thenReturn(results);
+
+    Configuration conf = getBaseConf(TEST_LDAP_URL);
+    conf.set(LdapGroupsMapping.MEMBEROF_ATTR_KEY, "memberOf");
+    LdapGroupsMapping groupsMapping = getGroupsMapping();
+    groupsMapping.setConf(conf);
+    Map<String, List<String>> groups = groupsMapping.getGroupsOfUsers(
+        Arrays.asList("alice", "bob", "carol"));
+
+    assertEquals(Arrays.asList("g3"), groups.get("alice"));
+    assertEquals(Arrays.asList("g1", "g2"), groups.get("bob"));
+    // not found
+    assertEquals(Collections.emptyList(), groups.get("carol"));
+
+    // one query OR-ing the user filter of each user
+    String userFilter = LdapGroupsMapping.USER_SEARCH_FILTER_DEFAULT;
+    verify(getContext(), times(1)).search(anyString(),
+        eq("(|" + userFilter + userFilter.replace("{0}", "{1}")
+            + userFilter.replace("{0}", "{2}") + ")"),
+        eq(new Object[] {"alice", "bob", "carol"}),
+        any(SearchControls.class));
+  }
+
   private void doTestGetGroups(List<String> expectedGroups, int searchTimes)
       throws NamingException {
     Configuration conf = getBaseConf(TEST_LDAP_URL);
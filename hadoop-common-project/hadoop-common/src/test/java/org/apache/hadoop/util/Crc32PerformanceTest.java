@@ -164,6 +164,40 @@ public DataChecksum.Type crcType() {
         return DataChecksum.Type.CRC32C;
       }
     }
+
+    /** PureJavaCrc32C hidden from the pairwise verification of chunks. */
+    final class PureJavaCSerial extends AbstractCrc32<Checksum> {
+      @Override
+      public Checksum newAlgorithm() {
+        final PureJavaCrc32C crc = new PureJavaCrc32C();
+        return new Checksum() {
+          @Override
+          public void update(int b) {
+            crc.update(b);
+          }
+
+          @Override
+          public void update(byte[] b, int off, int len) {
+            crc.update(b, off, len);
+          }
+
+          @Override
+          public long getValue() {
+            return crc.getValue();
+          }
+
+          @Override
+          public void reset() {
+            crc.reset();
+          }
+        };
+      }
+
+      @Override
+      public DataChecksum.Type crcType() {
+        return DataChecksum.Type.CRC32C;
+      }
+    }
   }
 
   final int dataLengthMB;
@@ -185,6 +219,7 @@ public DataChecksum.Type crcType() {
       crcs.add(Crc32.ZipC.class);
     }
     crcs.add(Crc32.PureJava.class);
+    crcs.add(Crc32.PureJavaCSerial.class);
     crcs.add(Crc32.PureJavaC.class);
 
     if (NativeCrc32.isAvailable()) {
@@ -198,6 +198,82 @@ private static ByteBuffer directify(ByteBuffer dataBuf) {
     return newBuf;
   }
 
+  @Test
+  public void testCrcPair() {
+    Random random = new Random();
+    byte[] data = new byte[2100];
+    random.nextBytes(data);
+    PureJavaCrc32C crc = new PureJavaCrc32C();
+    for (int len : new int[] {0, 1, 7, 8, 9, 512, 1000}) {
+      int offA = random.nextInt(50);
+      int offB = offA + len + random.nextInt(50);
+      long pair = PureJavaCrc32C.crcPair(data, offA, offB, len);
+      crc.reset();
+      crc.update(data, offA, len);
+      assertEquals(crc.getValue(), pair >>> 32);
+      crc.reset();
+      crc.update(data, offB, len);
+      assertEquals(crc.getValue(), pair & 0xffffffffL);
+    }
+  }
+
+  @Test
+  public void testPairwiseVerification() throws Exception {
+    final int bytesPerCrc = 64;
+    // an odd number of chunks and a partial chunk
+    byte[] data = new byte[5 * bytesPerCrc + 10];
+    new Random().nextBytes(data);
+    byte[] sums = new byte[6 * 4];
+    DataChecksum checksum =
+        DataChecksum.newDataChecksum(DataChecksum.Type.CRC32C, bytesPerCrc);
+    checksum.calculateChunkedSums(data, 0, data.length, sums, 0);
+    DataChecksum.verifyChunked(DataChecksum.Type.CRC32C, new PureJavaCrc32C(),
+        data, 0, data.length, bytesPerCrc, sums, 0, "fake file", 100);
+
+    // a mismatch in either chunk of a pair, or in the single chunks at
+    // the end, reports the position of that chunk
+    for (int chunk = 0; chunk < 6; chunk++) {
+      sums[chunk * 4] ^= 1;
+      try {
+        DataChecksum.verifyChunked(DataChecksum.Type.CRC32C,
+            new PureJavaCrc32C(), data, 0, data.length, bytesPerCrc, sums, 0,
+            "fake file", 100);
+        fail("Did not throw on bad checksums");
+      } catch (ChecksumException ce) {
+        assertEquals(100 + chunk * bytesPerCrc, ce.getPos());
+      }
+      sums[chunk * 4] ^= 1;
+    }
+  }
+
+  @Test
+  public void testDirectBuffers() throws Exception {
+    // chunks read in place must leave the position and limit unchanged
+    for (DataChecksum.Type type : CHECKSUM_TYPES) {
+      DataChecksum checksum = DataChecksum.newDataChecksum(type, 100);
+      ByteBuffer data = ByteBuffer.allocateDirect(1000);
+      byte[] bytes = new byte[1000];
+      new Random().nextBytes(bytes);
+      data.put(bytes);
+      data.position(10);
+      data.limit(990);
+      ByteBuffer sums = ByteBuffer.allocateDirect(40);
+      checksum.calculateChunkedSums(data, sums);
+      assertEquals(10, data.position());
+      assertEquals(990, data.limit());
+
+      byte[] expected = new byte[40];
+      checksum.calculateChunkedSums(bytes, 10, 980, expected, 0);
+      byte[] actual = new byte[40];
+      sums.duplicate().get(actual);
+      assertArrayEquals(expected, actual);
+
+      checksum.verifyChunkedSums(data, sums, "fake file", 0);
+      assertEquals(10, data.position());
+      assertEquals(990, data.limit());
+    }
+  }
+
   @Test
   public void testCrc32() throws Exception {
     new Crc32PerformanceTest(8, 3, true).run();
@@ -99,6 +99,7 @@
 import org.apache.hadoop.hdfs.client.HdfsDataOutputStream;
 import org.apache.hadoop.hdfs.client.impl.DfsClientConf;
 import org.apache.hadoop.hdfs.client.impl.LeaseRenewer;
+import org.apache.hadoop.hdfs.client.impl.MountTableClientProtocol;
 import org.apache.hadoop.hdfs.net.Peer;
 import org.apache.hadoop.hdfs.protocol.AclException;
 import org.apache.hadoop.hdfs.protocol.AddErasureCodingPolicyResponse;
@@ -360,6 +361,11 @@ public DFSClient(URI nameNodeUri, ClientProtocol rpcNamenode,
           nameNodeUri, nnFallbackToSimpleAuth);
       this.dtService = proxyInfo.getDelegationTokenService();
       this.namenode = proxyInfo.getProxy();
+      if (conf.getBoolean(HdfsClientConfigKeys.MountTable.ROUTING_ENABLED_KEY,
+          HdfsClientConfigKeys.MountTable.ROUTING_ENABLED_DEFAULT)) {
+        this.namenode = MountTableClientProtocol.create(conf, this.namenode,
+            nnFallbackToSimpleAuth);
+      }
     }
 
     String localInterfaces[] =
@@ -405,6 +405,21 @@ interface HedgedRead {
     int     THREADPOOL_SIZE_DEFAULT = 0;
   }
 
+  /** dfs.client.mount-table configuration properties */
+  interface MountTable {
+    String PREFIX = HdfsClientConfigKeys.PREFIX + "mount-table.";
+
+    /** Route calls to the owning NameNodes instead of through NNProxy. */
+    String  ROUTING_ENABLED_KEY = PREFIX + "routing.enabled";
+    boolean ROUTING_ENABLED_DEFAULT = false;
+    String  ZK_QUORUM_KEY = PREFIX + "zk.quorum";
+    String  ZK_PATH_KEY = PREFIX + "zk.path";
+    String  ZK_SESSION_TIMEOUT_MS_KEY = PREFIX + "zk.session.timeout";
+    int     ZK_SESSION_TIMEOUT_MS_DEFAULT = 30000;
+    String  ZK_CONNECTION_TIMEOUT_MS_KEY = PREFIX + "zk.connection.timeout";
+    int     ZK_CONNECTION_TIMEOUT_MS_DEFAULT = 30000;
+  }
+
   /** dfs.client.read.striped configuration properties */
   interface StripedRead {
     String PREFIX = Read.PREFIX + "striped.";
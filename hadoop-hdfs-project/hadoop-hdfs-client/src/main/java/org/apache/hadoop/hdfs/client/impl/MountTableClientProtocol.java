@@ -0,0 +1,347 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.client.impl;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.NodeCache;
+import org.apache.curator.framework.recipes.cache.NodeCacheListener;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.NameNodeProxiesClient;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.MountTable;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.apache.hadoop.ipc.RPC;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.ipc.StandbyException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Routes path based {@link ClientProtocol} calls straight to the NameNode
+ * owning the path, using the NNProxy mount table published in ZooKeeper.
+ * Calls without a single path, calls spanning several mount points and calls
+ * hitting a stale route go through the proxy as before.
+ */
+@InterfaceAudience.Private
+public class MountTableClientProtocol implements InvocationHandler, Closeable {
+  static final Logger LOG =
+      LoggerFactory.getLogger(MountTableClientProtocol.class);
+
+  /** Mount attribute of read-only replicas, they never own a path. */
+  static final String READ_ONLY_ATTRIBUTE = "readonly";
+
+  /**
+   * Trash of a user, owned by the owner of the path the trashed file had, as
+   * the proxy routes it.
+   */
+  static final Pattern TRASH_PATTERN =
+      Pattern.compile("/user/[^/]+/.Trash/[^/]+/(.+)");
+
+  /** Position of the path argument of the calls routed directly. */
+  static final Map<String, Integer> PATH_ARGUMENTS;
+  /** Calls the proxy aggregates over the mount points below the path. */
+  static final Set<String> AGGREGATED_CALLS;
+
+  static {
+    Map<String, Integer> args = new HashMap<>();
+    for (String name : new String[] {"getBlockLocations", "create", "append",
+        "setReplication", "setStoragePolicy", "unsetStoragePolicy",
+        "getStoragePolicy", "setPermission", "setOwner", "addBlock",
+        "getAdditionalDatanode", "complete", "truncate", "delete", "mkdirs",
+        "getListing", "recoverLease", "getPreferredBlockSize", "getFileInfo",
+        "isFileClosed", "getFileLinkInfo", "getLocatedFileInfo",
+        "getContentSummary", "setQuota", "fsync", "setTimes", "getLinkTarget",
+        "modifyAclEntries", "removeAclEntries", "removeDefaultAcl",
+        "removeAcl", "setAcl", "getAclStatus", "setXAttr", "getXAttrs",
+        "listXAttrs", "removeXAttr", "checkAccess", "setErasureCodingPolicy",
+        "getErasureCodingPolicy", "unsetErasureCodingPolicy", "getQuotaUsage",
+        "satisfyStoragePolicy"}) {
+      args.put(name, 0);
+    }
+    args.put("abandonBlock", 2);
+    PATH_ARGUMENTS = Collections.unmodifiableMap(args);
+    Set<String> aggregated = new HashSet<>();
+    Collections.addAll(aggregated,
+        "getListing", "getContentSummary", "getQuotaUsage");
+    AGGREGATED_CALLS = Collections.unmodifiableSet(aggregated);
+  }
+
+  private final Configuration conf;
+  private final ClientProtocol proxy;
+  private final AtomicBoolean fallbackToSimpleAuth;
+  private final Map<String, ClientProtocol> upstreams =
+      new ConcurrentHashMap<>();
+  // mount point -> owning fs, null until a valid table is installed
+  private volatile Map<String, String> mounts;
+  private volatile long version;
+  private CuratorFramework framework;
+  private NodeCache nodeCache;
+
+  @VisibleForTesting
+  MountTableClientProtocol(Configuration conf, ClientProtocol proxy,
+      AtomicBoolean fallbackToSimpleAuth) {
+    this.conf = conf;
+    this.proxy = proxy;
+    this.fallbackToSimpleAuth = fallbackToSimpleAuth;
+  }
+
+  /**
+   * Wrap the proxy so that calls are routed to the owning NameNodes whenever
+   * the mount table allows it.
+   */
+  public static ClientProtocol create(Configuration conf, ClientProtocol proxy,
+      AtomicBoolean fallbackToSimpleAuth) {
+    MountTableClientProtocol handler =
+        new MountTableClientProtocol(conf, proxy, fallbackToSimpleAuth);
+    handler.start();
+    return (ClientProtocol) Proxy.newProxyInstance(
+        ClientProtocol.class.getClassLoader(),
+        new Class<?>[] {ClientProtocol.class}, handler);
+  }
+
+  void start() {
+    String quorum = conf.get(MountTable.ZK_QUORUM_KEY);
+    String path = conf.get(MountTable.ZK_PATH_KEY);
+    if (quorum == null || path == null) {
+      LOG.warn("{} or {} not set, all calls go through the proxy",
+          MountTable.ZK_QUORUM_KEY, MountTable.ZK_PATH_KEY);
+      return;
+    }
+    framework = CuratorFrameworkFactory.newClient(quorum,
+        conf.getInt(MountTable.ZK_SESSION_TIMEOUT_MS_KEY,
+            MountTable.ZK_SESSION_TIMEOUT_MS_DEFAULT),
+        conf.getInt(MountTable.ZK_CONNECTION_TIMEOUT_MS_KEY,
+            MountTable.ZK_CONNECTION_TIMEOUT_MS_DEFAULT),
+        new ExponentialBackoffRetry(1000, 3));
+    framework.start();
+    nodeCache = new NodeCache(framework, path, false);
+    nodeCache.getListenable().addListener(new NodeCacheListener() {
+      @Override
+      public void nodeChanged() throws Exception {
+        ChildData data = nodeCache.getCurrentData();
+        if (data != null) {
+          installMountTable(new String(data.getData()));
+        }
+      }
+    });
+    try {
+      nodeCache.start(true);
+      ChildData data = nodeCache.getCurrentData();
+      if (data != null) {
+        installMountTable(new String(data.getData()));
+      }
+    } catch (Exception e) {
+      LOG.warn("Failed to load mount table from " + path
+          + ", all calls go through the proxy until it is available", e);
+    }
+  }
+
+  /**
+   * Install a mount table in the format published by NNProxy, one
+   * "fsUri mountPoint [attributes]" entry per line.
+   */
+  @VisibleForTesting
+  void installMountTable(String table) {
+    Map<String, String> entries = new HashMap<>();
+    for (String line : table.split("\n")) {
+      if (line.isEmpty()) {
+        continue;
+      }
+      String[] cols = line.split(" ");
+      if (cols.length < 2 || (cols.length > 2
+          && Arrays.asList(cols[2].split(",")).contains(READ_ONLY_ATTRIBUTE))) {
+        continue;
+      }
+      // with several owners of a mount point, leave the choice to the proxy
+      if (entries.containsKey(cols[1])) {
+        entries.put(cols[1], null);
+      } else {
+        entries.put(cols[1], cols[0]);
+      }
+    }
+    if (!entries.containsKey("/")) {
+      LOG.warn("Ignored mount table without root: {}", table);
+      return;
+    }
+    mounts = entries;
+    version++;
+    LOG.debug("Installed mount table {}", entries);
+  }
+
+  /** @return the path the owner of the given one is resolved for */
+  static String getLogicalPath(String path) {
+    Matcher mch = TRASH_PATTERN.matcher(path);
+    return mch.find() ? "/" + mch.group(1) : path;
+  }
+
+  /**
+   * @return the fs owning the path, or null if the proxy has to decide
+   */
+  @VisibleForTesting
+  String resolve(String path) {
+    Map<String, String> entries = mounts;
+    if (entries == null || path == null || !path.startsWith("/")) {
+      return null;
+    }
+    String current = getLogicalPath(path);
+    while (true) {
+      if (entries.containsKey(current)) {
+        return entries.get(current);
+      }
+      int idx = current.lastIndexOf('/');
+      if (idx <= 0) {
+        return entries.get("/");
+      }
+      current = current.substring(0, idx);
+    }
+  }
+
+  boolean hasMountsBelow(String path) {
+    Map<String, String> entries = mounts;
+    String logicalPath = getLogicalPath(path);
+    String prefix =
+        logicalPath.endsWith("/") ? logicalPath : logicalPath + "/";
+    for (String mountPoint : entries.keySet()) {
+      if (mountPoint.length() > prefix.length()
+          && mountPoint.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  ClientProtocol getUpstream(String fs) throws IOException {
+    ClientProtocol upstream = upstreams.get(fs);
+    if (upstream == null) {
+      synchronized (upstreams) {
+        upstream = upstreams.get(fs);
+        if (upstream == null) {
+          upstream = NameNodeProxiesClient.createProxyWithClientProtocol(
+              conf, URI.create(fs), fallbackToSimpleAuth).getProxy();
+          upstreams.put(fs, upstream);
+        }
+      }
+    }
+    return upstream;
+  }
+
+  @VisibleForTesting
+  void putUpstream(String fs, ClientProtocol upstream) {
+    upstreams.put(fs, upstream);
+  }
+
+  /**
+   * The route was wrong without the call having had any effect: the owner is
+   * unreachable, refuses the call, or the path moved away while the call was
+   * in progress.
+   */
+  boolean isStaleRoute(IOException e, long startVersion) {
+    IOException cause = e;
+    if (e instanceof RemoteException) {
+      cause = ((RemoteException) e).unwrapRemoteException(
+          StandbyException.class, FileNotFoundException.class);
+    }
+    if (cause instanceof ConnectException
+        || cause instanceof NoRouteToHostException
+        || cause instanceof UnknownHostException
+        || cause instanceof StandbyException) {
+      return true;
+    }
+    return cause instanceof FileNotFoundException && version != startVersion;
+  }
+
+  @Override
+  public Object invoke(Object p, Method method, Object[] args)
+      throws Throwable {
+    if (method.getDeclaringClass() == Object.class) {
+      return method.invoke(this, args);
+    }
+    Integer pathArg = PATH_ARGUMENTS.get(method.getName());
+    if (pathArg == null || mounts == null
+        || !(args[pathArg] instanceof String)) {
+      return call(proxy, method, args);
+    }
+    String path = (String) args[pathArg];
+    long startVersion = version;
+    String fs = resolve(path);
+    if (fs == null || (AGGREGATED_CALLS.contains(method.getName())
+        && hasMountsBelow(path))) {
+      return call(proxy, method, args);
+    }
+    try {
+      return call(getUpstream(fs), method, args);
+    } catch (IOException e) {
+      if (!isStaleRoute(e, startVersion)) {
+        throw e;
+      }
+      LOG.debug("Stale route of {} to {}, retry through the proxy",
+          path, fs, e);
+      return call(proxy, method, args);
+    }
+  }
+
+  static Object call(ClientProtocol target, Method method, Object[] args)
+      throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (nodeCache != null) {
+      nodeCache.close();
+    }
+    if (framework != null) {
+      framework.close();
+    }
+    for (ClientProtocol upstream : upstreams.values()) {
+      RPC.stopProxy(upstream);
+    }
+    upstreams.clear();
+    RPC.stopProxy(proxy);
+  }
+}
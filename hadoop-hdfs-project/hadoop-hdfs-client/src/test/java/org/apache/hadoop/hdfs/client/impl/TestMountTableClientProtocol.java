@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.client.impl;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.ipc.StandbyException;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestMountTableClientProtocol {
+  private static final String NN1 = "hdfs://nn1:9000";
+  private static final String NN2 = "hdfs://nn2:9000";
+
+  private ClientProtocol proxy;
+  private ClientProtocol nn1;
+  private ClientProtocol nn2;
+  private MountTableClientProtocol handler;
+  private ClientProtocol client;
+
+  @Before
+  public void setup() {
+    proxy = Mockito.mock(ClientProtocol.class);
+    nn1 = Mockito.mock(ClientProtocol.class);
+    nn2 = Mockito.mock(ClientProtocol.class);
+    handler = new MountTableClientProtocol(new Configuration(), proxy,
+        new AtomicBoolean(false));
+    handler.putUpstream(NN1, nn1);
+    handler.putUpstream(NN2, nn2);
+    handler.installMountTable(NN1 + " /\n" + NN2 + " /data\n"
+        + "hdfs://nn3:9000 /data readonly\n");
+    client = (ClientProtocol) Proxy.newProxyInstance(
+        ClientProtocol.class.getClassLoader(),
+        new Class<?>[] {ClientProtocol.class}, handler);
+  }
+
+  @Test
+  public void testResolve() {
+    assertEquals(NN1, handler.resolve("/"));
+    assertEquals(NN1, handler.resolve("/user/foo"));
+    assertEquals(NN1, handler.resolve("/database"));
+    assertEquals(NN2, handler.resolve("/data"));
+    assertEquals(NN2, handler.resolve("/data/a/b"));
+    assertNull(handler.resolve("relative"));
+  }
+
+  @Test
+  public void testResolveTrash() throws Exception {
+    // the trash of a file is owned by the owner of the file
+    assertEquals(NN2, handler.resolve("/user/foo/.Trash/Current/data/a"));
+    assertEquals(NN1,
+        handler.resolve("/user/foo/.Trash/Current/database/a"));
+    assertEquals(NN1, handler.resolve("/user/foo/.Trash/Current"));
+    client.delete("/user/foo/.Trash/Current/data/a", true);
+    verify(nn2).delete("/user/foo/.Trash/Current/data/a", true);
+  }
+
+  @Test
+  public void testRouteDirectly() throws Exception {
+    client.getFileInfo("/data/file");
+    verify(nn2).getFileInfo("/data/file");
+    client.mkdirs("/user/foo", null, true);
+    verify(nn1).mkdirs("/user/foo", null, true);
+    verify(proxy, never()).getFileInfo("/data/file");
+  }
+
+  @Test
+  public void testProxyHandlesCallsWithoutSinglePath() throws Exception {
+    client.renewLease("client");
+    verify(proxy).renewLease("client");
+    client.rename("/data/a", "/data/b");
+    verify(proxy).rename("/data/a", "/data/b");
+    // the listing of / includes the /data mount point
+    client.getListing("/", new byte[0], false);
+    verify(proxy).getListing("/", new byte[0], false);
+    verify(nn1, never()).getListing("/", new byte[0], false);
+  }
+
+  @Test
+  public void testFallbackOnStaleRoute() throws Exception {
+    when(nn2.getFileInfo("/data/file")).thenThrow(
+        new RemoteException(StandbyException.class.getName(), "read-only"));
+    client.getFileInfo("/data/file");
+    verify(proxy).getFileInfo("/data/file");
+  }
+
+  @Test
+  public void testRefreshOnMountChange() throws Exception {
+    handler.installMountTable(NN1 + " /\n" + NN1 + " /data\n");
+    client.getFileInfo("/data/file");
+    verify(nn1).getFileInfo("/data/file");
+    verify(nn2, never()).getFileInfo("/data/file");
+  }
+}
@@ -30,19 +30,24 @@ public class DatabaseConnection {
 
       if (env.equals("VOLT")) {
         Class.forName("org.voltdb.jdbc.Driver");
+        // VOLTDB_SERVER may list several comma separated hosts
         url = System.getenv("VOLTDB_SERVER");
         if (url == null) {
           host = "localhost";
           url = volt;
         } else {
           host = url;
-          url = "jdbc:voltdb://" + url + ":21212";
+          url = "jdbc:voltdb://" + url.replace(",", ":21212,") + ":21212";
         }
         this.connection = DriverManager.getConnection(url);
+        // connect to every host: the client then sends each single-partition
+        // procedure straight to the host of the partition owning its key
         ClientConfig config = new ClientConfig();
         config.setTopologyChangeAware(true);
         this.client = ClientFactory.createClient(config);
-        this.client.createConnection(host, 21212);
+        for (String server : host.split(",")) {
+          this.client.createConnection(server.trim(), 21212);
+        }
       } else if (env.equals("COCKROACH")) {
         Class.forName("org.postgresql.Driver");
         props.setProperty("user", username);
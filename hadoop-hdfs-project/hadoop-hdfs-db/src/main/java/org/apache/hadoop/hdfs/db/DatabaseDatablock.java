@@ -7,6 +7,7 @@
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.voltdb.*;
@@ -64,7 +65,9 @@ public static void insertBlock(final long blkid, final long len, final long genS
       String env = System.getenv("DATABASE");
       if (env.equals("VOLT")) {
         try {
-          obj.getVoltClient().callProcedure(new NullCallback(), "InsertBlock", blkid, len, genStamp);
+          obj.getVoltClient()
+              .callProcedure(
+                  new LoggingCallback("InsertBlock"), "InsertBlock", blkid, len, genStamp);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -92,6 +95,64 @@ public static void insertBlock(final long blkid, final long len, final long genS
     }
   }
 
+  /**
+   * Bulk upsert of inode2block and datablocks rows. Each block takes seven consecutive
+   * entries in longAttr: id, blockId, idx, numBytes, generationStamp, replication, ecPolicyId.
+   */
+  public static void batchImportBlocks(final List<Long> longAttr) throws SQLException {
+    if (longAttr.size() == 0) {
+      return;
+    }
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      String env = System.getenv("DATABASE");
+      if (env.equals("VOLT")) {
+        try {
+          obj.getVoltClient()
+              .callProcedure("BatchInsertBlocks", longAttr.stream().mapToLong(l -> l).toArray());
+        } catch (Exception e) {
+          throw new SQLException("BatchInsertBlocks failed", e);
+        }
+      } else {
+        Connection conn = obj.getConnection();
+        PreparedStatement pst1 =
+            conn.prepareStatement(
+                "INSERT INTO inode2block(blockId, id, idx) VALUES (?, ?, ?)"
+                    + " ON CONFLICT(blockId) DO UPDATE SET id = EXCLUDED.id, idx = EXCLUDED.idx;");
+        PreparedStatement pst2 =
+            conn.prepareStatement(
+                "INSERT INTO datablocks("
+                    + "blockId, numBytes, generationStamp, replication, ecPolicyId"
+                    + ") VALUES (?, ?, ?, ?, ?) ON CONFLICT(blockId) DO UPDATE SET"
+                    + " numBytes = EXCLUDED.numBytes, generationStamp = EXCLUDED.generationStamp,"
+                    + " replication = EXCLUDED.replication, ecPolicyId = EXCLUDED.ecPolicyId;");
+        int size = longAttr.size() / 7;
+        for (int i = 0; i < size; ++i) {
+          int idx = i * 7;
+          pst1.setLong(1, longAttr.get(idx + 1));
+          pst1.setLong(2, longAttr.get(idx));
+          pst1.setInt(3, longAttr.get(idx + 2).intValue());
+          pst1.addBatch();
+          pst2.setLong(1, longAttr.get(idx + 1));
+          pst2.setLong(2, longAttr.get(idx + 3));
+          pst2.setLong(3, longAttr.get(idx + 4));
+          pst2.setInt(4, longAttr.get(idx + 5).intValue());
+          pst2.setInt(5, longAttr.get(idx + 6).intValue());
+          pst2.addBatch();
+        }
+        pst1.executeBatch();
+        pst2.executeBatch();
+        pst1.close();
+        pst2.close();
+      }
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+    if (LOG.isInfoEnabled()) {
+      LOG.info("batchImportBlocks [UPDATE]: " + longAttr.size() / 7);
+    }
+  }
+
   private static <T> T getAttribute(final long id, final String attrName) {
     T result = null;
     try {
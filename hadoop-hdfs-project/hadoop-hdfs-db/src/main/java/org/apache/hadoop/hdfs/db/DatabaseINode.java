@@ -10,6 +10,7 @@
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
@@ -264,6 +265,142 @@ public LoadINode loadINode(final String parentName, final String childName) {
     return res;
   }
 
+  /** Load several children of a directory in one round trip. */
+  public List<LoadINode> loadINodes(final String parentName, final List<String> childNames) {
+    List<LoadINode> res = new ArrayList<>();
+    try {
+      DatabaseConnection obj = Database.getInstance().getConnection();
+      String env = System.getenv("DATABASE");
+      if (env.equals("VOLT")) {
+        try {
+          VoltTable[] results =
+              obj.getVoltClient()
+                  .callProcedure(
+                      "LoadINodesV3",
+                      parentName,
+                      childNames.toArray(new String[childNames.size()]))
+                  .getResults();
+          VoltTable result = results[0];
+          result.resetRowPosition();
+          while (result.advanceRow()) {
+            res.add(
+                new LoadINode(
+                    result.getLong(0),
+                    result.getString(1),
+                    result.getLong(2),
+                    result.getString(3),
+                    result.getLong(4),
+                    result.getLong(5),
+                    result.getLong(6),
+                    result.getLong(7)));
+          }
+        } catch (Exception e) {
+          e.printStackTrace();
+        }
+      } else {
+        Connection conn = obj.getConnection();
+        String sql =
+            "SELECT parent, parentName, id, name, permission, modificationTime, accessTime, header FROM inodes WHERE parentName = ? AND name = ANY(?);";
+        PreparedStatement pst = conn.prepareStatement(sql);
+        pst.setString(1, parentName);
+        pst.setArray(
+            2, conn.createArrayOf("VARCHAR", childNames.toArray(new String[childNames.size()])));
+        ResultSet rs = pst.executeQuery();
+        while (rs.next()) {
+          res.add(
+              new LoadINode(
+                  rs.getLong(1),
+                  rs.getString(2),
+                  rs.getLong(3),
+                  rs.getString(4),
+                  rs.getLong(5),
+                  rs.getLong(6),
+                  rs.getLong(7),
+                  rs.getLong(8)));
+        }
+        rs.close();
+        pst.close();
+      }
+      Database.getInstance().retConnection(obj);
+    } catch (SQLException ex) {
+      System.err.println(ex.getMessage());
+    }
+
+    if (LOG.isInfoEnabled()) {
+      LOG.info("Load INodes [GET]: (" + parentName + ", " + childNames.size() + ")");
+    }
+    return res;
+  }
+
+  // --------------------------------------------------------
+  // asynchronous reads
+  //
+  // VoltDB completes these futures on its client callback thread: dependent stages that block,
+  // for instance on another synchronous call, must run on an executor of their own. Other
+  // databases run the synchronous call on the shared executor of Database.
+
+  private static boolean isVolt() {
+    return System.getenv("DATABASE").equals("VOLT");
+  }
+
+  private static CompletableFuture<VoltTable[]> callProcedureAsync(
+      final String procedure, final Object... params) {
+    CompletableFuture<VoltTable[]> future = new CompletableFuture<>();
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      boolean queued =
+          obj.getVoltClient()
+              .callProcedure(
+                  response -> {
+                    if (response.getStatus() == ClientResponse.SUCCESS) {
+                      future.complete(response.getResults());
+                    } else {
+                      future.completeExceptionally(
+                          new SQLException(procedure + " failed: " + response.getStatusString()));
+                    }
+                  },
+                  procedure,
+                  params);
+      if (!queued) {
+        future.completeExceptionally(new SQLException(procedure + " was not queued"));
+      }
+    } catch (Exception e) {
+      future.completeExceptionally(e);
+    } finally {
+      // the client is shared, the response does not need the connection
+      Database.getInstance().retConnection(obj);
+    }
+    return future;
+  }
+
+  public CompletableFuture<LoadINode> loadINodeAsync(
+      final String parentName, final String childName) {
+    if (!isVolt()) {
+      return CompletableFuture.supplyAsync(
+          () -> loadINode(parentName, childName), Database.getInstance().getExecutorService());
+    }
+    return callProcedureAsync("LoadINodeV3", parentName, childName)
+        .thenApply(
+            results -> {
+              LoadINode res = null;
+              VoltTable result = results[0];
+              result.resetRowPosition();
+              while (result.advanceRow()) {
+                res =
+                    new LoadINode(
+                        result.getLong(0),
+                        result.getString(1),
+                        result.getLong(2),
+                        result.getString(3),
+                        result.getLong(4),
+                        result.getLong(5),
+                        result.getLong(6),
+                        result.getLong(7));
+              }
+              return res;
+            });
+  }
+
   public static boolean checkInodeExistence(final long parentId, final String childName) {
     boolean exist = false;
     try {
@@ -398,7 +535,7 @@ public static void insertInode(
         try {
           obj.getVoltClient()
               .callProcedure(
-                  new NullCallback(),
+                  new LoggingCallback("InsertINode"),
                   "InsertINode",
                   id,
                   pid,
@@ -472,7 +609,7 @@ public static void renameInode(
         try {
           obj.getVoltClient()
               .callProcedure(
-                  new NullCallback(),
+                  new LoggingCallback("RenameINode"),
                   "RenameINode",
                   id,
                   pid,
@@ -505,7 +642,8 @@ public static void setAccessTime(final long id, final long accessTime) {
       String env = System.getenv("DATABASE");
       if (env.equals("VOLT")) {
         try {
-          obj.getVoltClient().callProcedure(new NullCallback(), "SetAccessTime", id, accessTime);
+          obj.getVoltClient()
+              .callProcedure(new LoggingCallback("SetAccessTime"), "SetAccessTime", id, accessTime);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -534,7 +672,11 @@ public static void setModificationTime(final long id, final long modificationTim
       if (env.equals("VOLT")) {
         try {
           obj.getVoltClient()
-              .callProcedure(new NullCallback(), "SetModificationTime", id, modificationTime);
+              .callProcedure(
+                  new LoggingCallback("SetModificationTime"),
+                  "SetModificationTime",
+                  id,
+                  modificationTime);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -563,7 +705,11 @@ public static void updateModificationTime(final long id, final long childId) {
       if (env.equals("VOLT")) {
         try {
           obj.getVoltClient()
-              .callProcedure(new NullCallback(), "UpdateModificationTime", id, childId);
+              .callProcedure(
+                  new LoggingCallback("UpdateModificationTime"),
+                  "UpdateModificationTime",
+                  id,
+                  childId);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -593,7 +739,8 @@ public static void setPermission(final long id, final long permission) {
       String env = System.getenv("DATABASE");
       if (env.equals("VOLT")) {
         try {
-          obj.getVoltClient().callProcedure(new NullCallback(), "SetPermission", id, permission);
+          obj.getVoltClient()
+              .callProcedure(new LoggingCallback("SetPermission"), "SetPermission", id, permission);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -621,7 +768,8 @@ public static void setHeader(final long id, final long header) {
       String env = System.getenv("DATABASE");
       if (env.equals("VOLT")) {
         try {
-          obj.getVoltClient().callProcedure(new NullCallback(), "SetHeader", id, header);
+          obj.getVoltClient()
+              .callProcedure(new LoggingCallback("SetHeader"), "SetHeader", id, header);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -649,7 +797,8 @@ public static void setParent(final long id, final long parent) {
       String env = System.getenv("DATABASE");
       if (env.equals("VOLT")) {
         try {
-          obj.getVoltClient().callProcedure(new NullCallback(), "SetParent", id, parent);
+          obj.getVoltClient()
+              .callProcedure(new LoggingCallback("SetParent"), "SetParent", id, parent);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -677,7 +826,8 @@ public static void setParents(final long oldparent, final long newparent) {
       String env = System.getenv("DATABASE");
       if (env.equals("VOLT")) {
         try {
-          obj.getVoltClient().callProcedure(new NullCallback(), "SetParents", oldparent, newparent);
+          obj.getVoltClient()
+              .callProcedure(new LoggingCallback("SetParents"), "SetParents", oldparent, newparent);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -709,7 +859,7 @@ public static void setName(final long id, final String name) {
       String env = System.getenv("DATABASE");
       if (env.equals("VOLT")) {
         try {
-          obj.getVoltClient().callProcedure(new NullCallback(), "SetName", id, name);
+          obj.getVoltClient().callProcedure(new LoggingCallback("SetName"), "SetName", id, name);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -1005,6 +1155,53 @@ public static String getParentName(final long id) {
     return res;
   }
 
+  // the inodes found among ids go to foundIds, names gets [parentName, name]*
+  public static void getParentNamesAndNames(
+      final List<Long> ids, final List<Long> foundIds, final List<String> names)
+      throws SQLException {
+    if (ids.isEmpty()) {
+      return;
+    }
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      String env = System.getenv("DATABASE");
+      if (env.equals("VOLT")) {
+        try {
+          long[] list = ids.stream().mapToLong(l -> l).toArray();
+          VoltTable[] results =
+              obj.getVoltClient().callProcedure("GetParentNamesAndNames", list).getResults();
+          VoltTable result = results[0];
+          result.resetRowPosition();
+          while (result.advanceRow()) {
+            foundIds.add(result.getLong(0));
+            names.add(result.getString(1));
+            names.add(result.getString(2));
+          }
+        } catch (Exception e) {
+          throw new SQLException("GetParentNamesAndNames failed", e);
+        }
+      } else {
+        Connection conn = obj.getConnection();
+        String sql = "SELECT id, parentName, name FROM inodes WHERE id = ANY(?);";
+        PreparedStatement pst = conn.prepareStatement(sql);
+        pst.setArray(1, conn.createArrayOf("BIGINT", ids.toArray(new Long[ids.size()])));
+        ResultSet rs = pst.executeQuery();
+        while (rs.next()) {
+          foundIds.add(rs.getLong(1));
+          names.add(rs.getString(2));
+          names.add(rs.getString(3));
+        }
+        rs.close();
+        pst.close();
+      }
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+    if (LOG.isInfoEnabled()) {
+      LOG.info("getParentNamesAndNames [GET]: (" + ids.size() + "," + foundIds.size() + ")");
+    }
+  }
+
   public static long getChild(final long parentId, final String childName) {
     long childId = -1;
     try {
@@ -1082,7 +1279,7 @@ public static void removeChild(final long id) {
       if (env.equals("VOLT")) {
         // call a stored procedure
         try {
-          obj.getVoltClient().callProcedure(new NullCallback(), "RemoveChild", id);
+          obj.getVoltClient().callProcedure(new LoggingCallback("RemoveChild"), "RemoveChild", id);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -1331,6 +1528,49 @@ public static List<String> getChildrenNames(final long parentId) {
     return childNames;
   }
 
+  // keyed on the partition column, a single-partition transaction in VoltDB
+  public static List<String> getChildrenNames(final String parentName) {
+    List<String> childNames = new ArrayList<>();
+    try {
+      DatabaseConnection obj = Database.getInstance().getConnection();
+      String env = System.getenv("DATABASE");
+
+      if (env.equals("VOLT")) {
+        try {
+          VoltTable[] results =
+              obj.getVoltClient().callProcedure("GetChildrenNamesV2", parentName).getResults();
+          VoltTable result = results[0];
+          result.resetRowPosition();
+          while (result.advanceRow()) {
+            childNames.add(result.getString(0));
+          }
+        } catch (Exception e) {
+          e.printStackTrace();
+        }
+      } else {
+        Connection conn = obj.getConnection();
+        String sql = "SELECT name FROM inodes WHERE parentName = ?;";
+        PreparedStatement pst = conn.prepareStatement(sql);
+        pst.setString(1, parentName);
+        ResultSet rs = pst.executeQuery();
+        while (rs.next()) {
+          childNames.add(rs.getString(1));
+        }
+        rs.close();
+        pst.close();
+      }
+      Database.getInstance().retConnection(obj);
+    } catch (SQLException ex) {
+      System.out.println(ex.getMessage());
+    }
+
+    if (LOG.isInfoEnabled()) {
+      LOG.info("getChildrenNames: (" + parentName + ")");
+    }
+
+    return childNames;
+  }
+
   public static boolean addChild(final long childId, final String childName, final long parentId) {
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
@@ -1338,7 +1578,8 @@ public static boolean addChild(final long childId, final String childName, final
       if (env.equals("VOLT")) {
         try {
           obj.getVoltClient()
-              .callProcedure(new NullCallback(), "AddChild", childId, childName, parentId);
+              .callProcedure(
+                  new LoggingCallback("AddChild"), "AddChild", childId, childName, parentId);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -1389,6 +1630,163 @@ public static long getINodesNum() {
     return num;
   }
 
+  /** Aggregate counts of the descendants of a directory, excluding itself. */
+  public static class SubtreeSummary {
+    public final long fileCount;
+    public final long directoryCount;
+    public final long length;
+    public final long spaceConsumed;
+
+    public SubtreeSummary(long fileCount, long directoryCount, long length, long spaceConsumed) {
+      this.fileCount = fileCount;
+      this.directoryCount = directoryCount;
+      this.length = length;
+      this.spaceConsumed = spaceConsumed;
+    }
+  }
+
+  /** The geometry of an erasure coding policy, to count the parity of its striped blocks. */
+  public static class StripedLayout {
+    public final int ecPolicyId;
+    public final int dataUnits;
+    public final int parityUnits;
+    public final int cellSize;
+
+    public StripedLayout(int ecPolicyId, int dataUnits, int parityUnits, int cellSize) {
+      this.ecPolicyId = ecPolicyId;
+      this.dataUnits = dataUnits;
+      this.parityUnits = parityUnits;
+      this.cellSize = cellSize;
+    }
+  }
+
+  /**
+   * Count the files, directories and bytes below a directory in the database, in parallel on
+   * all the partitions. The descendants are the inodes whose parent name is the directory or
+   * falls in ['/a/', '/a0'), '0' being the character after '/'. The space consumed counts the
+   * replicas of the contiguous blocks, and the data and parity of the striped blocks of the
+   * given policies.
+   */
+  public static SubtreeSummary getSubtreeSummary(
+      final String path, final List<StripedLayout> layouts) {
+    String from = path.equals("/") ? path : path + "/";
+    String to = from.substring(0, from.length() - 1) + "0";
+    long num = 0, dirs = 0, length = 0, space = 0;
+    try {
+      DatabaseConnection obj = Database.getInstance().getConnection();
+      String env = System.getenv("DATABASE");
+      if (env.equals("VOLT")) {
+        try {
+          int[] ecPolicyIds = new int[layouts.size()];
+          long[] stripeSizes = new long[layouts.size()];
+          long[] cellSizes = new long[layouts.size()];
+          for (int i = 0; i < layouts.size(); ++i) {
+            StripedLayout layout = layouts.get(i);
+            ecPolicyIds[i] = layout.ecPolicyId;
+            stripeSizes[i] = (long) layout.cellSize * layout.dataUnits;
+            cellSizes[i] = layout.cellSize;
+          }
+          VoltTable[] results =
+              obj.getVoltClient()
+                  .callProcedure(
+                      "GetSubtreeSummary", path, from, to, ecPolicyIds, stripeSizes, cellSizes)
+                  .getResults();
+          VoltTable counts = results[0];
+          if (counts.advanceRow()) {
+            num = counts.getLong(0);
+            dirs = counts.getLong(1);
+            dirs = counts.wasNull() ? 0 : dirs;
+          }
+          VoltTable bytes = results[1];
+          if (bytes.advanceRow()) {
+            length = bytes.getLong(0);
+            length = bytes.wasNull() ? 0 : length;
+            space = bytes.getLong(1);
+            space = bytes.wasNull() ? 0 : space;
+          }
+          for (int i = 0; i < layouts.size(); ++i) {
+            VoltTable striped = results[i + 2];
+            if (striped.advanceRow()) {
+              long data = striped.getLong(0);
+              long parity = striped.getLong(1);
+              if (!striped.wasNull()) {
+                space += data + parity * layouts.get(i).parityUnits;
+              }
+            }
+          }
+        } catch (Exception e) {
+          e.printStackTrace();
+        }
+      } else {
+        Connection conn = obj.getConnection();
+        String sql =
+            "SELECT COUNT(*), COALESCE(SUM(CASE WHEN header = 0 THEN 1 ELSE 0 END), 0) FROM inodes"
+                + " WHERE parentName = ? OR (parentName >= ? AND parentName < ?);";
+        PreparedStatement pst = conn.prepareStatement(sql);
+        pst.setString(1, path);
+        pst.setString(2, from);
+        pst.setString(3, to);
+        ResultSet rs = pst.executeQuery();
+        if (rs.next()) {
+          num = rs.getLong(1);
+          dirs = rs.getLong(2);
+        }
+        rs.close();
+        pst.close();
+        sql =
+            "SELECT COALESCE(SUM(d.numBytes), 0),"
+                + " COALESCE(SUM(CASE WHEN d.ecPolicyId IS NULL OR d.ecPolicyId < 0"
+                + " THEN d.numBytes * d.replication ELSE 0 END), 0)"
+                + " FROM inodes i, inode2block b, datablocks d"
+                + " WHERE (i.parentName = ? OR (i.parentName >= ? AND i.parentName < ?))"
+                + " AND b.id = i.id AND d.blockId = b.blockId;";
+        pst = conn.prepareStatement(sql);
+        pst.setString(1, path);
+        pst.setString(2, from);
+        pst.setString(3, to);
+        rs = pst.executeQuery();
+        if (rs.next()) {
+          length = rs.getLong(1);
+          space = rs.getLong(2);
+        }
+        rs.close();
+        pst.close();
+        // a parity block is as long as the first data block of its group
+        sql =
+            "SELECT COALESCE(SUM(d.numBytes), 0),"
+                + " COALESCE(SUM((d.numBytes / ?) * ? + LEAST(MOD(d.numBytes, ?), ?)), 0)"
+                + " FROM inodes i, inode2block b, datablocks d"
+                + " WHERE (i.parentName = ? OR (i.parentName >= ? AND i.parentName < ?))"
+                + " AND b.id = i.id AND d.blockId = b.blockId AND d.ecPolicyId = ?;";
+        for (StripedLayout layout : layouts) {
+          long stripe = (long) layout.cellSize * layout.dataUnits;
+          pst = conn.prepareStatement(sql);
+          pst.setLong(1, stripe);
+          pst.setLong(2, layout.cellSize);
+          pst.setLong(3, stripe);
+          pst.setLong(4, layout.cellSize);
+          pst.setString(5, path);
+          pst.setString(6, from);
+          pst.setString(7, to);
+          pst.setInt(8, layout.ecPolicyId);
+          rs = pst.executeQuery();
+          if (rs.next()) {
+            space += rs.getLong(1) + rs.getLong(2) * layout.parityUnits;
+          }
+          rs.close();
+          pst.close();
+        }
+      }
+      Database.getInstance().retConnection(obj);
+    } catch (SQLException ex) {
+      System.err.println(ex.getMessage());
+    }
+    if (LOG.isInfoEnabled()) {
+      LOG.info("getSubtreeSummary [GET]: (" + path + "," + num + "," + dirs + "," + length + ")");
+    }
+    return new SubtreeSummary(num - dirs, dirs, length, space);
+  }
+
   public static long getLastInodeId() {
     long num = 0;
     try {
@@ -1419,7 +1817,8 @@ public static void insertUc(final long id, final String clientName, final String
       if (env.equals("VOLT")) {
         try {
           obj.getVoltClient()
-              .callProcedure(new NullCallback(), "InsertUc", id, clientName, clientMachine);
+              .callProcedure(
+                  new LoggingCallback("InsertUc"), "InsertUc", id, clientName, clientMachine);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -1442,6 +1841,107 @@ public static void insertUc(final long id, final String clientName, final String
     }
   }
 
+  // fileAttrs holds [clientName, clientMachine, leaseHolder]* in the order of fileIds
+  public static void batchUpdateUc(
+      final List<Long> fileIds, final List<String> fileAttrs, final List<Long> removeIds)
+      throws SQLException {
+    if (fileIds.isEmpty() && removeIds.isEmpty()) {
+      return;
+    }
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      String env = System.getenv("DATABASE");
+      if (env.equals("VOLT")) {
+        try {
+          // synchronous, the write-behind round is only complete once committed
+          obj.getVoltClient()
+              .callProcedure(
+                  "BatchUpdateUc",
+                  fileIds.stream().mapToLong(l -> l).toArray(),
+                  fileAttrs.toArray(new String[fileAttrs.size()]),
+                  removeIds.stream().mapToLong(l -> l).toArray());
+        } catch (Exception e) {
+          throw new SQLException("BatchUpdateUc failed", e);
+        }
+      } else {
+        Connection conn = obj.getConnection();
+        if (!fileIds.isEmpty()) {
+          String sql =
+              "INSERT INTO inodeuc(id, clientName, clientMachine, leaseHolder) VALUES (?, ?, ?, ?)"
+                  + " ON CONFLICT(id) DO UPDATE SET"
+                  + " clientName = EXCLUDED.clientName, clientMachine = EXCLUDED.clientMachine,"
+                  + " leaseHolder = EXCLUDED.leaseHolder;";
+          PreparedStatement pst = conn.prepareStatement(sql);
+          for (int i = 0; i < fileIds.size(); ++i) {
+            pst.setLong(1, fileIds.get(i));
+            pst.setString(2, fileAttrs.get(i * 3));
+            pst.setString(3, fileAttrs.get(i * 3 + 1));
+            pst.setString(4, fileAttrs.get(i * 3 + 2));
+            pst.addBatch();
+          }
+          pst.executeBatch();
+          pst.close();
+        }
+        if (!removeIds.isEmpty()) {
+          PreparedStatement pst = conn.prepareStatement("DELETE FROM inodeuc WHERE id = ?;");
+          for (Long id : removeIds) {
+            pst.setLong(1, id);
+            pst.addBatch();
+          }
+          pst.executeBatch();
+          pst.close();
+        }
+      }
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+    if (LOG.isInfoEnabled()) {
+      LOG.info("batchUpdateUc [UPDATE]: (" + fileIds.size() + ", " + removeIds.size() + ")");
+    }
+  }
+
+  // loads every under-construction file, fileAttrs gets [clientName, clientMachine, leaseHolder]*
+  public static void getAllUc(final List<Long> fileIds, final List<String> fileAttrs) {
+    try {
+      DatabaseConnection obj = Database.getInstance().getConnection();
+      String env = System.getenv("DATABASE");
+      if (env.equals("VOLT")) {
+        try {
+          VoltTable[] results = obj.getVoltClient().callProcedure("GetAllUc").getResults();
+          VoltTable result = results[0];
+          result.resetRowPosition();
+          while (result.advanceRow()) {
+            fileIds.add(result.getLong(0));
+            fileAttrs.add(result.getString(1));
+            fileAttrs.add(result.getString(2));
+            fileAttrs.add(result.getString(3));
+          }
+        } catch (Exception e) {
+          e.printStackTrace();
+        }
+      } else {
+        Connection conn = obj.getConnection();
+        Statement st = conn.createStatement();
+        ResultSet rs =
+            st.executeQuery("SELECT id, clientName, clientMachine, leaseHolder FROM inodeuc;");
+        while (rs.next()) {
+          fileIds.add(rs.getLong(1));
+          fileAttrs.add(rs.getString(2));
+          fileAttrs.add(rs.getString(3));
+          fileAttrs.add(rs.getString(4));
+        }
+        rs.close();
+        st.close();
+      }
+      Database.getInstance().retConnection(obj);
+    } catch (SQLException ex) {
+      System.err.println(ex.getMessage());
+    }
+    if (LOG.isInfoEnabled()) {
+      LOG.info("getAllUc [GET]: " + fileIds.size());
+    }
+  }
+
   public static Boolean checkUCExistence(final long id) {
     boolean exist = false;
     try {
@@ -1593,7 +2093,9 @@ public static void removeINodeNoRecursive(final long id) {
       if (env.equals("VOLT")) {
         // call a stored procedure
         try {
-          obj.getVoltClient().callProcedure(new NullCallback(), "RemoveINodeNoRecursive", id);
+          obj.getVoltClient()
+              .callProcedure(
+                  new LoggingCallback("RemoveINodeNoRecursive"), "RemoveINodeNoRecursive", id);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -1705,7 +2207,7 @@ public static int getXAttrNameSpace(final long id) {
     return ns;
   }
 
-  public class XAttrInfo {
+  public static class XAttrInfo {
     public int namespace;
     public String name;
     public String value;
@@ -1729,10 +2231,10 @@ public String getValue() {
     }
   }
 
-  public List<XAttrInfo> getXAttrs(final long id) {
+  public List<XAttrInfo> getXAttrs(final long id) throws SQLException {
     List<XAttrInfo> xinfo = new ArrayList<XAttrInfo>();
+    DatabaseConnection obj = Database.getInstance().getConnection();
     try {
-      DatabaseConnection obj = Database.getInstance().getConnection();
       Connection conn = obj.getConnection();
       String sql = "SELECT namespace, name, value FROM inodexattrs WHERE id = ?;";
       PreparedStatement pst = conn.prepareStatement(sql);
@@ -1743,9 +2245,8 @@ public List<XAttrInfo> getXAttrs(final long id) {
       }
       rs.close();
       pst.close();
+    } finally {
       Database.getInstance().retConnection(obj);
-    } catch (SQLException ex) {
-      System.err.println(ex.getMessage());
     }
     if (LOG.isInfoEnabled()) {
       LOG.info("getXAttrs [GET]: (" + id + ")");
@@ -1753,6 +2254,87 @@ public List<XAttrInfo> getXAttrs(final long id) {
     return xinfo;
   }
 
+  /** xattrs of all the children of a directory, in one round trip. */
+  public static void getChildrenXAttrs(
+      final String parentName, final List<Long> ids, final List<XAttrInfo> xinfo)
+      throws SQLException {
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      String env = System.getenv("DATABASE");
+      if (env.equals("VOLT")) {
+        try {
+          VoltTable[] results =
+              obj.getVoltClient().callProcedure("GetChildrenXAttrs", parentName).getResults();
+          VoltTable result = results[0];
+          result.resetRowPosition();
+          while (result.advanceRow()) {
+            ids.add(result.getLong(0));
+            xinfo.add(
+                new XAttrInfo(
+                    (int) result.getLong(1), result.getString(2), result.getString(3)));
+          }
+        } catch (Exception e) {
+          throw new SQLException("GetChildrenXAttrs failed", e);
+        }
+      } else {
+        Connection conn = obj.getConnection();
+        String sql =
+            "SELECT x.id, x.namespace, x.name, x.value FROM inodes i, inodexattrs x"
+                + " WHERE i.parentName = ? AND x.id = i.id;";
+        PreparedStatement pst = conn.prepareStatement(sql);
+        pst.setString(1, parentName);
+        ResultSet rs = pst.executeQuery();
+        while (rs.next()) {
+          ids.add(rs.getLong(1));
+          xinfo.add(new XAttrInfo(rs.getInt(2), rs.getString(3), rs.getString(4)));
+        }
+        rs.close();
+        pst.close();
+      }
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+    if (LOG.isInfoEnabled()) {
+      LOG.info("getChildrenXAttrs [GET]: (" + parentName + ", " + ids.size() + ")");
+    }
+  }
+
+  /** ids of all the inodes with xattrs. */
+  public static List<Long> getXAttrIds() throws SQLException {
+    List<Long> ids = new ArrayList<>();
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      String env = System.getenv("DATABASE");
+      if (env.equals("VOLT")) {
+        try {
+          VoltTable[] results = obj.getVoltClient().callProcedure("GetXAttrIds").getResults();
+          VoltTable result = results[0];
+          result.resetRowPosition();
+          while (result.advanceRow()) {
+            ids.add(result.getLong(0));
+          }
+        } catch (Exception e) {
+          throw new SQLException("GetXAttrIds failed", e);
+        }
+      } else {
+        Connection conn = obj.getConnection();
+        Statement st = conn.createStatement();
+        ResultSet rs = st.executeQuery("SELECT DISTINCT id FROM inodexattrs;");
+        while (rs.next()) {
+          ids.add(rs.getLong(1));
+        }
+        rs.close();
+        st.close();
+      }
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+    if (LOG.isInfoEnabled()) {
+      LOG.info("getXAttrIds [GET]: " + ids.size());
+    }
+    return ids;
+  }
+
   public static Boolean checkXAttrExistence(final long id) {
     boolean exist = false;
     try {
@@ -1804,7 +2386,8 @@ public static void insertXAttr(
       if (env.equals("VOLT")) {
         try {
           obj.getVoltClient()
-              .callProcedure(new NullCallback(), "InsertXAttr", id, namespace, name, value);
+              .callProcedure(
+                  new LoggingCallback("InsertXAttr"), "InsertXAttr", id, namespace, name, value);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -1895,29 +2478,88 @@ public static void insertXAttrs(
     }
   }
 
+  // longAttr holds [parent, id, modificationTime, accessTime, permission, header]* and strAttr
+  // [name, parentName]* of the inodes
+  private static void upsertINodes(
+      final Connection conn, final List<Long> longAttr, final List<String> strAttr)
+      throws SQLException {
+    String sql =
+        "INSERT INTO inodes("
+            + " parent, id, name, modificationTime, accessTime, permission, header, parentName"
+            + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT(id) DO UPDATE SET"
+            + " parent = EXCLUDED.parent, name = EXCLUDED.name,"
+            + " modificationTime = EXCLUDED.modificationTime, accessTime = EXCLUDED.accessTime,"
+            + " permission = EXCLUDED.permission, header = EXCLUDED.header,"
+            + " parentName = EXCLUDED.parentName;";
+    PreparedStatement pst = conn.prepareStatement(sql);
+    int size = strAttr.size() / 2;
+    for (int i = 0; i < size; ++i) {
+      int idx = i * 6;
+      int idy = i * 2;
+      pst.setLong(1, longAttr.get(idx));
+      pst.setLong(2, longAttr.get(idx + 1));
+      pst.setString(3, strAttr.get(idy));
+      pst.setLong(4, longAttr.get(idx + 2));
+      pst.setLong(5, longAttr.get(idx + 3));
+      pst.setLong(6, longAttr.get(idx + 4));
+      pst.setLong(7, longAttr.get(idx + 5));
+      pst.setString(8, strAttr.get(idy + 1));
+      pst.addBatch();
+    }
+    pst.executeBatch();
+    pst.close();
+  }
+
+  // fileAttr holds [clientName, clientMachine]* in the order of fileIds
+  private static void upsertUc(
+      final Connection conn, final List<Long> fileIds, final List<String> fileAttr)
+      throws SQLException {
+    if (fileIds.isEmpty()) {
+      return;
+    }
+    String sql =
+        "INSERT INTO inodeuc(id, clientName, clientMachine) VALUES (?, ?, ?)"
+            + " ON CONFLICT(id) DO UPDATE SET"
+            + " clientName = EXCLUDED.clientName, clientMachine = EXCLUDED.clientMachine;";
+    PreparedStatement pst = conn.prepareStatement(sql);
+    for (int i = 0; i < fileIds.size(); ++i) {
+      pst.setLong(1, fileIds.get(i));
+      pst.setString(2, fileAttr.get(i * 2));
+      pst.setString(3, fileAttr.get(i * 2 + 1));
+      pst.addBatch();
+    }
+    pst.executeBatch();
+    pst.close();
+  }
+
   public static void batchRemoveINodes(final List<Long> ids) throws SQLException {
+    DatabaseConnection obj = Database.getInstance().getConnection();
     try {
-      DatabaseConnection obj = Database.getInstance().getConnection();
       String env = System.getenv("DATABASE");
       if (env.equals("VOLT")) {
         try {
           long[] list = ids.stream().mapToLong(l -> l).toArray();
           obj.getVoltClient().callProcedure("BatchRemoveINodes", list);
         } catch (Exception e) {
-          e.printStackTrace();
+          throw new SQLException("BatchRemoveINodes failed", e);
         }
       } else {
-        // Connection conn = obj.getConnection();
-        // PreparedStatement pst = conn.prepareStatement(sql);
-        // pst.setLong(1, childId);
-        // pst.executeUpdate();
-        // pst.close();
-        // TODO: Support batch update in CockroachDB
-        throw new SQLException("[UNSUPPORT] Invalid operation ...");
+        // the removed inodes and their descendants, as BatchRemoveINodes
+        Connection conn = obj.getConnection();
+        String sql =
+            "DELETE FROM inodes WHERE id IN ("
+                + " WITH RECURSIVE cte AS ("
+                + " SELECT id FROM inodes WHERE id = ANY(?)"
+                + " UNION ALL"
+                + " SELECT d.id FROM cte JOIN inodes d ON cte.id = d.parent"
+                + " ) SELECT id FROM cte);";
+        PreparedStatement pst = conn.prepareStatement(sql);
+        pst.setArray(1, conn.createArrayOf("BIGINT", ids.toArray(new Long[ids.size()])));
+        pst.executeUpdate();
+        pst.close();
       }
+    } finally {
       Database.getInstance().retConnection(obj);
-    } catch (SQLException ex) {
-      System.err.println(ex.getMessage());
     }
     if (LOG.isInfoEnabled()) {
       LOG.info("batchRemoveINodes [UPDATE]");
@@ -1928,8 +2570,8 @@ public static void batchRenameINodes(
       final List<Long> longAttr,
       final List<String> strAttr)
       throws SQLException {
+    DatabaseConnection obj = Database.getInstance().getConnection();
     try {
-      DatabaseConnection obj = Database.getInstance().getConnection();
       String env = System.getenv("DATABASE");
       if (env.equals("VOLT")) {
         try {
@@ -1939,14 +2581,14 @@ public static void batchRenameINodes(
                   longAttr.toArray(new Long[longAttr.size()]),
                   strAttr.toArray(new String[strAttr.size()]));
         } catch (Exception e) {
-          e.printStackTrace();
+          throw new SQLException("BatchRenameINodes failed", e);
         }
       } else {
-        throw new SQLException("[UNSUPPORT] Invalid operation ...");
+        // the inodes keep their ids, so a rename rewrites their rows
+        upsertINodes(obj.getConnection(), longAttr, strAttr);
       }
+    } finally {
       Database.getInstance().retConnection(obj);
-    } catch (SQLException ex) {
-      System.err.println(ex.getMessage());
     }
     if (LOG.isInfoEnabled()) {
       LOG.info("BatchRenameINodes [UPDATE]");
@@ -1959,8 +2601,8 @@ public static void batchUpdateINodes(
       final List<Long> fileIds,
       final List<String> fileAttr)
       throws SQLException {
+    DatabaseConnection obj = Database.getInstance().getConnection();
     try {
-      DatabaseConnection obj = Database.getInstance().getConnection();
       String env = System.getenv("DATABASE");
       if (env.equals("VOLT")) {
         try {
@@ -1972,26 +2614,112 @@ public static void batchUpdateINodes(
                   fileIds.toArray(new Long[fileIds.size()]),
                   fileAttr.toArray(new String[fileAttr.size()]));
         } catch (Exception e) {
-          e.printStackTrace();
+          throw new SQLException("BatchUpdateINodes failed", e);
         }
       } else {
-        // Connection conn = obj.getConnection();
-        // PreparedStatement pst = conn.prepareStatement(sql);
-        // pst.setLong(1, childId);
-        // pst.executeUpdate();
-        // pst.close();
-        // TODO: Support batch update in CockroachDB
-        throw new SQLException("[UNSUPPORT] Invalid operation ...");
+        Connection conn = obj.getConnection();
+        upsertINodes(conn, longAttr, strAttr);
+        upsertUc(conn, fileIds, fileAttr);
       }
+    } finally {
       Database.getInstance().retConnection(obj);
-    } catch (SQLException ex) {
-      System.err.println(ex.getMessage());
     }
     if (LOG.isInfoEnabled()) {
       LOG.info("batchUpdateINodes [UPDATE]");
     }
   }
 
+  public static void batchImportINodes(
+      final List<Long> longAttr,
+      final List<String> strAttr,
+      final List<Long> fileIds,
+      final List<String> fileAttr)
+      throws SQLException {
+    // failures are propagated to the caller so that a bulk loader never checkpoints past a
+    // batch which did not commit
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      String env = System.getenv("DATABASE");
+      if (env.equals("VOLT")) {
+        try {
+          obj.getVoltClient()
+              .callProcedure(
+                  "BatchUpdateINodes",
+                  longAttr.toArray(new Long[longAttr.size()]),
+                  strAttr.toArray(new String[strAttr.size()]),
+                  fileIds.toArray(new Long[fileIds.size()]),
+                  fileAttr.toArray(new String[fileAttr.size()]));
+        } catch (Exception e) {
+          throw new SQLException("BatchUpdateINodes failed", e);
+        }
+      } else {
+        Connection conn = obj.getConnection();
+        upsertINodes(conn, longAttr, strAttr);
+        upsertUc(conn, fileIds, fileAttr);
+      }
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+    if (LOG.isInfoEnabled()) {
+      LOG.info("batchImportINodes [UPDATE]: " + strAttr.size() / 2);
+    }
+  }
+
+  public static void batchImportXAttrs(
+      final List<Long> ids, final List<Integer> ns, final List<String> namevals)
+      throws SQLException {
+    if (ids.size() == 0) {
+      return;
+    }
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      String env = System.getenv("DATABASE");
+      if (env.equals("VOLT")) {
+        try {
+          obj.getVoltClient()
+              .callProcedure(
+                  "BatchInsertXAttrs",
+                  ids.stream().mapToLong(l -> l).toArray(),
+                  ns.stream().mapToInt(i -> i).toArray(),
+                  namevals.toArray(new String[namevals.size()]));
+        } catch (Exception e) {
+          throw new SQLException("BatchInsertXAttrs failed", e);
+        }
+      } else {
+        Connection conn = obj.getConnection();
+        PreparedStatement del = conn.prepareStatement("DELETE FROM inodexattrs WHERE id = ?;");
+        long prev = -1;
+        for (Long id : ids) {
+          if (id != prev) {
+            del.setLong(1, id);
+            del.addBatch();
+            prev = id;
+          }
+        }
+        del.executeBatch();
+        del.close();
+
+        PreparedStatement pst =
+            conn.prepareStatement(
+                "INSERT INTO inodexattrs(id, namespace, name, value) VALUES (?, ?, ?, ?);");
+        for (int i = 0; i < ids.size(); ++i) {
+          pst.setLong(1, ids.get(i));
+          pst.setInt(2, ns.get(i));
+          pst.setString(3, namevals.get(i * 2));
+          pst.setString(4, namevals.get(i * 2 + 1));
+          pst.addBatch();
+        }
+        pst.executeBatch();
+        pst.close();
+      }
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+    if (LOG.isInfoEnabled()) {
+      LOG.info("batchImportXAttrs [UPDATE]: " + ids.size());
+    }
+  }
+
   public static void updateSubtree(final long dir_id, final long dest_id, final String old_parent_name,
     final String new_parent_name, final long new_parent) {
     try {
@@ -410,7 +410,8 @@ public static void deleteViaBcId(final long nodeId) {
       String env = System.getenv("DATABASE");
       if (env.equals("VOLT")) {
         try {
-          obj.getVoltClient().callProcedure(new NullCallback(), "DeleteViaBcId", nodeId);
+          obj.getVoltClient()
+              .callProcedure(new LoggingCallback("DeleteViaBcId"), "DeleteViaBcId", nodeId);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -430,4 +430,284 @@ public static void getPersistTokens(
       LOG.info("getPersistTokens [GET]");
     }
   }
+
+  public static void upsertDelegationKey(int id, long expiryDate, String key) {
+    try {
+      DatabaseConnection obj = Database.getInstance().getConnection();
+      Connection conn = obj.getConnection();
+      String sql = "";
+      String env = System.getenv("DATABASE");
+      if (env.equals("VOLT")) {
+        sql = "UPSERT INTO delegationkeys(id, expiryDate, key) VALUES(?, ?, ?);";
+      } else {
+        sql =
+            "INSERT INTO delegationkeys(id, expiryDate, key) VALUES(?, ?, ?) "
+                + "ON CONFLICT(id) DO UPDATE SET expiryDate = ?, key = ?;";
+      }
+      PreparedStatement pst = conn.prepareStatement(sql);
+      pst.setInt(1, id);
+      pst.setLong(2, expiryDate);
+      pst.setString(3, key);
+      if (!env.equals("VOLT")) {
+        pst.setLong(4, expiryDate);
+        pst.setString(5, key);
+      }
+      pst.executeUpdate();
+      pst.close();
+      Database.getInstance().retConnection(obj);
+    } catch (SQLException ex) {
+      System.err.println(ex.getMessage());
+    }
+    if (LOG.isInfoEnabled()) {
+      LOG.info("upsertDelegationKey [UPDATE]: " + id);
+    }
+  }
+
+  public static void removeDelegationKey(int id) {
+    try {
+      DatabaseConnection obj = Database.getInstance().getConnection();
+      Connection conn = obj.getConnection();
+      PreparedStatement pst = conn.prepareStatement("DELETE FROM delegationkeys WHERE id = ?;");
+      pst.setInt(1, id);
+      pst.executeUpdate();
+      pst.close();
+      Database.getInstance().retConnection(obj);
+    } catch (SQLException ex) {
+      System.err.println(ex.getMessage());
+    }
+    if (LOG.isInfoEnabled()) {
+      LOG.info("removeDelegationKey [UPDATE]: " + id);
+    }
+  }
+
+  public static void upsertPersistToken(
+      int seqnumber,
+      int masterkey,
+      long issuedate,
+      long maxdate,
+      long expirydate,
+      String owner,
+      String renewer,
+      String realuser) {
+    try {
+      DatabaseConnection obj = Database.getInstance().getConnection();
+      Connection conn = obj.getConnection();
+      String sql = "";
+      String env = System.getenv("DATABASE");
+      if (env.equals("VOLT")) {
+        sql =
+            "UPSERT INTO persisttokens(owner, renewer, realuser, issueDate, "
+                + "maxDate, expiryDate, sequenceNumber, masterKeyId) VALUES(?, ?, ?, ?, ?, ?, ?, ?);";
+      } else {
+        sql =
+            "INSERT INTO persisttokens(owner, renewer, realuser, issueDate, "
+                + "maxDate, expiryDate, sequenceNumber, masterKeyId) VALUES(?, ?, ?, ?, ?, ?, ?, ?) "
+                + "ON CONFLICT(sequenceNumber) DO UPDATE SET owner = ?, renewer = ?, realuser = ?, "
+                + "issueDate = ?, maxDate = ?, expiryDate = ?, masterKeyId = ?;";
+      }
+      PreparedStatement pst = conn.prepareStatement(sql);
+      pst.setString(1, owner);
+      pst.setString(2, renewer);
+      pst.setString(3, realuser);
+      pst.setLong(4, issuedate);
+      pst.setLong(5, maxdate);
+      pst.setLong(6, expirydate);
+      pst.setInt(7, seqnumber);
+      pst.setInt(8, masterkey);
+      if (!env.equals("VOLT")) {
+        pst.setString(9, owner);
+        pst.setString(10, renewer);
+        pst.setString(11, realuser);
+        pst.setLong(12, issuedate);
+        pst.setLong(13, maxdate);
+        pst.setLong(14, expirydate);
+        pst.setInt(15, masterkey);
+      }
+      pst.executeUpdate();
+      pst.close();
+      Database.getInstance().retConnection(obj);
+    } catch (SQLException ex) {
+      System.err.println(ex.getMessage());
+    }
+    if (LOG.isInfoEnabled()) {
+      LOG.info("upsertPersistToken [UPDATE]: " + seqnumber);
+    }
+  }
+
+  public static void removePersistToken(int seqnumber) {
+    try {
+      DatabaseConnection obj = Database.getInstance().getConnection();
+      Connection conn = obj.getConnection();
+      PreparedStatement pst =
+          conn.prepareStatement("DELETE FROM persisttokens WHERE sequenceNumber = ?;");
+      pst.setInt(1, seqnumber);
+      pst.executeUpdate();
+      pst.close();
+      Database.getInstance().retConnection(obj);
+    } catch (SQLException ex) {
+      System.err.println(ex.getMessage());
+    }
+    if (LOG.isInfoEnabled()) {
+      LOG.info("removePersistToken [UPDATE]: " + seqnumber);
+    }
+  }
+
+  /**
+   * Load one page of the tokens, in sequence number order.
+   *
+   * @param after the last sequence number of the previous page
+   * @param limit the maximum number of tokens to load
+   */
+  public static void getPersistTokens(
+      int after,
+      int limit,
+      List<String> owners,
+      List<String> renewers,
+      List<String> realusers,
+      List<Integer> seqnumbers,
+      List<Integer> masterkeys,
+      List<Long> issuedates,
+      List<Long> expirydates,
+      List<Long> maxdates) {
+    try {
+      DatabaseConnection obj = Database.getInstance().getConnection();
+      Connection conn = obj.getConnection();
+      String sql =
+          "SELECT owner, renewer, realuser, issueDate, maxDate, "
+              + "expiryDate, sequenceNumber, masterKeyId FROM persisttokens "
+              + "WHERE sequenceNumber > ? ORDER BY sequenceNumber LIMIT ?;";
+      PreparedStatement pst = conn.prepareStatement(sql);
+      pst.setInt(1, after);
+      pst.setInt(2, limit);
+      ResultSet rs = pst.executeQuery();
+      while (rs.next()) {
+        owners.add(rs.getString(1));
+        renewers.add(rs.getString(2));
+        realusers.add(rs.getString(3));
+        issuedates.add(rs.getLong(4));
+        maxdates.add(rs.getLong(5));
+        expirydates.add(rs.getLong(6));
+        seqnumbers.add(rs.getInt(7));
+        masterkeys.add(rs.getInt(8));
+      }
+      rs.close();
+      pst.close();
+      Database.getInstance().retConnection(obj);
+    } catch (SQLException ex) {
+      System.err.println(ex.getMessage());
+    }
+    if (LOG.isInfoEnabled()) {
+      LOG.info("getPersistTokens [GET]: (" + after + ", " + owners.size() + ")");
+    }
+  }
+
+  /** The namespace counters recorded with the last database checkpoint. */
+  public static class NamespaceCheckpoint {
+    public final int namespaceId;
+    public final long genstampV1;
+    public final long genstampV2;
+    public final long genstampV1Limit;
+    public final long lastAllocatedBlockId;
+    public final long lastAllocatedStripedBlockId;
+    public final long transactionId;
+
+    public NamespaceCheckpoint(
+        int namespaceId,
+        long genstampV1,
+        long genstampV2,
+        long genstampV1Limit,
+        long lastAllocatedBlockId,
+        long lastAllocatedStripedBlockId,
+        long transactionId) {
+      this.namespaceId = namespaceId;
+      this.genstampV1 = genstampV1;
+      this.genstampV2 = genstampV2;
+      this.genstampV1Limit = genstampV1Limit;
+      this.lastAllocatedBlockId = lastAllocatedBlockId;
+      this.lastAllocatedStripedBlockId = lastAllocatedStripedBlockId;
+      this.transactionId = transactionId;
+    }
+  }
+
+  public static void setNamespaceCheckpoint(NamespaceCheckpoint cp) {
+    try {
+      DatabaseConnection obj = Database.getInstance().getConnection();
+      Connection conn = obj.getConnection();
+      String sql = "";
+      String env = System.getenv("DATABASE");
+      if (env.equals("VOLT")) {
+        sql =
+            "UPSERT INTO namespace(namespaceId, genstampV1, genstampV2, genstampV1Limit, "
+                + "lastAllocatedBlockId, lastAllocatedStripedBlockId, transactionId) "
+                + "VALUES(?, ?, ?, ?, ?, ?, ?);";
+      } else {
+        sql =
+            "INSERT INTO namespace(namespaceId, genstampV1, genstampV2, genstampV1Limit, "
+                + "lastAllocatedBlockId, lastAllocatedStripedBlockId, transactionId) "
+                + "VALUES(?, ?, ?, ?, ?, ?, ?) "
+                + "ON CONFLICT(namespaceId) DO UPDATE SET genstampV1 = ?, genstampV2 = ?, "
+                + "genstampV1Limit = ?, lastAllocatedBlockId = ?, "
+                + "lastAllocatedStripedBlockId = ?, transactionId = ?;";
+      }
+      PreparedStatement pst = conn.prepareStatement(sql);
+      pst.setInt(1, cp.namespaceId);
+      pst.setLong(2, cp.genstampV1);
+      pst.setLong(3, cp.genstampV2);
+      pst.setLong(4, cp.genstampV1Limit);
+      pst.setLong(5, cp.lastAllocatedBlockId);
+      pst.setLong(6, cp.lastAllocatedStripedBlockId);
+      pst.setLong(7, cp.transactionId);
+      if (!env.equals("VOLT")) {
+        pst.setLong(8, cp.genstampV1);
+        pst.setLong(9, cp.genstampV2);
+        pst.setLong(10, cp.genstampV1Limit);
+        pst.setLong(11, cp.lastAllocatedBlockId);
+        pst.setLong(12, cp.lastAllocatedStripedBlockId);
+        pst.setLong(13, cp.transactionId);
+      }
+      pst.executeUpdate();
+      pst.close();
+      Database.getInstance().retConnection(obj);
+    } catch (SQLException ex) {
+      System.err.println(ex.getMessage());
+    }
+    if (LOG.isInfoEnabled()) {
+      LOG.info("setNamespaceCheckpoint [SET]: " + cp.transactionId);
+    }
+  }
+
+  /** @return the last database checkpoint of the namespace, null if there is none */
+  public static NamespaceCheckpoint getNamespaceCheckpoint(int namespaceId) {
+    NamespaceCheckpoint cp = null;
+    try {
+      DatabaseConnection obj = Database.getInstance().getConnection();
+      Connection conn = obj.getConnection();
+      String sql =
+          "SELECT namespaceId, genstampV1, genstampV2, genstampV1Limit, lastAllocatedBlockId, "
+              + "lastAllocatedStripedBlockId, transactionId FROM namespace WHERE namespaceId = ?;";
+      PreparedStatement pst = conn.prepareStatement(sql);
+      pst.setInt(1, namespaceId);
+      ResultSet rs = pst.executeQuery();
+      while (rs.next()) {
+        cp =
+            new NamespaceCheckpoint(
+                rs.getInt(1),
+                rs.getLong(2),
+                rs.getLong(3),
+                rs.getLong(4),
+                rs.getLong(5),
+                rs.getLong(6),
+                rs.getLong(7));
+      }
+      rs.close();
+      pst.close();
+      Database.getInstance().retConnection(obj);
+    } catch (SQLException ex) {
+      System.err.println(ex.getMessage());
+    }
+    if (LOG.isInfoEnabled()) {
+      LOG.info("getNamespaceCheckpoint [GET]: " + (cp == null ? -1 : cp.transactionId));
+    }
+    return cp;
+  }
 }
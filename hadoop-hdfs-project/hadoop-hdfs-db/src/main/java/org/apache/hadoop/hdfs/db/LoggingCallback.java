@@ -0,0 +1,24 @@
+package org.apache.hadoop.hdfs.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ProcedureCallback;
+
+/** Logs the failure of an asynchronous procedure call whose result is not needed. */
+public class LoggingCallback implements ProcedureCallback {
+  static final Logger LOG = LoggerFactory.getLogger(LoggingCallback.class);
+
+  private final String procedure;
+
+  public LoggingCallback(String procedure) {
+    this.procedure = procedure;
+  }
+
+  @Override
+  public void clientCallback(ClientResponse response) {
+    if (response.getStatus() != ClientResponse.SUCCESS) {
+      LOG.error(procedure + " failed: " + response.getStatusString());
+    }
+  }
+}
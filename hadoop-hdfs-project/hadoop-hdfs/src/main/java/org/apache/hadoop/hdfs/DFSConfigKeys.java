@@ -518,6 +518,44 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.namenode.fslock.fair";
   public static final boolean DFS_NAMENODE_FSLOCK_FAIR_DEFAULT = true;
 
+  public static final String DFS_NAMENODE_INODE_LOCKS_ENABLED_KEY =
+      "dfs.namenode.inode-locks.enabled";
+  public static final boolean DFS_NAMENODE_INODE_LOCKS_ENABLED_DEFAULT = false;
+  public static final String DFS_NAMENODE_INODE_LOCKS_STRIPES_KEY =
+      "dfs.namenode.inode-locks.stripes";
+  public static final int DFS_NAMENODE_INODE_LOCKS_STRIPES_DEFAULT = 1024;
+  public static final String DFS_NAMENODE_CACHE_HOTSET_FILE_KEY =
+      "dfs.namenode.cache.hotset.file";
+  public static final String DFS_NAMENODE_CACHE_HOTSET_SIZE_KEY =
+      "dfs.namenode.cache.hotset.size";
+  public static final int DFS_NAMENODE_CACHE_HOTSET_SIZE_DEFAULT = 100000;
+  public static final String DFS_NAMENODE_CACHE_HOTSET_INTERVAL_KEY =
+      "dfs.namenode.cache.hotset.interval";
+  public static final long DFS_NAMENODE_CACHE_HOTSET_INTERVAL_DEFAULT = 60000;
+  public static final String DFS_NAMENODE_CACHE_WARMUP_THREADS_KEY =
+      "dfs.namenode.cache.warmup.threads";
+  public static final int DFS_NAMENODE_CACHE_WARMUP_THREADS_DEFAULT = 16;
+  public static final String DFS_NAMENODE_DB_CHECKPOINT_ENABLED_KEY =
+      "dfs.namenode.db.checkpoint.enabled";
+  public static final boolean DFS_NAMENODE_DB_CHECKPOINT_ENABLED_DEFAULT = false;
+  public static final String DFS_NAMENODE_DB_CHECKPOINT_PERIOD_KEY =
+      "dfs.namenode.db.checkpoint.period";
+  public static final long DFS_NAMENODE_DB_CHECKPOINT_PERIOD_DEFAULT = 60; // 1m
+  public static final String DFS_NAMENODE_DB_ASYNC_LOAD_ENABLED_KEY =
+      "dfs.namenode.db.async-load.enabled";
+  public static final boolean DFS_NAMENODE_DB_ASYNC_LOAD_ENABLED_DEFAULT = false;
+  public static final String DFS_NAMENODE_DB_ASYNC_LOAD_THREADS_KEY =
+      "dfs.namenode.db.async-load.threads";
+  public static final int DFS_NAMENODE_DB_ASYNC_LOAD_THREADS_DEFAULT = 32;
+  public static final String DFS_NAMENODE_DB_CONTENT_SUMMARY_ENABLED_KEY =
+      "dfs.namenode.db.content-summary.enabled";
+  public static final boolean DFS_NAMENODE_DB_CONTENT_SUMMARY_ENABLED_DEFAULT =
+      false;
+  public static final String DFS_NAMENODE_INODE_CALL_CACHE_ENABLED_KEY =
+      "dfs.namenode.inode.call-cache.enabled";
+  public static final boolean DFS_NAMENODE_INODE_CALL_CACHE_ENABLED_DEFAULT =
+      true;
+
   public static final String  DFS_NAMENODE_LOCK_DETAILED_METRICS_KEY =
       "dfs.namenode.lock.detailed-metrics.enabled";
   public static final boolean DFS_NAMENODE_LOCK_DETAILED_METRICS_DEFAULT =
@@ -1123,6 +1161,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final long DFS_NAMENODE_RETRY_CACHE_EXPIRYTIME_MILLIS_DEFAULT = 600000; // 10 minutes
   public static final String DFS_NAMENODE_RETRY_CACHE_HEAP_PERCENT_KEY = "dfs.namenode.retrycache.heap.percent";
   public static final float DFS_NAMENODE_RETRY_CACHE_HEAP_PERCENT_DEFAULT = 0.03f;
+  public static final String DFS_NAMENODE_RETRY_CACHE_STRIPES_KEY = "dfs.namenode.retrycache.stripes";
+  public static final int DFS_NAMENODE_RETRY_CACHE_STRIPES_DEFAULT = 16;
   
   // Hidden configuration undocumented in hdfs-site. xml
   // Timeout to wait for block receiver and responder thread to stop
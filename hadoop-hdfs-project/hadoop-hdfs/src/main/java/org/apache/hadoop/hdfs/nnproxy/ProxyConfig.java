@@ -24,4 +24,30 @@ public class ProxyConfig {
     public static final long CACHE_REGISTRY_RELOAD_INTERVAL_MS_DEFAULT = 300 * 1000L;
     public static final String SUPERUSER = "dfs.nnproxy.superuser";
     public static final String SUPERUSER_DEFAULT = System.getProperty("user.name");
+    public static final String READ_ONLY_ROUTING_ENABLED = "dfs.nnproxy.read-only.routing.enabled";
+    public static final boolean READ_ONLY_ROUTING_ENABLED_DEFAULT = false;
+    public static final String READ_ONLY_STALENESS_MS = "dfs.nnproxy.read-only.staleness-ms";
+    public static final long READ_ONLY_STALENESS_MS_DEFAULT = 1000L;
+    public static final String READ_ONLY_MAX_TRACKED_CLIENTS = "dfs.nnproxy.read-only.max-tracked-clients";
+    public static final long READ_ONLY_MAX_TRACKED_CLIENTS_DEFAULT = 1000000L;
+    /** off, propose (log the new mount table only) or apply */
+    public static final String REBALANCE_MODE = "dfs.nnproxy.rebalance.mode";
+    public static final String REBALANCE_MODE_DEFAULT = "off";
+    public static final String REBALANCE_INTERVAL_MS = "dfs.nnproxy.rebalance.interval-ms";
+    public static final long REBALANCE_INTERVAL_MS_DEFAULT = 60 * 1000L;
+    public static final String REBALANCE_IMBALANCE_RATIO = "dfs.nnproxy.rebalance.imbalance-ratio";
+    public static final float REBALANCE_IMBALANCE_RATIO_DEFAULT = 1.5f;
+    public static final String REBALANCE_SPLIT_FRACTION = "dfs.nnproxy.rebalance.split-fraction";
+    public static final float REBALANCE_SPLIT_FRACTION_DEFAULT = 0.5f;
+    public static final String REBALANCE_MIN_OPS = "dfs.nnproxy.rebalance.min-ops";
+    public static final long REBALANCE_MIN_OPS_DEFAULT = 10000L;
+    public static final String REBALANCE_DRAIN_TIMEOUT_MS = "dfs.nnproxy.rebalance.drain-timeout-ms";
+    public static final long REBALANCE_DRAIN_TIMEOUT_MS_DEFAULT = 10 * 1000L;
+    public static final String FANOUT_THREADS = "dfs.nnproxy.fanout.threads";
+    public static final int FANOUT_THREADS_DEFAULT = 64;
+    public static final String FANOUT_TIMEOUT_MS = "dfs.nnproxy.fanout.timeout-ms";
+    public static final long FANOUT_TIMEOUT_MS_DEFAULT = 30 * 1000L;
+    /** 0 disables hedging */
+    public static final String FANOUT_HEDGE_DELAY_MS = "dfs.nnproxy.fanout.hedge-delay-ms";
+    public static final long FANOUT_HEDGE_DELAY_MS_DEFAULT = 1000L;
 }
@@ -2,6 +2,8 @@
 
 import org.apache.hadoop.hdfs.nnproxy.server.cache.CacheRegistry;
 import org.apache.hadoop.hdfs.nnproxy.server.mount.BlockPoolRegistry;
+import org.apache.hadoop.hdfs.nnproxy.server.mount.MountRebalancer;
+import org.apache.hadoop.hdfs.nnproxy.server.mount.MountStatistics;
 import org.apache.hadoop.hdfs.nnproxy.server.mount.MountsManager;
 import org.apache.hadoop.hdfs.nnproxy.server.proxy.ProxyMetrics;
 import org.apache.hadoop.hdfs.nnproxy.server.proxy.ProxyServer;
@@ -26,6 +28,8 @@ public class NNProxy {
 
     protected final Configuration conf;
     protected MountsManager mounts;
+    protected final MountStatistics mountStatistics;
+    protected final MountRebalancer rebalancer;
     protected final UpstreamManager upstreamManager;
     protected final BlockPoolRegistry blockPoolRegistry = null;
     protected final CacheRegistry cacheRegistry = null;
@@ -39,6 +43,8 @@ public NNProxy(Configuration conf) throws Exception {
         proxyMetrics = ProxyMetrics.create(conf);
         this.conf = conf;
         this.mounts = new MountsManager();
+        this.mountStatistics = new MountStatistics();
+        this.rebalancer = new MountRebalancer(mounts, mountStatistics, conf);
 
         this.upstreamManager = new UpstreamManager(this, conf);
         // this.blockPoolRegistry = new BlockPoolRegistry(this, conf, upstreamManager);
@@ -59,12 +65,14 @@ public void run() {
         });
         // this.cacheRegistry.start();
         this.server.start();
+        this.rebalancer.start();
         LOG.info("Started nnproxy... ");
     }
 
     public void shutdown() {
         // this.cacheRegistry.shutdown();
         LOG.info("Gracefully shutting down nnproxy...");
+        this.rebalancer.shutdown();
         this.router.shutdown();
         this.server.shutdown();
         LOG.info("NNProxy shutdown completed");
@@ -78,6 +86,10 @@ public MountsManager getMounts() {
         return mounts;
     }
 
+    public MountStatistics getMountStatistics() {
+        return mountStatistics;
+    }
+
     public Configuration getConf() {
         return conf;
     }
@@ -0,0 +1,269 @@
+package org.apache.hadoop.hdfs.nnproxy.server.mount;
+
+import org.apache.hadoop.hdfs.nnproxy.ProxyConfig;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.Daemon;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically looks at the per mount point load collected in {@link MountStatistics} and moves
+ * load from the busiest NameNode to the idlest one. A hot directory right below a hot mount point
+ * is split off into its own mount point; otherwise the mount point whose load best evens out the
+ * two NameNodes is migrated.
+ *
+ * Handoff drains the affected mount point in the proxy, asks the old owner to give up the subtree
+ * through {@link MountsManager#repartition(String)} and admits requests again once the new mount
+ * table is installed.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class MountRebalancer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MountRebalancer.class);
+
+    enum Mode {
+        OFF, PROPOSE, APPLY
+    }
+
+    static class Plan {
+        // mount point currently serving the target path
+        final String mountPoint;
+        // path that becomes a mount point on the new NameNode
+        final String target;
+        final String fromFs;
+        final String toFs;
+
+        Plan(String mountPoint, String target, String fromFs, String toFs) {
+            this.mountPoint = mountPoint;
+            this.target = target;
+            this.fromFs = fromFs;
+            this.toFs = toFs;
+        }
+
+        boolean isSplit() {
+            return !mountPoint.equals(target);
+        }
+
+        @Override
+        public String toString() {
+            return (isSplit() ? "split " : "migrate ") + target + " from " + fromFs + " to " + toFs;
+        }
+    }
+
+    final MountsManager mounts;
+    final MountStatistics stats;
+    final Mode mode;
+    final long intervalMs;
+    final float imbalanceRatio;
+    final float splitFraction;
+    final long minOps;
+    final long drainTimeoutMs;
+    ScheduledExecutorService scheduler;
+
+    public MountRebalancer(MountsManager mounts, MountStatistics stats, Configuration conf) {
+        this.mounts = mounts;
+        this.stats = stats;
+        this.mode = Mode.valueOf(StringUtils.upperCase(
+                conf.get(ProxyConfig.REBALANCE_MODE, ProxyConfig.REBALANCE_MODE_DEFAULT)));
+        this.intervalMs = conf.getLong(
+                ProxyConfig.REBALANCE_INTERVAL_MS, ProxyConfig.REBALANCE_INTERVAL_MS_DEFAULT);
+        this.imbalanceRatio = conf.getFloat(
+                ProxyConfig.REBALANCE_IMBALANCE_RATIO, ProxyConfig.REBALANCE_IMBALANCE_RATIO_DEFAULT);
+        this.splitFraction = conf.getFloat(
+                ProxyConfig.REBALANCE_SPLIT_FRACTION, ProxyConfig.REBALANCE_SPLIT_FRACTION_DEFAULT);
+        this.minOps = conf.getLong(ProxyConfig.REBALANCE_MIN_OPS, ProxyConfig.REBALANCE_MIN_OPS_DEFAULT);
+        this.drainTimeoutMs = conf.getLong(
+                ProxyConfig.REBALANCE_DRAIN_TIMEOUT_MS, ProxyConfig.REBALANCE_DRAIN_TIMEOUT_MS_DEFAULT);
+    }
+
+    public void start() {
+        if (mode == Mode.OFF) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> new Daemon(r));
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    rebalance(stats.roll());
+                } catch (Exception e) {
+                    LOG.error("Mount rebalancing failed", e);
+                }
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        LOG.info("Started mount rebalancer in " + mode + " mode, interval " + intervalMs + "ms");
+    }
+
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    void rebalance(MountStatistics.Window window) throws Exception {
+        if (LOG.isDebugEnabled()) {
+            for (MountsManager.MountEntry entry : mounts.getMounts()) {
+                LOG.debug("Mount " + entry.mountPoint + "@" + entry.fsUri + ": "
+                        + window.getOps(entry.mountPoint) + " ops in " + window.getElapsedMillis() + "ms, avg "
+                        + window.getAvgLatencyMicros(entry.mountPoint) + "us");
+            }
+        }
+        Plan plan = plan(window);
+        if (plan == null) {
+            return;
+        }
+        String table = buildMountTable(plan);
+        if (mode == Mode.PROPOSE) {
+            LOG.info("Proposed to " + plan + ", new mount table:\n" + table);
+            return;
+        }
+        apply(plan, table);
+    }
+
+    Plan plan(MountStatistics.Window window) {
+        List<String> allFs = mounts.getAllFs();
+        if (window.getTotalOps() < minOps || allFs.size() < 2) {
+            return null;
+        }
+        Map<String, Long> fsLoad = new HashMap<>();
+        for (String fs : allFs) {
+            fsLoad.put(fs, 0L);
+        }
+        List<MountsManager.MountEntry> owners = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (MountsManager.MountEntry entry : mounts.getMounts()) {
+            if (entry.readOnly || !seen.add(entry.mountPoint)) {
+                continue;
+            }
+            owners.add(entry);
+            fsLoad.put(entry.fsUri, fsLoad.get(entry.fsUri) + window.getOps(entry.mountPoint));
+        }
+
+        String hotFs = null;
+        String coldFs = null;
+        long total = 0;
+        for (Map.Entry<String, Long> entry : fsLoad.entrySet()) {
+            total += entry.getValue();
+            if (hotFs == null || entry.getValue() > fsLoad.get(hotFs)) {
+                hotFs = entry.getKey();
+            }
+            if (coldFs == null || entry.getValue() < fsLoad.get(coldFs)) {
+                coldFs = entry.getKey();
+            }
+        }
+        long hotLoad = fsLoad.get(hotFs);
+        long coldLoad = fsLoad.get(coldFs);
+        if (hotLoad < imbalanceRatio * total / allFs.size()) {
+            return null;
+        }
+
+        MountsManager.MountEntry hottest = null;
+        for (MountsManager.MountEntry entry : owners) {
+            if (entry.fsUri.equals(hotFs)
+                    && (hottest == null || window.getOps(entry.mountPoint) > window.getOps(hottest.mountPoint))) {
+                hottest = entry;
+            }
+        }
+        if (hottest == null) {
+            return null;
+        }
+        String child = window.getHottestChild(hottest.mountPoint);
+        if (child != null && !mounts.isMountPoint(child)
+                && window.getChildOps(child) >= splitFraction * window.getOps(hottest.mountPoint)) {
+            return new Plan(hottest.mountPoint, child, hotFs, coldFs);
+        }
+
+        // migrate the mount point that brings both NameNodes closest to even, moving more than the
+        // gap would only swap their roles
+        long gap = hotLoad - coldLoad;
+        MountsManager.MountEntry best = null;
+        long bestDiff = Long.MAX_VALUE;
+        for (MountsManager.MountEntry entry : owners) {
+            long ops = window.getOps(entry.mountPoint);
+            if (!entry.fsUri.equals(hotFs) || entry.mountPoint.equals("/") || ops == 0 || ops >= gap) {
+                continue;
+            }
+            long diff = Math.abs(ops - gap / 2);
+            if (diff < bestDiff) {
+                best = entry;
+                bestDiff = diff;
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+        return new Plan(best.mountPoint, best.mountPoint, hotFs, coldFs);
+    }
+
+    String buildMountTable(Plan plan) {
+        StringBuilder table = new StringBuilder();
+        boolean added = false;
+        for (MountsManager.MountEntry entry : mounts.getMounts()) {
+            if (!entry.readOnly && entry.mountPoint.equals(plan.target)) {
+                if (!added) {
+                    appendEntry(table, plan.toFs, plan.target, new String[] {MountsManager.REPARTITION_ATTRIBUTE});
+                    added = true;
+                }
+                continue;
+            }
+            List<String> attrs = new ArrayList<>();
+            for (String attr : entry.attributes) {
+                // only the entry being moved now carries the repartition mark
+                if (!attr.isEmpty() && !attr.equals(MountsManager.REPARTITION_ATTRIBUTE)) {
+                    attrs.add(attr);
+                }
+            }
+            appendEntry(table, entry.fsUri, entry.mountPoint, attrs.toArray(new String[0]));
+        }
+        if (!added) {
+            appendEntry(table, plan.toFs, plan.target, new String[] {MountsManager.REPARTITION_ATTRIBUTE});
+        }
+        return table.toString();
+    }
+
+    static void appendEntry(StringBuilder table, String fsUri, String mountPoint, String[] attrs) {
+        table.append(fsUri).append(' ').append(mountPoint);
+        if (attrs.length > 0) {
+            table.append(' ').append(StringUtils.join(attrs, ","));
+        }
+        table.append('\n');
+    }
+
+    void apply(Plan plan, String table) throws Exception {
+        LOG.info("Start to " + plan);
+        try {
+            if (!stats.drain(plan.mountPoint, drainTimeoutMs)) {
+                LOG.warn("Mount point " + plan.mountPoint + " did not drain within " + drainTimeoutMs
+                        + "ms, skipped " + plan);
+                return;
+            }
+            mounts.repartition(table);
+            // keep requests on hold until the new table comes back from ZooKeeper
+            long deadline = System.currentTimeMillis() + drainTimeoutMs;
+            while (!plan.toFs.equals(mounts.resolveOpt(plan.target))) {
+                if (System.currentTimeMillis() >= deadline) {
+                    LOG.warn("New mount table not installed within " + drainTimeoutMs + "ms");
+                    break;
+                }
+                Thread.sleep(10);
+            }
+        } finally {
+            stats.resume(plan.mountPoint);
+        }
+        LOG.info("Finished to " + plan);
+    }
+}
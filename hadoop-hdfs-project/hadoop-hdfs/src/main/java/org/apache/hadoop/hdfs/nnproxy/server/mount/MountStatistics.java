@@ -0,0 +1,160 @@
+package org.apache.hadoop.hdfs.nnproxy.server.mount;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per mount point request counters collected by the proxy. Operation counts and latencies are
+ * accumulated in windows which {@link MountRebalancer} rolls over; in-flight counts are kept across
+ * windows and used to drain a mount point before it is handed off.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class MountStatistics {
+
+    public static class Window {
+        final long startNanos = System.nanoTime();
+        final Map<String, LongAdder> ops = new ConcurrentHashMap<>();
+        final Map<String, LongAdder> latencyNanos = new ConcurrentHashMap<>();
+        final Map<String, LongAdder> childOps = new ConcurrentHashMap<>();
+        // child path -> mount point it was routed through
+        final Map<String, String> childMounts = new ConcurrentHashMap<>();
+
+        public long getOps(String mountPoint) {
+            LongAdder adder = ops.get(mountPoint);
+            return adder == null ? 0L : adder.sum();
+        }
+
+        public long getTotalOps() {
+            long total = 0;
+            for (LongAdder adder : ops.values()) {
+                total += adder.sum();
+            }
+            return total;
+        }
+
+        /** Average latency in microseconds of the operations on the mount point. */
+        public long getAvgLatencyMicros(String mountPoint) {
+            long count = getOps(mountPoint);
+            LongAdder adder = latencyNanos.get(mountPoint);
+            return (count == 0 || adder == null) ? 0L : adder.sum() / count / 1000;
+        }
+
+        public long getChildOps(String child) {
+            LongAdder adder = childOps.get(child);
+            return adder == null ? 0L : adder.sum();
+        }
+
+        /** The busiest directory directly below the mount point, or null if none was accessed. */
+        public String getHottestChild(String mountPoint) {
+            String hottest = null;
+            long max = 0;
+            for (Map.Entry<String, LongAdder> entry : childOps.entrySet()) {
+                String child = entry.getKey();
+                if (!mountPoint.equals(childMounts.get(child))) {
+                    continue;
+                }
+                long count = entry.getValue().sum();
+                if (count > max) {
+                    max = count;
+                    hottest = child;
+                }
+            }
+            return hottest;
+        }
+
+        public long getElapsedMillis() {
+            return (System.nanoTime() - startNanos) / 1000000;
+        }
+    }
+
+    final Map<String, AtomicLong> inFlight = new ConcurrentHashMap<>();
+    final Map<String, Boolean> draining = new ConcurrentHashMap<>();
+    volatile Window current = new Window();
+
+    static String getChild(String mountPoint, String path) {
+        int start = mountPoint.equals("/") ? 1 : mountPoint.length() + 1;
+        if (path.length() <= start) {
+            return null;
+        }
+        int end = path.indexOf('/', start);
+        return end < 0 ? path : path.substring(0, end);
+    }
+
+    /**
+     * Account a request routed through the mount point.
+     *
+     * @return false if the mount point is draining, the caller has to wait and route again
+     */
+    public boolean begin(String mountPoint) {
+        AtomicLong counter = inFlight.get(mountPoint);
+        if (counter == null) {
+            inFlight.putIfAbsent(mountPoint, new AtomicLong());
+            counter = inFlight.get(mountPoint);
+        }
+        counter.incrementAndGet();
+        if (draining.containsKey(mountPoint)) {
+            counter.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    public void end(String mountPoint, String path, long elapsedNanos) {
+        inFlight.get(mountPoint).decrementAndGet();
+        Window window = current;
+        window.ops.computeIfAbsent(mountPoint, k -> new LongAdder()).increment();
+        window.latencyNanos.computeIfAbsent(mountPoint, k -> new LongAdder()).add(elapsedNanos);
+        String child = getChild(mountPoint, path);
+        if (child != null) {
+            window.childMounts.putIfAbsent(child, mountPoint);
+            window.childOps.computeIfAbsent(child, k -> new LongAdder()).increment();
+        }
+    }
+
+    public boolean isDraining(String mountPoint) {
+        return draining.containsKey(mountPoint);
+    }
+
+    /** Wait while the mount point is draining, at most timeoutMs. */
+    public void awaitNotDraining(String mountPoint, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (draining.containsKey(mountPoint) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Stop admitting requests to the mount point and wait for the in-flight ones to finish.
+     *
+     * @return true if the mount point drained within timeoutMs
+     */
+    public boolean drain(String mountPoint, long timeoutMs) throws InterruptedException {
+        draining.put(mountPoint, Boolean.TRUE);
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        AtomicLong counter = inFlight.get(mountPoint);
+        while (counter != null && counter.get() > 0) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    public void resume(String mountPoint) {
+        draining.remove(mountPoint);
+    }
+
+    /** Start a new window and return the finished one. */
+    public Window roll() {
+        Window finished = current;
+        current = new Window();
+        return finished;
+    }
+}
@@ -22,7 +22,9 @@
 
 import java.io.OutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.URI;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,15 +35,26 @@ public class MountsManager extends AbstractService {
 
   private static final Logger LOG = LoggerFactory.getLogger(MountsManager.class);
 
-  static class MountEntry {
+  /**
+   * Mount attribute marking a read-only replica of the mount point. Replicas only serve read
+   * operations; writes always go to the owning (non read-only) entry.
+   */
+  public static final String READ_ONLY_ATTRIBUTE = "readonly";
+
+  /** Mount attribute marking the entry that {@link #repartition(String)} moves. */
+  public static final String REPARTITION_ATTRIBUTE = "repartition";
+
+  public static class MountEntry {
     public final String fsUri;
     public final String mountPoint;
     public final String[] attributes;
+    public final boolean readOnly;
 
     public MountEntry(String fsUri, String mountPoint, String[] attributes) {
       this.fsUri = fsUri;
       this.mountPoint = mountPoint;
       this.attributes = attributes;
+      this.readOnly = isReadOnly(attributes);
     }
 
     @Override
@@ -64,6 +77,7 @@ public String toString() {
   MountEntry root;
   NodeCache nodeCache;
   Map<String, List<MountEntry>> lookupMap;
+  Map<String, List<String>> readOnlyMap;
   Random rand;
 
   @VisibleForTesting protected volatile boolean installed;
@@ -118,10 +132,22 @@ public ImmutableList<String> getAllFs() {
     return allFs;
   }
 
+  static boolean isReadOnly(String[] attributes) {
+    for (String attr : attributes) {
+      if (READ_ONLY_ATTRIBUTE.equals(attr)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   public String resolve(String path) {
     ImmutableList<MountEntry> entries = this.mounts;
     MountEntry chosen = null;
     for (MountEntry entry : entries) {
+      if (entry.readOnly) {
+        continue;
+      }
       if (path == null
           || !(path.startsWith(entry.mountPoint + "/") || path.equals(entry.mountPoint))) {
         continue;
@@ -146,6 +172,21 @@ public String resolveForBench(String path) {
   }
 
   public String resolveOpt(String path) {
+    return resolveEntry(path).fsUri;
+  }
+
+  /**
+   * Resolve the read-only replicas of the mount point owning the given path.
+   *
+   * @param path
+   * @return fs URIs of the replicas, empty if the mount point has none
+   */
+  public List<String> resolveReadOnly(String path) {
+    List<String> replicas = this.readOnlyMap.get(resolveEntry(path).mountPoint);
+    return replicas == null ? Collections.<String>emptyList() : replicas;
+  }
+
+  public MountEntry resolveEntry(String path) {
     MountEntry chosen = null;
     if (path == null) {
       chosen = root;
@@ -169,7 +210,7 @@ public String resolveOpt(String path) {
     if (chosen == null) {
       chosen = root;
     }
-    return chosen.fsUri;
+    return chosen;
   }
 
   private MountEntry resolveParentPath(String parent, String path) {
@@ -216,10 +257,38 @@ public boolean isUnified(String path) {
     return true;
   }
 
+  /**
+   * Mount points strictly below the given path, including nested ones. Each of them is served by its
+   * own owner rather than by the owner of path.
+   *
+   * @param path
+   * @return one owning entry per mount point
+   */
+  public List<MountEntry> getMountsBelow(String path) {
+    String prefix = path.endsWith("/") ? path : path + "/";
+    List<MountEntry> below = new ArrayList<>();
+    Set<String> seen = new HashSet<>();
+    ImmutableList<MountEntry> entries = this.mounts;
+    for (MountEntry entry : entries) {
+      if (entry.readOnly
+          || entry.mountPoint.length() <= prefix.length()
+          || !entry.mountPoint.startsWith(prefix)) {
+        continue;
+      }
+      if (seen.add(entry.mountPoint)) {
+        below.add(entry);
+      }
+    }
+    return below;
+  }
+
   protected void installMountTable(List<MountEntry> entries) {
     LOG.info("Installed mount table: " + entries);
     List<String> fs = new ArrayList<>();
     for (MountEntry entry : entries) {
+      if (entry.readOnly) {
+        continue;
+      }
       if (entry.mountPoint.equals("/")) {
         root = entry;
       }
@@ -230,6 +299,7 @@ protected void installMountTable(List<MountEntry> entries) {
     this.allFs = ImmutableList.copyOf(fs);
     this.mounts = ImmutableList.copyOf(entries);
     this.lookupMap = buildLookupMap(entries);
+    this.readOnlyMap = buildReadOnlyMap(entries);
     this.installed = true;
   }
 
@@ -244,8 +314,9 @@ protected List<MountEntry> parseMountTable(String mounts) {
       String fsUri = cols[0];
       String mountPoint = cols[1];
       String[] attrs = (cols.length > 2) ? cols[2].split(",") : new String[0];
-      table.add(new MountEntry(fsUri, mountPoint, attrs));
-      if (mountPoint.equals("/")) {
+      MountEntry entry = new MountEntry(fsUri, mountPoint, attrs);
+      table.add(entry);
+      if (mountPoint.equals("/") && !entry.readOnly) {
         hasRoot = true;
       }
     }
@@ -345,10 +416,10 @@ public void repartition(String mounts) throws Exception {
         String[] cols = s.split(" ");
         String newUri = cols[0];
         String mPoint = cols[1];
-        boolean repartPoint = (cols.length > 2) ? true : false;
+        boolean repartPoint = cols.length > 2 && !isReadOnly(cols[2].split(","));
         if (repartPoint) {
-          // find the old mount point
-          String oldUri = this.lookupMap.get(mPoint).get(0).fsUri;
+          // find the current owner, the mount point itself is new when splitting
+          String oldUri = resolveOpt(mPoint);
 
           // update the local cache in the old destination (NameNode)
           try {
@@ -358,10 +429,9 @@ public void repartition(String mounts) throws Exception {
               .setNewUri(newUri).build();
 
             byte[] data = mp.toByteArray();
-            FSMountRepartitionProtocol proxy = (FSMountRepartitionProtocol) RPC.getProxy(
-              FSMountRepartitionProtocol.class, FSMountRepartitionProtocol.versionID,
-              new InetSocketAddress(oldUri, 10086), new Configuration());
-            proxy.recordMove(data);
+            getRepartitionProxy(oldUri).recordMove(data);
+            // the new owner reloads what the old one wrote back
+            getRepartitionProxy(newUri).recordAcquire(data);
           } catch (Exception e) {
             e.printStackTrace();
           }
@@ -374,9 +444,23 @@ public void repartition(String mounts) throws Exception {
     }
   }
 
+  private static FSMountRepartitionProtocol getRepartitionProxy(String uri)
+      throws IOException {
+    String host = URI.create(uri).getHost();
+    if (host == null) {
+      host = uri;
+    }
+    return (FSMountRepartitionProtocol) RPC.getProxy(
+      FSMountRepartitionProtocol.class, FSMountRepartitionProtocol.versionID,
+      new InetSocketAddress(host, 10086), new Configuration());
+  }
+
   protected Map<String, List<MountEntry>> buildLookupMap(List<MountEntry> entries) {
     Map<String, List<MountEntry>> lookupMap = new HashMap<>();
     for (MountEntry entry : entries) {
+      if (entry.readOnly) {
+        continue;
+      }
       List<MountEntry> mounts = lookupMap.get(entry.mountPoint);
       if (mounts == null) {
         mounts = new ArrayList<>();
@@ -389,4 +473,20 @@ protected Map<String, List<MountEntry>> buildLookupMap(List<MountEntry> entries)
     }
     return lookupMap;
   }
+
+  protected Map<String, List<String>> buildReadOnlyMap(List<MountEntry> entries) {
+    Map<String, List<String>> readOnlyMap = new HashMap<>();
+    for (MountEntry entry : entries) {
+      if (!entry.readOnly) {
+        continue;
+      }
+      List<String> replicas = readOnlyMap.get(entry.mountPoint);
+      if (replicas == null) {
+        replicas = new ArrayList<>();
+        readOnlyMap.put(entry.mountPoint, replicas);
+      }
+      replicas.add(entry.fsUri);
+    }
+    return readOnlyMap;
+  }
 }
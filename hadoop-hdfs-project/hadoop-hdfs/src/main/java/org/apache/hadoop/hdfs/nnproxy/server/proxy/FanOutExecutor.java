@@ -0,0 +1,190 @@
+package org.apache.hadoop.hdfs.nnproxy.server.proxy;
+
+import org.apache.hadoop.hdfs.nnproxy.ProxyConfig;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Issues one call to several upstreams in parallel, for operations spanning mount points.
+ * Every call has to finish before the deadline; a call that is still running after the hedge delay
+ * is sent once more to an alternative upstream (a read-only replica) and the first answer wins.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class FanOutExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FanOutExecutor.class);
+
+    public interface Call<T> {
+        T call(ClientProtocol upstream, String path) throws IOException;
+    }
+
+    public static class Target {
+        final String fs;
+        final String path;
+        final ClientProtocol upstream;
+        final List<ClientProtocol> hedges;
+
+        public Target(String fs, String path, ClientProtocol upstream, List<ClientProtocol> hedges) {
+            this.fs = fs;
+            this.path = path;
+            this.upstream = upstream;
+            this.hedges = hedges;
+        }
+
+        public Target(String fs, String path, ClientProtocol upstream) {
+            this(fs, path, upstream, Collections.<ClientProtocol>emptyList());
+        }
+    }
+
+    /** Calls submitted together, sharing one deadline. */
+    public class Pending<T> {
+        final List<Target> targets;
+        final List<CompletableFuture<T>> futures;
+        final long deadline;
+
+        Pending(List<Target> targets, List<CompletableFuture<T>> futures, long deadline) {
+            this.targets = targets;
+            this.futures = futures;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Wait for all calls and return the results in the order of the targets.
+         *
+         * @throws IOException the first failure, or a timeout once the deadline has passed
+         */
+        public List<T> get() throws IOException {
+            List<T> results = new ArrayList<>(targets.size());
+            try {
+                for (int i = 0; i < futures.size(); i++) {
+                    long remaining = Math.max(0, deadline - System.nanoTime());
+                    try {
+                        results.add(futures.get(i).get(remaining, TimeUnit.NANOSECONDS));
+                    } catch (TimeoutException e) {
+                        throw new IOException("Timed out after " + timeoutMs + "ms waiting for "
+                                + targets.get(i).path + " on " + targets.get(i).fs);
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof IOException) {
+                            throw (IOException) e.getCause();
+                        }
+                        throw new IOException(e.getCause());
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException("Interrupted waiting for " + targets.get(i).fs);
+                    }
+                }
+            } finally {
+                // nobody is waiting for the rest anymore, do not hedge them
+                for (CompletableFuture<T> future : futures) {
+                    future.cancel(false);
+                }
+            }
+            return results;
+        }
+    }
+
+    final ExecutorService executor;
+    final ScheduledExecutorService hedgeScheduler;
+    final long timeoutMs;
+    final long hedgeDelayMs;
+
+    public FanOutExecutor(Configuration conf) {
+        this.timeoutMs = conf.getLong(ProxyConfig.FANOUT_TIMEOUT_MS, ProxyConfig.FANOUT_TIMEOUT_MS_DEFAULT);
+        this.hedgeDelayMs = conf.getLong(ProxyConfig.FANOUT_HEDGE_DELAY_MS, ProxyConfig.FANOUT_HEDGE_DELAY_MS_DEFAULT);
+        this.executor = Executors.newFixedThreadPool(
+                conf.getInt(ProxyConfig.FANOUT_THREADS, ProxyConfig.FANOUT_THREADS_DEFAULT),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("FanOut-%d").build());
+        this.hedgeScheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("FanOutHedge-%d").build());
+    }
+
+    /**
+     * Start the call on every target without waiting for it.
+     */
+    public <T> Pending<T> submitAll(List<Target> targets, Call<T> call) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        List<CompletableFuture<T>> futures = new ArrayList<>(targets.size());
+        for (Target target : targets) {
+            futures.add(submit(target, call));
+        }
+        return new Pending<>(targets, futures, deadline);
+    }
+
+    public <T> List<T> invokeAll(List<Target> targets, Call<T> call) throws IOException {
+        return submitAll(targets, call).get();
+    }
+
+    <T> CompletableFuture<T> submit(final Target target, final Call<T> call) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final AtomicInteger attempts = new AtomicInteger(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                attempt(result, attempts, target.upstream, target.path, call);
+            }
+        });
+        if (hedgeDelayMs > 0 && !target.hedges.isEmpty()) {
+            hedgeScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (result.isDone()) {
+                        return;
+                    }
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Hedging slow call to " + target.fs);
+                    }
+                    attempts.incrementAndGet();
+                    final ClientProtocol hedge =
+                            target.hedges.get(ThreadLocalRandom.current().nextInt(target.hedges.size()));
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            attempt(result, attempts, hedge, target.path, call);
+                        }
+                    });
+                }
+            }, hedgeDelayMs, TimeUnit.MILLISECONDS);
+        }
+        return result;
+    }
+
+    <T> void attempt(CompletableFuture<T> result, AtomicInteger attempts, ClientProtocol upstream,
+                     String path, Call<T> call) {
+        if (result.isDone()) {
+            return;
+        }
+        try {
+            result.complete(call.call(upstream, path));
+        } catch (Throwable e) {
+            // only fail once no other attempt can still succeed
+            if (attempts.decrementAndGet() == 0) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    public void shutdown() {
+        hedgeScheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+}
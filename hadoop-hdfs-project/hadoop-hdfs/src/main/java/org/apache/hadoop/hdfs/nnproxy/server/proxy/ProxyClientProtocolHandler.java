@@ -14,8 +14,10 @@
 import org.apache.hadoop.fs.permission.FsAction;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.AddBlockFlag;
+import org.apache.hadoop.hdfs.DFSUtilClient;
 import org.apache.hadoop.hdfs.inotify.EventBatchList;
 import org.apache.hadoop.hdfs.nnproxy.server.NNProxy;
+import org.apache.hadoop.hdfs.nnproxy.server.mount.MountsManager;
 import org.apache.hadoop.hdfs.nnproxy.server.upstream.UpstreamManager;
 import org.apache.hadoop.hdfs.protocol.*;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.ReencryptAction;
@@ -42,6 +44,7 @@ public class ProxyClientProtocolHandler implements ClientProtocol {
   final Configuration conf;
   final UpstreamManager upstreamManager;
   final Router router;
+  final FanOutExecutor fanOut;
 
   public ProxyClientProtocolHandler(
       NNProxy nnProxy, Configuration conf, UpstreamManager upstreamManager) {
@@ -49,6 +52,7 @@ public ProxyClientProtocolHandler(
     this.conf = conf;
     this.upstreamManager = upstreamManager;
     this.router = new Router(nnProxy, conf, upstreamManager);
+    this.fanOut = new FanOutExecutor(conf);
   }
 
   void ensureCanRename(String path) throws IOException {
@@ -61,12 +65,290 @@ void ensureCanRename(String path) throws IOException {
     }
   }
 
+  /**
+   * One fan-out target per mount point, hedged to its read-only replicas. Upstreams are resolved
+   * here since the remote user is only known in the handler thread.
+   */
+  List<FanOutExecutor.Target> getTargets(
+      Collection<MountsManager.MountEntry> entries, String prefix) throws IOException {
+    List<FanOutExecutor.Target> targets = new ArrayList<>(entries.size());
+    for (MountsManager.MountEntry entry : entries) {
+      List<ClientProtocol> hedges = new ArrayList<>();
+      for (String replica : nnProxy.getMounts().resolveReadOnly(entry.mountPoint)) {
+        hedges.add(router.getProtocol(replica));
+      }
+      targets.add(
+          new FanOutExecutor.Target(
+              entry.fsUri, prefix + entry.mountPoint, router.getProtocol(entry.fsUri), hedges));
+    }
+    return targets;
+  }
+
+  /**
+   * One fan-out target per mount point, on the owner of its enclosing directory where it is a stub.
+   */
+  List<FanOutExecutor.Target> getStubTargets(
+      Map<MountsManager.MountEntry, String> mounts, String prefix) throws IOException {
+    List<FanOutExecutor.Target> targets = new ArrayList<>(mounts.size());
+    for (Map.Entry<MountsManager.MountEntry, String> mount : mounts.entrySet()) {
+      targets.add(
+          new FanOutExecutor.Target(
+              mount.getValue(),
+              prefix + mount.getKey().mountPoint,
+              router.getProtocol(mount.getValue())));
+    }
+    return targets;
+  }
+
+  /** One fan-out target per NameNode owning a mount point. */
+  List<FanOutExecutor.Target> getAllFsTargets() throws IOException {
+    List<FanOutExecutor.Target> targets = new ArrayList<>();
+    for (String fs : nnProxy.getMounts().getAllFs()) {
+      targets.add(new FanOutExecutor.Target(fs, "/", router.getProtocol(fs)));
+    }
+    return targets;
+  }
+
+  static String getParent(String path) {
+    int idx = path.lastIndexOf('/');
+    return idx <= 0 ? "/" : path.substring(0, idx);
+  }
+
+  static String normalize(String path) {
+    return (path.length() > 1 && path.endsWith("/")) ? path.substring(0, path.length() - 1) : path;
+  }
+
+  /**
+   * The part of a path in front of its logical path, i.e. the trash directory of a path in the trash
+   * and empty otherwise. The path of a mount point in the same place is the prefix followed by the
+   * mount point.
+   */
+  static String getTrashPrefix(String path, String logicalPath) {
+    return path.endsWith(logicalPath) ? path.substring(0, path.length() - logicalPath.length()) : "";
+  }
+
+  /**
+   * Pick the mount points below a directory whose usage has to be asked for separately, and map
+   * each of them to the NameNode owning its enclosing directory. Every NameNode keeps a stub
+   * directory for the mount points below it that another NameNode owns, so the stub is counted by
+   * the enclosing owner and has to be taken out again. A mount point owned by the same NameNode as
+   * its enclosing directory is not a stub: its usage is part of the enclosing usage already, and it
+   * is left out.
+   *
+   * @param owner NameNode owning the directory itself
+   * @param below all mount points below the directory
+   * @return the mount points to ask, to the owner of their enclosing directory, ordered by path
+   */
+  static Map<MountsManager.MountEntry, String> getSeparateMounts(
+      String owner, List<MountsManager.MountEntry> below) {
+    List<MountsManager.MountEntry> sorted = new ArrayList<>(below);
+    Collections.sort(sorted, new Comparator<MountsManager.MountEntry>() {
+      @Override
+      public int compare(MountsManager.MountEntry a, MountsManager.MountEntry b) {
+        return a.mountPoint.compareTo(b.mountPoint);
+      }
+    });
+    Map<MountsManager.MountEntry, String> separate = new LinkedHashMap<>();
+    for (int i = 0; i < sorted.size(); i++) {
+      MountsManager.MountEntry entry = sorted.get(i);
+      // an enclosing mount point sorts before the ones below it, the nearest one last
+      String enclosing = owner;
+      for (int j = i - 1; j >= 0; j--) {
+        if (entry.mountPoint.startsWith(sorted.get(j).mountPoint + "/")) {
+          enclosing = sorted.get(j).fsUri;
+          break;
+        }
+      }
+      if (!entry.fsUri.equals(enclosing)) {
+        separate.put(entry, enclosing);
+      }
+    }
+    return separate;
+  }
+
+  /**
+   * Add the usage of the mount points below a directory to the usage of the directory, and take out
+   * the stubs of the mount points. Quotas are those of the directory itself.
+   *
+   * @param stubs usage of the stubs, null for a stub that does not exist
+   */
+  static ContentSummary sumContentSummaries(
+      ContentSummary summary, List<ContentSummary> parts, List<ContentSummary> stubs) {
+    long length = summary.getLength();
+    long fileCount = summary.getFileCount();
+    long directoryCount = summary.getDirectoryCount();
+    long spaceConsumed = summary.getSpaceConsumed();
+    long snapshotLength = summary.getSnapshotLength();
+    long snapshotFileCount = summary.getSnapshotFileCount();
+    long snapshotDirectoryCount = summary.getSnapshotDirectoryCount();
+    long snapshotSpaceConsumed = summary.getSnapshotSpaceConsumed();
+    long[] typeConsumed = new long[StorageType.values().length];
+    for (StorageType type : StorageType.values()) {
+      typeConsumed[type.ordinal()] = summary.getTypeConsumed(type);
+    }
+    List<ContentSummary> all = new ArrayList<>(parts);
+    all.addAll(stubs);
+    for (int i = 0; i < all.size(); i++) {
+      ContentSummary part = all.get(i);
+      if (part == null) {
+        continue;
+      }
+      int sign = i < parts.size() ? 1 : -1;
+      length += sign * part.getLength();
+      fileCount += sign * part.getFileCount();
+      directoryCount += sign * part.getDirectoryCount();
+      spaceConsumed += sign * part.getSpaceConsumed();
+      snapshotLength += sign * part.getSnapshotLength();
+      snapshotFileCount += sign * part.getSnapshotFileCount();
+      snapshotDirectoryCount += sign * part.getSnapshotDirectoryCount();
+      snapshotSpaceConsumed += sign * part.getSnapshotSpaceConsumed();
+      for (StorageType type : StorageType.values()) {
+        typeConsumed[type.ordinal()] += sign * part.getTypeConsumed(type);
+      }
+    }
+    ContentSummary.Builder builder =
+        new ContentSummary.Builder()
+            .length(length)
+            .fileCount(fileCount)
+            .directoryCount(directoryCount)
+            .snapshotLength(snapshotLength)
+            .snapshotFileCount(snapshotFileCount)
+            .snapshotDirectoryCount(snapshotDirectoryCount)
+            .snapshotSpaceConsumed(snapshotSpaceConsumed)
+            .erasureCodingPolicy(summary.getErasureCodingPolicy())
+            .quota(summary.getQuota())
+            .spaceConsumed(spaceConsumed)
+            .spaceQuota(summary.getSpaceQuota());
+    for (StorageType type : StorageType.values()) {
+      builder
+          .typeConsumed(type, typeConsumed[type.ordinal()])
+          .typeQuota(type, summary.getTypeQuota(type));
+    }
+    return builder.build();
+  }
+
+  /**
+   * Add the usage of the mount points below a directory to the usage of the directory, and take out
+   * the stubs of the mount points. Quotas are those of the directory itself.
+   *
+   * @param stubs usage of the stubs, null for a stub that does not exist
+   */
+  static QuotaUsage sumQuotaUsages(QuotaUsage usage, List<QuotaUsage> parts, List<QuotaUsage> stubs) {
+    long count = usage.getFileAndDirectoryCount();
+    long spaceConsumed = usage.getSpaceConsumed();
+    long[] typeConsumed = new long[StorageType.values().length];
+    for (StorageType type : StorageType.values()) {
+      typeConsumed[type.ordinal()] = usage.getTypeConsumed(type);
+    }
+    List<QuotaUsage> all = new ArrayList<>(parts);
+    all.addAll(stubs);
+    for (int i = 0; i < all.size(); i++) {
+      QuotaUsage part = all.get(i);
+      if (part == null) {
+        continue;
+      }
+      int sign = i < parts.size() ? 1 : -1;
+      count += sign * part.getFileAndDirectoryCount();
+      spaceConsumed += sign * part.getSpaceConsumed();
+      for (StorageType type : StorageType.values()) {
+        typeConsumed[type.ordinal()] += sign * part.getTypeConsumed(type);
+      }
+    }
+    QuotaUsage.Builder builder =
+        new QuotaUsage.Builder()
+            .fileAndDirectoryCount(count)
+            .quota(usage.getQuota())
+            .spaceConsumed(spaceConsumed)
+            .spaceQuota(usage.getSpaceQuota());
+    for (StorageType type : StorageType.values()) {
+      builder
+          .typeConsumed(type, typeConsumed[type.ordinal()])
+          .typeQuota(type, usage.getTypeQuota(type));
+    }
+    return builder.build();
+  }
+
+  /** Copy of a status under another local name. */
+  static HdfsFileStatus withLocalName(HdfsFileStatus status, byte[] name) {
+    EnumSet<HdfsFileStatus.Flags> flags = EnumSet.noneOf(HdfsFileStatus.Flags.class);
+    if (status.hasAcl()) {
+      flags.add(HdfsFileStatus.Flags.HAS_ACL);
+    }
+    if (status.isEncrypted()) {
+      flags.add(HdfsFileStatus.Flags.HAS_CRYPT);
+    }
+    if (status.isErasureCoded()) {
+      flags.add(HdfsFileStatus.Flags.HAS_EC);
+    }
+    if (status.isSnapshotEnabled()) {
+      flags.add(HdfsFileStatus.Flags.SNAPSHOT_ENABLED);
+    }
+    return new HdfsFileStatus.Builder()
+        .length(status.getLen())
+        .isdir(status.isDir())
+        .replication(status.getReplication())
+        .blocksize(status.getBlockSize())
+        .mtime(status.getModificationTime())
+        .atime(status.getAccessTime())
+        .perm(status.getPermission())
+        .flags(flags)
+        .owner(status.getOwner())
+        .group(status.getGroup())
+        .symlink(status.getSymlinkInBytes())
+        .path(name)
+        .fileId(status.getFileId())
+        .children(status.getChildrenNum())
+        .feInfo(status.getFileEncryptionInfo())
+        .storagePolicy(status.getStoragePolicy())
+        .ecPolicy(status.getErasureCodingPolicy())
+        .locations(
+            status instanceof HdfsLocatedFileStatus
+                ? ((HdfsLocatedFileStatus) status).getLocatedBlocks()
+                : null)
+        .build();
+  }
+
+  /**
+   * Merge the mount points right below a directory into the listing of its owner. Both are sorted
+   * by name and a mount point replaces the owner's entry of the same name. While the owner has more
+   * entries, mount points past its last entry are left for the following pages so that paging on
+   * the last returned name stays correct.
+   */
+  static DirectoryListing mergeListing(DirectoryListing listing, List<HdfsFileStatus> mounts) {
+    HdfsFileStatus[] entries = listing.getPartialListing();
+    boolean hasMore = listing.hasMore();
+    byte[] last = entries.length == 0 ? null : entries[entries.length - 1].getLocalNameInBytes();
+    List<HdfsFileStatus> merged = new ArrayList<>(entries.length + mounts.size());
+    int remaining = listing.getRemainingEntries();
+    int i = 0;
+    for (HdfsFileStatus mount : mounts) {
+      byte[] name = mount.getLocalNameInBytes();
+      if (hasMore && last != null && DFSUtilClient.compareBytes(name, last) > 0) {
+        remaining++;
+        continue;
+      }
+      while (i < entries.length
+          && DFSUtilClient.compareBytes(entries[i].getLocalNameInBytes(), name) < 0) {
+        merged.add(entries[i++]);
+      }
+      if (i < entries.length
+          && DFSUtilClient.compareBytes(entries[i].getLocalNameInBytes(), name) == 0) {
+        i++;
+      }
+      merged.add(mount);
+    }
+    while (i < entries.length) {
+      merged.add(entries[i++]);
+    }
+    return new DirectoryListing(merged.toArray(new HdfsFileStatus[merged.size()]), remaining);
+  }
+
   /* begin protocol handlers */
 
   @Override
   public LocatedBlocks getBlockLocations(String src, long offset, long length)
       throws AccessControlException, FileNotFoundException, UnresolvedLinkException, IOException {
-    RouteInfo routeInfo = router.route(src);
+    RouteInfo routeInfo = router.routeForRead(src);
     return routeInfo.upstream.getBlockLocations(routeInfo.realPath, offset, length);
   }
 
@@ -267,8 +549,59 @@ public boolean mkdirs(String src, FsPermission masked, boolean createParent)
   @Override
   public DirectoryListing getListing(String src, byte[] startAfter, boolean needLocation)
       throws AccessControlException, FileNotFoundException, UnresolvedLinkException, IOException {
-    RouteInfo routeInfo = router.route(src);
-    return routeInfo.upstream.getListing(routeInfo.realPath, startAfter, needLocation);
+    RouteInfo routeInfo = router.routeForRead(src);
+    String dir = normalize(router.getLogicalPath(normalize(src)));
+    String prefix = getTrashPrefix(normalize(src), dir);
+    List<MountsManager.MountEntry> children = new ArrayList<>();
+    for (MountsManager.MountEntry entry : nnProxy.getMounts().getMountsBelow(dir)) {
+      if (!getParent(entry.mountPoint).equals(dir)) {
+        continue;
+      }
+      byte[] name = DFSUtilClient.string2Bytes(
+          entry.mountPoint.substring(entry.mountPoint.lastIndexOf('/') + 1));
+      if (startAfter == null || startAfter.length == 0
+          || DFSUtilClient.compareBytes(name, startAfter) > 0) {
+        children.add(entry);
+      }
+    }
+    if (children.isEmpty()) {
+      return routeInfo.upstream.getListing(routeInfo.realPath, startAfter, needLocation);
+    }
+    Collections.sort(children, new Comparator<MountsManager.MountEntry>() {
+      @Override
+      public int compare(MountsManager.MountEntry a, MountsManager.MountEntry b) {
+        return DFSUtilClient.compareBytes(
+            DFSUtilClient.string2Bytes(a.mountPoint), DFSUtilClient.string2Bytes(b.mountPoint));
+      }
+    });
+    FanOutExecutor.Pending<HdfsFileStatus> pending =
+        fanOut.submitAll(
+            getTargets(children, prefix),
+            new FanOutExecutor.Call<HdfsFileStatus>() {
+              @Override
+              public HdfsFileStatus call(ClientProtocol upstream, String path) throws IOException {
+                return upstream.getFileInfo(path);
+              }
+            });
+    DirectoryListing listing =
+        routeInfo.upstream.getListing(routeInfo.realPath, startAfter, needLocation);
+    List<HdfsFileStatus> statuses = pending.get();
+    List<HdfsFileStatus> mounts = new ArrayList<>();
+    for (int i = 0; i < statuses.size(); i++) {
+      HdfsFileStatus status = statuses.get(i);
+      if (status != null) {
+        // getFileInfo leaves the name empty, it is listed under its mount point
+        String mountPoint = children.get(i).mountPoint;
+        mounts.add(
+            withLocalName(
+                status,
+                DFSUtilClient.string2Bytes(mountPoint.substring(mountPoint.lastIndexOf('/') + 1))));
+      }
+    }
+    if (listing == null) {
+      listing = new DirectoryListing(new HdfsFileStatus[0], 0);
+    }
+    return mergeListing(listing, mounts);
   }
 
   @Override
@@ -292,13 +625,50 @@ public boolean recoverLease(String src, String clientName) throws IOException {
 
   @Override
   public long[] getStats() throws IOException {
-    return router.getRoot().upstream.getStats();
+    List<long[]> all =
+        fanOut.invokeAll(
+            getAllFsTargets(),
+            new FanOutExecutor.Call<long[]>() {
+              @Override
+              public long[] call(ClientProtocol upstream, String path) throws IOException {
+                return upstream.getStats();
+              }
+            });
+    long[] stats = null;
+    for (long[] fsStats : all) {
+      if (stats == null) {
+        stats = fsStats.clone();
+        continue;
+      }
+      for (int i = 0; i < Math.min(stats.length, fsStats.length); i++) {
+        stats[i] += fsStats[i];
+      }
+    }
+    return stats == null ? router.getRoot().upstream.getStats() : stats;
   }
 
   @Override
-  public DatanodeInfo[] getDatanodeReport(HdfsConstants.DatanodeReportType type)
+  public DatanodeInfo[] getDatanodeReport(final HdfsConstants.DatanodeReportType type)
       throws IOException {
-    throw new IOException("Invalid operation, do not use proxy");
+    List<DatanodeInfo[]> all =
+        fanOut.invokeAll(
+            getAllFsTargets(),
+            new FanOutExecutor.Call<DatanodeInfo[]>() {
+              @Override
+              public DatanodeInfo[] call(ClientProtocol upstream, String path) throws IOException {
+                return upstream.getDatanodeReport(type);
+              }
+            });
+    // NameNodes share the datanodes, report each of them once
+    Map<String, DatanodeInfo> datanodes = new LinkedHashMap<>();
+    for (DatanodeInfo[] report : all) {
+      for (DatanodeInfo dn : report) {
+        if (!datanodes.containsKey(dn.getXferAddr())) {
+          datanodes.put(dn.getXferAddr(), dn);
+        }
+      }
+    }
+    return datanodes.values().toArray(new DatanodeInfo[datanodes.size()]);
   }
 
   @Override
@@ -369,7 +739,7 @@ public void setBalancerBandwidth(long bandwidth) throws IOException {
   @Override
   public HdfsFileStatus getFileInfo(String src)
       throws AccessControlException, FileNotFoundException, UnresolvedLinkException, IOException {
-    RouteInfo routeInfo = router.route(src);
+    RouteInfo routeInfo = router.routeForRead(src);
     return routeInfo.upstream.getFileInfo(routeInfo.realPath);
   }
 
@@ -390,8 +760,39 @@ public HdfsFileStatus getFileLinkInfo(String src)
   @Override
   public ContentSummary getContentSummary(String path)
       throws AccessControlException, FileNotFoundException, UnresolvedLinkException, IOException {
-    RouteInfo routeInfo = router.route(path);
-    return routeInfo.upstream.getContentSummary(routeInfo.realPath);
+    RouteInfo routeInfo = router.routeForRead(path);
+    String dir = normalize(router.getLogicalPath(normalize(path)));
+    Map<MountsManager.MountEntry, String> mounts =
+        getSeparateMounts(
+            nnProxy.getMounts().resolveOpt(dir), nnProxy.getMounts().getMountsBelow(dir));
+    if (mounts.isEmpty()) {
+      return routeInfo.upstream.getContentSummary(routeInfo.realPath);
+    }
+    String prefix = getTrashPrefix(normalize(path), dir);
+    FanOutExecutor.Pending<ContentSummary> pending =
+        fanOut.submitAll(
+            getTargets(mounts.keySet(), prefix),
+            new FanOutExecutor.Call<ContentSummary>() {
+              @Override
+              public ContentSummary call(ClientProtocol upstream, String path) throws IOException {
+                return upstream.getContentSummary(path);
+              }
+            });
+    FanOutExecutor.Pending<ContentSummary> pendingStubs =
+        fanOut.submitAll(
+            getStubTargets(mounts, prefix),
+            new FanOutExecutor.Call<ContentSummary>() {
+              @Override
+              public ContentSummary call(ClientProtocol upstream, String path) throws IOException {
+                try {
+                  return upstream.getContentSummary(path);
+                } catch (FileNotFoundException e) {
+                  return null;
+                }
+              }
+            });
+    ContentSummary summary = routeInfo.upstream.getContentSummary(routeInfo.realPath);
+    return sumContentSummaries(summary, pending.get(), pendingStubs.get());
   }
 
   @Override
@@ -663,7 +1064,38 @@ public BatchedRemoteIterator.BatchedEntries<OpenFileEntry> listOpenFiles(long pr
   @Override
   public QuotaUsage getQuotaUsage(String path) throws IOException {
     RouteInfo routeInfo = router.route(path);
-    return routeInfo.upstream.getQuotaUsage(routeInfo.realPath);
+    String dir = normalize(router.getLogicalPath(normalize(path)));
+    Map<MountsManager.MountEntry, String> mounts =
+        getSeparateMounts(
+            nnProxy.getMounts().resolveOpt(dir), nnProxy.getMounts().getMountsBelow(dir));
+    if (mounts.isEmpty()) {
+      return routeInfo.upstream.getQuotaUsage(routeInfo.realPath);
+    }
+    String prefix = getTrashPrefix(normalize(path), dir);
+    FanOutExecutor.Pending<QuotaUsage> pending =
+        fanOut.submitAll(
+            getTargets(mounts.keySet(), prefix),
+            new FanOutExecutor.Call<QuotaUsage>() {
+              @Override
+              public QuotaUsage call(ClientProtocol upstream, String path) throws IOException {
+                return upstream.getQuotaUsage(path);
+              }
+            });
+    FanOutExecutor.Pending<QuotaUsage> pendingStubs =
+        fanOut.submitAll(
+            getStubTargets(mounts, prefix),
+            new FanOutExecutor.Call<QuotaUsage>() {
+              @Override
+              public QuotaUsage call(ClientProtocol upstream, String path) throws IOException {
+                try {
+                  return upstream.getQuotaUsage(path);
+                } catch (FileNotFoundException e) {
+                  return null;
+                }
+              }
+            });
+    QuotaUsage usage = routeInfo.upstream.getQuotaUsage(routeInfo.realPath);
+    return sumQuotaUsages(usage, pending.get(), pendingStubs.get());
   }
 
   @Override
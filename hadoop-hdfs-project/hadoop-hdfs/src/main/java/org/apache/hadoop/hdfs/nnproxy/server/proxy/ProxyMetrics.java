@@ -10,6 +10,7 @@
 import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.hadoop.metrics2.lib.MetricsRegistry;
 import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableRatesWithAggregation;
 import org.apache.hadoop.metrics2.source.JvmMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,6 +33,8 @@ public class ProxyMetrics {
     public MutableCounterLong successOps;
     @Metric
     public MutableCounterLong failedOps;
+    @Metric("Operations and latency per mount point")
+    public MutableRatesWithAggregation mountOps;
 
     JvmMetrics jvmMetrics = null;
 
@@ -1,8 +1,13 @@
 package org.apache.hadoop.hdfs.nnproxy.server.proxy;
 
+import org.apache.hadoop.hdfs.nnproxy.ProxyConfig;
 import org.apache.hadoop.hdfs.nnproxy.server.NNProxy;
 import org.apache.hadoop.hdfs.nnproxy.server.exception.WrappedExecutionException;
+import org.apache.hadoop.hdfs.nnproxy.server.mount.MountStatistics;
+import org.apache.hadoop.hdfs.nnproxy.server.mount.MountsManager;
 import org.apache.hadoop.hdfs.nnproxy.server.upstream.UpstreamManager;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.conf.Configuration;
@@ -12,12 +17,20 @@
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * This routes path or blockPoolId to backend NameNode corresponding to mount table.
+ *
+ * When read-only routing is enabled, read operations may be served by the read-only replicas of
+ * a mount point. A client that went to the owner of a mount point within the staleness bound
+ * keeps reading from the owner, so it always observes its own writes.
  */
 @InterfaceAudience.Private
 @InterfaceStability.Stable
@@ -31,35 +44,157 @@ public class Router {
     final NNProxy nnProxy;
     final Configuration conf;
     final UpstreamManager upstreamManager;
+    final boolean readOnlyRouting;
+    final Cache<String, Boolean> recentWriters;
+    final long drainTimeoutMs;
+    // mount point and path accounted for the call handled by the current thread
+    final ThreadLocal<String[]> tracked = new ThreadLocal<>();
 
     public Router(NNProxy nnProxy, Configuration conf, UpstreamManager upstreamManager) {
         this.nnProxy = nnProxy;
         this.conf = conf;
         this.upstreamManager = upstreamManager;
+        this.readOnlyRouting = conf.getBoolean(
+                ProxyConfig.READ_ONLY_ROUTING_ENABLED, ProxyConfig.READ_ONLY_ROUTING_ENABLED_DEFAULT);
+        // an entry only lives as long as the replicas may lag behind the owner
+        this.recentWriters = CacheBuilder.newBuilder()
+                .expireAfterWrite(conf.getLong(ProxyConfig.READ_ONLY_STALENESS_MS,
+                        ProxyConfig.READ_ONLY_STALENESS_MS_DEFAULT), TimeUnit.MILLISECONDS)
+                .maximumSize(conf.getLong(ProxyConfig.READ_ONLY_MAX_TRACKED_CLIENTS,
+                        ProxyConfig.READ_ONLY_MAX_TRACKED_CLIENTS_DEFAULT))
+                .build();
+        this.drainTimeoutMs = conf.getLong(
+                ProxyConfig.REBALANCE_DRAIN_TIMEOUT_MS, ProxyConfig.REBALANCE_DRAIN_TIMEOUT_MS_DEFAULT);
     }
 
     ClientProtocol getUpstreamProtocol(String user, String fs) throws ExecutionException {
         return upstreamManager.getUpstream(user, fs).protocol;
     }
 
-    RouteInfo route(String path) throws IOException {
+    String getLogicalPath(String path) {
         String logicalPath = path;
         Matcher mch = TRASH_PATTERN.matcher(path);
         if (mch.find()) {
             logicalPath = "/" + mch.group(1);
             LOG.debug("Hit trash pattern: " + path + " -> " + logicalPath);
         }
+        return logicalPath;
+    }
+
+    String resolveOwner(String logicalPath) {
         String fs = nnProxy.getMounts().resolveOpt(logicalPath);
         if (fs == null) {
             // mount to default path
             fs = defaultNN;
         }
+        return fs;
+    }
+
+    /**
+     * Resolve the owner and account the request to its mount point. Waits while the mount point is
+     * being handed off to another NameNode. Only the first path of a call is accounted.
+     */
+    String resolveAndTrack(String logicalPath) throws IOException {
+        MountsManager mounts = nnProxy.getMounts();
+        MountStatistics stats = nnProxy.getMountStatistics();
+        MountsManager.MountEntry entry = mounts.resolveEntry(logicalPath);
+        if (entry == null) {
+            // mount to default path
+            return defaultNN;
+        }
+        if (stats == null || tracked.get() != null) {
+            return entry.fsUri;
+        }
+        if (!stats.begin(entry.mountPoint)) {
+            try {
+                stats.awaitNotDraining(entry.mountPoint, drainTimeoutMs);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted waiting for handoff of " + entry.mountPoint);
+            }
+            entry = mounts.resolveEntry(logicalPath);
+            if (!stats.begin(entry.mountPoint)) {
+                LOG.warn("Mount point " + entry.mountPoint + " still draining, routing untracked");
+                return entry.fsUri;
+            }
+        }
+        tracked.set(new String[] {entry.mountPoint, logicalPath});
+        return entry.fsUri;
+    }
+
+    /**
+     * Finish the accounting started by {@link #resolveAndTrack(String)} for the current call.
+     */
+    void endRequest(long elapsedNanos) {
+        String[] current = tracked.get();
+        if (current == null) {
+            return;
+        }
+        tracked.remove();
+        nnProxy.getMountStatistics().end(current[0], current[1], elapsedNanos);
+        if (NNProxy.proxyMetrics != null) {
+            NNProxy.proxyMetrics.mountOps.add(current[0], elapsedNanos / 1000);
+        }
+    }
+
+    /**
+     * Route to the owner of the path. Any call reaching the owner may have changed the namespace,
+     * so the calling client is pinned to the owner for the staleness bound.
+     */
+    RouteInfo route(String path) throws IOException {
+        String fs = resolveAndTrack(getLogicalPath(path));
         if (LOG.isDebugEnabled()) {
             LOG.debug("Resolved: " + path + " -> " + fs + path);
         }
+        if (readOnlyRouting) {
+            recentWriters.put(getClientKey(fs), Boolean.TRUE);
+        }
         return new RouteInfo(getProtocol(fs), path, fs);
     }
 
+    /**
+     * Route a read operation, preferring a read-only replica of the owning mount point unless the
+     * client has talked to the owner within the staleness bound.
+     */
+    RouteInfo routeForRead(String path) throws IOException {
+        if (!readOnlyRouting) {
+            return route(path);
+        }
+        String logicalPath = getLogicalPath(path);
+        String fs = resolveOwner(logicalPath);
+        if (recentWriters.getIfPresent(getClientKey(fs)) == null) {
+            List<String> replicas = nnProxy.getMounts().resolveReadOnly(logicalPath);
+            if (!replicas.isEmpty()) {
+                fs = chooseReplica(replicas);
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Resolved for read: " + path + " -> " + fs + path);
+                }
+                return new RouteInfo(getProtocol(fs), path, fs);
+            }
+        }
+        // reads served by the owner count towards its load
+        fs = resolveAndTrack(logicalPath);
+        return new RouteInfo(getProtocol(fs), path, fs);
+    }
+
+    /**
+     * Power of two choices: pick two replicas at random and take the one with fewer requests in
+     * flight.
+     */
+    String chooseReplica(List<String> replicas) {
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        String first = replicas.get(rand.nextInt(replicas.size()));
+        if (replicas.size() == 1) {
+            return first;
+        }
+        String second = replicas.get(rand.nextInt(replicas.size()));
+        return upstreamManager.getActiveRequests(second) < upstreamManager.getActiveRequests(first)
+                ? second : first;
+    }
+
+    String getClientKey(String fs) {
+        return Server.getRemoteUser().getUserName() + "@" + Server.getRemoteAddress() + " " + fs;
+    }
+
     ClientProtocol getProtocol(String fs) throws IOException {
         try {
             return getUpstreamProtocol(Server.getRemoteUser().getUserName(), fs);
@@ -69,7 +204,8 @@ ClientProtocol getProtocol(String fs) throws IOException {
     }
 
     RouteInfo getRoot() throws IOException {
-        return route("/");
+        String fs = resolveOwner("/");
+        return new RouteInfo(getProtocol(fs), "/", fs);
     }
 
     ClientProtocol getUpstreamForBlockPool(String bpId) throws IOException {
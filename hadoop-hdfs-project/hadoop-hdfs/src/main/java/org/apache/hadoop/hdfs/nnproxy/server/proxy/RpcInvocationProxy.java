@@ -46,6 +46,7 @@ public Object invoke(Object proxy, Method method, Object[] args) throws Throwabl
         if (isShuttingDown) {
             throw new StandbyException("Proxy is shutting down");
         }
+        long start = System.nanoTime();
         try {
             activeRequests.incrementAndGet();
             setupClientAddress();
@@ -71,6 +72,7 @@ public Object invoke(Object proxy, Method method, Object[] args) throws Throwabl
             LOG.error("Error handling client", e);
             throw e;
         } finally {
+            protocolHandler.router.endRequest(System.nanoTime() - start);
             activeRequests.decrementAndGet();
         }
     }
@@ -91,5 +93,6 @@ public void shutdown() {
             }
             LOG.info("Waiting for all requests to finish... " + activeRequests.get() + " left");
         }
+        protocolHandler.fanOut.shutdown();
     }
 }
@@ -140,6 +140,14 @@ synchronized Upstream makeUpstream(UpstreamTicket ticket) throws IOException {
         return new Upstream(wrapWithThrottle(ticket.fs, clientProtocol, ClientProtocol.class), proxyAndInfo, nnProxyAndInfo);
     }
 
+    /**
+     * Number of requests currently in flight to the given fs through this proxy.
+     */
+    public long getActiveRequests(String fs) {
+        AtomicLong counter = fsRequests.get(fs);
+        return counter == null ? 0L : counter.get();
+    }
+
     public Upstream getUpstream(String user, String fs) throws ExecutionException {
         return upstreamCache.get(new UpstreamTicket(user, fs));
     }
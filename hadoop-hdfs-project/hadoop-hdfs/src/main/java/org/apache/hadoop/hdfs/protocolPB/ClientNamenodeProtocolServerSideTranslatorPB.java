@@ -23,6 +23,7 @@
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import org.apache.hadoop.classification.InterfaceAudience;
@@ -272,6 +273,9 @@
 import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenIdentifier;
 import org.apache.hadoop.io.EnumSetWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.ipc.ProtobufRpcEngine;
+import org.apache.hadoop.ipc.ProtobufRpcEngineCallback;
+import org.apache.hadoop.ipc.Server;
 import org.apache.hadoop.security.proto.SecurityProtos.CancelDelegationTokenRequestProto;
 import org.apache.hadoop.security.proto.SecurityProtos.CancelDelegationTokenResponseProto;
 import org.apache.hadoop.security.proto.SecurityProtos.GetDelegationTokenRequestProto;
@@ -280,6 +284,7 @@
 import org.apache.hadoop.security.proto.SecurityProtos.RenewDelegationTokenResponseProto;
 import org.apache.hadoop.security.token.Token;
 
+import com.google.protobuf.Message;
 import com.google.protobuf.RpcController;
 import com.google.protobuf.ServiceException;
 
@@ -295,6 +300,7 @@
 public class ClientNamenodeProtocolServerSideTranslatorPB implements
     ClientNamenodeProtocolPB {
   final private ClientProtocol server;
+  final private PathPreloader preloader;
   static final DeleteSnapshotResponseProto VOID_DELETE_SNAPSHOT_RESPONSE =
       DeleteSnapshotResponseProto.newBuilder().build();
   static final RenameSnapshotResponseProto VOID_RENAME_SNAPSHOT_RESPONSE =
@@ -422,6 +428,45 @@ public class ClientNamenodeProtocolServerSideTranslatorPB implements
   public ClientNamenodeProtocolServerSideTranslatorPB(ClientProtocol server)
       throws IOException {
     this.server = server;
+    this.preloader = server instanceof PathPreloader ?
+        (PathPreloader) server : null;
+  }
+
+  /** Builds the response of a call, once its path is loaded. */
+  private interface Responder {
+    Message respond() throws IOException;
+  }
+
+  /**
+   * Release the handler while the inodes of the path are loaded, then serve
+   * the call as its caller from the thread completing the load.
+   *
+   * @return whether the response is deferred
+   */
+  private boolean deferWhileLoading(String src, final Responder responder) {
+    final Server.Call call = Server.getCurCall().get();
+    if (preloader == null || call == null) {
+      return false;
+    }
+    CompletableFuture<Void> loading = preloader.preload(src);
+    if (loading == null) {
+      return false;
+    }
+    final ProtobufRpcEngineCallback callback =
+        ProtobufRpcEngine.Server.registerForDeferredResponse();
+    loading.whenComplete((v, t) -> {
+      // the caller identity and address are looked up from the current call
+      Server.Call previous = Server.getCurCall().get();
+      Server.getCurCall().set(call);
+      try {
+        callback.setResponse(responder.respond());
+      } catch (Throwable e) {
+        callback.error(e);
+      } finally {
+        Server.getCurCall().set(previous);
+      }
+    });
+    return true;
   }
 
   @Override
@@ -721,20 +766,28 @@ public MkdirsResponseProto mkdirs(RpcController controller,
   @Override
   public GetListingResponseProto getListing(RpcController controller,
       GetListingRequestProto req) throws ServiceException {
+    if (deferWhileLoading(req.getSrc(), () -> getListing(req))) {
+      return null;
+    }
     try {
-      DirectoryListing result = server.getListing(
-          req.getSrc(), req.getStartAfter().toByteArray(),
-          req.getNeedLocation());
-      if (result !=null) {
-        return GetListingResponseProto.newBuilder().setDirList(
-          PBHelperClient.convert(result)).build();
-      } else {
-        return VOID_GETLISTING_RESPONSE;
-      }
+      return getListing(req);
     } catch (IOException e) {
       throw new ServiceException(e);
     }
   }
+
+  private GetListingResponseProto getListing(GetListingRequestProto req)
+      throws IOException {
+    DirectoryListing result = server.getListing(
+        req.getSrc(), req.getStartAfter().toByteArray(),
+        req.getNeedLocation());
+    if (result !=null) {
+      return GetListingResponseProto.newBuilder().setDirList(
+        PBHelperClient.convert(result)).build();
+    } else {
+      return VOID_GETLISTING_RESPONSE;
+    }
+  }
   
   @Override
   public RenewLeaseResponseProto renewLease(RpcController controller,
@@ -968,19 +1021,26 @@ public MetaSaveResponseProto metaSave(RpcController controller,
   @Override
   public GetFileInfoResponseProto getFileInfo(RpcController controller,
       GetFileInfoRequestProto req) throws ServiceException {
+    if (deferWhileLoading(req.getSrc(), () -> getFileInfo(req))) {
+      return null;
+    }
     try {
-      HdfsFileStatus result = server.getFileInfo(req.getSrc());
- 
-      if (result != null) {
-        return GetFileInfoResponseProto.newBuilder().setFs(
-            PBHelperClient.convert(result)).build();
-      }
-      return VOID_GETFILEINFO_RESPONSE;      
+      return getFileInfo(req);
     } catch (IOException e) {
       throw new ServiceException(e);
     }
   }
 
+  private GetFileInfoResponseProto getFileInfo(GetFileInfoRequestProto req)
+      throws IOException {
+    HdfsFileStatus result = server.getFileInfo(req.getSrc());
+    if (result != null) {
+      return GetFileInfoResponseProto.newBuilder().setFs(
+          PBHelperClient.convert(result)).build();
+    }
+    return VOID_GETFILEINFO_RESPONSE;
+  }
+
   @Override
   public GetLocatedFileInfoResponseProto getLocatedFileInfo(
       RpcController controller, GetLocatedFileInfoRequestProto req)
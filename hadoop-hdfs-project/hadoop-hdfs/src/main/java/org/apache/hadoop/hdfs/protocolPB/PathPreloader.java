@@ -0,0 +1,40 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hdfs.protocolPB;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * Implemented by a ClientProtocol server whose namespace is loaded on demand
+ * from a database. The server side translator releases the RPC handler while
+ * the inodes of a path are being loaded, and serves the call once they are.
+ */
+@InterfaceAudience.Private
+public interface PathPreloader {
+  /**
+   * Start loading the inodes of a path.
+   *
+   * @return null if the path needs no loading, otherwise a future completed
+   *         on a thread that may serve the call once the path is loaded,
+   *         whether the loading succeeded or not
+   */
+  CompletableFuture<Void> preload(String src);
+}
@@ -23,9 +23,10 @@
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -68,9 +69,19 @@
   private static final Logger LOG = LoggerFactory
       .getLogger(DelegationTokenSecretManager.class);
   
+  // tokens per query when loading the secret manager state
+  private static final int TOKEN_PAGE_SIZE = 10000;
+
   private final FSNamesystem namesystem;
   private final SerializerCompat serializerCompat = new SerializerCompat();
 
+  // The running secret manager writes every key and token change to the
+  // database as it happens. Changes replayed from the edit log are written
+  // by the next checkpoint instead.
+  private final Set<Integer> dirtyKeys = new HashSet<>();
+  private final Set<DelegationTokenIdentifier> dirtyTokens = new HashSet<>();
+  private boolean loadingFromDatabase = false;
+
   public DelegationTokenSecretManager(long delegationKeyUpdateInterval,
       long delegationTokenMaxLifetime, long delegationTokenRenewInterval,
       long delegationTokenRemoverScanInterval, FSNamesystem namesystem) {
@@ -211,26 +222,42 @@ public synchronized void loadSecretManagerState()
     for (int i = 0; i < ids.size(); ++i) {
       addKey(new DelegationKey(ids.get(i), dates.get(i),
         keys.get(i) == null ? null : DFSUtil.string2Bytes(keys.get(i))));
+      currentId = Math.max(currentId, ids.get(i));
     }
 
-    List<String> owners = new ArrayList<>();
-    List<String> renewers = new ArrayList<>();
-    List<String> realusers = new ArrayList<>();
-    List<Integer> seqnumbers = new ArrayList<>();
-    List<Integer> masterkeys = new ArrayList<>();
-    List<Long> issuedates = new ArrayList<>();
-    List<Long> expirydates = new ArrayList<>();
-    List<Long> maxdates = new ArrayList<>();    
-    DatabaseNDExtraInfo.getPersistTokens(owners, renewers, realusers, seqnumbers, masterkeys, issuedates, expirydates, maxdates);
-
-    for (int i = 0; i < owners.size(); ++i) {
-      DelegationTokenIdentifier id = new DelegationTokenIdentifier(new Text(
-        owners.get(i)), new Text(renewers.get(i)), new Text(realusers.get(i)));
-      id.setIssueDate(issuedates.get(i));
-      id.setMaxDate(maxdates.get(i));
-      id.setSequenceNumber(seqnumbers.get(i));
-      id.setMasterKeyId(masterkeys.get(i));
-      addPersistedDelegationToken(id, expirydates.get(i));
+    loadingFromDatabase = true;
+    try {
+      int after = Integer.MIN_VALUE;
+      while (true) {
+        List<String> owners = new ArrayList<>();
+        List<String> renewers = new ArrayList<>();
+        List<String> realusers = new ArrayList<>();
+        List<Integer> seqnumbers = new ArrayList<>();
+        List<Integer> masterkeys = new ArrayList<>();
+        List<Long> issuedates = new ArrayList<>();
+        List<Long> expirydates = new ArrayList<>();
+        List<Long> maxdates = new ArrayList<>();
+        DatabaseNDExtraInfo.getPersistTokens(after, TOKEN_PAGE_SIZE, owners,
+            renewers, realusers, seqnumbers, masterkeys, issuedates,
+            expirydates, maxdates);
+
+        for (int i = 0; i < owners.size(); ++i) {
+          DelegationTokenIdentifier id = new DelegationTokenIdentifier(
+              new Text(owners.get(i)), new Text(renewers.get(i)),
+              new Text(realusers.get(i)));
+          id.setIssueDate(issuedates.get(i));
+          id.setMaxDate(maxdates.get(i));
+          id.setSequenceNumber(seqnumbers.get(i));
+          id.setMasterKeyId(masterkeys.get(i));
+          addPersistedDelegationToken(id, expirydates.get(i));
+        }
+        if (owners.size() < TOKEN_PAGE_SIZE) {
+          break;
+        }
+        after = seqnumbers.get(seqnumbers.size() - 1);
+      }
+    } finally {
+      loadingFromDatabase = false;
     }
   }
 
@@ -246,55 +273,83 @@ public synchronized void saveSecretManagerStateCompat(DataOutputStream out,
     serializerCompat.save(out, sdPath);
   }
 
+  /**
+   * Write the changes replayed from the edit log since the last call to the
+   * database. The changes of the running secret manager are already there.
+   */
   public synchronized SecretManagerState saveSecretManagerState() {
     DatabaseNDExtraInfo.setSecretManagerSummary(currentId, delegationTokenSequenceNumber,
         allKeys.size(), currentTokens.size());
-
-    List<Integer> ids = new ArrayList<>();
-    List<Long> dates = new ArrayList<>();
-    List<String> keys = new ArrayList<>();
-    for (DelegationKey v : allKeys.values()) {
-      ids.add(v.getKeyId());
-      dates.add(v.getExpiryDate());
-      keys.add(DFSUtil.bytes2String(v.getEncodedKey()));
+    for (int keyId : dirtyKeys) {
+      DelegationKey key = allKeys.get(keyId);
+      if (key != null) {
+        persistKey(key);
+      } else {
+        DatabaseNDExtraInfo.removeDelegationKey(keyId);
+      }
     }
-    DatabaseNDExtraInfo.setDelegationKeys(ids.toArray(new Integer[ids.size()]),
-      dates.toArray(new Long[dates.size()]), keys.toArray(new String[keys.size()]));
-
-
-    List<String> owners = new ArrayList<>();
-    List<String> renewers = new ArrayList<>();
-    List<String> realusers = new ArrayList<>();
-    List<Integer> seqnumbers = new ArrayList<>();
-    List<Integer> masterkeys = new ArrayList<>();
-    List<Long> issuedates = new ArrayList<>();
-    List<Long> expirydates = new ArrayList<>();
-    List<Long> maxdates = new ArrayList<>();
-    for (Entry<DelegationTokenIdentifier, DelegationTokenInformation> e : currentTokens
-        .entrySet()) {
-      DelegationTokenIdentifier id = e.getKey();
-      seqnumbers.add(id.getSequenceNumber());
-      masterkeys.add(id.getMasterKeyId());
-      issuedates.add(id.getIssueDate());
-      maxdates.add(id.getMaxDate());
-      expirydates.add(e.getValue().getRenewDate());
-      owners.add(id.getOwner().toString());
-      renewers.add(id.getRenewer().toString());
-      realusers.add(id.getRealUser().toString());
+    dirtyKeys.clear();
+    for (DelegationTokenIdentifier id : dirtyTokens) {
+      DelegationTokenInformation info = currentTokens.get(id);
+      if (info != null) {
+        persistToken(id, info.getRenewDate());
+      } else {
+        DatabaseNDExtraInfo.removePersistToken(id.getSequenceNumber());
+      }
     }
-    DatabaseNDExtraInfo.setPersistTokens(
-      seqnumbers.toArray(new Integer[seqnumbers.size()]),
-      masterkeys.toArray(new Integer[masterkeys.size()]),
-      issuedates.toArray(new Long[issuedates.size()]),
-      maxdates.toArray(new Long[maxdates.size()]),
-      expirydates.toArray(new Long[expirydates.size()]),
-      owners.toArray(new String[owners.size()]),
-      renewers.toArray(new String[renewers.size()]),
-      realusers.toArray(new String[realusers.size()]));
-
+    dirtyTokens.clear();
     return null;
   }
 
+  private static void persistKey(DelegationKey key) {
+    DatabaseNDExtraInfo.upsertDelegationKey(key.getKeyId(),
+        key.getExpiryDate(), DFSUtil.bytes2String(key.getEncodedKey()));
+  }
+
+  private static void persistToken(DelegationTokenIdentifier id,
+      long renewDate) {
+    DatabaseNDExtraInfo.upsertPersistToken(id.getSequenceNumber(),
+        id.getMasterKeyId(), id.getIssueDate(), id.getMaxDate(), renewDate,
+        id.getOwner().toString(), id.getRenewer().toString(),
+        id.getRealUser().toString());
+  }
+
+  @Override //AbstractDelegationTokenSecretManager
+  protected void storeNewMasterKey(DelegationKey key) throws IOException {
+    persistKey(key);
+    DatabaseNDExtraInfo.setSecretManagerSummary(currentId,
+        delegationTokenSequenceNumber, allKeys.size(), currentTokens.size());
+  }
+
+  @Override //AbstractDelegationTokenSecretManager
+  protected void updateDelegationKey(DelegationKey key) throws IOException {
+    super.updateDelegationKey(key);
+    persistKey(key);
+  }
+
+  @Override //AbstractDelegationTokenSecretManager
+  protected void removeStoredMasterKey(DelegationKey key) {
+    DatabaseNDExtraInfo.removeDelegationKey(key.getKeyId());
+  }
+
+  @Override //AbstractDelegationTokenSecretManager
+  protected void storeNewToken(DelegationTokenIdentifier ident,
+      long renewDate) throws IOException {
+    persistToken(ident, renewDate);
+  }
+
+  @Override //AbstractDelegationTokenSecretManager
+  protected void updateStoredToken(DelegationTokenIdentifier ident,
+      long renewDate) throws IOException {
+    persistToken(ident, renewDate);
+  }
+
+  @Override //AbstractDelegationTokenSecretManager
+  protected void removeStoredToken(DelegationTokenIdentifier ident)
+      throws IOException {
+    DatabaseNDExtraInfo.removePersistToken(ident.getSequenceNumber());
+  }
+
   /**
    * This method is intended to be used only while reading edit logs.
    * 
@@ -323,13 +378,19 @@ public synchronized void addPersistedDelegationToken(
     if (identifier.getSequenceNumber() > this.delegationTokenSequenceNumber) {
       this.delegationTokenSequenceNumber = identifier.getSequenceNumber();
     }
-    if (currentTokens.get(identifier) == null) {
-      currentTokens.put(identifier, new DelegationTokenInformation(expiryTime,
-          password, getTrackingIdIfEnabled(identifier)));
-    } else {
+    // Tokens issued after the last checkpoint were stored in the database
+    // when they were issued, so replaying their edits finds them loaded
+    // already. Replay then only sets their expiry again; the password is the
+    // same since it only depends on the identifier and its master key.
+    if (loadingFromDatabase && currentTokens.get(identifier) != null) {
       throw new IOException(
           "Same delegation token being added twice; invalid entry in fsimage or editlogs");
     }
+    currentTokens.put(identifier, new DelegationTokenInformation(expiryTime,
+        password, getTrackingIdIfEnabled(identifier)));
+    if (!loadingFromDatabase) {
+      dirtyTokens.add(identifier);
+    }
   }
 
   /**
@@ -341,6 +402,7 @@ public synchronized void addPersistedDelegationToken(
   public synchronized void updatePersistedMasterKey(DelegationKey key)
       throws IOException {
     addKey(key);
+    dirtyKeys.add(key.getKeyId());
   }
   
   /**
@@ -365,6 +427,7 @@ public synchronized void updatePersistedTokenRenewal(
           .get(keyId).getKey());
       currentTokens.put(identifier, new DelegationTokenInformation(expiryTime,
           password, getTrackingIdIfEnabled(identifier)));
+      dirtyTokens.add(identifier);
     }
   }
 
@@ -382,6 +445,7 @@ public synchronized void updatePersistedTokenCancellation(
           "Can't update persisted delegation token renewal to a running SecretManager.");
     }
     currentTokens.remove(identifier);
+    dirtyTokens.add(identifier);
   }
   
   /**
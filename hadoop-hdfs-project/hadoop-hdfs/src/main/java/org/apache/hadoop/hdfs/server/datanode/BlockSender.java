@@ -684,26 +684,18 @@ private void readChecksum(byte[] buf, final int checksumOffset,
   public void verifyChecksum(final byte[] buf, final int dataOffset,
       final int datalen, final int numChunks, final int checksumOffset)
       throws ChecksumException {
-    int dOff = dataOffset;
-    int cOff = checksumOffset;
-    int dLeft = datalen;
-
-    for (int i = 0; i < numChunks; i++) {
-      checksum.reset();
-      int dLen = Math.min(dLeft, chunkSize);
-      checksum.update(buf, dOff, dLen);
-      if (!checksum.compare(buf, cOff)) {
-        long failedPos = offset + datalen - dLeft;
-        StringBuilder replicaInfoString = new StringBuilder();
-        if (replica != null) {
-          replicaInfoString.append(" for replica: " + replica.toString());
-        }
-        throw new ChecksumException("Checksum failed at " + failedPos
-            + replicaInfoString, failedPos);
+    try {
+      checksum.verifyChunkedSums(ByteBuffer.wrap(buf, dataOffset, datalen),
+          ByteBuffer.wrap(buf, checksumOffset, numChunks * checksumSize),
+          block.getBlockName(), offset);
+    } catch (ChecksumException ce) {
+      long failedPos = ce.getPos();
+      StringBuilder replicaInfoString = new StringBuilder();
+      if (replica != null) {
+        replicaInfoString.append(" for replica: " + replica.toString());
       }
-      dLeft -= dLen;
-      dOff += dLen;
-      cOff += checksumSize;
+      throw new ChecksumException("Checksum failed at " + failedPos
+          + replicaInfoString, failedPos);
     }
   }
   
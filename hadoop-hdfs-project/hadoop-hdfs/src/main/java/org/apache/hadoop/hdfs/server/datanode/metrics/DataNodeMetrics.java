@@ -30,7 +30,7 @@
 import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.hadoop.metrics2.lib.MetricsRegistry;
 import org.apache.hadoop.metrics2.lib.MutableCounterLong;
-import org.apache.hadoop.metrics2.lib.MutableQuantiles;
+import org.apache.hadoop.metrics2.lib.MutableHistogram;
 import org.apache.hadoop.metrics2.lib.MutableRate;
 import org.apache.hadoop.metrics2.lib.MutableGaugeInt;
 import org.apache.hadoop.metrics2.lib.MutableGaugeLong;
@@ -89,7 +89,7 @@ public class DataNodeMetrics {
   @Metric MutableCounterLong ramDiskBlocksEvicted;
   @Metric MutableCounterLong ramDiskBlocksEvictedWithoutRead;
   @Metric MutableRate        ramDiskBlocksEvictionWindowMs;
-  final MutableQuantiles[]   ramDiskBlocksEvictionWindowMsQuantiles;
+  final MutableHistogram[]   ramDiskBlocksEvictionWindowMsQuantiles;
 
 
   // RamDisk metrics on lazy persist
@@ -97,7 +97,7 @@ public class DataNodeMetrics {
   @Metric MutableCounterLong ramDiskBlocksDeletedBeforeLazyPersisted;
   @Metric MutableCounterLong ramDiskBytesLazyPersisted;
   @Metric MutableRate        ramDiskBlocksLazyPersistWindowMs;
-  final MutableQuantiles[]   ramDiskBlocksLazyPersistWindowMsQuantiles;
+  final MutableHistogram[]   ramDiskBlocksLazyPersistWindowMsQuantiles;
 
   @Metric MutableCounterLong fsyncCount;
   
@@ -121,18 +121,18 @@ public class DataNodeMetrics {
   @Metric MutableRate incrementalBlockReports;
   @Metric MutableRate cacheReports;
   @Metric MutableRate packetAckRoundTripTimeNanos;
-  final MutableQuantiles[] packetAckRoundTripTimeNanosQuantiles;
+  final MutableHistogram[] packetAckRoundTripTimeNanosQuantiles;
   
   @Metric MutableRate flushNanos;
-  final MutableQuantiles[] flushNanosQuantiles;
+  final MutableHistogram[] flushNanosQuantiles;
   
   @Metric MutableRate fsyncNanos;
-  final MutableQuantiles[] fsyncNanosQuantiles;
+  final MutableHistogram[] fsyncNanosQuantiles;
   
   @Metric MutableRate sendDataPacketBlockedOnNetworkNanos;
-  final MutableQuantiles[] sendDataPacketBlockedOnNetworkNanosQuantiles;
+  final MutableHistogram[] sendDataPacketBlockedOnNetworkNanosQuantiles;
   @Metric MutableRate sendDataPacketTransferNanos;
-  final MutableQuantiles[] sendDataPacketTransferNanosQuantiles;
+  final MutableHistogram[] sendDataPacketTransferNanosQuantiles;
 
   @Metric("Count of blocks in pending IBR")
   private MutableGaugeLong blocksInPendingIBR;
@@ -178,38 +178,38 @@ public DataNodeMetrics(String name, String sessionId, int[] intervals,
     
     final int len = intervals.length;
     dnUsageReportUtil = new DataNodeUsageReportUtil();
-    packetAckRoundTripTimeNanosQuantiles = new MutableQuantiles[len];
-    flushNanosQuantiles = new MutableQuantiles[len];
-    fsyncNanosQuantiles = new MutableQuantiles[len];
-    sendDataPacketBlockedOnNetworkNanosQuantiles = new MutableQuantiles[len];
-    sendDataPacketTransferNanosQuantiles = new MutableQuantiles[len];
-    ramDiskBlocksEvictionWindowMsQuantiles = new MutableQuantiles[len];
-    ramDiskBlocksLazyPersistWindowMsQuantiles = new MutableQuantiles[len];
+    packetAckRoundTripTimeNanosQuantiles = new MutableHistogram[len];
+    flushNanosQuantiles = new MutableHistogram[len];
+    fsyncNanosQuantiles = new MutableHistogram[len];
+    sendDataPacketBlockedOnNetworkNanosQuantiles = new MutableHistogram[len];
+    sendDataPacketTransferNanosQuantiles = new MutableHistogram[len];
+    ramDiskBlocksEvictionWindowMsQuantiles = new MutableHistogram[len];
+    ramDiskBlocksLazyPersistWindowMsQuantiles = new MutableHistogram[len];
 
     for (int i = 0; i < len; i++) {
       int interval = intervals[i];
-      packetAckRoundTripTimeNanosQuantiles[i] = registry.newQuantiles(
+      packetAckRoundTripTimeNanosQuantiles[i] = registry.newHistogram(
           "packetAckRoundTripTimeNanos" + interval + "s",
           "Packet Ack RTT in ns", "ops", "latency", interval);
-      flushNanosQuantiles[i] = registry.newQuantiles(
+      flushNanosQuantiles[i] = registry.newHistogram(
           "flushNanos" + interval + "s", 
           "Disk flush latency in ns", "ops", "latency", interval);
-      fsyncNanosQuantiles[i] = registry.newQuantiles(
+      fsyncNanosQuantiles[i] = registry.newHistogram(
           "fsyncNanos" + interval + "s", "Disk fsync latency in ns", 
           "ops", "latency", interval);
-      sendDataPacketBlockedOnNetworkNanosQuantiles[i] = registry.newQuantiles(
+      sendDataPacketBlockedOnNetworkNanosQuantiles[i] = registry.newHistogram(
           "sendDataPacketBlockedOnNetworkNanos" + interval + "s", 
           "Time blocked on network while sending a packet in ns",
           "ops", "latency", interval);
-      sendDataPacketTransferNanosQuantiles[i] = registry.newQuantiles(
+      sendDataPacketTransferNanosQuantiles[i] = registry.newHistogram(
           "sendDataPacketTransferNanos" + interval + "s", 
           "Time reading from disk and writing to network while sending " +
           "a packet in ns", "ops", "latency", interval);
-      ramDiskBlocksEvictionWindowMsQuantiles[i] = registry.newQuantiles(
+      ramDiskBlocksEvictionWindowMsQuantiles[i] = registry.newHistogram(
           "ramDiskBlocksEvictionWindows" + interval + "s",
           "Time between the RamDisk block write and eviction in ms",
           "ops", "latency", interval);
-      ramDiskBlocksLazyPersistWindowMsQuantiles[i] = registry.newQuantiles(
+      ramDiskBlocksLazyPersistWindowMsQuantiles[i] = registry.newHistogram(
           "ramDiskBlocksLazyPersistWindows" + interval + "s",
           "Time between the RamDisk block write and disk persist in ms",
           "ops", "latency", interval);
@@ -354,21 +354,21 @@ public void incrTotalReadTime(long timeTaken) {
 
   public void addPacketAckRoundTripTimeNanos(long latencyNanos) {
     packetAckRoundTripTimeNanos.add(latencyNanos);
-    for (MutableQuantiles q : packetAckRoundTripTimeNanosQuantiles) {
+    for (MutableHistogram q : packetAckRoundTripTimeNanosQuantiles) {
       q.add(latencyNanos);
     }
   }
 
   public void addFlushNanos(long latencyNanos) {
     flushNanos.add(latencyNanos);
-    for (MutableQuantiles q : flushNanosQuantiles) {
+    for (MutableHistogram q : flushNanosQuantiles) {
       q.add(latencyNanos);
     }
   }
 
   public void addFsyncNanos(long latencyNanos) {
     fsyncNanos.add(latencyNanos);
-    for (MutableQuantiles q : fsyncNanosQuantiles) {
+    for (MutableHistogram q : fsyncNanosQuantiles) {
       q.add(latencyNanos);
     }
   }
@@ -411,14 +411,14 @@ public void incrBlocksGetLocalPathInfo() {
 
   public void addSendDataPacketBlockedOnNetworkNanos(long latencyNanos) {
     sendDataPacketBlockedOnNetworkNanos.add(latencyNanos);
-    for (MutableQuantiles q : sendDataPacketBlockedOnNetworkNanosQuantiles) {
+    for (MutableHistogram q : sendDataPacketBlockedOnNetworkNanosQuantiles) {
       q.add(latencyNanos);
     }
   }
 
   public void addSendDataPacketTransferNanos(long latencyNanos) {
     sendDataPacketTransferNanos.add(latencyNanos);
-    for (MutableQuantiles q : sendDataPacketTransferNanosQuantiles) {
+    for (MutableHistogram q : sendDataPacketTransferNanosQuantiles) {
       q.add(latencyNanos);
     }
   }
@@ -449,7 +449,7 @@ public void incrRamDiskBlocksEvictedWithoutRead() {
 
   public void addRamDiskBlocksEvictionWindowMs(long latencyMs) {
     ramDiskBlocksEvictionWindowMs.add(latencyMs);
-    for (MutableQuantiles q : ramDiskBlocksEvictionWindowMsQuantiles) {
+    for (MutableHistogram q : ramDiskBlocksEvictionWindowMsQuantiles) {
       q.add(latencyMs);
     }
   }
@@ -468,7 +468,7 @@ public void incrRamDiskBytesLazyPersisted(long bytes) {
 
   public void addRamDiskBlocksLazyPersistWindowMs(long latencyMs) {
     ramDiskBlocksLazyPersistWindowMs.add(latencyMs);
-    for (MutableQuantiles q : ramDiskBlocksLazyPersistWindowMsQuantiles) {
+    for (MutableHistogram q : ramDiskBlocksLazyPersistWindowMsQuantiles) {
       q.add(latencyMs);
     }
   }
@@ -28,6 +28,7 @@
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.fs.QuotaUsage;
 import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.db.DatabaseINode;
 import org.apache.hadoop.hdfs.protocol.ClientProtocol;
 import org.apache.hadoop.hdfs.protocol.DirectoryListing;
 import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
@@ -45,8 +46,10 @@
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.List;
 
 import static org.apache.hadoop.util.Time.now;
 
@@ -54,33 +57,41 @@ class FSDirStatAndListingOp {
   static DirectoryListing getListingInt(FSDirectory fsd, FSPermissionChecker pc,
       final String srcArg, byte[] startAfter, boolean needLocation)
       throws IOException {
-    final INodesInPath iip = fsd.resolvePath(pc, srcArg, DirOp.READ);
-
-    // Get file name when startAfter is an INodePath.  This is not the
-    // common case so avoid any unnecessary processing unless required.
-    if (startAfter.length > 0 && startAfter[0] == Path.SEPARATOR_CHAR) {
-      final String startAfterString = DFSUtil.bytes2String(startAfter);
-      if (FSDirectory.isReservedName(startAfterString)) {
-        try {
-          byte[][] components = INode.getPathComponents(startAfterString);
-          components = FSDirectory.resolveComponents(components, fsd);
-          startAfter = components[components.length - 1];
-        } catch (IOException e) {
-          // Possibly the inode is deleted
-          throw new DirectoryListingStartAfterNotFoundException(
-              "Can't find startAfter " + startAfterString);
+    final INodeLockManager.LockSet locks = fsd.newReadLockSet();
+    try {
+      final INodesInPath iip =
+          fsd.resolvePathForRead(pc, srcArg, DirOp.READ, locks);
+
+      // Get file name when startAfter is an INodePath.  This is not the
+      // common case so avoid any unnecessary processing unless required.
+      if (startAfter.length > 0 && startAfter[0] == Path.SEPARATOR_CHAR) {
+        final String startAfterString = DFSUtil.bytes2String(startAfter);
+        if (FSDirectory.isReservedName(startAfterString)) {
+          try {
+            byte[][] components = INode.getPathComponents(startAfterString);
+            components = FSDirectory.resolveComponents(components, fsd);
+            startAfter = components[components.length - 1];
+          } catch (IOException e) {
+            // Possibly the inode is deleted
+            throw new DirectoryListingStartAfterNotFoundException(
+                "Can't find startAfter " + startAfterString);
+          }
         }
       }
-    }
 
-    boolean isSuperUser = true;
-    if (fsd.isPermissionEnabled()) {
-      if (iip.getLastINode() != null && iip.getLastINode().isDirectory()) {
-        fsd.checkPathAccess(pc, iip, FsAction.READ_EXECUTE);
+      boolean isSuperUser = true;
+      if (fsd.isPermissionEnabled()) {
+        if (iip.getLastINode() != null && iip.getLastINode().isDirectory()) {
+          fsd.checkPathAccess(pc, iip, FsAction.READ_EXECUTE);
+        }
+        isSuperUser = pc.isSuperUser();
+      }
+      return getListing(fsd, iip, startAfter, needLocation, isSuperUser);
+    } finally {
+      if (locks != null) {
+        locks.unlock();
       }
-      isSuperUser = pc.isSuperUser();
     }
-    return getListing(fsd, iip, startAfter, needLocation, isSuperUser);
   }
 
   /**
@@ -100,20 +111,27 @@ static HdfsFileStatus getFileInfo(FSDirectory fsd, FSPermissionChecker pc,
       String srcArg, boolean resolveLink, boolean needLocation,
       boolean needBlockToken) throws IOException {
     DirOp dirOp = resolveLink ? DirOp.READ : DirOp.READ_LINK;
-    final INodesInPath iip;
-    if (pc.isSuperUser()) {
-      // superuser can only get an ACE if an existing ancestor is a file.
-      // right or (almost certainly) wrong, current fs contracts expect
-      // superuser to receive null instead.
-      try {
-        iip = fsd.resolvePath(pc, srcArg, dirOp);
-      } catch (AccessControlException ace) {
-        return null;
+    final INodeLockManager.LockSet locks = fsd.newReadLockSet();
+    try {
+      final INodesInPath iip;
+      if (pc.isSuperUser()) {
+        // superuser can only get an ACE if an existing ancestor is a file.
+        // right or (almost certainly) wrong, current fs contracts expect
+        // superuser to receive null instead.
+        try {
+          iip = fsd.resolvePathForRead(pc, srcArg, dirOp, locks);
+        } catch (AccessControlException ace) {
+          return null;
+        }
+      } else {
+        iip = fsd.resolvePathForRead(pc, srcArg, dirOp, locks);
+      }
+      return getFileInfo(fsd, iip, needLocation, needBlockToken);
+    } finally {
+      if (locks != null) {
+        locks.unlock();
       }
-    } else {
-      iip = fsd.resolvePath(pc, srcArg, dirOp);
     }
-    return getFileInfo(fsd, iip, needLocation, needBlockToken);
   }
 
   /**
@@ -151,9 +169,12 @@ static GetBlockLocationsResult getBlockLocations(
     Preconditions.checkArgument(length >= 0,
         "Negative length is not supported. File: " + src);
     BlockManager bm = fsd.getBlockManager();
+    // the inode locks are taken before the directory lock, as by mutations
+    final INodeLockManager.LockSet locks = fsd.newReadLockSet();
+    final INodesInPath iip =
+        fsd.resolvePathForRead(pc, src, DirOp.READ, locks);
     fsd.readLock();
     try {
-      final INodesInPath iip = fsd.resolvePath(pc, src, DirOp.READ);
       src = iip.getPath();
       final INodeFile inode = INodeFile.valueOf(iip.getLastINode(), src);
       if (iip.getLastINode() == null) {
@@ -192,6 +213,9 @@ static GetBlockLocationsResult getBlockLocations(
       return new GetBlockLocationsResult(updateAccessTime, blocks);
     } finally {
       fsd.readUnlock();
+      if (locks != null) {
+        locks.unlock();
+      }
     }
   }
 
@@ -256,6 +280,14 @@ private static DirectoryListing getListing(FSDirectory fsd, INodesInPath iip,
       int locationBudget = fsd.getLsLimit();
       int listingCnt = 0;
       HdfsFileStatus listing[] = new HdfsFileStatus[numOfListing];
+      if (snapshot == Snapshot.CURRENT_STATE_ID && numOfListing > 0) {
+        // the xattrs of the listed children in one round trip
+        List<Long> childIds = new ArrayList<>(numOfListing);
+        for (int i = 0; i < numOfListing; i++) {
+          childIds.add(contents.get(startChild + i).getId());
+        }
+        XAttrFeature.prefetchChildren(dirInode.getPath(), childIds);
+      }
       for (int i = 0; i < numOfListing && locationBudget > 0; i++) {
         INode child = contents.get(startChild+i);
         byte childStoragePolicy = (includeStoragePolicy && !child.isSymlink())
@@ -525,6 +557,16 @@ private static HdfsFileStatus createFileStatus(
 
   private static ContentSummary getContentSummaryInt(FSDirectory fsd,
       FSPermissionChecker pc, INodesInPath iip) throws IOException {
+    // the per directory access checks and snapshots need the walk
+    INode target = iip.getLastINode();
+    boolean unchecked = pc == null || !fsd.isPermissionEnabled()
+        || pc.isSuperUser();
+    if (fsd.isContentSummaryInDatabase() && unchecked
+        && target != null && target.isDirectory()
+        && iip.getPathSnapshotId() == Snapshot.CURRENT_STATE_ID
+        && target.asDirectory().getDirectoryWithSnapshotFeature() == null) {
+      return getContentSummaryInDatabase(fsd, target.asDirectory());
+    }
     fsd.readLock();
     try {
       INode targetNode = iip.getLastINode();
@@ -547,6 +589,34 @@ private static ContentSummary getContentSummaryInt(FSDirectory fsd,
     }
   }
 
+  /**
+   * Aggregate the subtree of a directory in the database, after writing back
+   * the updates still pending in the inode cache under it. The space consumed
+   * counts the replicas or the parity of every block and is not split by
+   * storage type.
+   */
+  private static ContentSummary getContentSummaryInDatabase(FSDirectory fsd,
+      INodeDirectory dir) {
+    String path = dir.getFullPathName();
+    INodeKeyedObjects.flush(path);
+    DatabaseINode.SubtreeSummary s =
+        FSDirectory.getSubtreeSummaryInDatabase(path);
+    final QuotaCounts q = dir.getQuotaCounts();
+    ContentSummaryComputationContext cscc =
+        new ContentSummaryComputationContext(fsd, fsd.getFSNamesystem(),
+            fsd.getContentCountLimit(), fsd.getContentSleepMicroSec(), null);
+    return new ContentSummary.Builder().
+        length(s.length).
+        fileCount(s.fileCount).
+        directoryCount(s.directoryCount + 1).
+        quota(q.getNameSpace()).
+        spaceConsumed(s.spaceConsumed).
+        spaceQuota(q.getStorageSpace()).
+        typeQuota(q.getTypeSpaces().asArray()).
+        erasureCodingPolicy(cscc.getErasureCodingPolicyName(dir)).
+        build();
+  }
+
   static QuotaUsage getQuotaUsage(
       FSDirectory fsd, FSPermissionChecker pc, String src) throws IOException {
     final INodesInPath iip;
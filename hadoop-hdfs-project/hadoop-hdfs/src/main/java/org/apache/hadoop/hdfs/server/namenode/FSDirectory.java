@@ -42,6 +42,7 @@
 import org.apache.hadoop.hdfs.DFSUtilClient;
 import org.apache.hadoop.hdfs.protocol.BlockStoragePolicy;
 import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
+import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicyInfo;
 import org.apache.hadoop.hdfs.protocol.FSLimitException.MaxDirectoryItemsExceededException;
 import org.apache.hadoop.hdfs.protocol.FSLimitException.PathComponentTooLongException;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
@@ -173,6 +174,8 @@ private static INodeDirectory createRoot(FSNamesystem namesystem) {
   private final int maxDirItems;
   private final int lsLimit;  // max list limit
   private final int contentCountLimit; // max content summary counts per run
+  // compute content summaries and quota usage with aggregate queries
+  private final boolean contentSummaryInDatabase;
   private final long contentSleepMicroSec;
   private final INodeMap inodeMap; // Synchronized by dirLock
   private long yieldCount = 0; // keep track of lock yield count.
@@ -190,6 +193,9 @@ private static INodeDirectory createRoot(FSNamesystem namesystem) {
 
   // lock to protect the directory and BlockMap
   private final ReentrantReadWriteLock dirLock;
+  // per inode locks of namespace mutations, null unless fine grained locking
+  // is enabled
+  private final INodeLockManager lockManager;
 
   private final boolean isPermissionEnabled;
   private final boolean isPermissionContentSummarySubAccess;
@@ -263,16 +269,83 @@ void readUnlock() {
     this.dirLock.readLock().unlock();
   }
 
+  // a mutation holding its inode locks only excludes the exclusive holders of
+  // the directory lock, other mutations under different inodes run in parallel
   void writeLock() {
-    this.dirLock.writeLock().lock();
+    if (hasINodeLocks()) {
+      this.dirLock.readLock().lock();
+    } else {
+      this.dirLock.writeLock().lock();
+    }
   }
 
   void writeUnlock() {
-    this.dirLock.writeLock().unlock();
+    if (hasINodeLocks()) {
+      this.dirLock.readLock().unlock();
+    } else {
+      this.dirLock.writeLock().unlock();
+    }
   }
 
+  // whether the current thread may change the inodes it resolved; unlike
+  // FSNamesystem#hasWriteLock() this includes the holders of inode locks
   boolean hasWriteLock() {
-    return this.dirLock.isWriteLockedByCurrentThread();
+    return this.dirLock.isWriteLockedByCurrentThread() || hasINodeLocks();
+  }
+
+  boolean hasINodeLocks() {
+    return lockManager != null && lockManager.isHeldByCurrentThread();
+  }
+
+  INodeLockManager getINodeLockManager() {
+    return lockManager;
+  }
+
+  /**
+   * The directory lock does not exclude mutations holding inode locks, so a
+   * read of their paths also locks its inodes shared, see
+   * {@link #resolvePathForRead}.
+   *
+   * @return the lock set of a read to release after it, null without inode
+   *         locks or if the thread already holds some
+   */
+  INodeLockManager.LockSet newReadLockSet() {
+    if (lockManager == null || lockManager.isHeldByCurrentThread()
+        || lockManager.isReadHeldByCurrentThread()) {
+      return null;
+    }
+    return lockManager.newReadLockSet();
+  }
+
+  /**
+   * Resolve a path for a read and lock its inodes shared in the given set,
+   * if any, resolving it again while it changes before they are locked. The
+   * set is left unlocked if this throws.
+   */
+  INodesInPath resolvePathForRead(FSPermissionChecker pc, String src,
+      DirOp dirOp, INodeLockManager.LockSet locks) throws IOException {
+    while (true) {
+      INodesInPath iip = resolvePath(pc, src, dirOp);
+      if (locks == null) {
+        return iip;
+      }
+      locks.addRead(iip);
+      locks.lock();
+      boolean unchanged = false;
+      try {
+        unchanged = Arrays.equals(INodeLockManager.getIds(iip),
+            INodeLockManager.getIds(resolvePath(null, src, dirOp)));
+      } finally {
+        if (!unchanged) {
+          // a mutation changed the path before its inodes were locked
+          locks.unlock();
+          locks.clear();
+        }
+      }
+      if (unchanged) {
+        return iip;
+      }
+    }
   }
 
   boolean hasReadLock() {
@@ -309,6 +382,14 @@ public enum DirOp {
 
   FSDirectory(FSNamesystem ns, Configuration conf) throws IOException {
     this.dirLock = new ReentrantReadWriteLock(true); // fair
+    if (conf.getBoolean(DFSConfigKeys.DFS_NAMENODE_INODE_LOCKS_ENABLED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_INODE_LOCKS_ENABLED_DEFAULT)) {
+      this.lockManager = new INodeLockManager(conf.getInt(
+          DFSConfigKeys.DFS_NAMENODE_INODE_LOCKS_STRIPES_KEY,
+          DFSConfigKeys.DFS_NAMENODE_INODE_LOCKS_STRIPES_DEFAULT));
+    } else {
+      this.lockManager = null;
+    }
     this.inodeId = new INodeId();
     rootDir = createRoot(ns);
     try {
@@ -375,6 +456,12 @@ public enum DirOp {
     this.contentSleepMicroSec = conf.getLong(
         DFSConfigKeys.DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_KEY,
         DFSConfigKeys.DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_DEFAULT);
+    this.contentSummaryInDatabase = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_DB_CONTENT_SUMMARY_ENABLED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_DB_CONTENT_SUMMARY_ENABLED_DEFAULT);
+    INodeCallCache.setEnabled(conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_INODE_CALL_CACHE_ENABLED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_INODE_CALL_CACHE_ENABLED_DEFAULT));
     
     // filesystem limits
     this.maxComponentLength = (int) conf.getLongBytes(
@@ -708,6 +795,10 @@ long getContentSleepMicroSec() {
     return contentSleepMicroSec;
   }
 
+  boolean isContentSummaryInDatabase() {
+    return contentSummaryInDatabase;
+  }
+
   int getInodeXAttrsLimit() {
     return inodeXAttrsLimit;
   }
@@ -896,6 +987,10 @@ void updateReplicationFactor(Collection<UpdatedReplicationInfo> blocks) {
    * throw QuotaExceededException.
    */
   void updateCountForQuota(int initThreads) {
+    if (contentSummaryInDatabase) {
+      updateCountForQuotaInDatabase();
+      return;
+    }
     writeLock();
     try {
       int threads = (initThreads < 1) ? 1 : initThreads;
@@ -919,6 +1014,58 @@ void updateCountForQuota() {
     updateCountForQuota(quotaInitThreads);
   }
 
+  /**
+   * Aggregate the subtree of a directory in the database. The striped blocks
+   * of every erasure coding policy count their parity, as
+   * {@link INodeFile#storagespaceConsumed} does.
+   */
+  static DatabaseINode.SubtreeSummary getSubtreeSummaryInDatabase(
+      String path) {
+    List<DatabaseINode.StripedLayout> layouts = new ArrayList<>();
+    for (ErasureCodingPolicyInfo info :
+        ErasureCodingPolicyManager.getInstance().getPolicies()) {
+      ErasureCodingPolicy policy = info.getPolicy();
+      if (!policy.isReplicationPolicy()) {
+        layouts.add(new DatabaseINode.StripedLayout(policy.getId(),
+            policy.getNumDataUnits(), policy.getNumParityUnits(),
+            policy.getCellSize()));
+      }
+    }
+    return DatabaseINode.getSubtreeSummary(path, layouts);
+  }
+
+  /**
+   * Set the usage of the directories with quota from aggregates over their
+   * subtrees in the database, instead of walking the whole namespace. Only
+   * the directories loaded in the cache can have a quota set.
+   */
+  private void updateCountForQuotaInDatabase() {
+    writeLock();
+    try {
+      long start = Time.monotonicNow();
+      INodeKeyedObjects.flush();
+      int count = 0;
+      for (INode inode : INodeKeyedObjects.getCache().asMap().values()) {
+        if (!inode.isDirectory() || !inode.asDirectory().isQuotaSet()) {
+          continue;
+        }
+        INodeDirectory dir = inode.asDirectory();
+        DatabaseINode.SubtreeSummary s =
+            getSubtreeSummaryInDatabase(dir.getFullPathName());
+        // usage by storage type needs the storage policy of every file
+        dir.getDirectoryWithQuotaFeature().setSpaceConsumed(
+            s.fileCount + s.directoryCount + 1, s.spaceConsumed,
+            new EnumCounters<StorageType>(StorageType.class));
+        count++;
+      }
+      LOG.info("Quota initialization of " + count + " directories from the"
+          + " database completed in " + (Time.monotonicNow() - start)
+          + " milliseconds");
+    } finally {
+      writeUnlock();
+    }
+  }
+
   /**
    * parallel initialization using fork-join.
    */
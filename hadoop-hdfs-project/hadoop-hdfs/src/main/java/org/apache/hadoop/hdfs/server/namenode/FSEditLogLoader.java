@@ -20,6 +20,7 @@
 import static org.apache.hadoop.hdfs.server.namenode.FSImageFormat.renameReservedPathsOnUpgrade;
 import static org.apache.hadoop.util.Time.monotonicNow;
 
+import java.io.FileNotFoundException;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -34,6 +35,7 @@
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.XAttrSetFlag;
+import org.apache.hadoop.hdfs.db.DatabaseINode;
 import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
@@ -130,12 +132,22 @@ public class FSEditLogLoader {
   private long lastAppliedTxId;
   /** Total number of end transactions loaded. */
   private int totalEdits = 0;
+  /**
+   * Whether the edits are replayed over a database checkpoint. The
+   * write-behind keeps writing after a checkpoint is recorded, so the
+   * database may already hold the changes of any edit after it.
+   */
+  private boolean overDatabase = false;
   
   public FSEditLogLoader(FSNamesystem fsNamesys, long lastAppliedTxId) {
     this.fsNamesys = fsNamesys;
     this.blockManager = fsNamesys.getBlockManager();
     this.lastAppliedTxId = lastAppliedTxId;
   }
+
+  void setOverDatabase(boolean overDatabase) {
+    this.overDatabase = overDatabase;
+  }
   
   long loadFSEdits(EditLogInputStream edits, long expectedStartingTxId)
       throws IOException {
@@ -262,15 +274,15 @@ long loadEditRecords(EditLogInputStream in, boolean closeOnExit,
             }
           } catch (RollingUpgradeOp.RollbackException e) {
             throw e;
-          } catch (Throwable e) {
-            LOG.error("Encountered exception on operation " + op, e);
-            if (recovery == null) {
-              throw e instanceof IOException? (IOException)e: new IOException(e);
+          } catch (FileNotFoundException e) {
+            if (!overDatabase) {
+              handleApplyFailure(op, e, recovery);
+            } else if (LOG.isDebugEnabled()) {
+              // a later rename or delete of the path is in the database
+              LOG.debug("Skipping " + op + " overtaken by the database", e);
             }
-
-            MetaRecoveryContext.editLogLoaderPrompt("Failed to " +
-             "apply edit log operation " + op + ": error " +
-             e.getMessage(), recovery, "applying edits");
+          } catch (Throwable e) {
+            handleApplyFailure(op, e, recovery);
           }
           // Now that the operation has been successfully decoded and
           // applied, update our bookkeeping.
@@ -329,6 +341,69 @@ long loadEditRecords(EditLogInputStream in, boolean closeOnExit,
     return numEdits;
   }
   
+  private void handleApplyFailure(FSEditLogOp op, Throwable e,
+      MetaRecoveryContext recovery) throws IOException {
+    LOG.error("Encountered exception on operation " + op, e);
+    if (recovery == null) {
+      throw e instanceof IOException? (IOException)e: new IOException(e);
+    }
+
+    MetaRecoveryContext.editLogLoaderPrompt("Failed to " +
+     "apply edit log operation " + op + ": error " +
+     e.getMessage(), recovery, "applying edits");
+  }
+
+  /**
+   * Whether the namespace loaded from the database already holds the change
+   * of an operation that cannot be applied twice: the creation of an inode,
+   * whose id is logged, the move of a path away or a new block.
+   */
+  private boolean isInDatabase(FSEditLogOp op, FSDirectory fsDir,
+      int logVersion) throws IOException {
+    switch (op.opCode) {
+    case OP_ADD:
+      return isStored(((AddCloseOp) op).inodeId);
+    case OP_MKDIR:
+      return isStored(((MkdirOp) op).inodeId);
+    case OP_SYMLINK:
+      return isStored(((SymlinkOp) op).inodeId);
+    case OP_RENAME_OLD:
+      return !exists(fsDir,
+          renameReservedPathsOnUpgrade(((RenameOldOp) op).src, logVersion));
+    case OP_RENAME:
+      return !exists(fsDir,
+          renameReservedPathsOnUpgrade(((RenameOp) op).src, logVersion));
+    case OP_ADD_BLOCK: {
+      AddBlockOp addBlockOp = (AddBlockOp) op;
+      String path =
+          renameReservedPathsOnUpgrade(addBlockOp.getPath(), logVersion);
+      INode inode = fsDir.getINodesInPath(path, DirOp.READ).getLastINode();
+      if (inode == null || !inode.isFile()) {
+        return false;
+      }
+      long blockId = addBlockOp.getLastBlock().getBlockId();
+      for (BlockInfo b : inode.asFile().getBlocks()) {
+        if (b.getBlockId() == blockId) {
+          return true;
+        }
+      }
+      return false;
+    }
+    default:
+      return false;
+    }
+  }
+
+  private static boolean isStored(long inodeId) {
+    return inodeId != HdfsConstants.GRANDFATHER_INODE_ID
+        && DatabaseINode.checkInodeExistence(inodeId);
+  }
+
+  private static boolean exists(FSDirectory fsDir, String path)
+      throws IOException {
+    return fsDir.getINodesInPath(path, DirOp.READ_LINK).getLastINode() != null;
+  }
+
   // allocate and update last allocated inode id
   private long getAndUpdateLastInodeId(long inodeIdFromOp, int logVersion,
       long lastInodeId) throws IOException {
@@ -359,6 +434,12 @@ private long applyEditLogOp(FSEditLogOp op, FSDirectory fsDir,
       LOG.trace("replaying edit log: " + op);
     }
     final boolean toAddRetryCache = fsNamesys.hasRetryCache() && op.hasRpcIds();
+    if (overDatabase && isInDatabase(op, fsDir, logVersion)) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Skipping " + op + " already in the database");
+      }
+      return inodeId;
+    }
 
     switch (op.opCode) {
     case OP_ADD: {
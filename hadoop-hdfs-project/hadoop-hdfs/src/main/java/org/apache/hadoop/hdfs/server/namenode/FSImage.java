@@ -45,12 +45,15 @@
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSUtil;
 import org.apache.hadoop.hdfs.HAUtil;
+import org.apache.hadoop.hdfs.db.DatabaseINode;
+import org.apache.hadoop.hdfs.db.DatabaseNDExtraInfo;
 import org.apache.hadoop.hdfs.protocol.LayoutVersion;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.NamenodeRole;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.RollingUpgradeStartupOption;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.StartupOption;
 import org.apache.hadoop.hdfs.server.common.InconsistentFSStateException;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockIdManager;
 import org.apache.hadoop.hdfs.server.common.Storage;
 import org.apache.hadoop.hdfs.server.common.Storage.FormatConfirmable;
 import org.apache.hadoop.hdfs.server.common.Storage.StorageDirectory;
@@ -684,6 +687,23 @@ private boolean loadFSImage(FSNamesystem target, StartupOption startOpt,
 
     initEditLog(startOpt);
 
+    // The namespace in the database is already up to date with the edits up
+    // to its checkpoint, only the edits after it need to be replayed. It may
+    // hold some of those too, which the loader skips.
+    DatabaseNDExtraInfo.NamespaceCheckpoint dbCheckpoint = null;
+    if (!rollingRollback && conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_DB_CHECKPOINT_ENABLED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_DB_CHECKPOINT_ENABLED_DEFAULT)) {
+      dbCheckpoint = DatabaseNDExtraInfo.getNamespaceCheckpoint(
+          storage.getNamespaceID());
+      if (dbCheckpoint != null && dbCheckpoint.transactionId
+          <= imageFiles.get(0).getCheckpointTxId()) {
+        dbCheckpoint = null;
+      }
+    }
+    long fromTxId = dbCheckpoint != null ? dbCheckpoint.transactionId + 1
+        : imageFiles.get(0).getCheckpointTxId() + 1;
+
     if (NameNodeLayoutVersion.supports(
         LayoutVersion.Feature.TXID_BASED_LAYOUT, getLayoutVersion())) {
       // If we're open for write, we're either non-HA or we're the active NN, so
@@ -701,8 +721,7 @@ LayoutVersion.Feature.TXID_BASED_LAYOUT, getLayoutVersion())) {
         toAtLeastTxId = imageFiles.get(0).getCheckpointTxId() + 2;
       }
       editStreams = editLog.selectInputStreams(
-          imageFiles.get(0).getCheckpointTxId() + 1,
-          toAtLeastTxId, recovery, false);
+          fromTxId, toAtLeastTxId, recovery, false);
     } else {
       editStreams = FSImagePreTransactionalStorageInspector
         .getEditLogStreams(storage);
@@ -741,13 +760,19 @@ LayoutVersion.Feature.TXID_BASED_LAYOUT, getLayoutVersion())) {
       throw new IOException("Failed to load FSImage file, see error(s) " +
           "above for more info.");
     }
+    if (dbCheckpoint != null) {
+      loadDatabaseCheckpoint(target, dbCheckpoint);
+    }
     prog.endPhase(Phase.LOADING_FSIMAGE);
     
     if (!rollingRollback) {
       long txnsAdvanced = loadEdits(editStreams, target, Long.MAX_VALUE,
-          startOpt, recovery);
-      needToSave |= needsResaveBasedOnStaleCheckpoint(imageFile.getFile(),
-          txnsAdvanced);
+          startOpt, recovery, dbCheckpoint != null);
+      // the database checkpoint keeps the old fsimage from going stale
+      if (dbCheckpoint == null) {
+        needToSave |= needsResaveBasedOnStaleCheckpoint(imageFile.getFile(),
+            txnsAdvanced);
+      }
     } else {
       // Trigger the rollback for rolling upgrade. Here lastAppliedTxId equals
       // to the last txid in rollback fsimage.
@@ -758,6 +783,29 @@ LayoutVersion.Feature.TXID_BASED_LAYOUT, getLayoutVersion())) {
     return needToSave;
   }
 
+  /**
+   * Move the namespace loaded from the fsimage forward to the database
+   * checkpoint: the counters allocated since the fsimage was saved are
+   * restored from the checkpoint and the last inode id from the database.
+   */
+  private void loadDatabaseCheckpoint(FSNamesystem target,
+      DatabaseNDExtraInfo.NamespaceCheckpoint cp) throws IOException {
+    BlockIdManager bid = target.getBlockManager().getBlockIdManager();
+    bid.setLegacyGenerationStamp(
+        Math.max(bid.getLegacyGenerationStamp(), cp.genstampV1));
+    bid.setGenerationStamp(
+        Math.max(bid.getGenerationStamp(), cp.genstampV2));
+    bid.setLastAllocatedContiguousBlockId(Math.max(
+        bid.getLastAllocatedContiguousBlockId(), cp.lastAllocatedBlockId));
+    bid.setLastAllocatedStripedBlockId(Math.max(
+        bid.getLastAllocatedStripedBlockId(), cp.lastAllocatedStripedBlockId));
+    FSDirectory dir = target.getFSDirectory();
+    dir.resetLastInodeId(
+        Math.max(dir.getLastInodeId(), DatabaseINode.getLastInodeId()));
+    lastAppliedTxId = cp.transactionId;
+    LOG.info("Loaded database checkpoint for txid " + cp.transactionId);
+  }
+
   /** rollback for rolling upgrade. */
   private void rollingRollback(long discardSegmentTxId, long ckptId)
       throws IOException {
@@ -876,6 +924,18 @@ public long loadEdits(Iterable<EditLogInputStream> editStreams,
       FSNamesystem target, long maxTxnsToRead,
       StartupOption startOpt, MetaRecoveryContext recovery)
       throws IOException {
+    return loadEdits(editStreams, target, maxTxnsToRead, startOpt, recovery,
+        false);
+  }
+
+  /**
+   * @param overDatabase whether the edits are replayed over a database
+   *          checkpoint, which may already hold the changes of some of them
+   */
+  private long loadEdits(Iterable<EditLogInputStream> editStreams,
+      FSNamesystem target, long maxTxnsToRead,
+      StartupOption startOpt, MetaRecoveryContext recovery,
+      boolean overDatabase) throws IOException {
     LOG.debug("About to load edits:\n  " + Joiner.on("\n  ").join(editStreams));
     StartupProgress prog = NameNode.getStartupProgress();
     prog.beginPhase(Phase.LOADING_EDITS);
@@ -883,6 +943,7 @@ public long loadEdits(Iterable<EditLogInputStream> editStreams,
     long prevLastAppliedTxId = lastAppliedTxId;  
     try {    
       FSEditLogLoader loader = new FSEditLogLoader(target, lastAppliedTxId);
+      loader.setOverDatabase(overDatabase);
       
       // Load latest edits
       for (EditLogInputStream editIn : editStreams) {
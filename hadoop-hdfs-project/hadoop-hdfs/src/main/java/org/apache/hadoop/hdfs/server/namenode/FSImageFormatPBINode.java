@@ -123,6 +123,22 @@ public static List<XAttr> loadXAttrs(
       return b;
     }
 
+    /**
+     * Encode the header word stored in the inodes table for an image file,
+     * i.e. the same value {@link INodeFile#getHeaderLong()} would return.
+     */
+    public static long buildFileHeader(INodeSection.INodeFile f) {
+      boolean isStriped = f.hasErasureCodingPolicyID();
+      Short replication = (!isStriped ? (short) f.getReplication() : null);
+      Byte ecPolicyID = (isStriped ?
+          (byte) f.getErasureCodingPolicyID() : null);
+      BlockType blockType = PBHelperClient.convert(f.getBlockType());
+      return INodeFile.HeaderFormat.toLong(f.getPreferredBlockSize(),
+          INodeFile.HeaderFormat.getBlockLayoutRedundancy(
+              blockType, replication, ecPolicyID),
+          (byte) f.getStoragePolicyID());
+    }
+
     public static ImmutableList<QuotaByStorageTypeEntry> loadQuotaByStorageTypeEntries(
       QuotaByStorageTypeFeatureProto proto) {
       ImmutableList.Builder<QuotaByStorageTypeEntry> b = ImmutableList.builder();
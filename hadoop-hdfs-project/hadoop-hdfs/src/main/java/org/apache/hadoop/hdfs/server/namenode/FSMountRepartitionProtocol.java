@@ -25,5 +25,6 @@
 public interface FSMountRepartitionProtocol extends VersionedProtocol {
     public static final long versionID = 1L;
     public void recordMove(byte[] data) throws IOException;
+    public void recordAcquire(byte[] data) throws IOException;
     public HdfsFileStatus create(byte[] params) throws IOException;
 }
@@ -47,13 +47,39 @@
 public class FSMountRepartitionProtocolImpl implements FSMountRepartitionProtocol {
     @Override
     public void recordMove(byte[] data) throws IOException {
-        MountPartition mp = null;
+        MountPartition mp;
         try {
             mp = MountPartition.parseFrom(data);
         } catch (InvalidProtocolBufferException e) {
-            e.printStackTrace();
+            throw new IOException("Failed to parse the mount partition", e);
         }
         INodeKeyedObjects.getMoveCache().put(mp.getMountPoint(), mp.getNewUri());
+        INodeKeyedObjects.handoff(mp.getMountPoint());
+        FSNamesystem fsn = FSDirectory.getInstance().getFSNamesystem();
+        fsn.writeLock();
+        try {
+            fsn.getLeaseManager().removeLeasesUnder(mp.getMountPoint());
+        } finally {
+            fsn.writeUnlock("recordMove");
+        }
+    }
+
+    @Override
+    public void recordAcquire(byte[] data) throws IOException {
+        MountPartition mp;
+        try {
+            mp = MountPartition.parseFrom(data);
+        } catch (InvalidProtocolBufferException e) {
+            throw new IOException("Failed to parse the mount partition", e);
+        }
+        INodeKeyedObjects.acquire(mp.getMountPoint());
+        FSNamesystem fsn = FSDirectory.getInstance().getFSNamesystem();
+        fsn.writeLock();
+        try {
+            fsn.getLeaseManager().restoreLeases(mp.getMountPoint());
+        } finally {
+            fsn.writeUnlock("recordAcquire");
+        }
     }
 
     @Override
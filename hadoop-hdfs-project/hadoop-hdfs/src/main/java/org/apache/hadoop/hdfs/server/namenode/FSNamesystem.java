@@ -76,6 +76,8 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_EXPIRYTIME_MILLIS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_HEAP_PERCENT_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_HEAP_PERCENT_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_STRIPES_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_STRIPES_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_SHARED_EDITS_DIR_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LEASE_RECHECK_INTERVAL_MS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LEASE_RECHECK_INTERVAL_MS_DEFAULT;
@@ -233,6 +235,7 @@
 import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenSecretManager;
 import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenSecretManager.SecretManagerState;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockCollection;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockIdManager;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockManager;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockUnderConstructionFeature;
@@ -495,6 +498,9 @@ private void logAuditEvent(boolean succeeded,
   // from the name space.
   Daemon lazyPersistFileScrubber = null;
 
+  // A daemon to periodically record the database checkpoint of the namespace.
+  Daemon databaseCheckpointer = null;
+
   // Executor to warm up EDEK cache
   private ExecutorService edekCacheLoader = null;
   private final int edekCacheLoaderDelay;
@@ -515,6 +521,13 @@ private void logAuditEvent(boolean succeeded,
    */
   private final int lazyPersistFileScrubIntervalSec;
 
+  /**
+   * Whether the namespace is checkpointed as a transaction watermark in the
+   * database rather than as an fsimage, and how often. (In seconds)
+   */
+  private final boolean dbCheckpointEnabled;
+  private final long dbCheckpointPeriodSec;
+
   private volatile boolean hasResourcesAvailable = false;
   private volatile boolean fsRunning = true;
   
@@ -573,6 +586,8 @@ private void logAuditEvent(boolean succeeded,
 
   private final RetryCache retryCache;
 
+  private final INodeCacheWarmer cacheWarmer;
+
   private KeyProviderCryptoExtension provider = null;
 
   private volatile boolean imageLoaded = false;
@@ -851,7 +866,15 @@ static FSNamesystem loadFromDisk(Configuration conf) throws IOException {
 
       this.dtpReplaceDatanodeOnFailure = ReplaceDatanodeOnFailure.get(conf);
       
-      this.standbyShouldCheckpoint = conf.getBoolean(
+      this.dbCheckpointEnabled = conf.getBoolean(
+          DFSConfigKeys.DFS_NAMENODE_DB_CHECKPOINT_ENABLED_KEY,
+          DFSConfigKeys.DFS_NAMENODE_DB_CHECKPOINT_ENABLED_DEFAULT);
+      this.dbCheckpointPeriodSec = conf.getTimeDuration(
+          DFSConfigKeys.DFS_NAMENODE_DB_CHECKPOINT_PERIOD_KEY,
+          DFSConfigKeys.DFS_NAMENODE_DB_CHECKPOINT_PERIOD_DEFAULT,
+          TimeUnit.SECONDS);
+      // the database checkpoint replaces the fsimage saved by the standby
+      this.standbyShouldCheckpoint = !dbCheckpointEnabled && conf.getBoolean(
           DFS_HA_STANDBY_CHECKPOINTS_KEY, DFS_HA_STANDBY_CHECKPOINTS_DEFAULT);
       // # edit autoroll threshold is a multiple of the checkpoint threshold 
       this.editLogRollerThreshold = (long)
@@ -906,6 +929,7 @@ static FSNamesystem loadFromDisk(Configuration conf) throws IOException {
       this.isDefaultAuditLogger = auditLoggers.size() == 1 &&
         auditLoggers.get(0) instanceof DefaultAuditLogger;
       this.retryCache = ignoreRetryCache ? null : initRetryCache(conf);
+      this.cacheWarmer = new INodeCacheWarmer(this, conf);
       Class<? extends INodeAttributeProvider> klass = conf.getClass(
           DFS_NAMENODE_INODE_ATTRIBUTES_PROVIDER_KEY,
           null, INodeAttributeProvider.class);
@@ -1012,9 +1036,11 @@ static RetryCache initRetryCache(Configuration conf) {
       LOG.info("Retry cache will use " + heapPercent
           + " of total heap and retry cache entry expiry time is "
           + entryExpiryMillis + " millis");
+      int numStripes = conf.getInt(DFS_NAMENODE_RETRY_CACHE_STRIPES_KEY,
+          DFS_NAMENODE_RETRY_CACHE_STRIPES_DEFAULT);
       long entryExpiryNanos = entryExpiryMillis * 1000 * 1000;
       return new RetryCache("NameNodeRetryCache", heapPercent,
-          entryExpiryNanos);
+          entryExpiryNanos, numStripes);
     }
     return null;
   }
@@ -1197,6 +1223,8 @@ void startCommonServices(Configuration conf, HAContext haContext) throws IOExcep
       dir.setINodeAttributeProvider(inodeAttributeProvider);
     }
     snapshotManager.registerMXBean();
+    // a standby warms up too, so a failover finds the cache populated
+    cacheWarmer.startWarmUp();
     InetSocketAddress serviceAddress = NameNode.getServiceAddress(conf, true);
     this.nameNodeHostName = (serviceAddress != null) ?
         serviceAddress.getHostName() : "";
@@ -1298,6 +1326,16 @@ void startActiveServices() throws IOException {
             + " configured scrub interval is zero.");
       }
 
+      if (dbCheckpointEnabled) {
+        INodeKeyedObjects.setTxIdSource(
+            () -> getEditLog().getLastWrittenTxIdWithoutLock());
+        databaseCheckpointer = new Daemon(new DatabaseCheckpointer(
+            dbCheckpointPeriodSec, conf.getLong(
+                DFSConfigKeys.DFS_NAMENODE_NUM_EXTRA_EDITS_RETAINED_KEY,
+                DFSConfigKeys.DFS_NAMENODE_NUM_EXTRA_EDITS_RETAINED_DEFAULT)));
+        databaseCheckpointer.start();
+      }
+
       cacheManager.startMonitorThread();
       blockManager.getDatanodeManager().setShouldSendCachingCommands(true);
       if (provider != null) {
@@ -1311,6 +1349,7 @@ void startActiveServices() throws IOException {
       if (blockManager.getSPSManager() != null) {
         blockManager.getSPSManager().start();
       }
+      cacheWarmer.startDumper();
     } finally {
       startingActiveService = false;
       blockManager.checkSafeMode();
@@ -1352,6 +1391,7 @@ void stopActiveServices() {
       if (edekCacheLoader != null) {
         edekCacheLoader.shutdownNow();
       }
+      cacheWarmer.stopDumper();
       if (nnEditLogRoller != null) {
         ((NameNodeEditLogRoller)nnEditLogRoller.getRunnable()).stop();
         nnEditLogRoller.interrupt();
@@ -1360,6 +1400,11 @@ void stopActiveServices() {
         ((LazyPersistFileScrubber) lazyPersistFileScrubber.getRunnable()).stop();
         lazyPersistFileScrubber.interrupt();
       }
+      if (databaseCheckpointer != null) {
+        ((DatabaseCheckpointer) databaseCheckpointer.getRunnable()).stop();
+        databaseCheckpointer.interrupt();
+        INodeKeyedObjects.setTxIdSource(null);
+      }
       if (dir != null && getFSImage() != null) {
         if (getFSImage().editLog != null) {
           getFSImage().editLog.close();
@@ -1449,6 +1494,10 @@ void stopStandbyServices() throws IOException {
   }
 
   public void checkOperation(OperationCategory op) throws StandbyException {
+    if (op == OperationCategory.WRITE && INodeKeyedObjects.isReadOnly()) {
+      throw new StandbyException("Operation category " + op
+          + " is not supported on a read-only NameNode");
+    }
     if (haContext != null) {
       // null in some unit tests
       haContext.checkOperation(op);
@@ -1641,10 +1690,81 @@ public void writeUnlock(String opName, boolean suppressWriteLockReport) {
     this.fsLock.writeUnlock(opName, suppressWriteLockReport);
   }
 
+  /**
+   * Lock for a namespace mutation of the given paths. With inode locks
+   * enabled the namesystem lock is only taken shared and the inodes of the
+   * paths are locked in the {@link INodeLockManager}; otherwise, or when a
+   * path cannot be locked that way, this takes the write lock.
+   *
+   * @return the inode locks to release with
+   *         {@link #writeUnlock(INodeLockManager.LockSet, String)}, null if
+   *         the write lock was taken
+   */
+  INodeLockManager.LockSet writeLock(INodeLockManager.Scope scope,
+      String... srcs) {
+    INodeLockManager lockManager = dir.getINodeLockManager();
+    if (lockManager == null) {
+      writeLock();
+      return null;
+    }
+    readLock();
+    while (true) {
+      INodeLockManager.LockSet locks = lockManager.newLockSet();
+      try {
+        List<long[]> ids = new ArrayList<>(srcs.length);
+        boolean lockable = true;
+        for (int i = 0; i < srcs.length && lockable; i++) {
+          INodesInPath iip = dir.resolvePath(null, srcs[i], DirOp.WRITE_LINK);
+          lockable = locks.add(iip, scope);
+          ids.add(INodeLockManager.getIds(iip));
+        }
+        if (lockable) {
+          locks.lock();
+          boolean unchanged = true;
+          for (int i = 0; i < srcs.length && unchanged; i++) {
+            unchanged = Arrays.equals(ids.get(i), INodeLockManager.getIds(
+                dir.resolvePath(null, srcs[i], DirOp.WRITE_LINK)));
+          }
+          if (unchanged) {
+            return locks;
+          }
+          // a concurrent mutation changed the paths before they were locked
+          locks.unlock();
+          continue;
+        }
+      } catch (IOException e) {
+        // the operation reports the error under the write lock
+        locks.unlock();
+      }
+      readUnlock();
+      writeLock();
+      return null;
+    }
+  }
+
+  void writeUnlock(INodeLockManager.LockSet locks, String opName) {
+    if (locks == null) {
+      writeUnlock(opName);
+    } else {
+      locks.unlock();
+      readUnlock(opName);
+    }
+  }
+
   @Override
   public boolean hasWriteLock() {
     return this.fsLock.isWriteLockedByCurrentThread();
   }
+
+  /**
+   * @return whether the current thread holds the inode locks of a namespace
+   *         mutation, which lets it change the inodes of its paths under the
+   *         read lock. The block manager is not covered by the inode locks,
+   *         its mutations still need {@link #hasWriteLock()}.
+   */
+  boolean hasINodeLocks() {
+    return dir != null && dir.hasINodeLocks();
+  }
   @Override
   public boolean hasReadLock() {
     return this.fsLock.getReadHoldCount() > 0 || hasWriteLock();
@@ -1908,7 +2028,8 @@ void setPermission(String src, FsPermission permission) throws IOException {
     FileStatus auditStat;
     checkOperation(OperationCategory.WRITE);
     final FSPermissionChecker pc = getPermissionChecker();
-    writeLock();
+    final INodeLockManager.LockSet locks =
+        writeLock(INodeLockManager.Scope.MODIFY, src);
     try {
       checkOperation(OperationCategory.WRITE);
       checkNameNodeSafeMode("Cannot set permission for " + src);
@@ -1917,7 +2038,7 @@ void setPermission(String src, FsPermission permission) throws IOException {
       logAuditEvent(false, operationName, src);
       throw e;
     } finally {
-      writeUnlock(operationName);
+      writeUnlock(locks, operationName);
     }
     getEditLog().logSync();
     logAuditEvent(true, operationName, src, null, auditStat);
@@ -1936,7 +2057,8 @@ void setOwner(String src, String username, String group)
     FileStatus auditStat;
     checkOperation(OperationCategory.WRITE);
     final FSPermissionChecker pc = getPermissionChecker();
-    writeLock();
+    final INodeLockManager.LockSet locks =
+        writeLock(INodeLockManager.Scope.MODIFY, src);
     try {
       checkOperation(OperationCategory.WRITE);
       checkNameNodeSafeMode("Cannot set owner for " + src);
@@ -1945,7 +2067,7 @@ void setOwner(String src, String username, String group)
       logAuditEvent(false, operationName, src);
       throw e;
     } finally {
-      writeUnlock(operationName);
+      writeUnlock(locks, operationName);
     }
     getEditLog().logSync();
     logAuditEvent(true, operationName, src, null, auditStat);
@@ -1990,9 +2112,11 @@ LocatedBlocks getBlockLocations(String clientMachine, String srcArg,
 
     logAuditEvent(true, operationName, srcArg);
 
-    if (!isInSafeMode() && res.updateAccessTime()) {
+    // A read-only replica cannot log the access time, and the read it
+    // served must not fail because of it.
+    if (!isInSafeMode() && res.updateAccessTime()
+        && !INodeKeyedObjects.isReadOnly()) {
       String src = srcArg;
-      checkOperation(OperationCategory.WRITE);
       writeLock();
       final long now = now();
       try {
@@ -2027,6 +2151,8 @@ LocatedBlocks getBlockLocations(String clientMachine, String srcArg,
             getEditLog().logTimes(src, -1, now);
           }
         }
+      } catch (StandbyException e) {
+        LOG.debug("Skipped updating the access time of {}", src, e);
       } catch (Throwable e) {
         LOG.warn("Failed to update the access time of " + src, e);
       } finally {
@@ -2105,7 +2231,8 @@ void setTimes(String src, long mtime, long atime) throws IOException {
     FileStatus auditStat;
     checkOperation(OperationCategory.WRITE);
     final FSPermissionChecker pc = getPermissionChecker();
-    writeLock();
+    final INodeLockManager.LockSet locks =
+        writeLock(INodeLockManager.Scope.MODIFY, src);
     try {
       checkOperation(OperationCategory.WRITE);
       checkNameNodeSafeMode("Cannot set times " + src);
@@ -2114,7 +2241,7 @@ void setTimes(String src, long mtime, long atime) throws IOException {
       logAuditEvent(false, operationName, src);
       throw e;
     } finally {
-      writeUnlock(operationName);
+      writeUnlock(locks, operationName);
     }
     
     getEditLog().logSync();
@@ -2572,7 +2699,15 @@ private HdfsFileStatus startFileInt(String src,
 
     checkOperation(OperationCategory.WRITE);
     final FSPermissionChecker pc = getPermissionChecker();
-    writeLock();
+    final INodeLockManager.LockSet locks;
+    if (provider != null || flag.contains(CreateFlag.OVERWRITE)) {
+      // generating an EDEK releases the lock, and overwriting a file removes
+      // its blocks, both need the write lock
+      writeLock();
+      locks = null;
+    } else {
+      locks = writeLock(INodeLockManager.Scope.CREATE, src);
+    }
     try {
       checkOperation(OperationCategory.WRITE);
       checkNameNodeSafeMode("Cannot create file" + src);
@@ -2633,7 +2768,7 @@ private HdfsFileStatus startFileInt(String src,
         dir.writeUnlock();
       }
     } finally {
-      writeUnlock("create");
+      writeUnlock(locks, "create");
       // There might be transactions logged while trying to recover the lease.
       // They need to be sync'ed even when an exception was thrown.
       if (!skipSync) {
@@ -3103,7 +3238,8 @@ boolean renameTo(String src, String dst, boolean logRetryCache)
     FSDirRenameOp.RenameResult ret = null;
     checkOperation(OperationCategory.WRITE);
     final FSPermissionChecker pc = getPermissionChecker();
-    writeLock();
+    final INodeLockManager.LockSet locks =
+        writeLock(INodeLockManager.Scope.REMOVE, src, dst);
     try {
       checkOperation(OperationCategory.WRITE);
       checkNameNodeSafeMode("Cannot rename " + src);
@@ -3112,7 +3248,7 @@ boolean renameTo(String src, String dst, boolean logRetryCache)
       logAuditEvent(false, operationName, src, dst, null);
       throw e;
     } finally {
-      writeUnlock(operationName);
+      writeUnlock(locks, operationName);
     }
     boolean success = ret.success;
     if (success) {
@@ -3129,7 +3265,14 @@ void renameTo(final String src, final String dst,
     FSDirRenameOp.RenameResult res = null;
     checkOperation(OperationCategory.WRITE);
     final FSPermissionChecker pc = getPermissionChecker();
-    writeLock();
+    final INodeLockManager.LockSet locks;
+    if (Arrays.asList(options).contains(Options.Rename.OVERWRITE)) {
+      // overwriting the destination removes its blocks under the write lock
+      writeLock();
+      locks = null;
+    } else {
+      locks = writeLock(INodeLockManager.Scope.REMOVE, src, dst);
+    }
     try {
       checkOperation(OperationCategory.WRITE);
       checkNameNodeSafeMode("Cannot rename " + src);
@@ -3140,7 +3283,7 @@ void renameTo(final String src, final String dst,
           Arrays.toString(options) + ")", src, dst, null);
       throw e;
     } finally {
-      writeUnlock(operationName);
+      writeUnlock(locks, operationName);
     }
 
     getEditLog().logSync();
@@ -3167,6 +3310,8 @@ boolean delete(String src, boolean recursive, boolean logRetryCache)
     BlocksMapUpdateInfo toRemovedBlocks = null;
     checkOperation(OperationCategory.WRITE);
     final FSPermissionChecker pc = getPermissionChecker();
+    // removing files changes the blocks map, which only the write lock
+    // protects
     writeLock();
     boolean ret = false;
     try {
@@ -3234,6 +3379,7 @@ void removeLeasesAndINodes(List<Long> removedUCFiles,
     assert hasWriteLock();
     for(long i : removedUCFiles) {
       leaseManager.removeLease(i);
+      UnderConstructionIndex.remove(i);
     }
     // remove inodes from inodesMap
     if (removedINodes != null) {
@@ -3319,7 +3465,8 @@ boolean mkdirs(String src, PermissionStatus permissions,
     FileStatus auditStat = null;
     checkOperation(OperationCategory.WRITE);
     final FSPermissionChecker pc = getPermissionChecker();
-    writeLock();
+    final INodeLockManager.LockSet locks =
+        writeLock(INodeLockManager.Scope.MODIFY, src);
     try {
       checkOperation(OperationCategory.WRITE);
       checkNameNodeSafeMode("Cannot create directory " + src);
@@ -3329,7 +3476,7 @@ boolean mkdirs(String src, PermissionStatus permissions,
       logAuditEvent(false, operationName, src);
       throw e;
     } finally {
-      writeUnlock(operationName);
+      writeUnlock(locks, operationName);
     }
 
     getEditLog().logSync();
@@ -4307,6 +4454,77 @@ public void stop() {
     }
   }
 
+  /**
+   * Daemon to periodically record the last transaction whose changes have
+   * all been written back to the database, and purge the edits below it.
+   * A restart loads the namespace from the database and only replays the
+   * edits after the recorded transaction.
+   */
+  class DatabaseCheckpointer implements Runnable {
+    private volatile boolean shouldRun = true;
+    final long periodSec;
+    final long numExtraEditsToRetain;
+    private long lastCheckpointTxId = -1;
+
+    DatabaseCheckpointer(long periodSec, long numExtraEditsToRetain) {
+      this.periodSec = periodSec;
+      this.numExtraEditsToRetain = numExtraEditsToRetain;
+    }
+
+    @VisibleForTesting
+    void checkpoint() {
+      // only a forced write-back in which every write succeeded moves the watermark
+      long txId = INodeKeyedObjects.commit();
+      if (txId <= lastCheckpointTxId) {
+        return;
+      }
+      // the counters only grow, reading them after the watermark is safe
+      BlockIdManager bid = blockManager.getBlockIdManager();
+      DatabaseNDExtraInfo.setNamespaceCheckpoint(
+          new DatabaseNDExtraInfo.NamespaceCheckpoint(
+              getFSImage().getStorage().getNamespaceID(),
+              bid.getLegacyGenerationStamp(),
+              bid.getGenerationStamp(),
+              bid.getLegacyGenerationStampLimit(),
+              bid.getLastAllocatedContiguousBlockId(),
+              bid.getLastAllocatedStripedBlockId(),
+              txId));
+      saveSecretManagerState();
+      lastCheckpointTxId = txId;
+
+      FSEditLog editLog = getEditLog();
+      long minTxIdToKeep = Math.min(txId - numExtraEditsToRetain,
+          editLog.getCurSegmentTxIdWithoutLock());
+      if (minTxIdToKeep > 0) {
+        editLog.purgeLogsOlderThan(minTxIdToKeep);
+      }
+      LOG.info("Recorded database checkpoint at txid " + txId);
+    }
+
+    @Override
+    public void run() {
+      while (fsRunning && shouldRun) {
+        try {
+          Thread.sleep(periodSec * 1000);
+        } catch (InterruptedException e) {
+          FSNamesystem.LOG.info(
+              "DatabaseCheckpointer was interrupted, exiting");
+          break;
+        }
+        try {
+          checkpoint();
+        } catch (Exception e) {
+          FSNamesystem.LOG.error(
+              "Ignoring exception in DatabaseCheckpointer:", e);
+        }
+      }
+    }
+
+    public void stop() {
+      shouldRun = false;
+    }
+  }
+
   public FSImage getFSImage() {
     return fsImage;
   }
@@ -4328,6 +4546,22 @@ public long getMissingReplOneBlocksCount() {
     return blockManager.getMissingReplOneBlocksCount();
   }
   
+  @VisibleForTesting
+  INodeCacheWarmer getCacheWarmer() {
+    return cacheWarmer;
+  }
+
+  @Metric({"CacheWarmupTotal", "Number of hot paths to load into the inode cache"})
+  public long getCacheWarmupTotal() {
+    return cacheWarmer.getTotal();
+  }
+
+  @Metric({"CacheWarmupLoaded",
+      "Number of hot paths loaded into the inode cache so far"})
+  public long getCacheWarmupLoaded() {
+    return cacheWarmer.getLoaded();
+  }
+
   @Metric({"ExpiredHeartbeats", "Number of expired heartbeats"})
   public int getExpiredHeartbeats() {
     return datanodeStatistics.getExpiredHeartbeats();
@@ -7991,6 +8225,34 @@ public void removeXattr(long id, String xattrName) throws IOException {
     }
   }
 
+  /**
+   * Check that the caller could make a read of the path whose result it
+   * gets from an identical call of another caller: the path resolves for it
+   * and its last inode, if any, grants the given access. The check is audit
+   * logged as the given operation, since the caller gets its result.
+   */
+  void checkCoalescedRead(String src, FsAction access, String operationName)
+      throws IOException {
+    final FSPermissionChecker pc = getPermissionChecker();
+    readLock();
+    try {
+      final INodesInPath iip = dir.resolvePath(pc, src, DirOp.READ);
+      if (isPermissionEnabled && access != null
+          && iip.getLastINode() != null) {
+        dir.checkPathAccess(pc, iip, access);
+        if (access.implies(FsAction.READ)) {
+          dir.checkUnreadableBySuperuser(pc, iip);
+        }
+      }
+    } catch (AccessControlException e) {
+      logAuditEvent(false, operationName, src);
+      throw e;
+    } finally {
+      readUnlock("checkCoalescedRead");
+    }
+    logAuditEvent(true, operationName, src);
+  }
+
   void checkAccess(String src, FsAction mode) throws IOException {
     final String operationName = "checkAccess";
     checkOperation(OperationCategory.READ);
@@ -20,6 +20,7 @@
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Stack;
 
@@ -85,6 +86,11 @@ private String toAccessControlString(INodeAttributes inodeAttrib,
   private final boolean isSuper;
   private final INodeAttributeProvider attributeProvider;
 
+  // A checker serves a single call, which checks the same ancestors for each
+  // path it resolves. Directories the user may traverse are remembered with
+  // the version of their path in the inode cache, until that version changes.
+  private final IdentityHashMap<INodeAttributes, Long> traversable =
+      new IdentityHashMap<>();
 
   protected FSPermissionChecker(String fsOwner, String supergroup,
       UserGroupInformation callerUgi,
@@ -239,7 +245,7 @@ public void checkPermission(String fsOwner, String supergroup,
         ancestorIndex--);
 
     try {
-      checkTraverse(inodeAttrs, inodes, components, ancestorIndex);
+      checkTraverse(inodeAttrs, inodes, components, ancestorIndex, path);
     } catch (UnresolvedPathException | ParentNotDirectoryException ex) {
       // must tunnel these exceptions out to avoid breaking interface for
       // external enforcer
@@ -308,12 +314,66 @@ private void checkOwner(INodeAttributes[] inodes, byte[][] components, int i)
    * @throws UnresolvedPathException
    */
   private void checkTraverse(INodeAttributes[] inodeAttrs, INode[] inodes,
-      byte[][] components, int last) throws AccessControlException,
-          UnresolvedPathException, ParentNotDirectoryException {
+      byte[][] components, int last, String path)
+          throws AccessControlException, UnresolvedPathException,
+          ParentNotDirectoryException {
+    int[] hashes = null;
+    IndexedCache<String, INode> cache = null;
+    if (attributeProvider == null && INodeCallCache.isEnabled()) {
+      hashes = getPrefixHashes(path, components.length);
+      cache = INodeKeyedObjects.getCache();
+    }
     for (int i=0; i <= last; i++) {
       checkIsDirectory(inodes[i], components, i);
+      boolean memo = hashes != null && inodeAttrs[i] != null;
+      long version = 0;
+      if (memo) {
+        // read before the check, a change in between invalidates the entry
+        version = cache.getVersion(hashes[i]);
+        Long checked = traversable.get(inodeAttrs[i]);
+        if (checked != null && checked == version) {
+          continue;
+        }
+      }
       check(inodeAttrs, components, i, FsAction.EXECUTE);
+      if (memo) {
+        traversable.put(inodeAttrs[i], version);
+      }
+    }
+  }
+
+  /**
+   * @return the hash codes of the prefixes of the path ending at each of its
+   *         components, i.e. of the cache keys of its inodes, or null if the
+   *         path does not have the given number of components
+   */
+  static int[] getPrefixHashes(String path, int length) {
+    if (path == null || path.isEmpty() || path.charAt(0) != '/'
+        || length == 0) {
+      return null;
+    }
+    int[] hashes = new int[length];
+    // String.hashCode() of "/"
+    int h = '/';
+    hashes[0] = h;
+    int k = 1;
+    for (int j = 1; j < path.length(); j++) {
+      char c = path.charAt(j);
+      if (c == '/') {
+        if (k == length) {
+          return null;
+        }
+        hashes[k++] = h;
+      }
+      h = 31 * h + c;
+    }
+    if (path.length() > 1) {
+      if (k == length) {
+        return null;
+      }
+      hashes[k++] = h;
     }
+    return k == length ? hashes : null;
   }
 
   /** Guarded by {@link FSNamesystem#readLock()} */
@@ -19,13 +19,10 @@
 
 import java.io.IOException;
 
-import org.apache.hadoop.hdfs.db.*;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo;
 import org.apache.hadoop.hdfs.server.namenode.INode.BlocksMapUpdateInfo;
 
-import java.util.concurrent.CompletableFuture;
-
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
@@ -40,36 +37,46 @@ public class FileUnderConstructionFeature implements INode.Feature {
   public FileUnderConstructionFeature() {} 
 
   public FileUnderConstructionFeature(final long id, final String clientName, final String clientMachine) {
-    this.clientName = clientName;
-    this.clientMachine = clientMachine;
+    this(UnderConstructionIndex.put(id, clientName, clientMachine));
+  }
+
+  // also restores the feature of a file reloaded from the database
+  FileUnderConstructionFeature(final UnderConstructionIndex.Entry entry) {
+    this.clientName = entry.getClientName();
+    this.clientMachine = entry.getClientMachine();
   }
 
   public void updateFileUnderConstruction(final long id) {
-    CompletableFuture.runAsync(() -> {
-      DatabaseINode.insertUc(id, clientName, clientMachine);
-    }, Database.getInstance().getExecutorService());
+    UnderConstructionIndex.put(id, clientName, clientMachine);
   }
 
   public String getClientName(final long id) {
     if (this.clientName == null) {
-      this.clientName = DatabaseINode.getUcClientName(id);
+      UnderConstructionIndex.Entry entry = UnderConstructionIndex.get(id);
+      if (entry != null) {
+        this.clientName = entry.getClientName();
+      }
     }
     return this.clientName;
   }
 
   public void setClientName(final long id, String clientName) {
-    this.clientName = clientName;
+    this.clientName = UnderConstructionIndex.setClientName(id, clientName).getClientName();
   }
 
   public String getClientMachine(final long id) {
     if (this.clientMachine == null) {
-      this.clientMachine = DatabaseINode.getUcClientMachine(id);
+      UnderConstructionIndex.Entry entry = UnderConstructionIndex.get(id);
+      if (entry != null) {
+        this.clientMachine = entry.getClientMachine();
+      }
     }
     return this.clientMachine;
   }
 
   public void setClientMachine(final long id, String clientMachine) {
-    this.clientMachine = clientMachine;
+    this.clientMachine =
+        UnderConstructionIndex.setClientMachine(id, clientMachine).getClientMachine();
   }
 
   @Override
@@ -715,7 +715,10 @@ public final INodeDirectory getParent() {
     if (id == DatabaseINode.LONG_NULL) {
       return null;
     } else {
-      INode dir = INodeKeyedObjects.getCache().getIfPresent(getParentName()); 
+      INode dir = INodeCallCache.getIfPresent(getParentName()); 
+      if (dir == null) {
+        dir = INodeKeyedObjects.restoreEvicted(getParentName());
+      }
       if (dir == null) {
         dir = new INodeDirectory(id);
         DatabaseINode.LoadINode node = new DatabaseINode().loadINode(id);
@@ -732,7 +735,7 @@ public final INodeDirectory getParent() {
               node.header,
               node.parentName);
 
-        INodeKeyedObjects.getCache().put(dir.getPath(), dir.asDirectory());
+        dir = INodeKeyedObjects.cacheLoaded(dir.getPath(), dir);
       }
       return dir.asDirectory();
     }
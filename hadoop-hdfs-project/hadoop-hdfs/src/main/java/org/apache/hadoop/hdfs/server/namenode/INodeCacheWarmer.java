@@ -0,0 +1,292 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.github.benmanes.caffeine.cache.Policy;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.db.DatabaseINode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the hottest paths of the inode cache in a file and loads them back
+ * after a restart or failover, so the first minutes of traffic do not all
+ * miss the cache.
+ *
+ * The active NameNode periodically writes the paths of its most frequently
+ * used cached inodes, as ranked by the cache eviction policy, one per line.
+ * On startup the paths are loaded one depth at a time, parents before their
+ * children, with the hot children of each directory fetched in one query.
+ * The loaded inodes are cached under the namesystem read lock, only while
+ * their parent is cached and still has them, as {@link INodePreloader} does.
+ */
+class INodeCacheWarmer {
+  static final Logger LOG = LoggerFactory.getLogger(INodeCacheWarmer.class);
+
+  // names per query when loading the hot children of a directory
+  private static final int BATCH_SIZE = 1000;
+
+  private final FSNamesystem namesystem;
+  private final File file;
+  private final int size;
+  private final long dumpIntervalMs;
+  private final int threads;
+
+  private final AtomicLong total = new AtomicLong();
+  private final AtomicLong loaded = new AtomicLong();
+  private ScheduledExecutorService dumper;
+
+  INodeCacheWarmer(FSNamesystem namesystem, Configuration conf) {
+    this.namesystem = namesystem;
+    String path = conf.getTrimmed(DFSConfigKeys.DFS_NAMENODE_CACHE_HOTSET_FILE_KEY, "");
+    this.file = path.isEmpty() ? null : new File(path);
+    this.size = conf.getInt(DFSConfigKeys.DFS_NAMENODE_CACHE_HOTSET_SIZE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_CACHE_HOTSET_SIZE_DEFAULT);
+    this.dumpIntervalMs = conf.getTimeDuration(
+        DFSConfigKeys.DFS_NAMENODE_CACHE_HOTSET_INTERVAL_KEY,
+        DFSConfigKeys.DFS_NAMENODE_CACHE_HOTSET_INTERVAL_DEFAULT,
+        TimeUnit.MILLISECONDS);
+    this.threads = conf.getInt(DFSConfigKeys.DFS_NAMENODE_CACHE_WARMUP_THREADS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_CACHE_WARMUP_THREADS_DEFAULT);
+  }
+
+  boolean isEnabled() {
+    return file != null;
+  }
+
+  /** @return the number of hot paths to warm up */
+  long getTotal() {
+    return total.get();
+  }
+
+  /** @return the number of hot paths warmed up so far */
+  long getLoaded() {
+    return loaded.get();
+  }
+
+  synchronized void startDumper() {
+    if (file == null || dumper != null) {
+      return;
+    }
+    dumper = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("INode Cache Hot Set Dumper").build());
+    dumper.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          dump();
+        } catch (IOException e) {
+          LOG.warn("Failed to write the hot set to " + file, e);
+        }
+      }
+    }, dumpIntervalMs, dumpIntervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  synchronized void stopDumper() {
+    if (dumper == null) {
+      return;
+    }
+    dumper.shutdownNow();
+    dumper = null;
+    try {
+      // keep the latest hot set for the next active NameNode
+      dump();
+    } catch (IOException e) {
+      LOG.warn("Failed to write the hot set to " + file, e);
+    }
+  }
+
+  /** Write the hottest cached paths, replacing the previous file atomically. */
+  void dump() throws IOException {
+    Optional<Policy.Eviction<String, INode>> eviction =
+        INodeKeyedObjects.getCache().policy().eviction();
+    if (!eviction.isPresent()) {
+      return;
+    }
+    Map<String, INode> hottest = eviction.get().hottest(size);
+    File tmp = new File(file.getPath() + ".tmp");
+    try (BufferedWriter writer = Files.newBufferedWriter(tmp.toPath(), UTF_8)) {
+      for (String path : hottest.keySet()) {
+        if (path.indexOf('\n') < 0) {
+          writer.write(path);
+          writer.newLine();
+        }
+      }
+    }
+    Files.move(tmp.toPath(), file.toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    LOG.debug("Wrote {} hot paths to {}", hottest.size(), file);
+  }
+
+  /** Warm up the cache in the background. */
+  void startWarmUp() {
+    if (file == null || !file.exists()) {
+      return;
+    }
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          warmUp();
+        } catch (IOException | ExecutionException e) {
+          LOG.warn("Failed to warm up the inode cache from " + file, e);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }, "INode Cache Warm Up");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  void warmUp()
+      throws IOException, InterruptedException, ExecutionException {
+    long start = System.currentTimeMillis();
+    // depth -> parent -> names of its hot children
+    TreeMap<Integer, Map<String, List<String>>> levels = new TreeMap<>();
+    long count = 0;
+    for (String path : Files.readAllLines(file.toPath(), UTF_8)) {
+      int idx = path.lastIndexOf('/');
+      if (idx < 0 || path.length() == idx + 1) {
+        // the root is always cached
+        continue;
+      }
+      String parent = idx == 0 ? "/" : path.substring(0, idx);
+      int depth = 0;
+      for (int i = 0; i < path.length(); i++) {
+        if (path.charAt(i) == '/') {
+          depth++;
+        }
+      }
+      Map<String, List<String>> level = levels.get(depth);
+      if (level == null) {
+        level = new HashMap<>();
+        levels.put(depth, level);
+      }
+      List<String> names = level.get(parent);
+      if (names == null) {
+        names = new ArrayList<>();
+        level.put(parent, names);
+      }
+      names.add(path.substring(idx + 1));
+      count++;
+    }
+    total.set(count);
+    LOG.info("Warming up the inode cache with {} hot paths from {}", count, file);
+
+    ExecutorService pool = Executors.newFixedThreadPool(threads,
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("INode Cache Warm Up #%d").build());
+    try {
+      for (Map<String, List<String>> level : levels.values()) {
+        List<Future<?>> futures = new ArrayList<>();
+        for (final Map.Entry<String, List<String>> entry : level.entrySet()) {
+          futures.add(pool.submit(new Runnable() {
+            @Override
+            public void run() {
+              load(entry.getKey(), entry.getValue());
+            }
+          }));
+        }
+        for (Future<?> future : futures) {
+          future.get();
+        }
+        LOG.info("Warmed up {} of {} hot paths", loaded.get(), count);
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+    LOG.info("Warmed up the inode cache in {} ms",
+        System.currentTimeMillis() - start);
+  }
+
+  private void load(String parentName, List<String> names) {
+    try {
+      INode parent = INodeKeyedObjects.getCache().getIfPresent(parentName);
+      if (parent == null || !parent.isDirectory()) {
+        // removed or renamed since the hot set was written
+        return;
+      }
+      String prefix = parentName.equals("/") ? parentName : parentName + "/";
+      List<String> missing = new ArrayList<>();
+      for (String name : names) {
+        if (INodeKeyedObjects.getCache().getIfPresent(prefix + name) == null
+            && parent.asDirectory().getCurrentChildrenList2().contains(name)) {
+          missing.add(name);
+        }
+      }
+      for (int i = 0; i < missing.size(); i += BATCH_SIZE) {
+        List<String> batch =
+            missing.subList(i, Math.min(i + BATCH_SIZE, missing.size()));
+        install(parentName, parent.getId(),
+            new DatabaseINode().loadINodes(parentName, batch));
+      }
+    } finally {
+      loaded.addAndGet(names.size());
+    }
+  }
+
+  /**
+   * Cache the loaded children of a directory, unless the directory was
+   * replaced or they were removed or renamed while they were loaded.
+   */
+  private void install(String parentName, long parentId,
+      List<DatabaseINode.LoadINode> nodes) {
+    String prefix = parentName.equals("/") ? parentName : parentName + "/";
+    namesystem.readLock();
+    try {
+      INode parent = INodeKeyedObjects.getCache().getIfPresent(parentName);
+      if (parent == null || parent.getId() != parentId
+          || !parent.isDirectory()) {
+        return;
+      }
+      for (DatabaseINode.LoadINode node : nodes) {
+        if (parent.asDirectory().getCurrentChildrenList2().contains(node.name)) {
+          // never replace an inode loaded by a client in the meantime
+          INodeKeyedObjects.cacheLoaded(
+              prefix + node.name, INodeMap.materialize(node));
+        }
+      }
+    } finally {
+      namesystem.readUnlock("warmUpCache");
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.util.HashMap;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.hadoop.ipc.Server;
+
+/**
+ * A small memo of the inodes looked up by the current RPC call, in front of
+ * the shared inode cache.
+ *
+ * Path resolution and permission checks look up the same ancestors several
+ * times per call, and every lookup in the shared cache pays for its read
+ * buffer and frequency sketch. The memo of a handler thread only lives for
+ * one call and only holds cache hits. A hit stays valid until the version
+ * of its path in the shared cache changes, i.e. until the inode of the path
+ * (or of a path sharing its version stripe) is added, replaced or removed.
+ * Lookups outside an RPC call, such as edit log replay and the background
+ * threads, always go to the shared cache.
+ */
+final class INodeCallCache {
+  // cleared when full, a call rarely touches more distinct paths
+  private static final int MAX_SIZE = 64;
+
+  private static volatile boolean enabled = true;
+
+  private static final ThreadLocal<INodeCallCache> MEMO =
+      new ThreadLocal<INodeCallCache>() {
+        @Override
+        protected INodeCallCache initialValue() {
+          return new INodeCallCache();
+        }
+      };
+
+  /** An inode and the version of its path when it was looked up. */
+  private static final class Entry {
+    private final INode inode;
+    private final long version;
+
+    private Entry(INode inode, long version) {
+      this.inode = inode;
+      this.version = version;
+    }
+  }
+
+  private final HashMap<String, Entry> inodes = new HashMap<>();
+  private Server.Call call;
+
+  private INodeCallCache() {}
+
+  static void setEnabled(boolean enabled) {
+    INodeCallCache.enabled = enabled;
+  }
+
+  static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @return the memo of the current call, empty if the call changed since
+   *         it was last used, or null outside an RPC call
+   */
+  static INodeCallCache get() {
+    if (!enabled) {
+      return null;
+    }
+    Server.Call current = Server.getCurCall().get();
+    if (current == null) {
+      return null;
+    }
+    INodeCallCache memo = MEMO.get();
+    if (memo.call != current) {
+      memo.inodes.clear();
+      memo.call = current;
+    }
+    return memo;
+  }
+
+  /** Look up an inode by path, in the memo of the current call first. */
+  static INode getIfPresent(String path) {
+    INodeCallCache memo = get();
+    if (memo == null) {
+      return INodeKeyedObjects.getCache().getIfPresent(path);
+    }
+    IndexedCache<String, INode> cache = INodeKeyedObjects.getCache();
+    // read before the inode, a change in between invalidates the entry
+    long version = cache.getVersion(path);
+    Entry entry = memo.inodes.get(path);
+    if (entry != null && entry.version == version) {
+      return entry.inode;
+    }
+    INode inode = cache.getIfPresent(path);
+    if (inode != null) {
+      if (entry == null && memo.inodes.size() >= MAX_SIZE) {
+        memo.inodes.clear();
+      }
+      memo.inodes.put(path, new Entry(inode, version));
+    } else if (entry != null) {
+      memo.inodes.remove(path);
+    }
+    return inode;
+  }
+
+  /** @return whether the memo of the current call holds the path */
+  @VisibleForTesting
+  static boolean isMemoized(String path) {
+    INodeCallCache memo = get();
+    if (memo == null) {
+      return false;
+    }
+    Entry entry = memo.inodes.get(path);
+    return entry != null
+        && entry.version == INodeKeyedObjects.getCache().getVersion(path);
+  }
+}
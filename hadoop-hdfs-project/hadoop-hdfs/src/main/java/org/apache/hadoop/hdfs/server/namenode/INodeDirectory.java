@@ -26,6 +26,7 @@
 import java.nio.charset.Charset;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -108,7 +109,10 @@ public static INodeDirectory valueOf(INode inode, Object path
 
   static final byte[] ROOT_NAME = DFSUtil.string2Bytes("");
 
-  private HashSet<String> children = new HashSet<>();
+  // concurrent, readers may list a directory while a mutation holding only
+  // its inode locks changes it; the set is loaded in place so that no
+  // concurrent change is lost
+  private final Set<String> children = ConcurrentHashMap.newKeySet();
 
   // public CuckooFilter<CharSequence> filter;
 
@@ -578,20 +582,19 @@ public ReadOnlyList<INode> getChildrenList(final int snapshotId) {
     return sf.getChildrenList(this, snapshotId);
   }
 
-  public HashSet<String> getCurrentChildrenList2() {
-    if (children.isEmpty()) {
-      children = new HashSet<>();
-    }
+  public Set<String> getCurrentChildrenList2() {
     return children;
   }
 
   public void resetCurrentChildrenList() {
-    children = new HashSet<>(DatabaseINode.getChildrenNames(getId()));
+    Set<String> names = new HashSet<>(DatabaseINode.getChildrenNames(getPath()));
+    children.retainAll(names);
+    children.addAll(names);
   }  
 
   private ReadOnlyList<INode> getCurrentChildrenList() {
     if (children.isEmpty()) {
-      children = new HashSet<>(DatabaseINode.getChildrenNames(getId()));
+      children.addAll(DatabaseINode.getChildrenNames(getPath()));
     }
     List<INode> childs = new ArrayList<>(DEFAULT_FILES_PER_DIRECTORY);
     for (String cname : children) {
@@ -717,7 +720,7 @@ public void localRename(INode node, String oldName, String oldParent, String new
         INode child = FSDirectory.getInstance().getInode(id.getLeft(), id.getRight());   
         if (child != null) {
           if (child.isDirectory()) {
-            HashSet<String> childNames = ((INodeDirectory)child).getCurrentChildrenList2();
+            Set<String> childNames = ((INodeDirectory)child).getCurrentChildrenList2();
             for (String cname : childNames) {
               if (child.getId() == old_id) {
                 q.add(new ImmutablePair<>(getOldPath(oldParent, oldName), cname));
@@ -928,7 +931,7 @@ public void remoteRename(INode node, String oldName, String oldParent, String ne
         INode child = FSDirectory.getInstance().getInode(id.getLeft(), id.getRight());   
         if (child != null) {
           if (child.isDirectory()) {
-            HashSet<String> childNames = ((INodeDirectory)child).getCurrentChildrenList2();
+            Set<String> childNames = ((INodeDirectory)child).getCurrentChildrenList2();
             for (String cname : childNames) {
               if (child.getId() == old_id) {
                 q.add(new ImmutablePair<>(getOldPath(oldParent, oldName), cname));
@@ -1121,7 +1124,7 @@ private QuotaCounts computeDirectoryQuotaUsage(BlockStoragePolicySuite bsps,
       byte blockStoragePolicyId, QuotaCounts counts, boolean useCache,
       int lastSnapshotId) {
     if (children.isEmpty()) {
-      children = new HashSet<>(DatabaseINode.getChildrenNames(getId()));
+      children.addAll(DatabaseINode.getChildrenNames(getPath()));
     }
     if (!children.isEmpty()) {
       for (String cname : children) {
@@ -1269,9 +1272,9 @@ public void undoRename4DstParent(final BlockStoragePolicySuite bsps,
     }
   }
 
-  /** Set the children list to null. */
+  /** Clear the children list. */
   public void clearChildren() {
-    this.children = null;
+    this.children.clear();
   }
 
   @Override
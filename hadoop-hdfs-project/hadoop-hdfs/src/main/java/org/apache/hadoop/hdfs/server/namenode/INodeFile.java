@@ -126,7 +126,8 @@ public static INodeFile valueOf(INode inode, String path, boolean acceptNull)
                   node.parentName);
           inode.asDirectory().resetCurrentChildrenList();
         }
-        INodeKeyedObjects.getCache().put(path, inode);
+        // an inode evicted with pending updates is newer than the row
+        inode = INodeKeyedObjects.cacheLoaded(path, inode);
       }
     }
     if (!inode.isFile()) {
@@ -388,6 +389,10 @@ public void InitINodeFile(long parent, long id, byte[] name, long permissions, l
       long atime, long header, String parentName) {
     super.InitINodeWithAdditionalFields(parent, id, name, permissions, mtime, atime, header, parentName);
     this.header = header;
+    UnderConstructionIndex.Entry entry = UnderConstructionIndex.get(id);
+    if (entry != null) {
+      uc = new FileUnderConstructionFeature(entry);
+    }
   }
 
   public void updateINodeFile() {
@@ -449,6 +454,7 @@ public final FileUnderConstructionFeature getFileUnderConstructionFeature() {
 
   private void removeUCFeature(long id) {
     uc = null;
+    UnderConstructionIndex.remove(id);
   }
 
   /** Is this file under construction? */
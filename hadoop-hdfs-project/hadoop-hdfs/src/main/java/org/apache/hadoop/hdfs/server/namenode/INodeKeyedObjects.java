@@ -5,12 +5,15 @@
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.*;
 import com.github.benmanes.caffeine.cache.stats.CacheStats;
-import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.google.common.annotations.VisibleForTesting;
+import java.io.IOException;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.*;
+import java.util.function.LongSupplier;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.hadoop.hdfs.db.DatabaseINode;
 import org.slf4j.Logger;
@@ -23,16 +26,54 @@ public class INodeKeyedObjects {
   private static Set<String> concurrentUpdateSet;
   private static Set<String> concurrentRenameSet;
   private static Set<Long> concurrentRemoveSet;
+  // inodes evicted from the cache before their pending updates were written back
+  private static final ConcurrentMap<String, INode> evicted = new ConcurrentHashMap<>();
+  // keys out of the pending sets whose inodes a write-back is still reading
+  private static final Set<String> writingBack = ConcurrentHashMap.newKeySet();
   private static long preRemoveSize = 0;
   private static long preRenameSize = 0;
   private static long preUpdateSize = 0;
 
   private static ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
 
+  // A read-only NameNode never writes to the database. It serves reads from its cache and
+  // reloads any entry older than the staleness bound from the database.
+  private static volatile boolean readOnly =
+      Boolean.parseBoolean(System.getenv("READ_ONLY_NAMENODE"));
+  private static long stalenessMs = 1000L;
+
+  // The last edit log transaction whose namespace changes are all in the database. A forced
+  // round of asyncUpdateDB() in which every write succeeds commits every transaction logged
+  // before it started; the source is the last written transaction id of the edit log.
+  private static volatile LongSupplier txIdSource;
+  private static volatile long committedTxId = -1;
+
   static final Logger LOG = LoggerFactory.getLogger(INodeKeyedObjects.class);
 
   INodeKeyedObjects() {}
 
+  public static void setTxIdSource(LongSupplier source) {
+    txIdSource = source;
+  }
+
+  /** @return the last transaction id known to be committed to the database, or -1 */
+  public static long getCommittedTxId() {
+    return committedTxId;
+  }
+
+  public static boolean isReadOnly() {
+    return readOnly;
+  }
+
+  @VisibleForTesting
+  static void setReadOnly(boolean value) {
+    readOnly = value;
+  }
+
+  public static long getStalenessMs() {
+    return stalenessMs;
+  }
+
   public static Set<String> getUpdateSet() {
     if (concurrentUpdateSet == null) {
       ConcurrentHashMap<String, Integer> map = new ConcurrentHashMap<>();
@@ -57,252 +98,381 @@ public static Set<String> getRenameSet() {
     return concurrentRenameSet;
   }
 
-  private static void insertToDB() {
-    if (concurrentUpdateSet == null) {
+  /**
+   * Keep an inode evicted from the cache with pending updates until the write-behind thread
+   * writes it back. Runs before the entry leaves the cache, so a round that does not find the
+   * inode in the cache finds it here. A clean inode is the same as its row in the database.
+   */
+  private static void writeBackLater(String key, INode inode) {
+    if (readOnly) {
       return;
     }
-    int i = 0;
-    final int num = 1024;
-    long updateSize = concurrentUpdateSet.size();
-    if (updateSize >= num) {
-      Iterator<String> iterator = concurrentUpdateSet.iterator();
-      if (LOG.isInfoEnabled()) {
-        LOG.info("Sync update files/directories from cache to database.");
-      }
+    // a write-back takes the key out of the pending set before it reads the inode
+    if (!getUpdateSet().contains(key) && !getRenameSet().contains(key)
+        && !writingBack.contains(key)) {
+      return;
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Cache Evicted: INode = " + key);
+    }
+    evicted.put(key, inode);
+  }
 
-      List<Long> longAttr = new ArrayList<>();
-      List<String> strAttr = new ArrayList<>();
-
-      List<Long> fileIds = new ArrayList<>();
-      List<String> fileAttr = new ArrayList<>();
-      while (iterator.hasNext()) {
-        INode inode = INodeKeyedObjects.getCache().getIfPresent(iterator.next());
-        if (inode == null) continue;
-        strAttr.add(inode.getLocalName());
-        if (inode.getId() == 16385) {
-          strAttr.add(" ");
-        } else {
-          strAttr.add(inode.getParentName());
-        }
-        longAttr.add(inode.getParentId());
-        longAttr.add(inode.getId());
-        longAttr.add(inode.getModificationTime());
-        longAttr.add(inode.getAccessTime());
-        longAttr.add(inode.getPermissionLong());
-        if (inode.isDirectory()) {
-          longAttr.add(0L);
-        } else {
-          longAttr.add(inode.asFile().getHeaderLong());
-          FileUnderConstructionFeature uc = inode.asFile().getFileUnderConstructionFeature();
-          if (uc != null) {
-            fileIds.add(inode.getId());
-            fileAttr.add(uc.getClientName(inode.getId()));
-            fileAttr.add(uc.getClientMachine(inode.getId()));
-          }
-        }
-        iterator.remove();
-        if (++i >= num) break;
+  /**
+   * Put back in the cache the inode evicted with pending updates under the key. A cache miss
+   * must check it before the database, which does not have the updates yet.
+   *
+   * @return the inode now cached for the key, or null if none was evicted with pending updates
+   */
+  static INode restoreEvicted(String key) {
+    INode inode = evicted.get(key);
+    if (inode == null) {
+      return null;
+    }
+    INode cached = getCache().asMap().putIfAbsent(key, inode);
+    return cached != null ? cached : inode;
+  }
+
+  /**
+   * Add an inode loaded from the database to the cache, unless the cache or the inodes evicted
+   * with pending updates already hold the key.
+   *
+   * @return the inode now cached for the key
+   */
+  static INode cacheLoaded(String key, INode loaded) {
+    INode inode = restoreEvicted(key);
+    if (inode != null) {
+      return inode;
+    }
+    INode cached = getCache().asMap().putIfAbsent(key, loaded);
+    if (cached != null) {
+      return cached;
+    }
+    // evicted with pending updates while the row was loaded
+    INode stash = evicted.get(key);
+    if (stash != null && getCache().asMap().replace(key, loaded, stash)) {
+      return stash;
+    }
+    return loaded;
+  }
+
+  /**
+   * Write the pending updates or renames of the keys back to the database. The keys leave the
+   * pending set before their inodes are read, so a change made meanwhile is written again by a
+   * later round, and they are put back if the write fails.
+   *
+   * @return whether the inodes were written
+   */
+  private static boolean writeBack(Set<String> pending, List<String> keys, boolean rename) {
+    writingBack.addAll(keys);
+    pending.removeAll(keys);
+    List<Long> longAttr = new ArrayList<>();
+    List<String> strAttr = new ArrayList<>();
+    List<String> written = new ArrayList<>();
+    List<INode> stashed = new ArrayList<>();
+    for (String key : keys) {
+      INode stash = evicted.get(key);
+      INode inode = getCache().getIfPresent(key);
+      if (inode == null) {
+        inode = stash;
       }
-      try {
-        if (strAttr.size() > 0) {
-          DatabaseINode.batchUpdateINodes(longAttr, strAttr, fileIds, fileAttr);
-        }
-      } catch (Exception e) {
-        e.printStackTrace();
+      // an inode dropped from the cache explicitly was removed or written back already
+      if (inode != null) {
+        addColumns(inode, longAttr, strAttr);
+        written.add(key);
+        stashed.add(stash);
       }
-    } else {
-      if (updateSize > 0 && preUpdateSize == updateSize) {
-        Iterator<String> iterator = concurrentUpdateSet.iterator();
-        if (LOG.isInfoEnabled()) {
-          LOG.info("Propagate updated files/directories from cache to database.");
-        }
-        try {
-          List<Long> longAttr = new ArrayList<>();
-          List<String> strAttr = new ArrayList<>();
-          List<Long> fileIds = new ArrayList<>();
-          List<String> fileAttr = new ArrayList<>();
-          while (iterator.hasNext()) {
-            INode inode = INodeKeyedObjects.getCache().getIfPresent(iterator.next());
-            if (inode == null) continue;
-            strAttr.add(inode.getLocalName());
-            if (inode.getId() == 16385) {
-              strAttr.add(" ");
-            } else {
-              strAttr.add(inode.getParentName());
-            }
-            longAttr.add(inode.getParentId());
-            longAttr.add(inode.getId());
-            longAttr.add(inode.getModificationTime());
-            longAttr.add(inode.getAccessTime());
-            longAttr.add(inode.getPermissionLong());
-            if (inode.isDirectory()) {
-              longAttr.add(0L);
-            } else {
-              longAttr.add(inode.asFile().getHeaderLong());
-              FileUnderConstructionFeature uc = inode.asFile().getFileUnderConstructionFeature();
-              if (uc != null) {
-                fileIds.add(inode.getId());
-                fileAttr.add(uc.getClientName(inode.getId()));
-                fileAttr.add(uc.getClientMachine(inode.getId()));
-              }
-            }
-            iterator.remove();             
-          }
-          if (strAttr.size() > 0) {
-            DatabaseINode.batchUpdateINodes(longAttr, strAttr, fileIds, fileAttr);
-          }
-        } catch (Exception e) {
-          e.printStackTrace();
-        }
+    }
+    writingBack.removeAll(keys);
+    if (written.isEmpty()) {
+      return true;
+    }
+    try {
+      WriteBackFaultInjector.getInstance().beforeWriteBack();
+      if (rename) {
+        DatabaseINode.batchRenameINodes(longAttr, strAttr);
+      } else {
+        DatabaseINode.batchUpdateINodes(longAttr, strAttr, new ArrayList<>(), new ArrayList<>());
+      }
+    } catch (SQLException e) {
+      LOG.error("Failed to write back " + written.size() + " inodes, will retry", e);
+      pending.addAll(written);
+      return false;
+    }
+    for (int i = 0; i < written.size(); i++) {
+      // the cached inode is newer than one evicted before, unless it was evicted meanwhile
+      if (stashed.get(i) != null) {
+        evicted.remove(written.get(i), stashed.get(i));
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Write back a round of pending updates or renames. Unless forced, small sets are only written
+   * once they stop growing, and large ones 1024 at a time.
+   *
+   * @return whether every inode of the round was written
+   */
+  private static boolean writeBackRound(
+      Set<String> pending, long preSize, boolean force, boolean rename) {
+    final int num = 1024;
+    long size = pending.size();
+    List<String> keys = new ArrayList<>();
+    if (size >= num && !force) {
+      Iterator<String> iterator = pending.iterator();
+      while (iterator.hasNext() && keys.size() < num) {
+        keys.add(iterator.next());
       }
+    } else if (size > 0 && (force || preSize == size)) {
+      keys.addAll(pending);
     }
+    if (keys.isEmpty()) {
+      return true;
+    }
+    if (LOG.isInfoEnabled()) {
+      LOG.info("Propagate " + (rename ? "renamed" : "updated")
+          + " files/directories from cache to database.");
+    }
+    boolean written = true;
+    for (int from = 0; from < keys.size(); from += num) {
+      written &= writeBack(pending, keys.subList(from, Math.min(keys.size(), from + num)), rename);
+    }
+    return written;
+  }
+
+  private static boolean insertToDB(boolean force) {
+    if (concurrentUpdateSet == null) {
+      return true;
+    }
+    boolean written = writeBackRound(concurrentUpdateSet, preUpdateSize, force, false);
     preUpdateSize = concurrentUpdateSet.size();
+    return written;
   }
 
-  private static void removeToDB() {
+  private static boolean removeToDB(boolean force) {
     if (concurrentRemoveSet == null) {
-      return;
+      return true;
     }
-    int i = 0;
     final int num = 1024;
-    List<Long> removeIds = new ArrayList<>();
     long removeSize = concurrentRemoveSet.size();
-    if (removeSize >= num) {
-      if (LOG.isInfoEnabled()) {
-        LOG.info("Propagate removed files/directories from cache to database.");
-      }
-      i = 0;
+    List<Long> removeIds = new ArrayList<>();
+    if (removeSize >= num && !force) {
       Iterator<Long> iterator = concurrentRemoveSet.iterator();
-      while (iterator.hasNext()) {
+      while (iterator.hasNext() && removeIds.size() < num) {
         removeIds.add(iterator.next());
-        iterator.remove();
-        if (++i >= num) break;
       }
-
-      try {
-        if (removeIds.size() > 0) {
-          DatabaseINode.batchRemoveINodes(removeIds);
-        }
-      } catch (Exception e) {
-        e.printStackTrace();
+    } else if (removeSize > 0 && (force || preRemoveSize == removeSize)) {
+      removeIds.addAll(concurrentRemoveSet);
+    }
+    boolean written = true;
+    if (removeIds.size() > 0) {
+      if (LOG.isInfoEnabled()) {
+        LOG.info("Propagate removed files/directories from cache to database.");
       }
-    } else {
-      if (removeSize > 0 && preRemoveSize == removeSize) {
-        if (LOG.isInfoEnabled()) {
-          LOG.info("Propagate removed files/directories from cache to database.");
-        }
-        try {
-          removeIds = new ArrayList<Long>(concurrentRemoveSet);
-          Iterator<Long> iterator = concurrentRemoveSet.iterator();
-          while (iterator.hasNext()) {
-            iterator.next();
-            iterator.remove();
-          }
-          DatabaseINode.batchRemoveINodes(removeIds);
-        } catch (Exception e) {
-          e.printStackTrace();
-        }
+      concurrentRemoveSet.removeAll(removeIds);
+      try {
+        WriteBackFaultInjector.getInstance().beforeWriteBack();
+        DatabaseINode.batchRemoveINodes(removeIds);
+      } catch (SQLException e) {
+        LOG.error("Failed to remove " + removeIds.size() + " inodes, will retry", e);
+        concurrentRemoveSet.addAll(removeIds);
+        written = false;
       }
     }
     preRemoveSize = concurrentRemoveSet.size();
+    return written;
   }
 
-  private static void renameToDB() {
+  private static boolean renameToDB(boolean force) {
     if (concurrentRenameSet == null) {
-      return;
-    }
-    int i = 0;
-    final int num = 1024;
-    long renameSize = concurrentRenameSet.size();
-    if (renameSize >= num) {
-      Iterator<String> iterator = concurrentRenameSet.iterator();
-      if (LOG.isInfoEnabled()) {
-        LOG.info("Sync rename files/directories from cache to database.");
-      }
-
-      List<Long> longAttr = new ArrayList<>();
-      List<String> strAttr = new ArrayList<>();
-
-      while (iterator.hasNext()) {
-        INode inode = INodeKeyedObjects.getCache().getIfPresent(iterator.next());
-        if (inode == null) continue;
-        strAttr.add(inode.getLocalName());
-        if (inode.getId() == 16385) {
-          strAttr.add(" ");
-        } else {
-          strAttr.add(inode.getParentName());
-        }
-        longAttr.add(inode.getParentId());
-        longAttr.add(inode.getId());
-        longAttr.add(inode.getModificationTime());
-        longAttr.add(inode.getAccessTime());
-        longAttr.add(inode.getPermissionLong());
-        if (inode.isDirectory()) {
-          longAttr.add(0L);
-        } else {
-          longAttr.add(inode.asFile().getHeaderLong());
-        }
-        iterator.remove();
-        if (++i >= num) break;
-      }
-      try {
-        if (strAttr.size() > 0) {
-          DatabaseINode.batchRenameINodes(longAttr, strAttr);
-        }
-      } catch (Exception e) {
-        e.printStackTrace();
-      }
-    } else {
-      if (renameSize > 0 && preRenameSize == renameSize) {
-        Iterator<String> iterator = concurrentRenameSet.iterator();
-        if (LOG.isInfoEnabled()) {
-          LOG.info("Propagate updated files/directories from cache to database.");
-        }
-        try {
-          List<Long> longAttr = new ArrayList<>();
-          List<String> strAttr = new ArrayList<>();
-          while (iterator.hasNext()) {
-            INode inode = INodeKeyedObjects.getCache().getIfPresent(iterator.next());
-            if (inode == null) continue;
-            strAttr.add(inode.getLocalName());
-            if (inode.getId() == 16385) {
-              strAttr.add(" ");
-            } else {
-              strAttr.add(inode.getParentName());
-            }
-            longAttr.add(inode.getParentId());
-            longAttr.add(inode.getId());
-            longAttr.add(inode.getModificationTime());
-            longAttr.add(inode.getAccessTime());
-            longAttr.add(inode.getPermissionLong());
-            if (inode.isDirectory()) {
-              longAttr.add(0L);
-            } else {
-              longAttr.add(inode.asFile().getHeaderLong());
-            }
-            iterator.remove();
-          }
-          if (strAttr.size() > 0) {
-            DatabaseINode.batchRenameINodes(longAttr, strAttr);
-          }
-        } catch (Exception e) {
-          e.printStackTrace();
-        }
-      }
+      return true;
     }
+    boolean written = writeBackRound(concurrentRenameSet, preRenameSize, force, true);
     preRenameSize = concurrentRenameSet.size();
+    return written;
   }
 
   public static void asyncUpdateDB() {
+    asyncUpdateDB(false);
+  }
+
+  /**
+   * Write pending updates back to the database. Unless forced, small sets of updates are only
+   * written once they stop growing, and large ones 1024 at a time.
+   *
+   * @return whether every write of the round succeeded
+   */
+  private static boolean asyncUpdateDB(boolean force) {
     // In HDFS, the default log buffer size is 512 * 1024 bytes, or 512 KB.
     // We assume that each object size is 512 bytes, then the size of
     // concurrentUpdateSet should be 1024 which only records INode Id.
     // Note: Using INode Id, it's easy to find INode object in cache.
-    insertToDB();
+    boolean written = insertToDB(force);
+
+    written &= removeToDB(force);
+
+    written &= renameToDB(force);
+
+    // under-construction state is written back by its own index
+    written &= UnderConstructionIndex.flush();
+    return written;
+  }
+
+  /**
+   * Write every update made so far back to the database, for queries that read the namespace
+   * from the database directly.
+   */
+  public static void flush() {
+    if (readOnly || concurrentUpdateSet == null) {
+      return;
+    }
+    try {
+      // run on the write-behind thread so it does not race with the periodic flush
+      scheduler.submit(() -> asyncUpdateDB(true)).get();
+    } catch (InterruptedException | ExecutionException e) {
+      LOG.error("Failed to flush updates to the database", e);
+    }
+  }
+
+  /**
+   * Write every pending update back to the database and, if all the writes succeed, advance the
+   * committed transaction id to the last transaction logged before. Extended attributes and
+   * under-construction state are covered too: the former are written synchronously, the latter
+   * by this flush.
+   *
+   * @return the last transaction id known to be committed to the database, or -1
+   */
+  public static long commit() {
+    if (readOnly || concurrentUpdateSet == null) {
+      return committedTxId;
+    }
+    try {
+      // run on the write-behind thread so it does not race with the periodic flush
+      scheduler.submit(() -> {
+        // inodes are changed in the cache before the edit is logged
+        LongSupplier source = txIdSource;
+        long txId = source == null ? -1 : source.getAsLong();
+        if (asyncUpdateDB(true) && txId > committedTxId) {
+          committedTxId = txId;
+        }
+      }).get();
+    } catch (InterruptedException | ExecutionException e) {
+      LOG.error("Failed to commit updates to the database", e);
+    }
+    return committedTxId;
+  }
+
+  private static boolean isUnder(String key, String path) {
+    return path.equals("/") || key.equals(path) || key.startsWith(path + "/");
+  }
+
+  private static void addColumns(INode inode, List<Long> longAttr, List<String> strAttr) {
+    strAttr.add(inode.getLocalName());
+    if (inode.getId() == 16385) {
+      strAttr.add(" ");
+    } else {
+      strAttr.add(inode.getParentName());
+    }
+    longAttr.add(inode.getParentId());
+    longAttr.add(inode.getId());
+    longAttr.add(inode.getModificationTime());
+    longAttr.add(inode.getAccessTime());
+    longAttr.add(inode.getPermissionLong());
+    if (inode.isDirectory()) {
+      longAttr.add(0L);
+    } else {
+      longAttr.add(inode.asFile().getHeaderLong());
+    }
+  }
 
-    removeToDB();
+  /**
+   * Write back the pending updates or renames of the inodes under the path, whatever their number.
+   *
+   * @return whether the inodes were written
+   */
+  private static boolean writeBackUnder(Set<String> pending, String path, boolean rename) {
+    if (pending == null) {
+      return true;
+    }
+    final int num = 1024;
+    List<String> keys = new ArrayList<>();
+    for (String key : pending) {
+      if (isUnder(key, path)) {
+        keys.add(key);
+      }
+    }
+    boolean written = true;
+    for (int from = 0; from < keys.size(); from += num) {
+      written &= writeBack(pending, keys.subList(from, Math.min(keys.size(), from + num)), rename);
+    }
+    return written;
+  }
+
+  /**
+   * Write the pending updates of the inodes under the path back to the database, regardless of
+   * the batch size and of whether the updates stopped growing. Removals are only known by inode
+   * id, so all of them are written.
+   *
+   * @return whether every pending update under the path was written
+   */
+  public static boolean flush(String path) {
+    if (readOnly || concurrentUpdateSet == null) {
+      return true;
+    }
+    try {
+      // run on the write-behind thread so it does not race with the periodic flush
+      return scheduler.submit(() ->
+          writeBackUnder(concurrentUpdateSet, path, false)
+              & removeToDB(true)
+              & writeBackUnder(concurrentRenameSet, path, true)).get();
+    } catch (InterruptedException | ExecutionException e) {
+      LOG.error("Failed to flush updates under " + path + " to the database", e);
+      return false;
+    }
+  }
 
-    renameToDB();
+  /**
+   * Give up the subtree under the mount point: flush pending write-behind updates and drop the
+   * cached inodes so that the new owner loads them from the database. The cache does not write
+   * back explicitly invalidated inodes, so the flush must cover all of them, and the inodes stay
+   * cached if it fails.
+   */
+  public static void handoff(String mountPoint) throws IOException {
+    // the new owner loads the files under construction from the database
+    if (!flush(mountPoint) || (!readOnly && !UnderConstructionIndex.flush())) {
+      throw new IOException("Failed to write back the updates under " + mountPoint);
+    }
+    int dropped = invalidateUnder(mountPoint);
+    XAttrFeature.invalidate();
+    if (LOG.isInfoEnabled()) {
+      LOG.info("Handed off " + mountPoint + ", dropped " + dropped + " cached inodes");
+    }
+  }
+
+  /**
+   * Take over the subtree under the mount point from another NameNode, which wrote it back to the
+   * database: drop the inodes cached before and load the files under construction again.
+   */
+  public static void acquire(String mountPoint) {
+    int dropped = invalidateUnder(mountPoint);
+    UnderConstructionIndex.reload();
+    XAttrFeature.invalidate();
+    if (LOG.isInfoEnabled()) {
+      LOG.info("Acquired " + mountPoint + ", dropped " + dropped + " cached inodes");
+    }
+  }
+
+  private static int invalidateUnder(String mountPoint) {
+    IndexedCache<String, INode> inodes = getCache();
+    List<String> keys = new ArrayList<>();
+    for (String key : inodes.asMap().keySet()) {
+      if (isUnder(key, mountPoint)) {
+        keys.add(key);
+      }
+    }
+    inodes.invalidateAll(keys);
+    return keys.size();
   }
 
   public static void BackupSetToDB() {
@@ -343,8 +513,11 @@ public static IndexedCache<String, INode> getCache() {
       concurrentUpdateSet = ConcurrentHashMap.newKeySet();
       concurrentRemoveSet = ConcurrentHashMap.newKeySet();
 
-      // async write updates to buffer
-      BackupSetToDB();
+      UnderConstructionIndex.load();
+      if (!readOnly) {
+        // async write updates to buffer
+        BackupSetToDB();
+      }
 
       // Assuming each INode has 600 bytes, then
       // 10000000 * 600 / 2^30 = 5.58 GB.
@@ -355,39 +528,66 @@ public static IndexedCache<String, INode> getCache() {
         num = Integer.parseInt(cacheNum);
       }
 
-      // https://github.com/ben-manes/caffeine/wiki/Removal
-      Caffeine<Object, Object> cfein =
-          Caffeine.newBuilder()
-              .removalListener(
-                  (Object keys, Object value, RemovalCause cause) -> {
-                    if (cause == RemovalCause.COLLECTED
-                        || cause == RemovalCause.EXPIRED
-                        || cause == RemovalCause.SIZE) {
-                      if (LOG.isInfoEnabled()) {
-                        LOG.info("Cache Evicted: INode = " + (String) keys);
-                      }
-                      // stored procedure: update inode in db
-                      INode inode = (INode) value;
-                      if (inode.isDirectory()) {
-                        inode.asDirectory().updateINodeDirectory();
-                      } else {
-                        inode.asFile().updateINodeFile();
-                        FileUnderConstructionFeature uc =
-                            inode.asFile().getFileUnderConstructionFeature();
-                        if (uc != null) {
-                          uc.updateFileUnderConstruction(inode.getId());
-                        }
-                      }
-                    }
-                  })
-              .maximumSize(num);
+      Caffeine<Object, Object> cfein = Caffeine.newBuilder().maximumSize(num);
+      if (readOnly) {
+        String stalenessStr = System.getenv("READ_ONLY_STALENESS_MS");
+        if (stalenessStr != null) {
+          stalenessMs = Long.parseLong(stalenessStr);
+        }
+        cfein = cfein.expireAfter(new StalenessExpiry(MILLISECONDS.toNanos(stalenessMs)));
+        refreshRoot();
+      }
+      // evicted inodes are written back by the write-behind thread, which checks for errors
       cache =
           new IndexedCache.Builder<String, INode>()
+              .onEviction(INodeKeyedObjects::writeBackLater)
               .buildFromCaffeine(cfein);
     }
     return cache;
   }
 
+  /**
+   * Expires every entry except the root once it is older than the staleness bound. The root is
+   * referenced directly by FSDirectory, so its children list is refreshed in place instead.
+   */
+  private static class StalenessExpiry implements Expiry<Object, Object> {
+    private final long stalenessNanos;
+
+    StalenessExpiry(long stalenessNanos) {
+      this.stalenessNanos = stalenessNanos;
+    }
+
+    @Override
+    public long expireAfterCreate(Object key, Object value, long currentTime) {
+      return "/".equals(key) ? Long.MAX_VALUE : stalenessNanos;
+    }
+
+    @Override
+    public long expireAfterUpdate(Object key, Object value, long currentTime, long currentDuration) {
+      return expireAfterCreate(key, value, currentTime);
+    }
+
+    @Override
+    public long expireAfterRead(Object key, Object value, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+  }
+
+  private static void refreshRoot() {
+    scheduler.scheduleWithFixedDelay(
+        new Runnable() {
+          public void run() {
+            INode root = cache.getIfPresent("/");
+            if (root != null) {
+              root.asDirectory().resetCurrentChildrenList();
+            }
+          }
+        },
+        stalenessMs,
+        stalenessMs,
+        MILLISECONDS);
+  }
+
   public static Cache<String, String> getMoveCache() {
     if (move == null) {
       move =  Caffeine.newBuilder()
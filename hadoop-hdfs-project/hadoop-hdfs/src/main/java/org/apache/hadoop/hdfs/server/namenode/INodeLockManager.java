@@ -0,0 +1,205 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Hierarchical locks on the inodes of a path, used when the database provides
+ * the isolation of the namespace and the namesystem lock is only taken shared
+ * by namespace mutations.
+ *
+ * An operation takes a shared (intention) lock on every ancestor and an
+ * exclusive lock on the inodes it modifies: the parent directory when adding
+ * or removing a child, the inode itself when changing its attributes or
+ * removing its subtree. Locks are striped by inode id and always acquired in
+ * stripe order, so operations locking several paths such as a cross-directory
+ * rename cannot deadlock.
+ */
+class INodeLockManager {
+  /** How an operation changes the last inode of its path. */
+  enum Scope {
+    /** Changes the last existing inode or adds children below it. */
+    MODIFY,
+    /** Adds the last inode, which must not exist yet. */
+    CREATE,
+    /** Removes the last inode from its parent. */
+    REMOVE
+  }
+
+  private final ReentrantReadWriteLock[] stripes;
+  private final ThreadLocal<Integer> holds = new ThreadLocal<Integer>() {
+    @Override
+    protected Integer initialValue() {
+      return 0;
+    }
+  };
+  // the lock sets of reads held, they do not let a thread change inodes
+  private final ThreadLocal<Integer> readHolds = new ThreadLocal<Integer>() {
+    @Override
+    protected Integer initialValue() {
+      return 0;
+    }
+  };
+
+  INodeLockManager(int numStripes) {
+    stripes = new ReentrantReadWriteLock[numStripes];
+    for (int i = 0; i < numStripes; i++) {
+      stripes[i] = new ReentrantReadWriteLock();
+    }
+  }
+
+  /** The locks of one operation, acquired and released together. */
+  class LockSet {
+    // stripe -> exclusive
+    private final TreeMap<Integer, Boolean> modes = new TreeMap<>();
+    private final boolean read;
+    private boolean locked = false;
+
+    private LockSet(boolean read) {
+      this.read = read;
+    }
+
+    void add(long id, boolean exclusive) {
+      int stripe = getStripe(id);
+      Boolean current = modes.get(stripe);
+      modes.put(stripe, exclusive || (current != null && current));
+    }
+
+    /**
+     * Lock the resolved inodes of a path: its ancestors shared, the last
+     * existing inode exclusive, and on removal the parent of the last inode
+     * exclusive as well. Ancestors with a quota are always locked exclusive.
+     *
+     * @return false if the scope is CREATE but the last inode exists
+     */
+    boolean add(INodesInPath iip, Scope scope) {
+      int last = iip.length() - 1;
+      if (scope == Scope.CREATE && iip.getINode(last) != null) {
+        return false;
+      }
+      while (last > 0 && iip.getINode(last) == null) {
+        last--;
+      }
+      boolean lastExists = last == iip.length() - 1;
+      for (int i = 0; i <= last; i++) {
+        INode inode = iip.getINode(i);
+        if (inode == null) {
+          continue;
+        }
+        // usage counts of quota directories change with every mutation below
+        boolean exclusive = i == last
+            || (scope == Scope.REMOVE && lastExists && i == last - 1)
+            || (inode.isDirectory() && inode.asDirectory().isWithQuota());
+        add(inode.getId(), exclusive);
+      }
+      return true;
+    }
+
+    /**
+     * Lock the resolved inodes of a path shared for a read, so that no
+     * mutation of them is in progress while it runs.
+     */
+    void addRead(INodesInPath iip) {
+      for (int i = 0; i < iip.length(); i++) {
+        INode inode = iip.getINode(i);
+        if (inode != null) {
+          add(inode.getId(), false);
+        }
+      }
+    }
+
+    /** Forget the inodes added, the set must not be locked. */
+    void clear() {
+      modes.clear();
+    }
+
+    void lock() {
+      for (Map.Entry<Integer, Boolean> entry : modes.entrySet()) {
+        ReentrantReadWriteLock lock = stripes[entry.getKey()];
+        if (entry.getValue()) {
+          lock.writeLock().lock();
+        } else {
+          lock.readLock().lock();
+        }
+      }
+      locked = true;
+      ThreadLocal<Integer> count = read ? readHolds : holds;
+      count.set(count.get() + 1);
+    }
+
+    void unlock() {
+      if (!locked) {
+        return;
+      }
+      for (Map.Entry<Integer, Boolean> entry
+          : modes.descendingMap().entrySet()) {
+        ReentrantReadWriteLock lock = stripes[entry.getKey()];
+        if (entry.getValue()) {
+          lock.writeLock().unlock();
+        } else {
+          lock.readLock().unlock();
+        }
+      }
+      locked = false;
+      ThreadLocal<Integer> count = read ? readHolds : holds;
+      count.set(count.get() - 1);
+    }
+  }
+
+  LockSet newLockSet() {
+    return new LockSet(false);
+  }
+
+  /** @return a lock set for a read, see {@link LockSet#addRead}. */
+  LockSet newReadLockSet() {
+    return new LockSet(true);
+  }
+
+  /** @return whether the current thread holds the locks of an operation. */
+  boolean isHeldByCurrentThread() {
+    return holds.get() > 0;
+  }
+
+  /** @return whether the current thread holds the locks of a read. */
+  boolean isReadHeldByCurrentThread() {
+    return readHolds.get() > 0;
+  }
+
+  int getStripe(long id) {
+    int hash = (int) (id ^ (id >>> 32));
+    return (hash & Integer.MAX_VALUE) % stripes.length;
+  }
+
+  /**
+   * @return the ids of the resolved inodes of the path, -1 where the path
+   *         does not exist, to check the locked inodes are still the ones
+   *         the path resolves to.
+   */
+  static long[] getIds(INodesInPath iip) {
+    long[] ids = new long[iip.length()];
+    for (int i = 0; i < ids.length; i++) {
+      INode inode = iip.getINode(i);
+      ids[i] = inode == null ? -1 : inode.getId();
+    }
+    return ids;
+  }
+}
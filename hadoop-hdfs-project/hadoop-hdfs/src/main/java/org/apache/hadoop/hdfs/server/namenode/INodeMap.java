@@ -55,48 +55,58 @@ public INode get(String parentName, String childName) {
     } else {
       path = parentName + "/" + childName;
     }
-    INode inode = INodeKeyedObjects.getCache().getIfPresent(path);
+    INode inode = INodeCallCache.getIfPresent(path);
     if (inode == null) {
-      INodeDirectory parent = INodeKeyedObjects.getCache().getIfPresent(parentName).asDirectory();
+      INodeDirectory parent = INodeCallCache.getIfPresent(parentName).asDirectory();
       if (!parent.getCurrentChildrenList2().contains(childName)) {
         return null;
       }
       // if (!parent.getFilter().mightContain(String.valueOf(parent.getId()) + childName)) {
       //   return null;
       // }
-      DatabaseINode.LoadINode node = new DatabaseINode().loadINode(parent.getId(), childName);
-      if (node == null) return null;
-      byte[] name = (node.name != null && node.name.length() > 0) ? DFSUtil.string2Bytes(node.name) : null;
-      if (node.header != 0L) {
-        inode = new INodeFile(node.id);
-        inode.asFile().setNumBlocks();
-        inode
-            .asFile()
-            .InitINodeFile(
-                node.parent,
-                node.id,
-                name,
-                node.permission,
-                node.modificationTime,
-                node.accessTime,
-                node.header,
-                node.parentName);
-      } else {
-        inode = new INodeDirectory(node.id);
-        inode
-            .asDirectory()
-            .InitINodeDirectory(
-                node.parent,
-                node.id,
-                name,
-                node.permission,
-                node.modificationTime,
-                node.accessTime,
-                node.header,
-                node.parentName);
-        inode.asDirectory().resetCurrentChildrenList();
+      inode = INodeKeyedObjects.restoreEvicted(path);
+      if (inode != null) {
+        return inode;
       }
-      INodeKeyedObjects.getCache().put(path, inode);
+      DatabaseINode.LoadINode node = new DatabaseINode().loadINode(parentName, childName);
+      if (node == null) return null;
+      inode = INodeKeyedObjects.cacheLoaded(path, materialize(node));
+    }
+    return inode;
+  }
+
+  /** Build the inode of a row loaded from the database. */
+  static INode materialize(DatabaseINode.LoadINode node) {
+    INode inode;
+    byte[] name = (node.name != null && node.name.length() > 0) ? DFSUtil.string2Bytes(node.name) : null;
+    if (node.header != 0L) {
+      inode = new INodeFile(node.id);
+      inode.asFile().setNumBlocks();
+      inode
+          .asFile()
+          .InitINodeFile(
+              node.parent,
+              node.id,
+              name,
+              node.permission,
+              node.modificationTime,
+              node.accessTime,
+              node.header,
+              node.parentName);
+    } else {
+      inode = new INodeDirectory(node.id);
+      inode
+          .asDirectory()
+          .InitINodeDirectory(
+              node.parent,
+              node.id,
+              name,
+              node.permission,
+              node.modificationTime,
+              node.accessTime,
+              node.header,
+              node.parentName);
+      inode.asDirectory().resetCurrentChildrenList();
     }
     return inode;
   }
@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import org.apache.hadoop.hdfs.db.DatabaseINode;
+
+/**
+ * Loads the inodes of a path missing from the inode cache without blocking
+ * the RPC handler that needs them. The missing inodes are fetched from the
+ * database concurrently, since each is keyed by its parent path and name,
+ * and added to the cache on a thread of this class, which then serves the
+ * call; see {@link org.apache.hadoop.hdfs.protocolPB.PathPreloader}.
+ */
+class INodePreloader {
+  private final FSNamesystem namesystem;
+  private final ExecutorService executor;
+
+  INodePreloader(FSNamesystem namesystem, int threads) {
+    this.namesystem = namesystem;
+    this.executor = Executors.newFixedThreadPool(threads,
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("INode Preloader #%d").build());
+  }
+
+  /**
+   * @return null if the inodes of the path are all cached, otherwise a future
+   *         completed on a thread of the preloader once they are loaded
+   */
+  CompletableFuture<Void> preload(String src) {
+    if (src == null || !src.startsWith("/") || FSDirectory.isReservedName(src)) {
+      return null;
+    }
+    final List<String> parents = new ArrayList<>();
+    final List<String> names = new ArrayList<>();
+    String parent = "/";
+    boolean missing = false;
+    for (String name : src.split("/")) {
+      if (name.isEmpty()) {
+        continue;
+      }
+      String path = parent.equals("/") ? parent + name : parent + "/" + name;
+      missing |= INodeKeyedObjects.getCache().getIfPresent(path) == null;
+      if (missing) {
+        parents.add(parent);
+        names.add(name);
+      }
+      parent = path;
+    }
+    if (!missing) {
+      return null;
+    }
+
+    final List<CompletableFuture<DatabaseINode.LoadINode>> loads =
+        new ArrayList<>();
+    DatabaseINode db = new DatabaseINode();
+    for (int i = 0; i < names.size(); i++) {
+      loads.add(db.loadINodeAsync(parents.get(i), names.get(i)));
+    }
+    // never complete on the database client thread, the call is served next
+    return CompletableFuture.allOf(loads.toArray(new CompletableFuture<?>[0]))
+        .handleAsync((v, t) -> {
+          if (t == null) {
+            install(parents, names, loads);
+          } else {
+            FSNamesystem.LOG.debug("Failed to preload " + src, t);
+          }
+          return null;
+        }, this::execute);
+  }
+
+  /**
+   * Run a task on the preloader threads, or on the calling thread once they
+   * are shut down: the call waiting for the future must still be answered.
+   */
+  private void execute(Runnable task) {
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      task.run();
+    }
+  }
+
+  /**
+   * Add the loaded inodes to the cache top down, as long as the cached parent
+   * still lists them: the database lags behind the cache for recent changes.
+   */
+  private void install(List<String> parents, List<String> names,
+      List<CompletableFuture<DatabaseINode.LoadINode>> loads) {
+    namesystem.readLock();
+    try {
+      for (int i = 0; i < names.size(); i++) {
+        String parentName = parents.get(i);
+        String name = names.get(i);
+        INode parent = INodeKeyedObjects.getCache().getIfPresent(parentName);
+        if (parent == null || !parent.isDirectory()
+            || !parent.asDirectory().getCurrentChildrenList2().contains(name)) {
+          return;
+        }
+        DatabaseINode.LoadINode node = loads.get(i).join();
+        if (node == null) {
+          return;
+        }
+        String path = parentName.equals("/") ?
+            parentName + name : parentName + "/" + name;
+        INodeKeyedObjects.cacheLoaded(path, INodeMap.materialize(node));
+      }
+    } finally {
+      namesystem.readUnlock("preload");
+    }
+  }
+
+  /** Stop taking tasks, the queued ones still complete their calls. */
+  void shutdown() {
+    executor.shutdown();
+  }
+}
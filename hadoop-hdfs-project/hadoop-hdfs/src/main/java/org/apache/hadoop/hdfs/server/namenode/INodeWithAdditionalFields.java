@@ -493,11 +493,7 @@ protected void addFeature(Feature f) {
   }
 
   protected void removeXAttrFeature(long id) {
-    CompletableFuture.runAsync(
-        () -> {
-          DatabaseINode.removeXAttr(id);
-        },
-        Database.getInstance().getExecutorService());
+    XAttrFeature.removeXAttrs(id);
   }
 
   protected void removeFeature(Feature f) {
@@ -571,13 +567,7 @@ XAttrFeature getXAttrFeature(int snapshotId) {
     if (snapshotId != Snapshot.CURRENT_STATE_ID) {
       return getSnapshotINode(snapshotId).getXAttrFeature();
     }
-    // FIXME: disable XAttr
-    // if(!XAttrFeature.isFileXAttr(getId())) {
-    //   return null;
-    // }
-    // return new XAttrFeature(getId());
-
-    return null;
+    return XAttrFeature.getFeature(getId());
   }
 
   @Override
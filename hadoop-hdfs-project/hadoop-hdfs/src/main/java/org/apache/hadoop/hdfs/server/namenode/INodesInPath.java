@@ -235,7 +235,7 @@ static INodesInPath resolve(final INodeDirectory startingDir,
           } else {
             path = parentName + "/" + childName;
           }
-          curNode = INodeKeyedObjects.getCache().getIfPresent(path);
+          curNode = INodeCallCache.getIfPresent(path);
           if (curNode == null) {
             break;
           }
@@ -8,6 +8,7 @@
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.function.*;
 
 // Many keys to single value
@@ -16,14 +17,68 @@
 
   private Cache<K, V> cache;
   private Map<Class<?>, Map<Object, Set<K>>> indexes;
+  private Versions versions;
 
   private IndexedCache(Builder<K, V> bldr) {
     this.indexes = bldr.indexes;
+    this.versions = bldr.versions;
     cache = bldr.caf.build();
   }
 
+  /**
+   * Versions of the keys, striped by the hash of the key. The stripe of a key is bumped whenever
+   * its mapping is added, replaced or removed; the stripes are a cache line apart so that writers
+   * of different keys neither contend nor invalidate each other's readers.
+   */
+  static final class Versions {
+    private static final int STRIPES = 1024;
+    // longs per cache line
+    private static final int PAD = 8;
+
+    private final AtomicLongArray stripes = new AtomicLongArray(STRIPES * PAD);
+
+    private static int index(int hash) {
+      return ((hash ^ (hash >>> 16)) & (STRIPES - 1)) * PAD;
+    }
+
+    long get(int hash) {
+      return stripes.get(index(hash));
+    }
+
+    void bump(Object key) {
+      stripes.incrementAndGet(index(key.hashCode()));
+    }
+
+    void bumpAll() {
+      for (int i = 0; i < STRIPES; i++) {
+        stripes.incrementAndGet(i * PAD);
+      }
+    }
+  }
+
+  /**
+   * @return a counter that changes whenever the mapping of the key changes, so a value read for
+   *     the key can be memoized until the next change. Read it before the value.
+   */
+  public long getVersion(Object key) {
+    return versions.get(key.hashCode());
+  }
+
+  /** @return the version of the keys with the given hash code, see {@link #getVersion(Object)} */
+  long getVersion(int keyHash) {
+    return versions.get(keyHash);
+  }
+
+  private void bumpAll(Iterable<?> keys) {
+    for (Object key : keys) {
+      versions.bump(key);
+    }
+  }
+
   public <R> void invalidateAllWithIndex(Class<R> clazz, R value) {
-    cache.invalidateAll(indexes.get(clazz).getOrDefault(value, new HashSet<>()));
+    Set<K> keys = indexes.get(clazz).getOrDefault(value, new HashSet<>());
+    cache.invalidateAll(keys);
+    bumpAll(keys);
   }
 
   @Override
@@ -39,11 +94,13 @@ public Policy<K, V> policy() {
   @Override
   public void invalidateAll() {
     cache.invalidateAll();
+    versions.bumpAll();
   }
 
   @Override
   public void invalidateAll(Iterable<?> keys) {
     cache.invalidateAll(keys);
+    bumpAll(keys);
   }
 
   @Override
@@ -73,16 +130,19 @@ public Map<K, V> getAllPresent(Iterable<?> keys) {
   @Override
   public void putAll(Map<? extends K, ? extends V> map) {
     cache.putAll(map);
+    bumpAll(map.keySet());
   }
 
   @Override
   public void put(K key, V value) {
     cache.put(key, value);
+    versions.bump(key);
   }
 
   @Override
   public void invalidate(Object key) {
     cache.invalidate(key);
+    versions.bump(key);
   }
 
   @Override
@@ -104,6 +164,8 @@ public void cleanUp() {
     Map<Class<?>, Function<K, ?>> functions = new HashMap<>();
     Map<Class<?>, Map<Object, Set<K>>> indexes = new ConcurrentHashMap<>();
     Caffeine<K, V> caf;
+    Versions versions = new Versions();
+    BiConsumer<K, V> evictionListener;
 
     public <R> Builder<K, V> withIndex(Class<R> clazz, Function<K, R> function) {
       functions.put(clazz, function);
@@ -111,6 +173,16 @@ public <R> Builder<K, V> withIndex(Class<R> clazz, Function<K, R> function) {
       return this;
     }
 
+    /**
+     * Call the listener with every entry evicted from the cache. Unlike a removal listener, it
+     * runs before the entry leaves the cache, so a reader of the key sees either the entry or
+     * the effects of the listener.
+     */
+    public Builder<K, V> onEviction(BiConsumer<K, V> listener) {
+      this.evictionListener = listener;
+      return this;
+    }
+
     public IndexedCache<K, V> buildFromCaffeine(Caffeine<Object, Object> caffeine) {
       caf =
           caffeine.writer(
@@ -118,6 +190,8 @@ public IndexedCache<K, V> buildFromCaffeine(Caffeine<Object, Object> caffeine) {
 
                 @Override
                 public void write(K k, V v) {
+                  // the writer runs before the mapping changes, the wrapper bumps it again after
+                  versions.bump(k);
                   for (Map.Entry<Class<?>, Map<Object, Set<K>>> indexesEntry : indexes.entrySet()) {
                     indexesEntry
                         .getValue()
@@ -129,6 +203,10 @@ public void write(K k, V v) {
 
                 @Override
                 public void delete(K k, V v, RemovalCause removalCause) {
+                  versions.bump(k);
+                  if (evictionListener != null && removalCause.wasEvicted()) {
+                    evictionListener.accept(k, v);
+                  }
                   for (Map.Entry<Class<?>, Map<Object, Set<K>>> indexesEntry : indexes.entrySet()) {
                     indexesEntry.getValue().remove(functions.get(indexesEntry.getKey()).apply(k));
                   }
@@ -20,6 +20,7 @@
 import static org.apache.hadoop.util.Time.monotonicNow;
 
 import java.io.IOException;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -27,6 +28,7 @@
 import java.util.HashSet;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NavigableSet;
 import java.util.Set;
 import java.util.SortedMap;
@@ -43,6 +45,7 @@
 import org.apache.commons.lang3.StringUtils;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.fs.BatchedRemoteIterator.BatchedListEntries;
+import org.apache.hadoop.hdfs.db.DatabaseINode;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.protocol.OpenFileEntry;
 import org.apache.hadoop.hdfs.protocol.OpenFilesIterator;
@@ -365,9 +368,66 @@ synchronized Lease addLease(String holder, long inodeId, String parent, String c
     leasesById.put(inodeId, lease);
     leasesByName.put(inodeId, new Pair<>(parent, child));
     lease.files.add(inodeId);
+    // kept with the file so that another NameNode taking it over can restore the lease
+    UnderConstructionIndex.setLeaseHolder(inodeId, holder);
     return lease;
   }
 
+  private static boolean isUnder(String parent, String path) {
+    return path.equals("/") || parent.equals(path) || parent.startsWith(path + "/");
+  }
+
+  /**
+   * Add the leases on the files under construction below the path that are
+   * not tracked yet, after this NameNode took the path over from another one.
+   */
+  synchronized void restoreLeases(String path) throws IOException {
+    List<Long> ids = new ArrayList<>();
+    for (long id : UnderConstructionIndex.ids()) {
+      UnderConstructionIndex.Entry entry = UnderConstructionIndex.get(id);
+      if (!leasesById.containsKey(id) && entry != null
+          && entry.getLeaseHolder() != null) {
+        ids.add(id);
+      }
+    }
+    // the names of all the files in one query, this runs under the write lock
+    List<Long> foundIds = new ArrayList<>();
+    List<String> names = new ArrayList<>();
+    try {
+      DatabaseINode.getParentNamesAndNames(ids, foundIds, names);
+    } catch (SQLException e) {
+      throw new IOException("Failed to restore the leases under " + path, e);
+    }
+    int restored = 0;
+    for (int i = 0; i < foundIds.size(); i++) {
+      long id = foundIds.get(i);
+      String parent = names.get(2 * i);
+      UnderConstructionIndex.Entry entry = UnderConstructionIndex.get(id);
+      if (parent != null && isUnder(parent, path) && entry != null) {
+        addLease(entry.getLeaseHolder(), id, parent, names.get(2 * i + 1));
+        restored++;
+      }
+    }
+    LOG.info("Restored {} leases under {}", restored, path);
+  }
+
+  /**
+   * Drop the leases on the files below the path, after another NameNode took
+   * the path over. Their under-construction state stays in the database.
+   */
+  synchronized void removeLeasesUnder(String path) {
+    List<Long> ids = new ArrayList<>();
+    for (Map.Entry<Long, Pair<String, String>> e : leasesByName.entrySet()) {
+      if (isUnder(e.getValue().getFirst(), path)) {
+        ids.add(e.getKey());
+      }
+    }
+    for (long id : ids) {
+      removeLease(id);
+    }
+    LOG.info("Dropped {} leases under {}", ids.size(), path);
+  }
+
   synchronized void removeLease(long inodeId) {
     final Lease lease = leasesById.get(inodeId);
     if (lease != null) {
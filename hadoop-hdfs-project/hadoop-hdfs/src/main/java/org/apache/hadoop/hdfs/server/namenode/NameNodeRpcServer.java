@@ -43,6 +43,7 @@
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 import com.google.common.collect.Lists;
 
@@ -143,6 +144,7 @@
 import org.apache.hadoop.hdfs.protocolPB.DatanodeProtocolServerSideTranslatorPB;
 import org.apache.hadoop.hdfs.protocolPB.NamenodeProtocolPB;
 import org.apache.hadoop.hdfs.protocolPB.NamenodeProtocolServerSideTranslatorPB;
+import org.apache.hadoop.hdfs.protocolPB.PathPreloader;
 import org.apache.hadoop.hdfs.protocolPB.ReconfigurationProtocolPB;
 import org.apache.hadoop.hdfs.protocolPB.ReconfigurationProtocolServerSideTranslatorPB;
 import org.apache.hadoop.hdfs.security.token.block.DataEncryptionKey;
@@ -179,6 +181,7 @@
 import org.apache.hadoop.hdfs.server.protocol.VolumeFailureSummary;
 import org.apache.hadoop.io.EnumSetWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.ipc.CoalescedCallCheck;
 import org.apache.hadoop.ipc.ProtobufRpcEngine;
 import org.apache.hadoop.ipc.RPC;
 import org.apache.hadoop.ipc.RetriableException;
@@ -223,6 +226,8 @@
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.protobuf.BlockingService;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Message;
 
 import javax.annotation.Nonnull;
 
@@ -232,7 +237,7 @@
  */
 @InterfaceAudience.Private
 @VisibleForTesting
-public class NameNodeRpcServer implements NamenodeProtocols {
+public class NameNodeRpcServer implements NamenodeProtocols, PathPreloader {
   
   private static final Logger LOG = NameNode.LOG;
   private static final Logger stateChangeLog = NameNode.stateChangeLog;
@@ -268,12 +273,21 @@ public class NameNodeRpcServer implements NamenodeProtocols {
 
   private final String defaultECPolicyName;
 
+  /** Loads the inodes of client paths off the handlers, null if disabled */
+  private final INodePreloader preloader;
+
   public NameNodeRpcServer(Configuration conf, NameNode nn)
       throws IOException {
     this.nn = nn;
     this.namesystem = nn.getNamesystem();
     this.retryCache = namesystem.getRetryCache();
     this.metrics = NameNode.getNameNodeMetrics();
+    this.preloader = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_DB_ASYNC_LOAD_ENABLED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_DB_ASYNC_LOAD_ENABLED_DEFAULT) ?
+        new INodePreloader(namesystem, conf.getInt(
+            DFSConfigKeys.DFS_NAMENODE_DB_ASYNC_LOAD_THREADS_KEY,
+            DFSConfigKeys.DFS_NAMENODE_DB_ASYNC_LOAD_THREADS_DEFAULT)) : null;
 
     int handlerCount = 
       conf.getInt(DFS_NAMENODE_HANDLER_COUNT_KEY, 
@@ -536,6 +550,21 @@ public NameNodeRpcServer(Configuration conf, NameNode nn)
         UnresolvedPathException.class);
 
     clientRpcServer.setTracer(nn.tracer);
+    // a caller only gets the result of an identical call it could make
+    clientRpcServer.setCoalescedCallCheck(new CoalescedCallCheck() {
+      @Override
+      public boolean mayShare(String protocol, String method,
+          Message request) throws IOException {
+        return mayShareCoalescedCall(protocol, method, request);
+      }
+
+      @Override
+      public boolean dependsOnCaller(String protocol, String method) {
+        // blocks are sorted for the client and carry tokens for the user
+        return method.equals("getBlockLocations") ||
+            method.equals("getListing");
+      }
+    });
     if (serviceRpcServer != null) {
       serviceRpcServer.setTracer(nn.tracer);
     }
@@ -638,6 +667,9 @@ void stop() {
     if (lifelineRpcServer != null) {
       lifelineRpcServer.stop();
     }
+    if (preloader != null) {
+      preloader.shutdown();
+    }
   }
 
   InetSocketAddress getLifelineRpcAddress() {
@@ -777,6 +809,42 @@ public void cancelDelegationToken(Token<DelegationTokenIdentifier> token)
     namesystem.cancelDelegationToken(token);
   }
   
+  /**
+   * Check that the caller of a coalesced call could make it itself, as the
+   * call whose result it gets did: the path must resolve for it and, to
+   * read blocks or list a directory, grant the access. The caller is audit
+   * logged as if it made the call. Other methods are not shared.
+   */
+  private boolean mayShareCoalescedCall(String protocol, String method,
+      Message request) throws IOException {
+    final FsAction access;
+    final String operationName;
+    switch (method) {
+    case "getFileInfo":
+      access = null;
+      operationName = "getfileinfo";
+      break;
+    case "getBlockLocations":
+      access = FsAction.READ;
+      operationName = "open";
+      break;
+    case "getListing":
+      access = FsAction.READ_EXECUTE;
+      operationName = "listStatus";
+      break;
+    default:
+      return false;
+    }
+    FieldDescriptor field =
+        request.getDescriptorForType().findFieldByName("src");
+    if (field == null) {
+      return false;
+    }
+    namesystem.checkCoalescedRead(
+        (String) request.getField(field), access, operationName);
+    return true;
+  }
+
   @Override // ClientProtocol
   public LocatedBlocks getBlockLocations(String src, 
                                           long offset, 
@@ -1196,6 +1264,17 @@ public DirectoryListing getListing(String src, byte[] startAfter,
     return files;
   }
 
+  /** Allow access to the inode preloader for testing */
+  @VisibleForTesting
+  INodePreloader getPreloader() {
+    return preloader;
+  }
+
+  @Override // PathPreloader
+  public CompletableFuture<Void> preload(String src) {
+    return preloader == null ? null : preloader.preload(src);
+  }
+
   @Override // ClientProtocol
   public HdfsFileStatus getFileInfo(String src) throws IOException {
     checkNNStartup();
@@ -0,0 +1,242 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import org.apache.hadoop.hdfs.db.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Client name, client machine and lease holder of every file under construction, keyed by inode
+ * id. The index is loaded from the inodeuc table at startup and written back to it by the
+ * write-behind thread of {@link INodeKeyedObjects}, so lease checks on addBlock, complete and
+ * lease recovery never read the database. It is loaded again when a mount point is handed off
+ * to or from this NameNode, since the other NameNode changed the files under it.
+ */
+public class UnderConstructionIndex {
+  static final Logger LOG = LoggerFactory.getLogger(UnderConstructionIndex.class);
+
+  public static final class Entry {
+    private final String clientName;
+    private final String clientMachine;
+    private final String leaseHolder;
+
+    Entry(String clientName, String clientMachine, String leaseHolder) {
+      this.clientName = clientName;
+      this.clientMachine = clientMachine;
+      this.leaseHolder = leaseHolder;
+    }
+
+    public String getClientName() {
+      return clientName;
+    }
+
+    public String getClientMachine() {
+      return clientMachine;
+    }
+
+    /** @return the holder of the lease on the file, the client unless it was reassigned */
+    public String getLeaseHolder() {
+      return leaseHolder != null ? leaseHolder : clientName;
+    }
+  }
+
+  // entries change in compute() so that a reload never overwrites a change not yet written back
+  private static final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<>();
+  // ids changed or removed since the last write-back
+  private static final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+  private static final Set<Long> removed = ConcurrentHashMap.newKeySet();
+  // a few clients hold the leases of many files
+  private static final Interner<String> names = Interners.newWeakInterner();
+  private static volatile boolean loaded = false;
+
+  UnderConstructionIndex() {}
+
+  private static String intern(String s) {
+    return s == null ? null : names.intern(s);
+  }
+
+  public static Entry get(long id) {
+    load();
+    return entries.get(id);
+  }
+
+  private static Entry put(long id, Function<Entry, Entry> update) {
+    load();
+    return entries.compute(id, (key, entry) -> {
+      removed.remove(key);
+      dirty.add(key);
+      return update.apply(entry);
+    });
+  }
+
+  /** @return the entry with the names interned */
+  public static Entry put(long id, String clientName, String clientMachine) {
+    return put(id, entry -> new Entry(intern(clientName), intern(clientMachine),
+        entry == null ? null : entry.leaseHolder));
+  }
+
+  public static Entry setClientName(long id, String clientName) {
+    return put(id, entry -> new Entry(intern(clientName),
+        entry == null ? null : entry.clientMachine, entry == null ? null : entry.leaseHolder));
+  }
+
+  public static Entry setClientMachine(long id, String clientMachine) {
+    return put(id, entry -> new Entry(entry == null ? null : entry.clientName,
+        intern(clientMachine), entry == null ? null : entry.leaseHolder));
+  }
+
+  /** Record the holder of the lease on a file under construction. */
+  public static void setLeaseHolder(long id, String leaseHolder) {
+    load();
+    entries.computeIfPresent(id, (key, entry) -> {
+      if (leaseHolder.equals(entry.getLeaseHolder())) {
+        return entry;
+      }
+      dirty.add(key);
+      return new Entry(entry.clientName, entry.clientMachine, intern(leaseHolder));
+    });
+  }
+
+  public static void remove(long id) {
+    load();
+    entries.computeIfPresent(id, (key, entry) -> {
+      dirty.remove(key);
+      removed.add(key);
+      return null;
+    });
+  }
+
+  public static int size() {
+    return entries.size();
+  }
+
+  /** @return the ids of the files under construction */
+  public static Set<Long> ids() {
+    load();
+    return Collections.unmodifiableSet(entries.keySet());
+  }
+
+  /** Bulk load the index from the database, once. */
+  public static void load() {
+    if (loaded) {
+      return;
+    }
+    synchronized (UnderConstructionIndex.class) {
+      if (!loaded) {
+        reload();
+      }
+    }
+  }
+
+  /**
+   * Load the index from the database again. Changes not yet written back are kept, every other
+   * entry is replaced by its row, and entries without a row are dropped.
+   */
+  public static synchronized void reload() {
+    List<Long> fileIds = new ArrayList<>();
+    List<String> fileAttrs = new ArrayList<>();
+    DatabaseINode.getAllUc(fileIds, fileAttrs);
+    Set<Long> stored = new HashSet<>(fileIds);
+    for (int i = 0; i < fileIds.size(); ++i) {
+      Entry row = new Entry(intern(fileAttrs.get(i * 3)), intern(fileAttrs.get(i * 3 + 1)),
+          intern(fileAttrs.get(i * 3 + 2)));
+      entries.compute(fileIds.get(i), (key, entry) ->
+          dirty.contains(key) || removed.contains(key) ? entry : row);
+    }
+    for (long id : entries.keySet()) {
+      if (!stored.contains(id)) {
+        entries.computeIfPresent(id, (key, entry) -> dirty.contains(key) ? entry : null);
+      }
+    }
+    loaded = true;
+    if (LOG.isInfoEnabled()) {
+      LOG.info("Loaded " + fileIds.size() + " files under construction");
+    }
+  }
+
+  /**
+   * Write the changes since the last call back to the database, 1024 files at a time. Excludes
+   * reload(), which must not see an id taken off the dirty set before its entry is written.
+   * The changes that fail to be written are kept for the next call.
+   *
+   * @return whether every change was written
+   */
+  static synchronized boolean flush() {
+    final int num = 1024;
+    boolean written = true;
+    // changes made while flushing are left to the next call
+    int rounds = Math.max(dirty.size(), removed.size()) / num + 1;
+    for (int round = 0; round < rounds; round++) {
+      List<Long> fileIds = new ArrayList<>();
+      List<String> fileAttrs = new ArrayList<>();
+      List<Long> removeIds = new ArrayList<>();
+      Iterator<Long> iterator = dirty.iterator();
+      while (iterator.hasNext() && fileIds.size() < num) {
+        long id = iterator.next();
+        iterator.remove();
+        Entry entry = entries.get(id);
+        if (entry != null) {
+          fileIds.add(id);
+          fileAttrs.add(entry.clientName);
+          fileAttrs.add(entry.clientMachine);
+          fileAttrs.add(entry.leaseHolder);
+        }
+      }
+      iterator = removed.iterator();
+      while (iterator.hasNext() && removeIds.size() < num) {
+        removeIds.add(iterator.next());
+        iterator.remove();
+      }
+      try {
+        DatabaseINode.batchUpdateUc(fileIds, fileAttrs, removeIds);
+      } catch (SQLException e) {
+        LOG.error("Failed to write back " + (fileIds.size() + removeIds.size())
+            + " files under construction, will retry", e);
+        // unless changed again meanwhile, which marked them already
+        for (long id : fileIds) {
+          entries.computeIfPresent(id, (key, entry) -> {
+            dirty.add(key);
+            return entry;
+          });
+        }
+        for (long id : removeIds) {
+          entries.compute(id, (key, entry) -> {
+            if (entry == null) {
+              removed.add(key);
+            }
+            return entry;
+          });
+        }
+        written = false;
+      }
+    }
+    return written;
+  }
+}
@@ -0,0 +1,43 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.sql.SQLException;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Utility class to facilitate fault injection tests for the write-behind of
+ * the inode cache to the database.
+ */
+@VisibleForTesting
+public class WriteBackFaultInjector {
+  private static WriteBackFaultInjector instance =
+      new WriteBackFaultInjector();
+
+  public static WriteBackFaultInjector getInstance() {
+    return instance;
+  }
+
+  public static void set(WriteBackFaultInjector injector) {
+    instance = injector;
+  }
+
+  /** Called before a batch of inodes is written to the database. */
+  public void beforeWriteBack() throws SQLException {}
+}
@@ -17,36 +17,165 @@
  */
 package org.apache.hadoop.hdfs.server.namenode;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.fs.XAttr;
 import org.apache.hadoop.hdfs.XAttrHelper;
 import org.apache.hadoop.hdfs.db.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.google.common.base.Preconditions;
 
-import java.util.concurrent.CompletableFuture;
-
 /**
  * Feature for extended attributes.
+ *
+ * The features are cached by inode id, with a feature without xattrs as the
+ * negative entry. A cached feature is immutable and replaced on every change,
+ * so features can be compared by identity. The ids of all the inodes with
+ * xattrs are loaded at startup, so the lookups done for encryption zones,
+ * erasure coding and storage policies on every ancestor of a path never reach
+ * the database for the common inode without xattrs. They are loaded again when
+ * a mount point changes owner. Xattrs are written to the database before the
+ * cache, so a reload never misses them. Until the ids are loaded, as after a
+ * failed or empty load, the xattrs are loaded per inode.
  */
 @InterfaceAudience.Private
 public class XAttrFeature implements INode.Feature {
-  private long id;
+  static final Logger LOG = LoggerFactory.getLogger(XAttrFeature.class);
+
+  private static volatile Cache<Long, XAttrFeature> cache;
+  // ids of the inodes with xattrs, not kept by a read-only NameNode which
+  // relies on the staleness bound of its cache instead
+  private static volatile Set<Long> xattrIds;
+  // a failed or empty load of the ids is retried after this delay
+  private static final long IDS_RETRY_MS = 10000;
+  private static volatile long nextIdsLoadMs = 0;
+
+  /** Loads the ids of the inodes with xattrs. */
+  @VisibleForTesting
+  interface IdsLoader {
+    List<Long> load() throws SQLException;
+  }
+
+  private static volatile IdsLoader idsLoader = DatabaseINode::getXAttrIds;
+
+  private final long id;
+  // set on the cached features, others read the cache
+  private final ImmutableList<XAttr> xAttrs;
 
-  public XAttrFeature(long id) { this.id = id; }
+  public XAttrFeature(long id) {
+    this.id = id;
+    this.xAttrs = null;
+  }
 
   public XAttrFeature(long id, List<XAttr> xAttrs) {
     createXAttrFeature(id, xAttrs);
     this.id = id;
+    this.xAttrs = null;
+  }
+
+  private XAttrFeature(long id, ImmutableList<XAttr> xAttrs) {
+    this.id = id;
+    this.xAttrs = xAttrs;
+  }
+
+  private static Cache<Long, XAttrFeature> getCache() {
+    if (cache == null) {
+      synchronized (XAttrFeature.class) {
+        if (cache == null) {
+          int num = 1000000;
+          String cacheNum = System.getenv("XATTR_CACHE_SIZE");
+          if (cacheNum != null) {
+            num = Integer.parseInt(cacheNum);
+          }
+          Caffeine<Object, Object> cfein = Caffeine.newBuilder().maximumSize(num);
+          if (INodeKeyedObjects.isReadOnly()) {
+            cfein = cfein.expireAfterWrite(INodeKeyedObjects.getStalenessMs(), MILLISECONDS);
+          }
+          cache = cfein.build();
+        }
+      }
+    }
+    return cache;
+  }
+
+  @VisibleForTesting
+  static void setIdsLoader(IdsLoader loader) {
+    idsLoader = loader;
+  }
+
+  /**
+   * @return the ids of the inodes with xattrs, null on a read-only NameNode
+   *         or while they are not loaded
+   */
+  private static Set<Long> getXAttrIds() {
+    if (INodeKeyedObjects.isReadOnly()) {
+      return null;
+    }
+    if (xattrIds == null && System.currentTimeMillis() >= nextIdsLoadMs) {
+      synchronized (XAttrFeature.class) {
+        if (xattrIds == null && System.currentTimeMillis() >= nextIdsLoadMs) {
+          loadXAttrIds();
+        }
+      }
+    }
+    return xattrIds;
+  }
+
+  private static void loadXAttrIds() {
+    List<Long> loaded;
+    try {
+      loaded = idsLoader.load();
+    } catch (SQLException e) {
+      LOG.warn("Failed to load the inodes with xattrs, loading them per inode", e);
+      nextIdsLoadMs = System.currentTimeMillis() + IDS_RETRY_MS;
+      return;
+    }
+    // an empty load cannot be told from a lost one, the next is tried later
+    if (loaded.isEmpty()) {
+      nextIdsLoadMs = System.currentTimeMillis() + IDS_RETRY_MS;
+      return;
+    }
+    Set<Long> ids = ConcurrentHashMap.newKeySet();
+    ids.addAll(loaded);
+    xattrIds = ids;
+    if (LOG.isInfoEnabled()) {
+      LOG.info("Loaded " + ids.size() + " inodes with xattrs");
+    }
+  }
+
+  /**
+   * Drop the cached xattrs and the ids of the inodes with xattrs, after a
+   * mount point changed owner, so that they are loaded again.
+   */
+  public static void invalidate() {
+    synchronized (XAttrFeature.class) {
+      xattrIds = null;
+      nextIdsLoadMs = 0;
+    }
+    if (cache != null) {
+      cache.invalidateAll();
+    }
   }
 
   public static void createXAttrFeature(long id, List<XAttr> xAttrs) {
     Preconditions.checkState(!isFileXAttr(id), "Duplicated XAttrFeature");
-    List<Long> ids = new ArrayList<Long>();
     if (xAttrs != null && !xAttrs.isEmpty()) {
       List<Integer> ns = new ArrayList<Integer>();
       List<String> namevals = new ArrayList<String>();
@@ -55,10 +184,104 @@ public static void createXAttrFeature(long id, List<XAttr> xAttrs) {
         namevals.add(attr.getName());
         namevals.add(XAttr.bytes2String(attr.getValue()));
       }
-      CompletableFuture.runAsync(() -> {
-        DatabaseINode.insertXAttrs(id, ns, namevals);
-      }, Database.getInstance().getExecutorService());
+      DatabaseINode.insertXAttrs(id, ns, namevals);
+      getCache().put(id, new XAttrFeature(id, ImmutableList.copyOf(xAttrs)));
+      Set<Long> ids = getXAttrIds();
+      if (ids != null) {
+        ids.add(id);
+      }
+    }
+  }
+
+  public static void removeXAttrs(long id) {
+    DatabaseINode.removeXAttr(id);
+    getCache().put(id, new XAttrFeature(id, ImmutableList.<XAttr>of()));
+    Set<Long> ids = getXAttrIds();
+    if (ids != null) {
+      ids.remove(id);
+    }
+  }
+
+  /**
+   * Load the xattrs of the given children of a directory in one round trip,
+   * unless all of them are known already.
+   */
+  public static void prefetchChildren(String parentName, List<Long> childIds) {
+    Set<Long> ids = getXAttrIds();
+    Cache<Long, XAttrFeature> features = getCache();
+    boolean missing = false;
+    for (long childId : childIds) {
+      if ((ids == null || ids.contains(childId)) && features.getIfPresent(childId) == null) {
+        missing = true;
+        break;
+      }
+    }
+    if (!missing) {
+      return;
+    }
+    List<Long> xids = new ArrayList<>();
+    List<DatabaseINode.XAttrInfo> xinfo = new ArrayList<>();
+    try {
+      DatabaseINode.getChildrenXAttrs(parentName, xids, xinfo);
+    } catch (SQLException e) {
+      // the children are loaded one by one instead
+      LOG.warn("Failed to load the xattrs of the children of " + parentName, e);
+      return;
+    }
+    Map<Long, List<XAttr>> loaded = new HashMap<>();
+    for (long childId : childIds) {
+      loaded.put(childId, new ArrayList<XAttr>());
+    }
+    for (int i = 0; i < xids.size(); ++i) {
+      List<XAttr> list = loaded.get(xids.get(i));
+      if (list != null) {
+        list.add(toXAttr(xinfo.get(i)));
+      }
+    }
+    for (Map.Entry<Long, List<XAttr>> entry : loaded.entrySet()) {
+      features.put(entry.getKey(),
+          new XAttrFeature(entry.getKey(), ImmutableList.copyOf(entry.getValue())));
+    }
+  }
+
+  private static XAttr toXAttr(DatabaseINode.XAttrInfo info) {
+    return new XAttr(XAttr.NameSpace.values()[info.getNameSpace()],
+        info.getName(), XAttr.string2Bytes(info.getValue()));
+  }
+
+  /**
+   * Load the xattrs of an inode. A failure is thrown rather than taken for an
+   * inode without xattrs, which would hide its encryption zone or policies.
+   */
+  private static XAttrFeature load(long id) {
+    List<XAttr> xattrs = new ArrayList<XAttr>();
+    try {
+      for (DatabaseINode.XAttrInfo info : new DatabaseINode().getXAttrs(id)) {
+        xattrs.add(toXAttr(info));
+      }
+    } catch (SQLException e) {
+      throw new UncheckedIOException(
+          new IOException("Failed to load the xattrs of inode " + id, e));
+    }
+    return new XAttrFeature(id, ImmutableList.copyOf(xattrs));
+  }
+
+  private static List<XAttr> getCachedXAttrs(long id) {
+    Set<Long> ids = getXAttrIds();
+    if (ids != null && !ids.contains(id)) {
+      return ImmutableList.of();
+    }
+    return getCache().get(id, XAttrFeature::load).xAttrs;
+  }
+
+  /** @return the feature of the inode, null if it has no xattrs */
+  public static XAttrFeature getFeature(long id) {
+    Set<Long> ids = getXAttrIds();
+    if (ids != null && !ids.contains(id)) {
+      return null;
     }
+    XAttrFeature f = getCache().get(id, XAttrFeature::load);
+    return f.xAttrs.isEmpty() ? null : f;
   }
 
   public long getId() {
@@ -70,7 +293,7 @@ public Boolean isFileXAttr() {
   }
 
   public static Boolean isFileXAttr(long id) {
-    return DatabaseINode.checkXAttrExistence(id);
+    return !getCachedXAttrs(id).isEmpty();
   }
 
   /**
@@ -78,17 +301,11 @@ public static Boolean isFileXAttr(long id) {
    * @return the XAttrs
    */
   public List<XAttr> getXAttrs() {
-    return getXAttrs(id);
+    return xAttrs != null ? new ArrayList<XAttr>(xAttrs) : getXAttrs(id);
   }
 
   public static List<XAttr> getXAttrs(long id) {
-    List<XAttr> xattrs = new ArrayList<XAttr>();
-    List<DatabaseINode.XAttrInfo> xinfo = new DatabaseINode().getXAttrs(id);
-    for (int i = 0; i < xinfo.size(); ++i) {
-      xattrs.add(new XAttr(XAttr.NameSpace.values()[xinfo.get(i).getNameSpace()],
-        xinfo.get(i).getName(), XAttr.string2Bytes(xinfo.get(i).getValue())));
-    }
-    return xattrs;
+    return new ArrayList<XAttr>(getCachedXAttrs(id));
   }
 
   /**
@@ -97,13 +314,16 @@ public static List<XAttr> getXAttrs(long id) {
    * @return the XAttr
    */
   public XAttr getXAttr(String prefixedName) {
-    return getXAttr(id, prefixedName);
+    return getXAttr(xAttrs != null ? xAttrs : getCachedXAttrs(id), prefixedName);
   }
 
   public static XAttr getXAttr(long id, String prefixedName) {
+    return getXAttr(getCachedXAttrs(id), prefixedName);
+  }
+
+  private static XAttr getXAttr(List<XAttr> xAttrs, String prefixedName) {
     XAttr attr = null;
     XAttr toFind = XAttrHelper.buildXAttr(prefixedName);
-    List<XAttr> xAttrs = getXAttrs(id);
     for (XAttr a : xAttrs) {
       if (a.equalsIgnoreValue(toFind)) {
         attr = a;
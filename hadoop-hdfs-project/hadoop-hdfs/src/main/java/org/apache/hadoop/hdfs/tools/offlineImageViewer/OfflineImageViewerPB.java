@@ -18,6 +18,7 @@
 package org.apache.hadoop.hdfs.tools.offlineImageViewer;
 
 import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.io.RandomAccessFile;
@@ -85,6 +86,15 @@ public class OfflineImageViewerPB {
       + "    in a delimited format.\n"
       + "    Note that the check is not exhaustive, and only catches\n"
       + "    missing nodes during the namespace reconstruction.\n"
+      + "  * DBImport: Bulk-load the namespace into the metadata database\n"
+      + "    configured through the DATABASE environment variable.\n"
+      + "    -writers sets the number of parallel writers. (16 by default)\n"
+      + "    -batchSize sets the number of inodes per database batch.\n"
+      + "     (1024 by default)\n"
+      + "    -checkpoint names a file recording the import progress. An\n"
+      + "     interrupted import resumes from it when rerun.\n"
+      + "    -checkpointInterval sets the number of inodes imported between\n"
+      + "     two checkpoints. (1048576 by default)\n"
       + "\n"
       + "Required command line arguments:\n"
       + "-i,--inputFile <arg>   FSImage or XML file to process.\n"
@@ -97,7 +107,8 @@ public class OfflineImageViewerPB {
       + "                       will also create an <outputFile>.md5 file.\n"
       + "-p,--processor <arg>   Select which type of processor to apply\n"
       + "                       against image file. (XML|FileDistribution|\n"
-      + "                       ReverseXML|Web|Delimited|DetectCorruption)\n"
+      + "                       ReverseXML|Web|Delimited|DetectCorruption|\n"
+      + "                       DBImport)\n"
       + "                       The default is Web.\n"
       + "-delimiter <arg>       Delimiting string to use with Delimited or \n"
       + "                       DetectCorruption processor. \n"
@@ -130,6 +141,10 @@ private static Options buildOptions() {
     options.addOption("addr", true, "");
     options.addOption("delimiter", true, "");
     options.addOption("t", "temp", true, "");
+    options.addOption("writers", true, "");
+    options.addOption("batchSize", true, "");
+    options.addOption("checkpoint", true, "");
+    options.addOption("checkpointInterval", true, "");
 
     return options;
   }
@@ -234,6 +249,23 @@ public static int run(String[] args) throws Exception {
           detector.visit(new RandomAccessFile(inputFile, "r"));
         }
         break;
+      case "DBIMPORT":
+        int writers = Integer.parseInt(cmd.getOptionValue("writers",
+            String.valueOf(PBImageDatabaseImporter.DEFAULT_NUM_WRITERS)));
+        int batchSize = Integer.parseInt(cmd.getOptionValue("batchSize",
+            String.valueOf(PBImageDatabaseImporter.DEFAULT_BATCH_SIZE)));
+        int checkpointInterval = Integer.parseInt(cmd.getOptionValue(
+            "checkpointInterval", String.valueOf(
+                PBImageDatabaseImporter.DEFAULT_CHECKPOINT_INTERVAL)));
+        String checkpoint = cmd.getOptionValue("checkpoint");
+        try (PBImageDatabaseImporter importer = new PBImageDatabaseImporter(
+            out, tempPath, new File(inputFile),
+            checkpoint == null ? null : new File(checkpoint),
+            writers, batchSize, checkpointInterval);
+            RandomAccessFile r = new RandomAccessFile(inputFile, "r")) {
+          importer.visit(r);
+        }
+        break;
       default:
         System.err.println("Invalid processor specified : " + processor);
         printUsage();
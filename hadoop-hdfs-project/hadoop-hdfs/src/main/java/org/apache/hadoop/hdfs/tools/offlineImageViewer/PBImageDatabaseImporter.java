@@ -0,0 +1,397 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.tools.offlineImageViewer;
+
+import org.apache.hadoop.fs.XAttr;
+import org.apache.hadoop.hdfs.db.DatabaseDatablock;
+import org.apache.hadoop.hdfs.db.DatabaseINode;
+import org.apache.hadoop.hdfs.db.DatabaseNDExtraInfo;
+import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.BlockProto;
+import org.apache.hadoop.hdfs.server.namenode.FSImageFormatPBINode;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection.INode;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection.INodeDirectory;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection.INodeFile;
+import org.apache.hadoop.hdfs.server.namenode.INodeId;
+import org.apache.hadoop.hdfs.server.namenode.SerialNumberManager;
+import org.apache.hadoop.util.Time;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PBImageDatabaseImporter bulk-loads a protobuf fsimage into the FileScale
+ * metadata database, so that an existing HDFS namespace can be moved over
+ * without replaying it through a NameNode.
+ *
+ * It reuses the two-phase scan of {@link PBImageTextWriter} to resolve the
+ * parent path of every inode, then, instead of printing a line per inode,
+ * routes each inode to one of several parallel writers according to the
+ * partition key of the <code>inodes</code> table (<code>parentName</code>).
+ * Each writer upserts <code>inodes</code>, <code>inodeuc</code>,
+ * <code>inode2block</code>, <code>datablocks</code> and
+ * <code>inodexattrs</code> rows in batches.
+ *
+ * Inodes are imported in rounds of <code>checkpointInterval</code> entries.
+ * When all writers finished a round, the number of imported inodes is written
+ * to the checkpoint file. Since every write is an upsert, a restarted import
+ * skips the committed prefix of the INode section and safely replays the
+ * round that was in flight.
+ */
+public class PBImageDatabaseImporter extends PBImageTextWriter {
+  private static final Logger LOG =
+      LoggerFactory.getLogger(PBImageDatabaseImporter.class);
+
+  static final int DEFAULT_NUM_WRITERS = 16;
+  static final int DEFAULT_BATCH_SIZE = 1024;
+  static final int DEFAULT_CHECKPOINT_INTERVAL = 1024 * 1024;
+
+  @VisibleForTesting
+  static final String CHECKPOINT_IMAGE = "image";
+  @VisibleForTesting
+  static final String CHECKPOINT_IMAGE_LENGTH = "imageLength";
+  @VisibleForTesting
+  static final String CHECKPOINT_INODES = "inodes";
+  @VisibleForTesting
+  static final String CHECKPOINT_COMPLETED = "completed";
+
+  /** An inode together with the columns resolved from the namespace. */
+  private static class Row {
+    private final long parent;
+    private final String parentName;
+    private final INode inode;
+
+    Row(long parent, String parentName, INode inode) {
+      this.parent = parent;
+      this.parentName = parentName;
+      this.inode = inode;
+    }
+  }
+
+  private final File image;
+  private final File checkpointFile;
+  private final int numWriters;
+  private final int batchSize;
+  private final int checkpointInterval;
+  private final ExecutorService writers;
+  private final List<List<Row>> partitions;
+
+  /** Number of inodes committed by a previous run. */
+  private long resumeFrom = 0;
+  /** Number of inodes handed to {@link #getEntry} so far. */
+  private long seen = 0;
+  private int pending = 0;
+  private long startTime;
+
+  private final AtomicLong numINodes = new AtomicLong();
+  private final AtomicLong numBlocks = new AtomicLong();
+  private final AtomicLong numUc = new AtomicLong();
+  private final AtomicLong numXAttrs = new AtomicLong();
+  private final AtomicLong numSkipped = new AtomicLong();
+
+  PBImageDatabaseImporter(PrintStream out, String tempPath, File image,
+      File checkpointFile, int numWriters, int batchSize,
+      int checkpointInterval) throws IOException {
+    super(out, DEFAULT_DELIMITER, tempPath);
+    this.image = image;
+    this.checkpointFile = checkpointFile;
+    this.numWriters = numWriters;
+    this.batchSize = batchSize;
+    this.checkpointInterval = checkpointInterval;
+    this.writers = Executors.newFixedThreadPool(numWriters,
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("DatabaseImporter-%d").build());
+    this.partitions = new ArrayList<>(numWriters);
+    for (int i = 0; i < numWriters; i++) {
+      partitions.add(new ArrayList<Row>());
+    }
+    loadCheckpoint();
+  }
+
+  @Override
+  public void close() throws IOException {
+    writers.shutdownNow();
+    super.close();
+  }
+
+  /**
+   * Called once the string table has been loaded and before the first inode
+   * is visited. Permissions in the inodes table reference the string table,
+   * so it has to be imported along with the inodes.
+   */
+  @Override
+  protected String getHeader() {
+    SerialNumberManager.StringTable stringTable = getStringTable();
+    if (stringTable != null && resumeFrom == 0) {
+      List<Integer> ids = new ArrayList<>();
+      List<String> strs = new ArrayList<>();
+      for (Map.Entry<Integer, String> e : stringTable) {
+        ids.add(e.getKey());
+        strs.add(e.getValue());
+      }
+      DatabaseNDExtraInfo.setStringTableSummary(
+          stringTable.size(), stringTable.getMaskBits());
+      DatabaseNDExtraInfo.setStringTable(ids.toArray(new Integer[ids.size()]),
+          strs.toArray(new String[strs.size()]));
+      LOG.info("Imported {} string table entries", ids.size());
+    }
+    startTime = Time.monotonicNow();
+    return "Importing " + image + " with " + numWriters + " writers"
+        + (resumeFrom > 0 ? ", resuming after " + resumeFrom + " inodes" : "");
+  }
+
+  @Override
+  protected String getEntry(String parent, INode inode) {
+    if (seen++ < resumeFrom) {
+      return "";
+    }
+    long parentId;
+    String parentName;
+    if (inode.getId() == INodeId.ROOT_INODE_ID) {
+      // keep the same placeholders as the NameNode uses for the root
+      parentId = 0L;
+      parentName = " ";
+    } else {
+      try {
+        parentId = getParentId(inode.getId());
+      } catch (IOException e) {
+        numSkipped.incrementAndGet();
+        return "";
+      }
+      parentName = parent;
+    }
+    int p = (parentName.hashCode() & Integer.MAX_VALUE) % numWriters;
+    partitions.get(p).add(new Row(parentId, parentName, inode));
+    if (++pending >= checkpointInterval) {
+      try {
+        commitRound();
+      } catch (IOException e) {
+        throw new IllegalStateException("Import aborted after "
+            + resumeFrom + " inodes, rerun to resume from the checkpoint", e);
+      }
+    }
+    return "";
+  }
+
+  @Override
+  protected void afterOutput() throws IOException {
+    commitRound();
+    saveCheckpoint(true);
+    writers.shutdown();
+    long timeTaken = Time.monotonicNow() - startTime;
+    LOG.info("Imported {} inodes, {} blocks, {} files under construction and"
+        + " {} xattrs in {}ms ({} skipped).", numINodes.get(), numBlocks.get(),
+        numUc.get(), numXAttrs.get(), timeTaken, numSkipped.get());
+  }
+
+  /**
+   * Hand every partition of the current round to a writer, wait for all of
+   * them and advance the checkpoint.
+   */
+  private void commitRound() throws IOException {
+    if (pending == 0) {
+      return;
+    }
+    List<Future<?>> futures = new ArrayList<>(numWriters);
+    for (int i = 0; i < numWriters; i++) {
+      final List<Row> rows = partitions.get(i);
+      if (rows.isEmpty()) {
+        continue;
+      }
+      partitions.set(i, new ArrayList<Row>());
+      futures.add(writers.submit(() -> {
+        writePartition(rows);
+        return null;
+      }));
+    }
+    try {
+      for (Future<?> f : futures) {
+        f.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while importing inodes", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to import inodes", e.getCause());
+    }
+    pending = 0;
+    resumeFrom = seen;
+    saveCheckpoint(false);
+    long elapsed = Math.max(1, Time.monotonicNow() - startTime);
+    LOG.info("Checkpoint: {} inodes imported ({} inodes/s)", resumeFrom,
+        numINodes.get() * 1000 / elapsed);
+  }
+
+  private void writePartition(List<Row> rows) throws SQLException {
+    for (int from = 0; from < rows.size(); from += batchSize) {
+      writeBatch(rows.subList(from, Math.min(rows.size(), from + batchSize)));
+    }
+  }
+
+  private void writeBatch(List<Row> rows) throws SQLException {
+    List<Long> longAttr = new ArrayList<>();
+    List<String> strAttr = new ArrayList<>();
+    List<Long> fileIds = new ArrayList<>();
+    List<String> fileAttr = new ArrayList<>();
+    List<Long> blockAttr = new ArrayList<>();
+    List<Long> xattrIds = new ArrayList<>();
+    List<Integer> xattrNs = new ArrayList<>();
+    List<String> xattrNameVals = new ArrayList<>();
+
+    for (Row row : rows) {
+      INode n = row.inode;
+      long mtime;
+      long atime;
+      long permission;
+      long header;
+      if (n.getType() == INode.Type.FILE) {
+        INodeFile f = n.getFile();
+        mtime = f.getModificationTime();
+        atime = f.getAccessTime();
+        permission = f.getPermission();
+        header = FSImageFormatPBINode.Loader.buildFileHeader(f);
+        boolean isStriped = f.hasErasureCodingPolicyID();
+        for (int i = 0; i < f.getBlocksCount(); ++i) {
+          BlockProto b = f.getBlocks(i);
+          blockAttr.add(n.getId());
+          blockAttr.add(b.getBlockId());
+          blockAttr.add((long) i);
+          blockAttr.add(b.getNumBytes());
+          blockAttr.add(b.getGenStamp());
+          blockAttr.add(isStriped ? 0L : (long) f.getReplication());
+          blockAttr.add(isStriped ? (long) f.getErasureCodingPolicyID() : -1L);
+        }
+        if (f.hasFileUC()) {
+          fileIds.add(n.getId());
+          fileAttr.add(f.getFileUC().getClientName());
+          fileAttr.add(f.getFileUC().getClientMachine());
+        }
+        if (f.hasXAttrs()) {
+          addXAttrs(n.getId(), FSImageFormatPBINode.Loader.loadXAttrs(
+              f.getXAttrs(), getStringTable()),
+              xattrIds, xattrNs, xattrNameVals);
+        }
+      } else if (n.getType() == INode.Type.DIRECTORY) {
+        INodeDirectory d = n.getDirectory();
+        mtime = d.getModificationTime();
+        atime = 0L;
+        permission = d.getPermission();
+        header = 0L;
+        if (d.hasXAttrs()) {
+          addXAttrs(n.getId(), FSImageFormatPBINode.Loader.loadXAttrs(
+              d.getXAttrs(), getStringTable()),
+              xattrIds, xattrNs, xattrNameVals);
+        }
+      } else {
+        // symlinks are not stored in the database
+        numSkipped.incrementAndGet();
+        continue;
+      }
+      strAttr.add(n.getName().toStringUtf8());
+      strAttr.add(row.parentName);
+      longAttr.add(row.parent);
+      longAttr.add(n.getId());
+      longAttr.add(mtime);
+      longAttr.add(atime);
+      longAttr.add(permission);
+      longAttr.add(header);
+    }
+
+    if (strAttr.size() > 0) {
+      DatabaseINode.batchImportINodes(longAttr, strAttr, fileIds, fileAttr);
+    }
+    DatabaseDatablock.batchImportBlocks(blockAttr);
+    DatabaseINode.batchImportXAttrs(xattrIds, xattrNs, xattrNameVals);
+
+    numINodes.addAndGet(strAttr.size() / 2);
+    numBlocks.addAndGet(blockAttr.size() / 7);
+    numUc.addAndGet(fileIds.size());
+    numXAttrs.addAndGet(xattrIds.size());
+  }
+
+  private static void addXAttrs(long id, List<XAttr> xAttrs, List<Long> ids,
+      List<Integer> ns, List<String> namevals) {
+    for (XAttr a : xAttrs) {
+      ids.add(id);
+      ns.add(a.getNameSpace().ordinal());
+      namevals.add(a.getName());
+      namevals.add(a.getValue() == null ? "" : XAttr.bytes2String(a.getValue()));
+    }
+  }
+
+  private void loadCheckpoint() throws IOException {
+    if (checkpointFile == null || !checkpointFile.exists()) {
+      return;
+    }
+    Properties props = new Properties();
+    try (InputStream in = new FileInputStream(checkpointFile)) {
+      props.load(in);
+    }
+    if (!image.getAbsolutePath().equals(props.getProperty(CHECKPOINT_IMAGE))
+        || image.length() != Long.parseLong(
+            props.getProperty(CHECKPOINT_IMAGE_LENGTH, "-1"))) {
+      throw new IOException("Checkpoint " + checkpointFile
+          + " was written for a different image: "
+          + props.getProperty(CHECKPOINT_IMAGE));
+    }
+    if (Boolean.parseBoolean(props.getProperty(CHECKPOINT_COMPLETED))) {
+      throw new IOException("Image " + image + " has already been imported"
+          + " according to " + checkpointFile);
+    }
+    resumeFrom = Long.parseLong(props.getProperty(CHECKPOINT_INODES, "0"));
+    LOG.info("Resuming import of {} after {} inodes", image, resumeFrom);
+  }
+
+  private void saveCheckpoint(boolean completed) throws IOException {
+    if (checkpointFile == null) {
+      return;
+    }
+    Properties props = new Properties();
+    props.setProperty(CHECKPOINT_IMAGE, image.getAbsolutePath());
+    props.setProperty(CHECKPOINT_IMAGE_LENGTH, String.valueOf(image.length()));
+    props.setProperty(CHECKPOINT_INODES, String.valueOf(resumeFrom));
+    props.setProperty(CHECKPOINT_COMPLETED, String.valueOf(completed));
+    File tmp = new File(checkpointFile.getPath() + ".tmp");
+    try (OutputStream os = new FileOutputStream(tmp)) {
+      props.store(os, "fsimage database import checkpoint");
+    }
+    Files.move(tmp.toPath(), checkpointFile.toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+}
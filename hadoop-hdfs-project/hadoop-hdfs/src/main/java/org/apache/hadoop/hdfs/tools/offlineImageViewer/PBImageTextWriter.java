@@ -650,6 +650,10 @@ private void output(Configuration conf, FileSummary summary,
     LOG.debug("Time to output inodes: {}ms", timeTaken);
   }
 
+  SerialNumberManager.StringTable getStringTable() {
+    return stringTable;
+  }
+
   protected PermissionStatus getPermission(long perm) {
     return FSImageFormatPBINode.Loader.loadPermission(perm, stringTable);
   }
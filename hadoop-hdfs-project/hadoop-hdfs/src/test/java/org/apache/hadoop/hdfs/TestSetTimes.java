@@ -310,6 +310,38 @@ public void testGetBlockLocationsOnlyUsesReadLock() throws IOException {
     }
   }
 
+  /**
+   * Test that a read-only replica serves reads without updating the access
+   * time, which it cannot log.
+   */
+  @Test(timeout=60000)
+  public void testGetBlockLocationsOnReadOnlyReplica() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_ACCESSTIME_PRECISION_KEY, 1);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+      .numDataNodes(0)
+      .build();
+    ReentrantReadWriteLock spyLock = NameNodeAdapter.spyOnFsLock(cluster.getNamesystem());
+    try {
+      Path p = new Path("/read-only-file");
+      DFSTestUtil.createFile(cluster.getFileSystem(), p, 0, (short)1, 0L);
+      long atime = cluster.getFileSystem().getFileStatus(p).getAccessTime();
+      Thread.sleep(10);
+
+      NameNodeAdapter.setReadOnly(true);
+      MockitoUtil.doThrowWhenCallStackMatches(
+          new AssertionError("Should not need write lock"),
+          ".*getBlockLocations.*")
+          .when(spyLock).writeLock();
+      cluster.getFileSystem().getFileBlockLocations(p, 0, 100);
+      assertEquals(atime,
+          cluster.getFileSystem().getFileStatus(p).getAccessTime());
+    } finally {
+      NameNodeAdapter.setReadOnly(false);
+      cluster.shutdown();
+    }
+  }
+
   /**
    * Test whether atime can be set explicitly even when the atime support is
    * disabled.
@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.nnproxy.server.proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.nnproxy.ProxyConfig;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests for {@link FanOutExecutor}.
+ */
+public class TestFanOutExecutor {
+  private final ClientProtocol nn1 = mock(ClientProtocol.class);
+  private final ClientProtocol nn2 = mock(ClientProtocol.class);
+  private final ClientProtocol replica = mock(ClientProtocol.class);
+  private final CountDownLatch release = new CountDownLatch(1);
+  private FanOutExecutor fanOut;
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    if (fanOut != null) {
+      fanOut.shutdown();
+    }
+  }
+
+  private FanOutExecutor newFanOut(long timeoutMs, long hedgeDelayMs) {
+    Configuration conf = new Configuration(false);
+    conf.setLong(ProxyConfig.FANOUT_TIMEOUT_MS, timeoutMs);
+    conf.setLong(ProxyConfig.FANOUT_HEDGE_DELAY_MS, hedgeDelayMs);
+    fanOut = new FanOutExecutor(conf);
+    return fanOut;
+  }
+
+  /** Answers with the path, after the latch opens for the slow upstream. */
+  private FanOutExecutor.Call<String> newCall(final ClientProtocol slow) {
+    return new FanOutExecutor.Call<String>() {
+      @Override
+      public String call(ClientProtocol upstream, String path)
+          throws IOException {
+        if (upstream == slow) {
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            throw new IOException(e);
+          }
+        }
+        return upstream == replica ? "replica:" + path : path;
+      }
+    };
+  }
+
+  @Test
+  public void testResultsInOrderOfTargets() throws Exception {
+    newFanOut(10000, 0);
+    List<FanOutExecutor.Target> targets = Arrays.asList(
+        new FanOutExecutor.Target("nn1", "/a", nn1),
+        new FanOutExecutor.Target("nn2", "/b", nn2));
+    FanOutExecutor.Pending<String> pending =
+        fanOut.submitAll(targets, newCall(nn1));
+    // the second answers first
+    release.countDown();
+    assertEquals(Arrays.asList("/a", "/b"), pending.get());
+  }
+
+  @Test
+  public void testSlowCallIsHedged() throws Exception {
+    newFanOut(10000, 10);
+    List<FanOutExecutor.Target> targets = Collections.singletonList(
+        new FanOutExecutor.Target("nn1", "/a", nn1,
+            Collections.singletonList(replica)));
+    assertEquals(Collections.singletonList("replica:/a"),
+        fanOut.invokeAll(targets, newCall(nn1)));
+  }
+
+  @Test
+  public void testFailureIsThrown() throws Exception {
+    newFanOut(10000, 0);
+    List<FanOutExecutor.Target> targets = Arrays.asList(
+        new FanOutExecutor.Target("nn1", "/a", nn1),
+        new FanOutExecutor.Target("nn2", "/b", nn2));
+    try {
+      fanOut.invokeAll(targets, new FanOutExecutor.Call<String>() {
+        @Override
+        public String call(ClientProtocol upstream, String path)
+            throws IOException {
+          if (upstream == nn2) {
+            throw new FileNotFoundException(path);
+          }
+          return path;
+        }
+      });
+      fail("expected the failure of /b");
+    } catch (FileNotFoundException e) {
+      assertEquals("/b", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testDeadline() throws Exception {
+    newFanOut(100, 0);
+    List<FanOutExecutor.Target> targets = Collections.singletonList(
+        new FanOutExecutor.Target("nn1", "/a", nn1));
+    try {
+      fanOut.invokeAll(targets, newCall(nn1));
+      fail("expected a timeout");
+    } catch (IOException e) {
+      GenericTestUtils.assertExceptionContains("Timed out", e);
+    }
+  }
+}
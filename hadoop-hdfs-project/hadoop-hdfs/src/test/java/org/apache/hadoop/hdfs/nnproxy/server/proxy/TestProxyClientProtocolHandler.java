@@ -0,0 +1,192 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.nnproxy.server.proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.QuotaUsage;
+import org.apache.hadoop.hdfs.DFSUtilClient;
+import org.apache.hadoop.hdfs.nnproxy.server.mount.MountsManager.MountEntry;
+import org.apache.hadoop.hdfs.protocol.DirectoryListing;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.junit.Test;
+
+/**
+ * Tests how {@link ProxyClientProtocolHandler} combines the answers of the
+ * NameNodes owning the mount points below a directory.
+ */
+public class TestProxyClientProtocolHandler {
+
+  private static HdfsFileStatus newStatus(String name, long length) {
+    return new HdfsFileStatus.Builder()
+        .path(DFSUtilClient.string2Bytes(name))
+        .length(length)
+        .build();
+  }
+
+  private static DirectoryListing newListing(int remaining, String... names) {
+    HdfsFileStatus[] entries = new HdfsFileStatus[names.length];
+    for (int i = 0; i < names.length; i++) {
+      entries[i] = newStatus(names[i], 0);
+    }
+    return new DirectoryListing(entries, remaining);
+  }
+
+  private static List<String> getNames(DirectoryListing listing) {
+    List<String> names = new ArrayList<>();
+    for (HdfsFileStatus status : listing.getPartialListing()) {
+      names.add(status.getLocalName());
+    }
+    return names;
+  }
+
+  private static MountEntry newMount(String fs, String mountPoint) {
+    return new MountEntry(fs, mountPoint, new String[0]);
+  }
+
+  private static ContentSummary newSummary(long length, long files, long dirs) {
+    return new ContentSummary.Builder().length(length).fileCount(files)
+        .directoryCount(dirs).spaceConsumed(3 * length).quota(100)
+        .spaceQuota(1000).build();
+  }
+
+  @Test
+  public void testMergeListingInNameOrder() {
+    DirectoryListing listing = newListing(0, "a", "c", "e");
+    DirectoryListing merged = ProxyClientProtocolHandler.mergeListing(
+        listing, Arrays.asList(newStatus("b", 0), newStatus("d", 0),
+            newStatus("f", 0)));
+    assertEquals(Arrays.asList("a", "b", "c", "d", "e", "f"),
+        getNames(merged));
+    assertEquals(0, merged.getRemainingEntries());
+  }
+
+  @Test
+  public void testMergeListingReplacesStubs() {
+    DirectoryListing listing = newListing(0, "a", "mnt", "z");
+    HdfsFileStatus mount = newStatus("mnt", 42);
+    DirectoryListing merged = ProxyClientProtocolHandler.mergeListing(
+        listing, Collections.singletonList(mount));
+    assertEquals(Arrays.asList("a", "mnt", "z"), getNames(merged));
+    // the stub of the owner is replaced by the mount point itself
+    assertSame(mount, merged.getPartialListing()[1]);
+  }
+
+  @Test
+  public void testMergeListingNamesFileInfo() {
+    // getFileInfo answers with an empty local name
+    HdfsFileStatus b = newStatus("", 7);
+    HdfsFileStatus mnt = newStatus("", 42);
+    assertTrue(mnt.isEmptyLocalName());
+    DirectoryListing merged = ProxyClientProtocolHandler.mergeListing(
+        newListing(2, "a", "mnt"), Arrays.asList(
+            ProxyClientProtocolHandler.withLocalName(b,
+                DFSUtilClient.string2Bytes("b")),
+            ProxyClientProtocolHandler.withLocalName(mnt,
+                DFSUtilClient.string2Bytes("mnt"))));
+    assertEquals(Arrays.asList("a", "b", "mnt"), getNames(merged));
+    assertEquals(7, merged.getPartialListing()[1].getLen());
+    assertEquals(42, merged.getPartialListing()[2].getLen());
+    // the next page starts after the mount point
+    assertEquals("mnt",
+        DFSUtilClient.bytes2String(merged.getLastName()));
+  }
+
+  @Test
+  public void testMergeListingDefersMountsPastPage() {
+    DirectoryListing listing = newListing(2, "a", "c");
+    DirectoryListing merged = ProxyClientProtocolHandler.mergeListing(
+        listing, Arrays.asList(newStatus("b", 0), newStatus("d", 0)));
+    // "d" comes after the last entry of the page, it is listed on the next
+    assertEquals(Arrays.asList("a", "b", "c"), getNames(merged));
+    assertEquals(3, merged.getRemainingEntries());
+    assertTrue(merged.hasMore());
+
+    DirectoryListing last = ProxyClientProtocolHandler.mergeListing(
+        newListing(0, "e"), Collections.singletonList(newStatus("d", 0)));
+    assertEquals(Arrays.asList("d", "e"), getNames(last));
+  }
+
+  @Test
+  public void testSeparateMountsSkipSameOwner() {
+    MountEntry a = newMount("nn2", "/dir/a");
+    MountEntry nested = newMount("nn2", "/dir/a/b");
+    MountEntry other = newMount("nn3", "/dir/a/b/c");
+    MountEntry back = newMount("nn1", "/dir/a/d");
+    MountEntry own = newMount("nn1", "/dir/e");
+    Map<MountEntry, String> separate =
+        ProxyClientProtocolHandler.getSeparateMounts("nn1",
+            Arrays.asList(own, other, back, nested, a));
+    // nested below a mount point of the same owner, counted with it
+    assertEquals(Arrays.asList(a, other, back),
+        new ArrayList<>(separate.keySet()));
+    assertEquals("nn1", separate.get(a));
+    assertEquals("nn2", separate.get(other));
+    assertEquals("nn2", separate.get(back));
+  }
+
+  @Test
+  public void testSumContentSummariesTakesOutStubs() {
+    ContentSummary owner = newSummary(10, 2, 3);
+    List<ContentSummary> parts =
+        Arrays.asList(newSummary(100, 5, 2), newSummary(1000, 7, 1));
+    // the second mount point has no stub on the owner
+    List<ContentSummary> stubs = Arrays.asList(newSummary(0, 0, 1), null);
+    ContentSummary total =
+        ProxyClientProtocolHandler.sumContentSummaries(owner, parts, stubs);
+    assertEquals(1110, total.getLength());
+    assertEquals(14, total.getFileCount());
+    assertEquals(5, total.getDirectoryCount());
+    assertEquals(3330, total.getSpaceConsumed());
+    assertEquals(100, total.getQuota());
+    assertEquals(1000, total.getSpaceQuota());
+  }
+
+  @Test
+  public void testSumQuotaUsagesTakesOutStubs() {
+    QuotaUsage owner = new QuotaUsage.Builder().fileAndDirectoryCount(5)
+        .spaceConsumed(30).quota(100).spaceQuota(1000).build();
+    QuotaUsage part = new QuotaUsage.Builder().fileAndDirectoryCount(7)
+        .spaceConsumed(300).build();
+    QuotaUsage stub = new QuotaUsage.Builder().fileAndDirectoryCount(1)
+        .spaceConsumed(0).build();
+    QuotaUsage total = ProxyClientProtocolHandler.sumQuotaUsages(owner,
+        Collections.singletonList(part), Collections.singletonList(stub));
+    assertEquals(11, total.getFileAndDirectoryCount());
+    assertEquals(330, total.getSpaceConsumed());
+    assertEquals(100, total.getQuota());
+    assertEquals(1000, total.getSpaceQuota());
+  }
+
+  @Test
+  public void testTrashPrefix() {
+    assertEquals("", ProxyClientProtocolHandler.getTrashPrefix("/dir", "/dir"));
+    assertEquals("/user/alice/.Trash/Current",
+        ProxyClientProtocolHandler.getTrashPrefix(
+            "/user/alice/.Trash/Current/dir", "/dir"));
+  }
+}
@@ -44,6 +44,7 @@
 import org.apache.hadoop.hdfs.server.namenode.NameNode;
 import org.apache.hadoop.hdfs.server.namenode.NameNodeAdapter;
 import org.apache.hadoop.hdfs.server.namenode.web.resources.NamenodeWebHdfsMethods;
+import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
 import org.apache.hadoop.hdfs.web.WebHdfsConstants;
 import org.apache.hadoop.hdfs.web.WebHdfsFileSystem;
 import org.apache.hadoop.io.Text;
@@ -154,6 +155,39 @@ public void testCancelDelegationToken() throws Exception {
     }
   }
   
+  /**
+   * Tokens issued after the last checkpoint are both loaded from the database
+   * and replayed from the edit log when the NameNode restarts.
+   */
+  @Test
+  public void testTokensReplayedAfterRestart() throws Exception {
+    String renewer = UserGroupInformation.getCurrentUser().getShortUserName();
+    NamenodeProtocols nn = cluster.getNameNodeRpc();
+    Token<DelegationTokenIdentifier> token =
+        nn.getDelegationToken(new Text(renewer));
+    long expiryTime = nn.renewDelegationToken(token);
+    Token<DelegationTokenIdentifier> cancelled =
+        nn.getDelegationToken(new Text(renewer));
+    nn.cancelDelegationToken(cancelled);
+
+    cluster.restartNameNode();
+    dtSecretManager = NameNodeAdapter.getDtSecretManager(
+        cluster.getNamesystem());
+    DelegationTokenIdentifier identifier = new DelegationTokenIdentifier();
+    identifier.readFields(new DataInputStream(
+        new ByteArrayInputStream(token.getIdentifier())));
+    Assert.assertEquals(expiryTime,
+        dtSecretManager.getTokenExpiryTime(identifier));
+    nn = cluster.getNameNodeRpc();
+    nn.renewDelegationToken(token);
+    try {
+      nn.renewDelegationToken(cancelled);
+      Assert.fail("should have failed");
+    } catch (InvalidToken it) {
+      // PASS
+    }
+  }
+
   @Test
   public void testAddDelegationTokensDFSApi() throws Exception {
     UserGroupInformation ugi = UserGroupInformation.createRemoteUser("JobTracker");
@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.ipc.Server;
+
+/**
+ * Measures the lookups of the ancestors of a path through the memo of an RPC
+ * call, while other threads keep writing to unrelated paths of the inode
+ * cache, as the handlers of a loaded NameNode do.
+ *
+ * Usage: INodeCallCacheBenchmark [readers] [writers] [depth] [seconds]
+ *
+ * Each reader repeats calls that resolve the path 4 times, the way a call
+ * resolves and permission checks its path. The benchmark runs once with the
+ * memo and once without and reports the lookups per second of each.
+ */
+public class INodeCallCacheBenchmark {
+  private static final int RESOLVES_PER_CALL = 4;
+
+  private final int readers;
+  private final int writers;
+  private final List<String> ancestors = new ArrayList<>();
+  private final long durationMs;
+
+  INodeCallCacheBenchmark(int readers, int writers, int depth,
+      long durationMs) {
+    this.readers = readers;
+    this.writers = writers;
+    this.durationMs = durationMs;
+    StringBuilder path = new StringBuilder();
+    for (int i = 0; i < depth; i++) {
+      path.append("/bench").append(i);
+      ancestors.add(path.toString());
+    }
+  }
+
+  /** @return lookups per second */
+  double run(boolean memo) throws InterruptedException {
+    INodeCallCache.setEnabled(memo);
+    final IndexedCache<String, INode> cache = INodeKeyedObjects.getCache();
+    for (String ancestor : ancestors) {
+      cache.put(ancestor, mock(INode.class));
+    }
+    final AtomicBoolean stop = new AtomicBoolean();
+    final AtomicLong lookups = new AtomicLong();
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < readers; i++) {
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          long n = 0;
+          while (!stop.get()) {
+            Server.getCurCall().set(mock(Server.Call.class));
+            for (int r = 0; r < RESOLVES_PER_CALL; r++) {
+              for (String ancestor : ancestors) {
+                INodeCallCache.getIfPresent(ancestor);
+                n++;
+              }
+            }
+          }
+          Server.getCurCall().set(null);
+          lookups.addAndGet(n);
+        }
+      });
+    }
+    for (int i = 0; i < writers; i++) {
+      final String prefix = "/bench-writes" + i + "/";
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          INode inode = mock(INode.class);
+          for (long n = 0; !stop.get(); n++) {
+            String key = prefix + (n % 1024);
+            cache.put(key, inode);
+            cache.invalidate(key);
+          }
+        }
+      });
+    }
+    for (Thread t : threads) {
+      t.start();
+    }
+    Thread.sleep(durationMs);
+    stop.set(true);
+    for (Thread t : threads) {
+      t.join();
+    }
+    cache.invalidateAll(ancestors);
+    return lookups.get() * 1000.0 / durationMs;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int readers = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+    int writers = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+    int depth = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+    long seconds = args.length > 3 ? Long.parseLong(args[3]) : 10;
+    INodeCallCacheBenchmark bench =
+        new INodeCallCacheBenchmark(readers, writers, depth, seconds * 1000);
+    // warm up both paths first
+    bench.run(true);
+    bench.run(false);
+    double withMemo = bench.run(true);
+    double withoutMemo = bench.run(false);
+    INodeCallCache.setEnabled(true);
+    System.out.printf("readers=%d writers=%d depth=%d%n",
+        readers, writers, depth);
+    System.out.printf("with memo:    %.0f lookups/s%n", withMemo);
+    System.out.printf("without memo: %.0f lookups/s%n", withoutMemo);
+  }
+}
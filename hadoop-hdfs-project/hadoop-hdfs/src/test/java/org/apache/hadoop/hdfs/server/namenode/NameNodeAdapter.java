@@ -229,6 +229,23 @@ public static ReentrantReadWriteLock spyOnFsLock(FSNamesystem fsn) {
     return spy;
   }
 
+  /**
+   * Make every NameNode in this JVM act as a read-only replica, or not.
+   */
+  public static void setReadOnly(boolean readOnly) {
+    INodeKeyedObjects.setReadOnly(readOnly);
+  }
+
+  /**
+   * Record a database checkpoint now, as the periodic checkpointer does.
+   * Requires dfs.namenode.db.checkpoint.enabled.
+   */
+  public static void checkpointToDatabase(NameNode nn) {
+    FSNamesystem fsn = nn.getNamesystem();
+    ((FSNamesystem.DatabaseCheckpointer)
+        fsn.databaseCheckpointer.getRunnable()).checkpoint();
+  }
+
   public static FSImage spyOnFsImage(NameNode nn1) {
     FSNamesystem fsn = nn1.getNamesystem();
     FSImage spy = Mockito.spy(fsn.getFSImage());
@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.StripedFileTestUtil;
+import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
+import org.apache.hadoop.hdfs.util.StripedBlockUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the content summaries aggregated in the database.
+ */
+public class TestContentSummaryInDatabase {
+  private final ErasureCodingPolicy ecPolicy =
+      StripedFileTestUtil.getDefaultECPolicy();
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_DB_CONTENT_SUMMARY_ENABLED_KEY, true);
+    int numDataNodes =
+        ecPolicy.getNumDataUnits() + ecPolicy.getNumParityUnits();
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(numDataNodes)
+        .build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    fs.enableErasureCodingPolicy(ecPolicy.getName());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  /**
+   * Replicated blocks count their replicas and striped blocks their parity,
+   * as the walk of the subtree does.
+   */
+  @Test
+  public void testSpaceConsumedOfStripedFiles() throws Exception {
+    Path dir = new Path("/summary");
+    Path ecDir = new Path(dir, "ec");
+    fs.mkdirs(ecDir);
+    fs.setErasureCodingPolicy(ecDir, ecPolicy.getName());
+    // a full stripe and a partial one
+    long ecLength = (long) ecPolicy.getCellSize()
+        * ecPolicy.getNumDataUnits() + 123;
+    DFSTestUtil.createFile(fs, new Path(ecDir, "striped"), ecLength,
+        (short) 1, 0L);
+    DFSTestUtil.createFile(fs, new Path(dir, "replicated"), 1000,
+        (short) 2, 0L);
+
+    ContentSummary cs = fs.getContentSummary(dir);
+    assertEquals(2, cs.getFileCount());
+    assertEquals(2, cs.getDirectoryCount());
+    assertEquals(ecLength + 1000, cs.getLength());
+    assertEquals(1000 * 2 + StripedBlockUtil.spaceConsumedByStripedBlock(
+        ecLength, ecPolicy.getNumDataUnits(), ecPolicy.getNumParityUnits(),
+        ecPolicy.getCellSize()), cs.getSpaceConsumed());
+  }
+}
@@ -0,0 +1,175 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.SQLException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Options;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.db.DatabaseINode;
+import org.apache.hadoop.hdfs.db.DatabaseNDExtraInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the database checkpoint of the namespace: the watermark only covers
+ * the transactions whose changes are all written to the database.
+ */
+public class TestDatabaseCheckpoint {
+  private static final byte[] VALUE = {0x31, 0x32, 0x33};
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_DB_CHECKPOINT_ENABLED_KEY, true);
+    // checkpoints are only taken by the tests
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_DB_CHECKPOINT_PERIOD_KEY, 3600);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(0).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    WriteBackFaultInjector.set(new WriteBackFaultInjector());
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private long getId(String path) throws Exception {
+    return cluster.getNamesystem().getFSDirectory()
+        .getINode(path, FSDirectory.DirOp.READ).getId();
+  }
+
+  private long getCheckpointTxId() {
+    int nsId = cluster.getNamesystem().getFSImage().getStorage()
+        .getNamespaceID();
+    return DatabaseNDExtraInfo.getNamespaceCheckpoint(nsId).transactionId;
+  }
+
+  /**
+   * A checkpoint writes back the changes still pending in the cache, so the
+   * extended attributes and times survive a restart from it.
+   */
+  @Test
+  public void testCheckpointCoversPendingChanges() throws Exception {
+    Path file = new Path("/ckpt/file");
+    DFSTestUtil.createFile(fs, file, 0, (short) 1, 0L);
+    fs.setXAttr(file, "user.a1", VALUE);
+    fs.setTimes(file, 123456L, 654321L);
+    long lastTxId = cluster.getNamesystem().getEditLog().getLastWrittenTxId();
+
+    NameNodeAdapter.checkpointToDatabase(cluster.getNameNode());
+
+    long txId = INodeKeyedObjects.getCommittedTxId();
+    assertTrue(txId >= lastTxId);
+    assertEquals(txId, getCheckpointTxId());
+    assertEquals(654321L, DatabaseINode.getAccessTime(getId(file.toString())));
+
+    cluster.restartNameNode();
+    fs = cluster.getFileSystem();
+    assertArrayEquals(VALUE, fs.getXAttr(file, "user.a1"));
+    assertEquals(123456L, fs.getFileStatus(file).getModificationTime());
+    assertEquals(654321L, fs.getFileStatus(file).getAccessTime());
+  }
+
+  /**
+   * A checkpoint whose write-back fails keeps the previous watermark and the
+   * pending changes, which are then replayed from the edit log on restart.
+   */
+  @Test
+  public void testFailedWriteBackKeepsWatermark() throws Exception {
+    Path file = new Path("/ckpt/failed");
+    DFSTestUtil.createFile(fs, file, 0, (short) 1, 0L);
+    NameNodeAdapter.checkpointToDatabase(cluster.getNameNode());
+    long txId = INodeKeyedObjects.getCommittedTxId();
+
+    WriteBackFaultInjector.set(new WriteBackFaultInjector() {
+      @Override
+      public void beforeWriteBack() throws SQLException {
+        throw new SQLException("injected failure");
+      }
+    });
+    fs.setTimes(file, 123456L, 654321L);
+    NameNodeAdapter.checkpointToDatabase(cluster.getNameNode());
+
+    assertEquals(txId, INodeKeyedObjects.getCommittedTxId());
+    assertEquals(txId, getCheckpointTxId());
+    assertTrue(INodeKeyedObjects.getUpdateSet().contains(file.toString()));
+
+    WriteBackFaultInjector.set(new WriteBackFaultInjector());
+    cluster.restartNameNode();
+    fs = cluster.getFileSystem();
+    assertEquals(123456L, fs.getFileStatus(file).getModificationTime());
+    assertEquals(654321L, fs.getFileStatus(file).getAccessTime());
+  }
+
+  /**
+   * The write-behind keeps writing after a checkpoint, so on restart the
+   * database is ahead of the watermark. The replayed edits whose changes are
+   * already in it, which cannot be applied twice, are skipped.
+   */
+  @Test
+  public void testReplayOverWritesAfterCheckpoint() throws Exception {
+    Path dir = new Path("/ckpt/replay");
+    Path deleted = new Path(dir, "deleted");
+    DFSTestUtil.createFile(fs, deleted, 0, (short) 1, 0L);
+    NameNodeAdapter.checkpointToDatabase(cluster.getNameNode());
+    long txId = getCheckpointTxId();
+
+    Path src = new Path(dir, "src");
+    Path mid = new Path(dir, "mid");
+    Path dst = new Path(dir, "dst");
+    Path created = new Path(dir, "created");
+    DFSTestUtil.createFile(fs, src, 0, (short) 1, 0L);
+    assertTrue(fs.rename(src, mid));
+    fs.rename(mid, dst, Options.Rename.NONE);
+    DFSTestUtil.createFile(fs, created, 0, (short) 1, 0L);
+    fs.mkdirs(new Path(dir, "sub"));
+    assertTrue(fs.delete(deleted, false));
+    // written back without moving the watermark
+    INodeKeyedObjects.flush();
+    assertEquals(txId, getCheckpointTxId());
+
+    cluster.restartNameNode();
+    fs = cluster.getFileSystem();
+    assertFalse(fs.exists(src));
+    assertFalse(fs.exists(mid));
+    assertTrue(fs.exists(dst));
+    assertTrue(fs.exists(created));
+    assertFalse(fs.exists(deleted));
+    assertEquals(3, fs.listStatus(dir).length);
+  }
+}
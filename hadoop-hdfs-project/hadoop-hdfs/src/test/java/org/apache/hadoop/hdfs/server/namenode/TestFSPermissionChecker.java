@@ -33,6 +33,8 @@
 import static org.apache.hadoop.fs.permission.FsAction.WRITE_EXECUTE;
 import static org.apache.hadoop.hdfs.server.namenode.AclTestHelpers.aclEntry;
 import static org.junit.Assert.fail;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doAnswer;
@@ -409,6 +411,19 @@ private void assertPermissionGranted(UserGroupInformation user, String path,
       false, null, null, access, null, false);
   }
 
+  @Test
+  public void testPrefixHashesMatchCacheKeys() {
+    assertArrayEquals(new int[] {"/".hashCode()},
+        FSPermissionChecker.getPrefixHashes("/", 1));
+    assertArrayEquals(
+        new int[] {"/".hashCode(), "/a".hashCode(), "/a/bc".hashCode()},
+        FSPermissionChecker.getPrefixHashes("/a/bc", 3));
+    // the path does not match the resolved components
+    assertNull(FSPermissionChecker.getPrefixHashes("/a/bc", 2));
+    assertNull(FSPermissionChecker.getPrefixHashes("/a/bc", 4));
+    assertNull(FSPermissionChecker.getPrefixHashes(null, 1));
+  }
+
   private void assertPermissionDenied(UserGroupInformation user, String path,
       FsAction access) throws IOException {
     try {
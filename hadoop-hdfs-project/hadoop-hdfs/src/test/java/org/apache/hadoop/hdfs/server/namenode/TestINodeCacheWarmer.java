@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests writing the hot set of the inode cache and warming the cache up
+ * from it.
+ */
+public class TestINodeCacheWarmer {
+  private static final String DIR = "/warm";
+  private static final String SUBDIR = DIR + "/sub";
+  private static final String FILE = SUBDIR + "/file";
+  private static final String OTHER = DIR + "/other";
+
+  private File hotSet;
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  private INodeCacheWarmer warmer;
+
+  @Before
+  public void setUp() throws Exception {
+    hotSet = new File(GenericTestUtils.getTestDir(), "hotset");
+    hotSet.delete();
+    Configuration conf = new HdfsConfiguration();
+    conf.set(DFSConfigKeys.DFS_NAMENODE_CACHE_HOTSET_FILE_KEY,
+        hotSet.getAbsolutePath());
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_CACHE_WARMUP_THREADS_KEY, 2);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    warmer = cluster.getNamesystem().getCacheWarmer();
+    DFSTestUtil.createFile(fs, new Path(FILE), 1024, (short) 1, 0L);
+    DFSTestUtil.createFile(fs, new Path(OTHER), 1024, (short) 1, 0L);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+    hotSet.delete();
+  }
+
+  private static boolean isCached(String path) {
+    return INodeKeyedObjects.getCache().getIfPresent(path) != null;
+  }
+
+  /** Drop the inodes below the directory, as evictions from the cache do. */
+  private void evict() throws Exception {
+    // written back first, the rows are what gets loaded
+    INodeKeyedObjects.flush();
+    INodeKeyedObjects.getCache().invalidateAll(
+        Arrays.asList(SUBDIR, FILE, OTHER));
+  }
+
+  @Test(timeout = 60000)
+  public void testDump() throws Exception {
+    fs.getFileStatus(new Path(FILE));
+    warmer.dump();
+    List<String> paths = Files.readAllLines(hotSet.toPath(), UTF_8);
+    assertTrue(paths.contains(FILE));
+    assertTrue(paths.contains(SUBDIR));
+    assertTrue(paths.contains(OTHER));
+    assertFalse(new File(hotSet.getPath() + ".tmp").exists());
+  }
+
+  @Test(timeout = 60000)
+  public void testWarmUp() throws Exception {
+    warmer.dump();
+    evict();
+    assertFalse(isCached(FILE));
+
+    warmer.warmUp();
+    // parents are loaded before their children
+    assertTrue(isCached(SUBDIR));
+    assertTrue(isCached(FILE));
+    assertTrue(isCached(OTHER));
+    assertEquals(warmer.getTotal(), warmer.getLoaded());
+    assertEquals(1024, fs.getFileStatus(new Path(FILE)).getLen());
+  }
+
+  @Test(timeout = 60000)
+  public void testWarmUpSkipsRemovedPaths() throws Exception {
+    warmer.dump();
+    fs.delete(new Path(OTHER), false);
+    fs.rename(new Path(SUBDIR), new Path(DIR + "/moved"));
+    evict();
+
+    warmer.warmUp();
+    // not brought back from the hot set
+    assertFalse(isCached(OTHER));
+    assertFalse(isCached(SUBDIR));
+    assertFalse(isCached(FILE));
+    assertNull(cluster.getNameNodeRpc().getFileInfo(OTHER));
+    assertNull(cluster.getNameNodeRpc().getFileInfo(FILE));
+    assertNotNull(cluster.getNameNodeRpc().getFileInfo(DIR + "/moved/file"));
+  }
+}
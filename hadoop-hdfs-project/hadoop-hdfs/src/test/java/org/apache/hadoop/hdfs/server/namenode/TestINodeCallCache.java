@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.hadoop.ipc.Server;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the invalidation of the inode memo of an RPC call.
+ */
+public class TestINodeCallCache {
+  private static final String DIR = "/test-call-cache";
+  private static final String A = DIR + "/a";
+  private static final String B = DIR + "/b";
+
+  private final INode inodeA = mock(INode.class);
+  private final INode inodeB = mock(INode.class);
+
+  @Before
+  public void setUp() {
+    INodeCallCache.setEnabled(true);
+    Server.getCurCall().set(mock(Server.Call.class));
+    INodeKeyedObjects.getCache().put(A, inodeA);
+  }
+
+  @After
+  public void tearDown() {
+    Server.getCurCall().set(null);
+    INodeKeyedObjects.getCache().invalidateAll(Arrays.asList(A, B));
+  }
+
+  @Test
+  public void testWritesToOtherPathsKeepTheMemo() {
+    assertSame(inodeA, INodeCallCache.getIfPresent(A));
+    assertTrue(INodeCallCache.isMemoized(A));
+
+    // writes elsewhere in the cache, as other handlers do
+    INodeKeyedObjects.getCache().put(B, inodeB);
+    INodeKeyedObjects.getCache().invalidate(B);
+    assertTrue(INodeCallCache.isMemoized(A));
+    assertSame(inodeA, INodeCallCache.getIfPresent(A));
+  }
+
+  @Test
+  public void testWriteToPathDropsTheMemo() {
+    assertSame(inodeA, INodeCallCache.getIfPresent(A));
+    INode replaced = mock(INode.class);
+    INodeKeyedObjects.getCache().put(A, replaced);
+    assertFalse(INodeCallCache.isMemoized(A));
+    assertSame(replaced, INodeCallCache.getIfPresent(A));
+
+    INodeKeyedObjects.getCache().invalidate(A);
+    assertEquals(null, INodeCallCache.getIfPresent(A));
+    assertFalse(INodeCallCache.isMemoized(A));
+  }
+
+  @Test
+  public void testNewCallDropsTheMemo() {
+    assertSame(inodeA, INodeCallCache.getIfPresent(A));
+    Server.getCurCall().set(mock(Server.Call.class));
+    assertFalse(INodeCallCache.isMemoized(A));
+  }
+
+  @Test
+  public void testVersionsOfKeys() {
+    IndexedCache<String, String> cache = new IndexedCache.Builder<String, String>()
+        .buildFromCaffeine(Caffeine.newBuilder());
+    long a = cache.getVersion("a");
+    cache.put("a", "1");
+    assertNotEquals(a, cache.getVersion("a"));
+    a = cache.getVersion("a");
+    cache.asMap().remove("a");
+    assertNotEquals(a, cache.getVersion("a"));
+
+    a = cache.getVersion("a");
+    long b = cache.getVersion("b");
+    cache.putAll(Collections.singletonMap("b", "2"));
+    cache.invalidateAll(Collections.singletonList("b"));
+    assertNotEquals(b, cache.getVersion("b"));
+    cache.invalidateAll();
+    assertNotEquals(a, cache.getVersion("a"));
+    assertEquals(cache.getVersion("a".hashCode()), cache.getVersion("a"));
+  }
+}
@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.db.DatabaseINode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the write-behind of the inode cache to the database.
+ */
+public class TestINodeKeyedObjects {
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(0).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private long getId(String path) throws Exception {
+    return cluster.getNamesystem().getFSDirectory()
+        .getINode(path, FSDirectory.DirOp.READ).getId();
+  }
+
+  private static boolean hasPendingUnder(String path) {
+    for (String key : INodeKeyedObjects.getUpdateSet()) {
+      if (key.equals(path) || key.startsWith(path + "/")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Handing off a mount point writes back every pending update under it,
+   * however few, before dropping the cached inodes.
+   */
+  @Test
+  public void testHandoffWritesBackPendingUpdates() throws Exception {
+    Path file = new Path("/mnt/dir/file");
+    DFSTestUtil.createFile(fs, file, 0, (short) 1, 0L);
+    long id = getId(file.toString());
+    fs.setTimes(file, 123456L, 654321L);
+
+    INodeKeyedObjects.handoff("/mnt");
+
+    assertFalse(hasPendingUnder("/mnt"));
+    assertNull(INodeKeyedObjects.getCache().getIfPresent(file.toString()));
+    assertEquals(123456L, DatabaseINode.getModificationTime(id));
+    assertEquals(654321L, DatabaseINode.getAccessTime(id));
+    // the file is loaded again from the database
+    assertEquals(654321L, fs.getFileStatus(file).getAccessTime());
+  }
+
+  /**
+   * A NameNode taking over a mount point sees the under-construction state
+   * that another NameNode wrote back, and restores the leases.
+   */
+  @Test
+  public void testAcquireReloadsFilesUnderConstruction() throws Exception {
+    Path file = new Path("/mnt/open");
+    FSDataOutputStream out = fs.create(file);
+    try {
+      long id = getId(file.toString());
+      String client = fs.getClient().getClientName();
+      UnderConstructionIndex.Entry entry = UnderConstructionIndex.get(id);
+      assertEquals(client, entry.getClientName());
+      assertEquals(client, entry.getLeaseHolder());
+
+      LeaseManager lm = cluster.getNamesystem().getLeaseManager();
+      INodeKeyedObjects.handoff("/mnt");
+      lm.removeLeasesUnder("/mnt");
+      INodeFile inode = cluster.getNamesystem().getFSDirectory()
+          .getINode(file.toString(), FSDirectory.DirOp.READ).asFile();
+      assertNull(lm.getLease(inode));
+
+      // the other NameNode reassigned the lease while it owned the file
+      DatabaseINode.batchUpdateUc(Collections.singletonList(id),
+          Arrays.asList(client, "otherhost", "other-holder"),
+          Collections.<Long>emptyList());
+      INodeKeyedObjects.acquire("/mnt");
+      lm.restoreLeases("/mnt");
+
+      entry = UnderConstructionIndex.get(id);
+      assertEquals("otherhost", entry.getClientMachine());
+      assertEquals("other-holder", entry.getLeaseHolder());
+      assertNotNull(lm.getLease(inode));
+      assertEquals("other-holder", lm.getLease(inode).getHolder());
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Reloading the index keeps the changes that are not written back yet.
+   */
+  @Test
+  public void testReloadKeepsPendingChanges() throws Exception {
+    UnderConstructionIndex.put(-2L, "client", "machine");
+    UnderConstructionIndex.setLeaseHolder(-2L, "holder");
+    UnderConstructionIndex.reload();
+    UnderConstructionIndex.Entry entry = UnderConstructionIndex.get(-2L);
+    assertEquals("client", entry.getClientName());
+    assertEquals("holder", entry.getLeaseHolder());
+
+    UnderConstructionIndex.flush();
+    UnderConstructionIndex.remove(-2L);
+    UnderConstructionIndex.reload();
+    assertNull(UnderConstructionIndex.get(-2L));
+    UnderConstructionIndex.flush();
+    UnderConstructionIndex.reload();
+    assertNull(UnderConstructionIndex.get(-2L));
+  }
+}
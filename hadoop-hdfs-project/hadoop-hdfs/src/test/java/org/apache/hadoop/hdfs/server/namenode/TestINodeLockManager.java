@@ -0,0 +1,328 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the per-inode locks of namespace mutations.
+ */
+public class TestINodeLockManager {
+  private static final int STRIPES = 16;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() throws Exception {
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executor.shutdownNow();
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private void startCluster() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_INODE_LOCKS_ENABLED_KEY, true);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+  }
+
+  /** @return whether the locks are taken by another thread in time */
+  private boolean lockInOtherThread(final INodeLockManager.LockSet locks)
+      throws Exception {
+    Future<Void> f = executor.submit(new Callable<Void>() {
+      @Override
+      public Void call() {
+        locks.lock();
+        locks.unlock();
+        return null;
+      }
+    });
+    try {
+      f.get(500, TimeUnit.MILLISECONDS);
+      return true;
+    } catch (TimeoutException e) {
+      return false;
+    }
+  }
+
+  @Test
+  public void testSharedAndExclusiveLocks() throws Exception {
+    INodeLockManager lm = new INodeLockManager(STRIPES);
+    INodeLockManager.LockSet held = lm.newLockSet();
+    held.add(1, false);
+    held.add(2, true);
+    held.lock();
+    try {
+      assertTrue(lm.isHeldByCurrentThread());
+      // shared with shared
+      INodeLockManager.LockSet shared = lm.newLockSet();
+      shared.add(1, false);
+      assertTrue(lockInOtherThread(shared));
+      // other inodes are not locked
+      INodeLockManager.LockSet other = lm.newLockSet();
+      other.add(3, true);
+      assertTrue(lockInOtherThread(other));
+      // exclusive with shared
+      INodeLockManager.LockSet exclusive = lm.newLockSet();
+      exclusive.add(1, true);
+      assertFalse(lockInOtherThread(exclusive));
+    } finally {
+      held.unlock();
+    }
+    assertFalse(lm.isHeldByCurrentThread());
+    // unlocking again does nothing
+    held.unlock();
+    assertFalse(lm.isHeldByCurrentThread());
+  }
+
+  @Test
+  public void testReadLocksAreNotMutationLocks() throws Exception {
+    INodeLockManager lm = new INodeLockManager(STRIPES);
+    INodeLockManager.LockSet read = lm.newReadLockSet();
+    read.add(1, false);
+    read.lock();
+    try {
+      assertTrue(lm.isReadHeldByCurrentThread());
+      assertFalse(lm.isHeldByCurrentThread());
+      INodeLockManager.LockSet exclusive = lm.newLockSet();
+      exclusive.add(1, true);
+      assertFalse(lockInOtherThread(exclusive));
+    } finally {
+      read.unlock();
+    }
+    assertFalse(lm.isReadHeldByCurrentThread());
+  }
+
+  @Test
+  public void testExclusiveWinsOnSameStripe() throws Exception {
+    INodeLockManager lm = new INodeLockManager(STRIPES);
+    INodeLockManager.LockSet held = lm.newLockSet();
+    // same stripe, the exclusive mode is kept whatever the order
+    held.add(5, true);
+    held.add(5 + STRIPES, false);
+    held.lock();
+    try {
+      INodeLockManager.LockSet shared = lm.newLockSet();
+      shared.add(5, false);
+      assertFalse(lockInOtherThread(shared));
+    } finally {
+      held.unlock();
+    }
+  }
+
+  /**
+   * Operations locking the same inodes from different paths, as two renames
+   * in opposite directions do, take the locks in the same order.
+   */
+  @Test(timeout = 60000)
+  public void testOppositeOrdersDoNotDeadlock() throws Exception {
+    final INodeLockManager lm = new INodeLockManager(STRIPES);
+    final CountDownLatch start = new CountDownLatch(1);
+    Future<?>[] futures = new Future<?>[2];
+    for (int t = 0; t < 2; t++) {
+      final long first = t == 0 ? 1 : 2;
+      final long second = t == 0 ? 2 : 1;
+      futures[t] = executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          start.await();
+          for (int i = 0; i < 10000; i++) {
+            INodeLockManager.LockSet locks = lm.newLockSet();
+            locks.add(first, true);
+            locks.add(second, true);
+            locks.lock();
+            locks.unlock();
+          }
+          return null;
+        }
+      });
+    }
+    start.countDown();
+    for (Future<?> f : futures) {
+      f.get();
+    }
+  }
+
+  /**
+   * Inode locks let a thread change the inodes of its paths, but they do not
+   * count as the namesystem write lock the block manager needs.
+   */
+  @Test
+  public void testINodeLocksAreNotTheWriteLock() throws Exception {
+    startCluster();
+    FSNamesystem fsn = cluster.getNamesystem();
+    fs.mkdirs(new Path("/dir"));
+    INodeLockManager.LockSet locks =
+        fsn.writeLock(INodeLockManager.Scope.MODIFY, "/dir");
+    try {
+      assertNotNull(locks);
+      assertTrue(fsn.hasINodeLocks());
+      assertFalse(fsn.hasWriteLock());
+      assertTrue(fsn.hasReadLock());
+      assertTrue(fsn.getFSDirectory().hasWriteLock());
+    } finally {
+      fsn.writeUnlock(locks, "test");
+    }
+    assertFalse(fsn.hasINodeLocks());
+    assertFalse(fsn.hasReadLock());
+
+    // creating a file that exists needs the write lock
+    DFSTestUtil.createFile(fs, new Path("/dir/file"), 1, (short) 1, 0L);
+    locks = fsn.writeLock(INodeLockManager.Scope.CREATE, "/dir/file");
+    try {
+      assertNull(locks);
+      assertTrue(fsn.hasWriteLock());
+      assertFalse(fsn.hasINodeLocks());
+    } finally {
+      fsn.writeUnlock(locks, "test");
+    }
+  }
+
+  @Test
+  public void testMutationsWithINodeLocks() throws Exception {
+    startCluster();
+    FSNamesystem fsn = cluster.getNamesystem();
+    Path dir = new Path("/a/b");
+    assertTrue(fs.mkdirs(dir));
+    Path file = new Path(dir, "file");
+    DFSTestUtil.createFile(fs, file, 1024, (short) 1, 0L);
+    fs.setTimes(file, 1000L, 2000L);
+    fs.setPermission(file, new FsPermission((short) 0600));
+    Path renamed = new Path("/a/renamed");
+    assertTrue(fs.rename(file, renamed));
+    assertEquals(1000L, fs.getFileStatus(renamed).getModificationTime());
+
+    long blocks = fsn.getBlocksTotal();
+    // delete removes the blocks under the write lock
+    assertTrue(fs.delete(renamed, false));
+    assertEquals(blocks - 1, fsn.getBlocksTotal());
+    assertFalse(fsn.hasINodeLocks());
+  }
+
+  /** @return whether the read completes in time */
+  private boolean readInOtherThread(Callable<?> read) throws Exception {
+    Future<?> f = executor.submit(read);
+    try {
+      f.get(500, TimeUnit.MILLISECONDS);
+      return true;
+    } catch (TimeoutException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Reads lock the inodes of their path shared, so they wait for a mutation
+   * holding inode locks instead of seeing it half applied.
+   */
+  @Test(timeout = 60000)
+  public void testReadsWaitForMutations() throws Exception {
+    startCluster();
+    final FSNamesystem fsn = cluster.getNamesystem();
+    final NamenodeProtocols nn = cluster.getNameNodeRpc();
+    fs.mkdirs(new Path("/src"));
+    fs.mkdirs(new Path("/dst"));
+    fs.mkdirs(new Path("/other"));
+    DFSTestUtil.createFile(fs, new Path("/src/file"), 1024, (short) 1, 0L);
+    DFSTestUtil.createFile(fs, new Path("/other/file"), 1024, (short) 1, 0L);
+
+    Callable<Object> fileInfo = new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        return nn.getFileInfo("/src/file");
+      }
+    };
+    Callable<Object> listing = new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        return nn.getListing("/src", new byte[0], false);
+      }
+    };
+    Callable<Object> blocks = new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        return nn.getBlockLocations("/src/file", 0, 1024);
+      }
+    };
+    Callable<Object> otherFile = new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        return nn.getFileInfo("/other/file");
+      }
+    };
+
+    // as a rename of /src/file does
+    INodeLockManager.LockSet locks = fsn.writeLock(
+        INodeLockManager.Scope.REMOVE, "/src/file", "/dst/file");
+    assertNotNull(locks);
+    try {
+      // reads of other paths go on
+      assertTrue(readInOtherThread(otherFile));
+    } finally {
+      fsn.writeUnlock(locks, "test");
+    }
+
+    for (Callable<Object> read : Arrays.asList(fileInfo, listing, blocks)) {
+      locks = fsn.writeLock(
+          INodeLockManager.Scope.REMOVE, "/src/file", "/dst/file");
+      Future<Object> f = executor.submit(read);
+      try {
+        Thread.sleep(500);
+        assertFalse(f.isDone());
+      } finally {
+        fsn.writeUnlock(locks, "test");
+      }
+      assertNotNull(f.get());
+    }
+  }
+}
@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the calls deferred while the inodes of their path are loaded.
+ */
+public class TestINodePreloader {
+  private static final String DIR = "/preload";
+  private static final String FILE = DIR + "/file";
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  private INodePreloader preloader;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_DB_ASYNC_LOAD_ENABLED_KEY, true);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_DB_ASYNC_LOAD_THREADS_KEY, 2);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    preloader =
+        ((NameNodeRpcServer) cluster.getNameNodeRpc()).getPreloader();
+    assertNotNull(preloader);
+    DFSTestUtil.createFile(fs, new Path(FILE), 1024, (short) 1, 0L);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  /** Drop the inodes of the file, as an eviction from the cache does. */
+  private void evict() {
+    INodeKeyedObjects.getCache().invalidateAll(Arrays.asList(DIR, FILE));
+  }
+
+  private void assertServed() throws Exception {
+    FileStatus status = fs.getFileStatus(new Path(FILE));
+    assertEquals(1024, status.getLen());
+    FileStatus[] listing = fs.listStatus(new Path(DIR));
+    assertEquals(1, listing.length);
+    assertEquals(FILE, listing[0].getPath().toUri().getPath());
+  }
+
+  @Test(timeout = 60000)
+  public void testCallsDuringPreload() throws Exception {
+    evict();
+    assertServed();
+    // only the file is missing, its parent is cached
+    INodeKeyedObjects.getCache().invalidate(FILE);
+    assertServed();
+  }
+
+  @Test(timeout = 60000)
+  public void testCallsAfterShutdown() throws Exception {
+    preloader.shutdown();
+    evict();
+    CompletableFuture<Void> loading = preloader.preload(FILE);
+    assertNotNull(loading);
+    loading.get(30, TimeUnit.SECONDS);
+    // the deferred calls are still answered
+    evict();
+    assertServed();
+  }
+}
@@ -59,7 +59,7 @@
 import org.apache.hadoop.security.AccessControlException;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.hadoop.test.GenericTestUtils;
-import org.apache.hadoop.util.LightWeightCache;
+import org.apache.hadoop.util.GSet;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -442,8 +442,8 @@ public void testRetryCacheRebuild() throws Exception {
     DFSTestUtil.runOperations(cluster, filesystem, conf, BlockSize, 0);
     FSNamesystem namesystem = cluster.getNamesystem();
 
-    LightWeightCache<CacheEntry, CacheEntry> cacheSet = 
-        (LightWeightCache<CacheEntry, CacheEntry>) namesystem.getRetryCache().getCacheSet();
+    GSet<CacheEntry, CacheEntry> cacheSet = 
+        namesystem.getRetryCache().getCacheSet();
     assertEquals("Retry cache size is wrong", 39, cacheSet.size());
     
     Map<CacheEntry, CacheEntry> oldEntries = 
@@ -461,7 +461,7 @@ public void testRetryCacheRebuild() throws Exception {
     namesystem = cluster.getNamesystem();
     // check retry cache
     assertTrue(namesystem.hasRetryCache());
-    cacheSet = (LightWeightCache<CacheEntry, CacheEntry>) namesystem
+    cacheSet = namesystem
         .getRetryCache().getCacheSet();
     assertEquals("Retry cache size is wrong", 39, cacheSet.size());
     iter = cacheSet.iterator();
@@ -17,12 +17,16 @@
  */
 package org.apache.hadoop.hdfs.server.namenode;
 
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 
 import org.apache.hadoop.fs.XAttr;
 import org.apache.hadoop.hdfs.XAttrHelper;
+import org.apache.hadoop.hdfs.db.DatabaseINode;
+import org.junit.After;
 import org.junit.Test;
 
 import static org.junit.Assert.*;
@@ -58,6 +62,12 @@ static byte[] randomBytes(int len) {
     rand.nextBytes(bytes);
     return bytes;
   }
+  @After
+  public void tearDown() {
+    XAttrFeature.setIdsLoader(DatabaseINode::getXAttrIds);
+    XAttrFeature.invalidate();
+  }
+
   @Test
   public void testXAttrFeature() throws Exception {
     List<XAttr> xAttrs = new ArrayList<>();
@@ -116,4 +126,73 @@ public void testXAttrFeature() throws Exception {
     XAttr r8 = feature.getXAttr(name8);
     assertTrue(r8 == null);
   }
+
+  @Test
+  public void testXAttrsWrittenAndReloaded() throws Exception {
+    XAttr a1 = XAttrHelper.buildXAttr(name1, value1);
+    List<XAttr> xAttrs = new ArrayList<>();
+    xAttrs.add(a1);
+    XAttrFeature.createXAttrFeature(10, xAttrs);
+
+    // the xattrs are in the database once set
+    List<DatabaseINode.XAttrInfo> stored = new DatabaseINode().getXAttrs(10);
+    assertEquals(1, stored.size());
+    assertEquals(a1.getName(), stored.get(0).getName());
+
+    // another NameNode removes them, and this one adds the xattrs of another
+    // inode, while it owns their mount point
+    DatabaseINode.removeXAttr(10);
+    List<Integer> ns = new ArrayList<>();
+    ns.add(a1.getNameSpace().ordinal());
+    List<String> namevals = new ArrayList<>();
+    namevals.add(a1.getName());
+    namevals.add(XAttr.bytes2String(a1.getValue()));
+    DatabaseINode.insertXAttrs(11, ns, namevals);
+    assertNotNull(XAttrFeature.getFeature(10));
+    assertNull(XAttrFeature.getFeature(11));
+
+    // they are seen once the mount point is acquired again
+    XAttrFeature.invalidate();
+    assertNull(XAttrFeature.getFeature(10));
+    assertEquals(a1, XAttrFeature.getXAttr(11, name1));
+
+    XAttrFeature.removeXAttrs(11);
+    assertTrue(new DatabaseINode().getXAttrs(11).isEmpty());
+  }
+
+  /**
+   * A failed or empty load of the ids of the inodes with xattrs is not kept:
+   * the xattrs are loaded per inode until the ids are loaded.
+   */
+  @Test
+  public void testFailedIdsLoadIsNotKept() throws Exception {
+    XAttr a1 = XAttrHelper.buildXAttr(name1, value1);
+    List<XAttr> xAttrs = new ArrayList<>();
+    xAttrs.add(a1);
+    XAttrFeature.createXAttrFeature(12, xAttrs);
+
+    XAttrFeature.setIdsLoader(new XAttrFeature.IdsLoader() {
+      @Override
+      public List<Long> load() throws SQLException {
+        throw new SQLException("injected failure");
+      }
+    });
+    XAttrFeature.invalidate();
+    assertEquals(a1, XAttrFeature.getFeature(12).getXAttr(name1));
+
+    XAttrFeature.setIdsLoader(new XAttrFeature.IdsLoader() {
+      @Override
+      public List<Long> load() {
+        return Collections.emptyList();
+      }
+    });
+    XAttrFeature.invalidate();
+    assertEquals(a1, XAttrFeature.getFeature(12).getXAttr(name1));
+
+    XAttrFeature.setIdsLoader(DatabaseINode::getXAttrIds);
+    XAttrFeature.invalidate();
+    assertEquals(a1, XAttrFeature.getFeature(12).getXAttr(name1));
+    assertNull(XAttrFeature.getFeature(13));
+    XAttrFeature.removeXAttrs(12);
+  }
 }
@@ -86,7 +86,7 @@
 import org.apache.hadoop.io.retry.RetryPolicies;
 import org.apache.hadoop.io.retry.RetryPolicy;
 import org.apache.hadoop.ipc.RetryCache.CacheEntry;
-import org.apache.hadoop.util.LightWeightCache;
+import org.apache.hadoop.util.GSet;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -172,8 +172,8 @@ public void testRetryCacheOnStandbyNN() throws Exception {
     
     // check retry cache in NN1
     FSNamesystem fsn0 = cluster.getNamesystem(0);
-    LightWeightCache<CacheEntry, CacheEntry> cacheSet = 
-        (LightWeightCache<CacheEntry, CacheEntry>) fsn0.getRetryCache().getCacheSet();
+    GSet<CacheEntry, CacheEntry> cacheSet = 
+        fsn0.getRetryCache().getCacheSet();
     assertEquals("Retry cache size is wrong", 39, cacheSet.size());
     
     Map<CacheEntry, CacheEntry> oldEntries = 
@@ -193,7 +193,7 @@ public void testRetryCacheOnStandbyNN() throws Exception {
     
     // 3. check the retry cache on the new active NN
     FSNamesystem fsn1 = cluster.getNamesystem(1);
-    cacheSet = (LightWeightCache<CacheEntry, CacheEntry>) fsn1
+    cacheSet = fsn1
         .getRetryCache().getCacheSet();
     assertEquals("Retry cache size is wrong", 39, cacheSet.size());
     iter = cacheSet.iterator();
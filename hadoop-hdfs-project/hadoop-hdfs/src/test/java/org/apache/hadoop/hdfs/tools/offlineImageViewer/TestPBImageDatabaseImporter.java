@@ -0,0 +1,262 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.tools.offlineImageViewer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.hadoop.hdfs.db.DatabaseDatablock;
+import org.apache.hadoop.hdfs.db.DatabaseINode;
+import org.apache.hadoop.hdfs.db.DatabaseINode2Block;
+import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.BlockProto;
+import org.apache.hadoop.hdfs.server.namenode.FSImageFormatPBINode;
+import org.apache.hadoop.hdfs.server.namenode.FSImageFormatProtobuf.SectionName;
+import org.apache.hadoop.hdfs.server.namenode.FSImageUtil;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.FileSummary;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeDirectorySection;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection.INode;
+import org.apache.hadoop.hdfs.server.namenode.INodeId;
+import org.apache.hadoop.hdfs.server.namenode.NameNodeLayoutVersion;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.protobuf.ByteString;
+
+/**
+ * Tests that {@link PBImageDatabaseImporter} imports the inodes of an fsimage
+ * into the database. The NameNode keeps its namespace in the database and
+ * does not save the inodes into its fsimages, so the image is written here.
+ */
+public class TestPBImageDatabaseImporter {
+  // far above the ids the NameNodes of the other tests allocate
+  private static final long DIR_ID = 1L << 40;
+  private static final long FILE_ID = DIR_ID + 1;
+  private static final long UC_ID = DIR_ID + 2;
+  private static final long BLOCK_ID = 1L << 40;
+  private static final String DIR_NAME = "dbimport";
+
+  private static final long MTIME = 1000L;
+  private static final long ATIME = 2000L;
+  private static final long PERMISSION = 0755;
+
+  private static File testDir;
+  private static File image;
+  private static INodeSection.INodeFile file;
+
+  @BeforeClass
+  public static void createImage() throws IOException {
+    testDir = GenericTestUtils.getTestDir("TestPBImageDatabaseImporter");
+    testDir.mkdirs();
+    image = new File(testDir, "fsimage");
+
+    INode root = INode.newBuilder()
+        .setType(INode.Type.DIRECTORY)
+        .setId(INodeId.ROOT_INODE_ID)
+        .setName(ByteString.EMPTY)
+        .setDirectory(directory())
+        .build();
+    INode dir = INode.newBuilder()
+        .setType(INode.Type.DIRECTORY)
+        .setId(DIR_ID)
+        .setName(ByteString.copyFromUtf8(DIR_NAME))
+        .setDirectory(directory())
+        .build();
+    file = INodeSection.INodeFile.newBuilder()
+        .setReplication(3)
+        .setModificationTime(MTIME)
+        .setAccessTime(ATIME)
+        .setPreferredBlockSize(128L * 1024 * 1024)
+        .setPermission(PERMISSION)
+        .addBlocks(BlockProto.newBuilder()
+            .setBlockId(BLOCK_ID).setGenStamp(1001L).setNumBytes(1024L))
+        .addBlocks(BlockProto.newBuilder()
+            .setBlockId(BLOCK_ID + 1).setGenStamp(1002L).setNumBytes(512L))
+        .build();
+    INode fileINode = INode.newBuilder()
+        .setType(INode.Type.FILE)
+        .setId(FILE_ID)
+        .setName(ByteString.copyFromUtf8("file"))
+        .setFile(file)
+        .build();
+    INode ucINode = INode.newBuilder()
+        .setType(INode.Type.FILE)
+        .setId(UC_ID)
+        .setName(ByteString.copyFromUtf8("uc"))
+        .setFile(INodeSection.INodeFile.newBuilder()
+            .setReplication(1)
+            .setModificationTime(MTIME)
+            .setPermission(PERMISSION)
+            .setFileUC(INodeSection.FileUnderConstructionFeature.newBuilder()
+                .setClientName("client").setClientMachine("machine")))
+        .build();
+
+    ByteArrayOutputStream summary = new ByteArrayOutputStream();
+    try (DataOutputStream out =
+        new DataOutputStream(new FileOutputStream(image))) {
+      out.write(FSImageUtil.MAGIC_HEADER);
+      FileSummary.Builder b = FileSummary.newBuilder()
+          .setOndiskVersion(FSImageUtil.FILE_VERSION)
+          .setLayoutVersion(NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION);
+
+      // the root comes first, so that a checkpoint can skip it
+      long offset = out.size();
+      INodeSection.newBuilder().setLastInodeId(UC_ID).setNumInodes(4).build()
+          .writeDelimitedTo(out);
+      for (INode n : Arrays.asList(root, dir, fileINode, ucINode)) {
+        n.writeDelimitedTo(out);
+      }
+      b.addSections(FileSummary.Section.newBuilder()
+          .setName(SectionName.INODE.name())
+          .setOffset(offset).setLength(out.size() - offset));
+
+      offset = out.size();
+      INodeDirectorySection.DirEntry.newBuilder()
+          .setParent(INodeId.ROOT_INODE_ID).addChildren(DIR_ID).build()
+          .writeDelimitedTo(out);
+      INodeDirectorySection.DirEntry.newBuilder()
+          .setParent(DIR_ID).addChildren(FILE_ID).addChildren(UC_ID).build()
+          .writeDelimitedTo(out);
+      b.addSections(FileSummary.Section.newBuilder()
+          .setName(SectionName.INODE_DIR.name())
+          .setOffset(offset).setLength(out.size() - offset));
+
+      b.build().writeDelimitedTo(summary);
+      out.write(summary.toByteArray());
+      out.writeInt(summary.size());
+    }
+  }
+
+  private static INodeSection.INodeDirectory directory() {
+    return INodeSection.INodeDirectory.newBuilder()
+        .setModificationTime(MTIME)
+        .setPermission(PERMISSION)
+        .setNsQuota(-1)
+        .setDsQuota(-1)
+        .build();
+  }
+
+  @AfterClass
+  public static void deleteImport() throws Exception {
+    DatabaseINode.batchRemoveINodes(Arrays.asList(DIR_ID));
+    DatabaseINode.removeUc(UC_ID);
+    DatabaseINode2Block.deleteViaBcId(FILE_ID);
+    DatabaseDatablock.delete(BLOCK_ID);
+    DatabaseDatablock.delete(BLOCK_ID + 1);
+    FileUtils.deleteDirectory(testDir);
+  }
+
+  private static void writeCheckpoint(File checkpoint, long inodes)
+      throws IOException {
+    Properties props = new Properties();
+    props.setProperty(PBImageDatabaseImporter.CHECKPOINT_IMAGE,
+        image.getAbsolutePath());
+    props.setProperty(PBImageDatabaseImporter.CHECKPOINT_IMAGE_LENGTH,
+        String.valueOf(image.length()));
+    props.setProperty(PBImageDatabaseImporter.CHECKPOINT_INODES,
+        String.valueOf(inodes));
+    props.setProperty(PBImageDatabaseImporter.CHECKPOINT_COMPLETED, "false");
+    try (OutputStream os = new FileOutputStream(checkpoint)) {
+      props.store(os, null);
+    }
+  }
+
+  private static void runImport(File checkpoint) throws IOException {
+    try (PBImageDatabaseImporter importer = new PBImageDatabaseImporter(
+        new PrintStream(NullOutputStream.NULL_OUTPUT_STREAM), "", image,
+        checkpoint, 2, 1, 2);
+        RandomAccessFile r = new RandomAccessFile(image, "r")) {
+      importer.visit(r);
+    }
+  }
+
+  @Test
+  public void testImport() throws Exception {
+    // resume after the root, whose row belongs to the running NameNodes
+    File checkpoint = new File(testDir, "checkpoint");
+    writeCheckpoint(checkpoint, 1);
+    runImport(checkpoint);
+
+    assertEquals(INodeId.ROOT_INODE_ID, DatabaseINode.getParent(DIR_ID));
+    assertEquals("/", DatabaseINode.getParentName(DIR_ID));
+    assertEquals(DIR_NAME, DatabaseINode.getName(DIR_ID));
+    assertEquals(MTIME, DatabaseINode.getModificationTime(DIR_ID));
+    assertEquals(PERMISSION, DatabaseINode.getPermission(DIR_ID));
+    assertEquals(0L, DatabaseINode.getHeader(DIR_ID));
+
+    assertEquals(FILE_ID, DatabaseINode.getChild(DIR_ID, "file"));
+    assertEquals(DIR_ID, DatabaseINode.getParent(FILE_ID));
+    assertEquals("/" + DIR_NAME, DatabaseINode.getParentName(FILE_ID));
+    assertEquals("file", DatabaseINode.getName(FILE_ID));
+    assertEquals(MTIME, DatabaseINode.getModificationTime(FILE_ID));
+    assertEquals(ATIME, DatabaseINode.getAccessTime(FILE_ID));
+    assertEquals(FSImageFormatPBINode.Loader.buildFileHeader(file),
+        DatabaseINode.getHeader(FILE_ID));
+    assertFalse(DatabaseINode.checkUCExistence(FILE_ID));
+
+    List<Long> blockIds = DatabaseINode2Block.getBlockIds(FILE_ID);
+    Collections.sort(blockIds);
+    assertEquals(Arrays.asList(BLOCK_ID, BLOCK_ID + 1), blockIds);
+    assertEquals(1024L, DatabaseDatablock.getNumBytes(BLOCK_ID));
+    assertEquals(1001L, DatabaseDatablock.getGenerationStamp(BLOCK_ID));
+    assertEquals(512L, DatabaseDatablock.getNumBytes(BLOCK_ID + 1));
+    assertEquals(3, DatabaseDatablock.getReplication(BLOCK_ID + 1));
+
+    assertEquals("/" + DIR_NAME, DatabaseINode.getParentName(UC_ID));
+    assertTrue(DatabaseINode.checkUCExistence(UC_ID));
+    assertEquals("client", DatabaseINode.getUcClientName(UC_ID));
+    assertEquals("machine", DatabaseINode.getUcClientMachine(UC_ID));
+
+    // a completed import is not run again
+    Properties props = new Properties();
+    try (InputStream in = new FileInputStream(checkpoint)) {
+      props.load(in);
+    }
+    assertEquals("4",
+        props.getProperty(PBImageDatabaseImporter.CHECKPOINT_INODES));
+    assertEquals("true",
+        props.getProperty(PBImageDatabaseImporter.CHECKPOINT_COMPLETED));
+    try {
+      runImport(checkpoint);
+      fail("Imported the image twice");
+    } catch (IOException e) {
+      GenericTestUtils.assertExceptionContains("already been imported", e);
+    }
+  }
+}
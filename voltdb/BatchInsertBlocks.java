@@ -0,0 +1,30 @@
+import org.voltdb.*;
+
+public class BatchInsertBlocks extends VoltProcedure {
+
+  public final SQLStmt sql1 =
+      new SQLStmt("UPSERT INTO inode2block(blockId, id, idx) VALUES (?, ?, ?);");
+  public final SQLStmt sql2 =
+      new SQLStmt(
+          "UPSERT INTO datablocks("
+              + "blockId, numBytes, generationStamp, replication, ecPolicyId"
+              + ") VALUES (?, ?, ?, ?, ?);");
+
+  // longAttrs: [id, blockId, idx, numBytes, generationStamp, replication, ecPolicyId]*
+  public long run(final long[] longAttrs) throws VoltAbortException {
+    int size = longAttrs.length / 7;
+    for (int i = 0; i < size; ++i) {
+      int idx = i * 7;
+      voltQueueSQL(sql1, longAttrs[idx + 1], longAttrs[idx], longAttrs[idx + 2]);
+      voltQueueSQL(
+          sql2,
+          longAttrs[idx + 1],
+          longAttrs[idx + 3],
+          longAttrs[idx + 4],
+          longAttrs[idx + 5],
+          longAttrs[idx + 6]);
+    }
+    voltExecuteSQL();
+    return 1;
+  }
+}
@@ -0,0 +1,28 @@
+import org.voltdb.*;
+
+public class BatchInsertXAttrs extends VoltProcedure {
+
+  public final SQLStmt sql1 = new SQLStmt("DELETE FROM inodexattrs WHERE id = ?;");
+  public final SQLStmt sql2 =
+      new SQLStmt("INSERT INTO inodexattrs(id, namespace, name, value) VALUES(?, ?, ?, ?);");
+
+  // ids/ns hold one entry per xattr; namevals holds [name, value]* in the same order.
+  public long run(final long[] ids, final int[] ns, final String[] namevals)
+      throws VoltAbortException {
+    long prev = -1;
+    for (int i = 0; i < ids.length; ++i) {
+      if (ids[i] != prev) {
+        // make re-imports idempotent: drop what an earlier run left behind
+        voltQueueSQL(sql1, ids[i]);
+        prev = ids[i];
+      }
+    }
+    voltExecuteSQL();
+
+    for (int i = 0; i < ids.length; ++i) {
+      voltQueueSQL(sql2, ids[i], ns[i], namevals[i * 2], namevals[i * 2 + 1]);
+    }
+    voltExecuteSQL();
+    return 1;
+  }
+}
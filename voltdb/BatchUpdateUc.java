@@ -0,0 +1,23 @@
+import org.voltdb.*;
+
+public class BatchUpdateUc extends VoltProcedure {
+
+  public final SQLStmt sql1 =
+      new SQLStmt(
+          "UPSERT INTO inodeuc(id, clientName, clientMachine, leaseHolder) VALUES (?, ?, ?, ?);");
+  public final SQLStmt sql2 = new SQLStmt("DELETE FROM inodeuc WHERE id = ?;");
+
+  // fileAttrs holds [clientName, clientMachine, leaseHolder]* in the order of fileIds.
+  public long run(final long[] fileIds, final String[] fileAttrs, final long[] removeIds)
+      throws VoltAbortException {
+    for (int i = 0; i < fileIds.length; ++i) {
+      voltQueueSQL(
+          sql1, fileIds[i], fileAttrs[i * 3], fileAttrs[i * 3 + 1], fileAttrs[i * 3 + 2]);
+    }
+    for (int i = 0; i < removeIds.length; ++i) {
+      voltQueueSQL(sql2, removeIds[i]);
+    }
+    voltExecuteSQL();
+    return 1;
+  }
+}
@@ -0,0 +1,12 @@
+import org.voltdb.*;
+
+public class GetAllUc extends VoltProcedure {
+
+  public final SQLStmt sql =
+      new SQLStmt("SELECT id, clientName, clientMachine, leaseHolder FROM inodeuc;");
+
+  public VoltTable[] run() throws VoltAbortException {
+    voltQueueSQL(sql);
+    return voltExecuteSQL();
+  }
+}
@@ -0,0 +1,12 @@
+import org.voltdb.*;
+
+// https://docs.voltdb.com/tutorial/Part5.php
+public class GetChildrenNamesV2 extends VoltProcedure {
+
+  public final SQLStmt sql = new SQLStmt("SELECT name FROM inodes WHERE parentName = ?;");
+
+  public VoltTable[] run(String parentName) throws VoltAbortException {
+    voltQueueSQL(sql, parentName);
+    return voltExecuteSQL();
+  }
+}
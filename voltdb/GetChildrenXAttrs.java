@@ -0,0 +1,15 @@
+import org.voltdb.*;
+
+// https://docs.voltdb.com/tutorial/Part5.php
+public class GetChildrenXAttrs extends VoltProcedure {
+
+  public final SQLStmt sql =
+      new SQLStmt(
+          "SELECT x.id, x.namespace, x.name, x.value FROM inodes i, inodexattrs x"
+              + " WHERE i.parentName = ? AND x.id = i.id;");
+
+  public VoltTable[] run(String parentName) throws VoltAbortException {
+    voltQueueSQL(sql, parentName);
+    return voltExecuteSQL();
+  }
+}
@@ -0,0 +1,12 @@
+import org.voltdb.*;
+
+// https://docs.voltdb.com/tutorial/Part5.php
+public class GetParentNamesAndNames extends VoltProcedure {
+
+  public final SQLStmt sql = new SQLStmt("SELECT id, parentName, name FROM inodes WHERE id IN ?;");
+
+  public VoltTable[] run(long[] ids) throws VoltAbortException {
+    voltQueueSQL(sql, ids);
+    return voltExecuteSQL();
+  }
+}
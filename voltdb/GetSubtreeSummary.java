@@ -0,0 +1,52 @@
+import org.voltdb.*;
+
+// https://docs.voltdb.com/tutorial/Part5.php
+public class GetSubtreeSummary extends VoltProcedure {
+
+  // the descendants of a directory are the inodes whose parentName is the
+  // directory or starts with its path and a slash, ['/a/', '/a0')
+  public final SQLStmt sql1 =
+      new SQLStmt(
+          "SELECT COUNT(*), SUM(CASE WHEN header = 0 THEN 1 ELSE 0 END) FROM inodes"
+              + " WHERE parentName = ? OR (parentName >= ? AND parentName < ?);");
+
+  // the length of all the blocks, and the replicas of the contiguous ones
+  public final SQLStmt sql2 =
+      new SQLStmt(
+          "SELECT SUM(d.numBytes),"
+              + " SUM(CASE WHEN d.ecPolicyId IS NULL OR d.ecPolicyId < 0"
+              + " THEN d.numBytes * d.replication ELSE 0 END)"
+              + " FROM inodes i, inode2block b, datablocks d"
+              + " WHERE (i.parentName = ? OR (i.parentName >= ? AND i.parentName < ?))"
+              + " AND b.id = i.id AND d.blockId = b.blockId;");
+
+  // the length of the striped blocks of a policy, and of one of their parity
+  // blocks, as StripedBlockUtil.spaceConsumedByStripedBlock
+  public final SQLStmt sql3 =
+      new SQLStmt(
+          "SELECT SUM(d.numBytes),"
+              + " SUM((d.numBytes / ?) * ?"
+              + " + CASE WHEN MOD(d.numBytes, ?) < ? THEN MOD(d.numBytes, ?) ELSE ? END)"
+              + " FROM inodes i, inode2block b, datablocks d"
+              + " WHERE (i.parentName = ? OR (i.parentName >= ? AND i.parentName < ?))"
+              + " AND b.id = i.id AND d.blockId = b.blockId AND d.ecPolicyId = ?;");
+
+  public VoltTable[] run(
+      String path,
+      String from,
+      String to,
+      int[] ecPolicyIds,
+      long[] stripeSizes,
+      long[] cellSizes)
+      throws VoltAbortException {
+    voltQueueSQL(sql1, path, from, to);
+    voltQueueSQL(sql2, path, from, to);
+    for (int i = 0; i < ecPolicyIds.length; ++i) {
+      long stripe = stripeSizes[i];
+      long cell = cellSizes[i];
+      voltQueueSQL(
+          sql3, stripe, cell, stripe, cell, stripe, cell, path, from, to, ecPolicyIds[i]);
+    }
+    return voltExecuteSQL();
+  }
+}
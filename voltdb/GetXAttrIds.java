@@ -0,0 +1,12 @@
+import org.voltdb.*;
+
+// https://docs.voltdb.com/tutorial/Part5.php
+public class GetXAttrIds extends VoltProcedure {
+
+  public final SQLStmt sql = new SQLStmt("SELECT DISTINCT id FROM inodexattrs;");
+
+  public VoltTable[] run() throws VoltAbortException {
+    voltQueueSQL(sql);
+    return voltExecuteSQL();
+  }
+}
@@ -0,0 +1,14 @@
+import org.voltdb.*;
+
+// https://docs.voltdb.com/tutorial/Part5.php
+public class LoadINodesV3 extends VoltProcedure {
+
+  public final SQLStmt sql =
+      new SQLStmt(
+          "SELECT parent, parentName, id, name, permission, modificationTime, accessTime, header FROM inodes WHERE parentName = ? AND name IN ?;");
+
+  public VoltTable[] run(String parentName, String[] childNames) throws VoltAbortException {
+    voltQueueSQL(sql, parentName, childNames);
+    return voltExecuteSQL();
+  }
+}
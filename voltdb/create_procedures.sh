@@ -1,6 +1,11 @@
 ## declare an array variable
 VOLTDB_PROCEDURES=$(ls | grep java | cut -f 1 -d '.')
 
+## single-partition procedures, their first parameter is the partition column
+## inodes.parentName so the client routes them straight to the owning partition;
+## all the others run as multi-partition transactions
+PARTITIONED_PROCEDURES="LoadINodeV3 LoadINodesV3 GetChildrenNamesV2 GetChildrenXAttrs"
+
 cat <<EOF
 ============================================
 Removing the Exist Stored Procedures ...
@@ -42,5 +47,10 @@ EOF
 
 for procedure in $VOLTDB_PROCEDURES
 do
-    echo "CREATE PROCEDURE FROM CLASS $procedure;" | sqlcmd --servers=$1;
+    if [[ " $PARTITIONED_PROCEDURES " == *" $procedure "* ]];
+    then
+        echo "CREATE PROCEDURE PARTITION ON TABLE inodes COLUMN parentName PARAMETER 0 FROM CLASS $procedure;" | sqlcmd --servers=$1;
+    else
+        echo "CREATE PROCEDURE FROM CLASS $procedure;" | sqlcmd --servers=$1;
+    fi
 done